@@ -0,0 +1,68 @@
+package com.trego.repository;
+
+import com.trego.dto.MetricsSnapshotDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsRepository.FoldState;
+import com.trego.repository.MetricsRepository.StoredSnapshot;
+import com.trego.service.InMemoryMetricsRepository;
+import com.trego.service.MetricsBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Map-shaped Firestore codecs in {@link FirestoreMetricsRepository}: the
+ * snapshot doc (fixed size: this week + 12 weeks of history) and the fold-state
+ * doc, whose inline daily/weekly maps grow with the number of active days.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsSnapshotCodecBenchmark {
+
+    @Param({"1000", "10000"})
+    public int runs;
+
+    @Param({"365", "3650"})
+    public int spanDays;
+
+    private StoredSnapshot snapshot;
+    private FoldState foldState;
+    private Map<String, Object> snapshotDoc;
+    private Map<String, Object> foldDoc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<RunRecord> data = MetricsBenchmarkData.runs(runs, spanDays, 42L);
+        InMemoryMetricsRepository repo = MetricsBenchmarkData.recomputed(data);
+        snapshot = repo.snapshotsByUser.get(MetricsBenchmarkData.UID);
+        foldState = repo.foldByUser.get(MetricsBenchmarkData.UID);
+        snapshotDoc = FirestoreMetricsRepository.serializeSnapshot(snapshot);
+        foldDoc = FirestoreMetricsRepository.serializeFoldState(foldState);
+    }
+
+    @Benchmark
+    public Map<String, Object> serializeSnapshot() {
+        return FirestoreMetricsRepository.serializeSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public MetricsSnapshotDto parseSnapshotDto() {
+        return FirestoreMetricsRepository.parseSnapshotDto(snapshotDoc);
+    }
+
+    @Benchmark
+    public Map<String, Object> serializeFoldState() {
+        return FirestoreMetricsRepository.serializeFoldState(foldState);
+    }
+
+    @Benchmark
+    public FoldState parseFoldState() {
+        return FirestoreMetricsRepository.parseFoldState(foldDoc);
+    }
+}
@@ -0,0 +1,56 @@
+package com.trego.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deep feed pages: the deprecated offset mode, which merges every post before
+ * the offset, against cursor pages, which resume right after the previous one.
+ * The in-memory repository scans its posts on every query, so absolute times
+ * overstate Firestore's; the gap between the two modes is the point.
+ *
+ * <pre>./mvnw -Pbench -DskipTests test-compile exec:exec -Djmh.args=FeedPaginationBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedPaginationBenchmark {
+
+    private static final String VIEWER = "viewer-uid";
+    private static final int PAGE = 20;
+
+    /** Zero-based page number to fetch. */
+    @Param({"0", "50", "250"})
+    public int depth;
+
+    private SocialService service;
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemorySocialRepository repo = new InMemorySocialRepository();
+        service = new SocialService(repo);
+        for (int i = 0; i < 10_000; i++) {
+            service.createPost("author-" + (i % 100), "Author", null, "post " + i,
+                    "general", List.of(), "public");
+        }
+        cursor = null;
+        for (int i = 0; i < depth; i++) cursor = service.getFeedPage(VIEWER, cursor, PAGE).getNextCursor();
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public List<PostView> offsetPage() {
+        return service.getFeed(VIEWER, PAGE, depth * PAGE);
+    }
+
+    @Benchmark
+    public SocialService.FeedPage cursorPage() {
+        return service.getFeedPage(VIEWER, cursor, PAGE);
+    }
+}
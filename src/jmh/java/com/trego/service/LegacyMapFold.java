@@ -0,0 +1,102 @@
+package com.trego.service;
+
+import com.trego.dto.LifetimeTotalsDto;
+import com.trego.dto.PrEntryDto;
+import com.trego.dto.PrsDto;
+import com.trego.dto.WeeklyMetricsDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsRepository.DailyAggregate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Frozen copy of the map-based {@link MetricsFold#apply} as it was before the
+ * buckets moved to {@link BucketTable}: a fresh {@link DailyAggregate} per run,
+ * {@link LocalDate} / ISO-week-string keys and a String.format per run. Kept
+ * only as the baseline for {@link MetricsFoldBenchmark}.
+ */
+final class LegacyMapFold {
+
+    final PrsDto prs = new PrsDto();
+    final LifetimeTotalsDto totals = new LifetimeTotalsDto();
+    final Map<LocalDate, DailyAggregate> dailyByDate = new HashMap<>();
+    final Map<String, WeeklyMetricsDto> weeklyByIsoWeek = new HashMap<>();
+    final Set<LocalDate> dirtyDays = new HashSet<>();
+    int runCount;
+
+    void apply(RunRecord run) {
+        long paceSecPerKm = run.getDistanceKm() > 0
+                ? Math.round((run.getDurationMs() / 1000.0) / run.getDistanceKm())
+                : Long.MAX_VALUE;
+
+        if (run.getDistanceKm() >= 1.0
+                && (prs.getFastest1k() == null || paceSecPerKm < prs.getFastest1k().getPaceSecPerKm())) {
+            prs.setFastest1k(pr(run, paceSecPerKm));
+        }
+        if (run.getDistanceKm() >= 5.0
+                && (prs.getFastest5k() == null || paceSecPerKm < prs.getFastest5k().getPaceSecPerKm())) {
+            prs.setFastest5k(pr(run, paceSecPerKm));
+        }
+        if (run.getDistanceKm() >= 10.0
+                && (prs.getFastest10k() == null || paceSecPerKm < prs.getFastest10k().getPaceSecPerKm())) {
+            prs.setFastest10k(pr(run, paceSecPerKm));
+        }
+        if (prs.getLongestDistance() == null || run.getDistanceKm() > prs.getLongestDistance().getDistanceKm()) {
+            prs.setLongestDistance(pr(run, 0));
+        }
+        if (prs.getLongestDuration() == null || run.getDurationMs() > prs.getLongestDuration().getDurationMs()) {
+            prs.setLongestDuration(pr(run, 0));
+        }
+
+        totals.setTotalKm(totals.getTotalKm() + run.getDistanceKm());
+        totals.setTotalRuns(totals.getTotalRuns() + 1);
+        totals.setTotalTimeMs(totals.getTotalTimeMs() + run.getDurationMs());
+
+        LocalDate date = run.getStartTime().atZone(ZoneOffset.UTC).toLocalDate();
+        DailyAggregate prev = dailyByDate.get(date);
+        if (prev == null) {
+            dailyByDate.put(date, new DailyAggregate(run.getDistanceKm(), 1, run.getDurationMs()));
+        } else {
+            dailyByDate.put(date, new DailyAggregate(
+                    prev.totalKm + run.getDistanceKm(),
+                    prev.totalRuns + 1,
+                    prev.totalTimeMs + run.getDurationMs()));
+        }
+        dirtyDays.add(date);
+
+        String isoWeek = MetricsFold.isoYearWeekOf(run.getStartTime(), ZoneOffset.UTC);
+        WeeklyMetricsDto wk = weeklyByIsoWeek.computeIfAbsent(isoWeek, k -> {
+            WeeklyMetricsDto w = new WeeklyMetricsDto();
+            w.setIsoYearWeek(k);
+            Instant[] bounds = MetricsFold.isoWeekBounds(run.getStartTime(), ZoneOffset.UTC);
+            w.setWeekStart(bounds[0]);
+            w.setWeekEnd(bounds[1]);
+            return w;
+        });
+        wk.setTotalKm(wk.getTotalKm() + run.getDistanceKm());
+        wk.setTotalRuns(wk.getTotalRuns() + 1);
+        wk.setTotalTimeMs(wk.getTotalTimeMs() + run.getDurationMs());
+        if (run.getDistanceKm() > wk.getLongestKm()) wk.setLongestKm(run.getDistanceKm());
+        wk.setAvgPaceSecPerKm(wk.getTotalKm() > 0
+                ? Math.round((wk.getTotalTimeMs() / 1000.0) / wk.getTotalKm())
+                : 0L);
+
+        runCount++;
+    }
+
+    private static PrEntryDto pr(RunRecord run, long paceSecPerKm) {
+        PrEntryDto p = new PrEntryDto();
+        p.setRunId(run.getRunId());
+        p.setDistanceKm(run.getDistanceKm());
+        p.setRunStartTime(run.getStartTime());
+        p.setDurationMs(run.getDurationMs());
+        p.setPaceSecPerKm(paceSecPerKm);
+        return p;
+    }
+}
@@ -0,0 +1,53 @@
+package com.trego.service;
+
+import com.trego.model.RunRecord;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Synthetic run histories shared by the metrics benchmarks. Deterministic per seed. */
+public final class MetricsBenchmarkData {
+
+    public static final String UID = "bench-user";
+    private static final long START = Instant.parse("2015-01-01T00:00:00Z").getEpochSecond();
+
+    private MetricsBenchmarkData() {}
+
+    /**
+     * [n] runs spread uniformly over [spanDays] days, sorted by startTime.
+     * A short span packs several runs per day; a long one leaves most days
+     * and weeks with a single run, which is what drives bucket counts.
+     */
+    public static List<RunRecord> runs(int n, int spanDays, long seed) {
+        Random rnd = new Random(seed);
+        long[] starts = new long[n];
+        for (int i = 0; i < n; i++) starts[i] = START + (long) (rnd.nextDouble() * spanDays * 86_400L);
+        Arrays.sort(starts);
+        List<RunRecord> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double km = 2.0 + rnd.nextDouble() * 20.0;
+            long ms = (long) (km * (240 + rnd.nextInt(180)) * 1000);
+            out.add(new RunRecord("r" + i, km, ms, Instant.ofEpochSecond(starts[i])));
+        }
+        return out;
+    }
+
+    /** A repository holding [runs] for {@link #UID}, with snapshot and fold state already computed. */
+    public static InMemoryMetricsRepository recomputed(List<RunRecord> runs) {
+        InMemoryMetricsRepository repo = new InMemoryMetricsRepository();
+        repo.runsByUser.put(UID, runs);
+        service(repo, runs).recomputeFull(UID);
+        return repo;
+    }
+
+    /** A service whose clock sits at the last run, so "this week" is populated. */
+    public static MetricsService service(InMemoryMetricsRepository repo, List<RunRecord> runs) {
+        Instant now = runs.isEmpty() ? Instant.ofEpochSecond(START) : runs.get(runs.size() - 1).getStartTime();
+        return new MetricsService(repo, Clock.fixed(now, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,61 @@
+package com.trego.service;
+
+import com.trego.dto.RecomputeResultDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsRepository.FoldState;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primitive-bucket {@link MetricsFold} against the previous map-based fold
+ * ({@link LegacyMapFold}), plus the end-to-end {@link MetricsService#recomputeFull}
+ * over an in-memory repository. Allocation rates come from the gc profiler the
+ * bench profile always enables:
+ *
+ * <pre>./mvnw -Pbench -DskipTests test-compile exec:exec -Djmh.args=MetricsFoldBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsFoldBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int runs;
+
+    private List<RunRecord> dataset;
+    private MetricsService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // About one run a day.
+        dataset = MetricsBenchmarkData.runs(runs, runs, 42L);
+        InMemoryMetricsRepository repo = new InMemoryMetricsRepository();
+        repo.runsByUser.put(MetricsBenchmarkData.UID, dataset);
+        service = MetricsBenchmarkData.service(repo, dataset);
+    }
+
+    @Benchmark
+    public FoldState primitiveFold() {
+        MetricsFold fold = MetricsFold.empty(ZoneOffset.UTC);
+        for (RunRecord r : dataset) fold.apply(r);
+        return fold.toState(MetricsService.SCHEMA_VERSION, null);
+    }
+
+    @Benchmark
+    public LegacyMapFold mapFoldBaseline() {
+        LegacyMapFold fold = new LegacyMapFold();
+        for (RunRecord r : dataset) fold.apply(r);
+        return fold;
+    }
+
+    @Benchmark
+    public RecomputeResultDto recomputeFull() {
+        return service.recomputeFull(MetricsBenchmarkData.UID);
+    }
+}
@@ -0,0 +1,61 @@
+package com.trego.service;
+
+import com.trego.dto.MetricsSnapshotDto;
+import com.trego.dto.RecomputeResultDto;
+import com.trego.model.RunRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MetricsService} hot paths over an in-memory repository, so the numbers
+ * are CPU and allocation only (no Firestore round trips):
+ * <ul>
+ *   <li>{@code recomputeFull} — fold every run and persist;</li>
+ *   <li>{@code recomputeNoNewRuns} — resume the fold state, find nothing new, persist;</li>
+ *   <li>{@code getSnapshotCached} — the steady-state GET /metrics/me.</li>
+ * </ul>
+ * {@code spanDays} sets the time spread: the same run count over more days
+ * means more daily/weekly buckets to build, diff and serialize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsServiceBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int runs;
+
+    @Param({"365", "3650"})
+    public int spanDays;
+
+    private MetricsService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<RunRecord> data = MetricsBenchmarkData.runs(runs, spanDays, 42L);
+        InMemoryMetricsRepository repo = MetricsBenchmarkData.recomputed(data);
+        repo.runVersionByUser.put(MetricsBenchmarkData.UID, 1L);
+        service = MetricsBenchmarkData.service(repo, data);
+        service.recomputeFull(MetricsBenchmarkData.UID);
+    }
+
+    @Benchmark
+    public RecomputeResultDto recomputeFull() {
+        return service.recomputeFull(MetricsBenchmarkData.UID);
+    }
+
+    @Benchmark
+    public RecomputeResultDto recomputeNoNewRuns() {
+        return service.recompute(MetricsBenchmarkData.UID);
+    }
+
+    @Benchmark
+    public MetricsSnapshotDto getSnapshotCached() {
+        return service.getSnapshot(MetricsBenchmarkData.UID);
+    }
+}
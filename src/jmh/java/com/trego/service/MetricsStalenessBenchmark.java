@@ -0,0 +1,79 @@
+package com.trego.service;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.trego.dto.MetricsSnapshotDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsRepository.StoredSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /metrics/me when the snapshot is fresh, i.e. the cost of the staleness
+ * check itself. Firestore round trips are modelled as
+ * fixed latencies on the in-memory repository, with the count() aggregation
+ * growing with the size of the runs index the way Firestore executes it:
+ * <ul>
+ *   <li>{@code count} — the old check: count() the runs and compare it with
+ *       the count stored on the snapshot;</li>
+ *   <li>{@code version} — the current check: read the run-version doc and
+ *       compare it with the version stored on the snapshot, with the cache
+ *       missing;</li>
+ *   <li>{@code cached} — a cache hit while the run version is still known,
+ *       which makes no Firestore call.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsStalenessBenchmark {
+
+    @Param({"1000", "10000"})
+    public int runs;
+
+    @Param({"count", "version", "cached"})
+    public String check;
+
+    @Param({"4"})
+    public long docReadMs;
+
+    private InMemoryMetricsRepository repo;
+    private MetricsService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<RunRecord> data = MetricsBenchmarkData.runs(runs, 365, 42L);
+        repo = new InMemoryMetricsRepository();
+        repo.runsByUser.put(MetricsBenchmarkData.UID, data);
+        repo.bumpRunVersion(MetricsBenchmarkData.UID);
+        // Except for "cached", a zero-sized cache, so every call reaches the staleness check.
+        MetricsSnapshotCache cache = "cached".equals(check)
+                ? new MetricsSnapshotCache(10_000, Duration.ofMinutes(5), Duration.ofMinutes(5), Ticker.systemTicker())
+                : new MetricsSnapshotCache(0, Duration.ofMinutes(5), Ticker.systemTicker());
+        service = new MetricsService(repo, cache,
+                Clock.fixed(data.get(data.size() - 1).getStartTime(), ZoneOffset.UTC));
+        service.recomputeFull(MetricsBenchmarkData.UID);
+
+        repo.latencyMsByOp.put("readSnapshot", docReadMs);
+        repo.latencyMsByOp.put("readRunVersion", docReadMs);
+        repo.latencyMsByOp.put("countRuns", docReadMs + runs / 1_000);
+    }
+
+    @Benchmark
+    public MetricsSnapshotDto getSnapshot() {
+        if ("count".equals(check)) {
+            int count = repo.countRuns(MetricsBenchmarkData.UID);
+            StoredSnapshot stored = repo.readSnapshot(MetricsBenchmarkData.UID).orElseThrow();
+            if (stored.runCountAtCompute != count) throw new IllegalStateException("stale");
+            return stored.dto;
+        }
+        return service.getSnapshot(MetricsBenchmarkData.UID);
+    }
+}
@@ -0,0 +1,161 @@
+package com.trego.config;
+
+import com.trego.security.FirebaseUserPrincipal;
+import com.trego.service.FeedPushService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * STOMP over WebSocket at {@code /ws/feed} for real-time feed events
+ * ({@link FeedPushService}). The handshake goes through the normal security
+ * chain, so it needs the same {@code Authorization: Bearer} token as the REST
+ * API; the session's user is the caller's Firebase UID, which is what
+ * {@code /user/queue/feed} is resolved against.
+ *
+ * <p>Clients may only subscribe to {@code /topic/feed} and
+ * {@code /user/queue/feed}, and cannot send.
+ *
+ * <p>Each connection buffers at most {@code send-buffer-size-kb} of outgoing
+ * messages and may take at most {@code send-time-limit-ms} over one send; a
+ * client that falls further behind is disconnected and catches up with a feed
+ * read when it reconnects. Heartbeats go both ways every {@code heartbeat-ms}.
+ *
+ * <p>The in-process simple broker is the default. Setting
+ * {@code social.push.relay.enabled} relays to an external STOMP broker
+ * (RabbitMQ, ActiveMQ) instead, so events reach clients connected to any
+ * instance; that also needs {@code reactor-netty} on the classpath.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    static final String ENDPOINT = "/ws/feed";
+
+    @Value("${cors.allowed-origins}")
+    private String allowedOrigins;
+
+    @Value("${social.push.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    @Value("${social.push.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${social.push.send-buffer-size-kb:512}")
+    private int sendBufferSizeKb;
+
+    @Value("${social.push.relay.enabled:false}")
+    private boolean relayEnabled;
+
+    @Value("${social.push.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${social.push.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${social.push.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${social.push.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Autowired
+    @Lazy
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint(ENDPOINT)
+                .setHandshakeHandler(new FirebaseUidHandshakeHandler())
+                .setAllowedOrigins(allowedOrigins.split(","));
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        if (relayEnabled) {
+            registry.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(heartbeatMs)
+                    .setSystemHeartbeatReceiveInterval(heartbeatMs);
+        } else {
+            registry.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[] {heartbeatMs, heartbeatMs})
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeKb * 1024);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new FeedSubscriptionGuard());
+    }
+
+    /** Names the WebSocket session after the authenticated caller's Firebase UID. */
+    static final class FirebaseUidHandshakeHandler extends DefaultHandshakeHandler {
+        @Override
+        protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler,
+                                          Map<String, Object> attributes) {
+            if (request.getPrincipal() instanceof Authentication auth
+                    && auth.getPrincipal() instanceof FirebaseUserPrincipal user) {
+                String uid = user.getFirebaseUid();
+                return () -> uid;
+            }
+            return null;
+        }
+    }
+
+    /** Receive-only: authenticated sessions may subscribe to the feed destinations and nothing else. */
+    static final class FeedSubscriptionGuard implements ChannelInterceptor {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            StompHeaderAccessor stomp = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+            if (stomp == null || stomp.getCommand() == null) return message;
+            if (stomp.getCommand() == StompCommand.SEND) {
+                throw new MessageDeliveryException(message, "The feed channel is receive-only");
+            }
+            if (stomp.getCommand() == StompCommand.SUBSCRIBE) {
+                if (stomp.getUser() == null) {
+                    throw new MessageDeliveryException(message, "Authentication required");
+                }
+                String destination = stomp.getDestination();
+                if (!FeedPushService.PUBLIC_TOPIC.equals(destination)
+                        && !("/user" + FeedPushService.USER_QUEUE).equals(destination)) {
+                    throw new MessageDeliveryException(message, "Unknown destination: " + destination);
+                }
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.trego.controller;
+
+import com.trego.dto.BackfillStatusDto;
+import com.trego.service.MetricsBackfillService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Admin control of the bulk metrics backfill. Lives under /admin/**, which
+ * SecurityConfig restricts to ROLE_ADMIN.
+ */
+@RestController
+@RequestMapping("/admin/metrics/backfill")
+public class MetricsBackfillController {
+
+    @Autowired
+    private MetricsBackfillService service;
+
+    @Value("${metrics.backfill.workers:4}")
+    private int defaultWorkers;
+
+    @Value("${metrics.backfill.writes-per-second:500}")
+    private int defaultWritesPerSecond;
+
+    /** Progress, throughput (users/sec, runs/sec) and ETA of the current or last backfill. */
+    @GetMapping
+    public ResponseEntity<BackfillStatusDto> status() {
+        return ResponseEntity.ok(service.status());
+    }
+
+    /** Start (or resume from checkpoint) a backfill to the current SCHEMA_VERSION. */
+    @PostMapping
+    public ResponseEntity<BackfillStatusDto> start(
+            @RequestParam(required = false) Integer workers,
+            @RequestParam(required = false) Integer writesPerSecond,
+            @RequestParam(defaultValue = "false") boolean restart) {
+        try {
+            return ResponseEntity.ok(service.start(
+                    workers != null ? workers : defaultWorkers,
+                    writesPerSecond != null ? writesPerSecond : defaultWritesPerSecond,
+                    restart));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(service.status());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /** Stop after the in-flight page; progress up to the last checkpoint is kept. */
+    @PostMapping("/stop")
+    public ResponseEntity<BackfillStatusDto> stop() {
+        service.stop();
+        return ResponseEntity.ok(service.status());
+    }
+}
@@ -1,16 +1,22 @@
 package com.trego.controller;
 
 import com.trego.dto.MetricsSnapshotDto;
+import com.trego.dto.RangeMetricsDto;
 import com.trego.dto.RecomputeResultDto;
+import com.trego.dto.RunIngestDto;
 import com.trego.dto.WeeklyGoalDto;
 import com.trego.security.FirebaseUserPrincipal;
 import com.trego.service.MetricsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @RestController
 @RequestMapping("/metrics")
 public class MetricsController {
@@ -28,14 +34,94 @@ public class MetricsController {
         return ResponseEntity.ok(service.getSnapshot(principal.getFirebaseUid()));
     }
 
-    /** Trigger a recompute. Frontend calls this after a successful Run save. */
+    /**
+     * Trigger a recompute, {@code full=true} to rebuild from every run. Run
+     * writes through /me/runs already update the metrics, so this is only
+     * needed for repairs.
+     */
     @PostMapping("/me/recompute")
     public ResponseEntity<RecomputeResultDto> recompute(
+            @RequestParam(defaultValue = "false") boolean full,
+            @AuthenticationPrincipal FirebaseUserPrincipal principal) {
+        if (principal == null || principal.getUser() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String uid = principal.getFirebaseUid();
+        return ResponseEntity.ok(full ? service.recomputeFull(uid) : service.recompute(uid));
+    }
+
+    /**
+     * Save a batch of runs (a JSON array; one element for a single run) and
+     * update the metrics in the same request. Also edits a run, by re-sending
+     * its runId. Clients cannot write run docs directly. 400 on an empty or
+     * oversized batch, a repeated runId or a run missing required fields.
+     */
+    @PostMapping("/me/runs")
+    public ResponseEntity<RecomputeResultDto> ingestRuns(
+            @RequestBody List<RunIngestDto> runs,
+            @AuthenticationPrincipal FirebaseUserPrincipal principal) {
+        if (principal == null || principal.getUser() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok(service.ingestRuns(principal.getFirebaseUid(), runs));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /** Delete a run and update the metrics in the same request. 400 on an invalid runId. */
+    @DeleteMapping("/me/runs/{runId}")
+    public ResponseEntity<RecomputeResultDto> deleteRun(
+            @PathVariable String runId,
+            @AuthenticationPrincipal FirebaseUserPrincipal principal) {
+        if (principal == null || principal.getUser() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok(service.deleteRuns(principal.getFirebaseUid(), List.of(runId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Totals over a range of calendar days in the user's time zone: either
+     * {@code from}/{@code to} (inclusive, yyyy-MM-dd) or the trailing {@code days}
+     * ending today. 400 when neither or an invalid range is given.
+     */
+    @GetMapping("/me/range")
+    public ResponseEntity<RangeMetricsDto> getRange(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer days,
             @AuthenticationPrincipal FirebaseUserPrincipal principal) {
         if (principal == null || principal.getUser() == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        return ResponseEntity.ok(service.recompute(principal.getFirebaseUid()));
+        String uid = principal.getFirebaseUid();
+        try {
+            if (days != null) return ResponseEntity.ok(service.getTrailing(uid, days));
+            if (from == null || to == null) return ResponseEntity.badRequest().build();
+            return ResponseEntity.ok(service.getRange(uid, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /** Monthly totals for the last {@code months} calendar months, oldest first. */
+    @GetMapping("/me/monthly")
+    public ResponseEntity<List<RangeMetricsDto>> getMonthly(
+            @RequestParam(defaultValue = "12") int months,
+            @AuthenticationPrincipal FirebaseUserPrincipal principal) {
+        if (principal == null || principal.getUser() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok(service.getMonthly(principal.getFirebaseUid(), months));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /** Read the user's weekly goal (all-null DTO if none set). */
@@ -48,7 +134,10 @@ public class MetricsController {
         return ResponseEntity.ok(service.getGoal(principal.getFirebaseUid()));
     }
 
-    /** Set the user's weekly goal (targetKm and/or targetRuns; either may be null). */
+    /**
+     * Set the user's weekly goal (targetKm and/or targetRuns; either may be null)
+     * and optionally their time zone. 400 on an unknown zone ID.
+     */
     @PutMapping("/me/goal")
     public ResponseEntity<WeeklyGoalDto> setGoal(
             @RequestBody WeeklyGoalDto goal,
@@ -56,6 +145,10 @@ public class MetricsController {
         if (principal == null || principal.getUser() == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        return ResponseEntity.ok(service.setGoal(principal.getFirebaseUid(), goal));
+        try {
+            return ResponseEntity.ok(service.setGoal(principal.getFirebaseUid(), goal));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 }
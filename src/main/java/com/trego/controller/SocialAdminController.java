@@ -0,0 +1,39 @@
+package com.trego.controller;
+
+import com.trego.service.SocialService;
+import com.trego.service.TimelineService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Admin maintenance of the social collections. Lives under /admin/**, which
+ * SecurityConfig restricts to ROLE_ADMIN.
+ */
+@RestController
+@RequestMapping("/admin/social")
+public class SocialAdminController {
+
+    @Autowired
+    private SocialService service;
+
+    @Autowired
+    private TimelineService timelines;
+
+    /** Rewrite legacy createdAt/updatedAt values as Timestamps; returns how many documents changed. */
+    @PostMapping("/migrate-timestamps")
+    public ResponseEntity<Map<String, Object>> migrateTimestamps() {
+        return ResponseEntity.ok(service.migrateLegacyTimestamps());
+    }
+
+    /**
+     * Copy each user's friends' recent friends posts into their timeline; run
+     * before turning social.timeline.enabled on. Returns what was written.
+     */
+    @PostMapping("/backfill-timelines")
+    public ResponseEntity<Map<String, Object>> backfillTimelines() {
+        return ResponseEntity.ok(timelines.backfillAll());
+    }
+}
@@ -1,6 +1,7 @@
 package com.trego.controller;
 
 import com.trego.security.FirebaseUserPrincipal;
+import com.trego.service.PostView;
 import com.trego.service.SocialService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,17 +32,32 @@ public class SocialController {
     @Autowired
     private SocialService service;
 
+    /**
+     * A page of the viewer's feed. Pass the previous response's {@code nextCursor}
+     * as {@code cursor} for the next page; {@code nextCursor} is null on the last
+     * one. {@code offset} is the deprecated pre-cursor mode, used only when given
+     * without a cursor; its responses carry a {@code Deprecation} header.
+     */
     @GetMapping("/posts/feed")
+    @SuppressWarnings("deprecation")
     public ResponseEntity<Map<String, Object>> feed(
             @RequestParam(defaultValue = "20") int limit,
-            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer offset,
             @AuthenticationPrincipal FirebaseUserPrincipal principal) {
         if (unauthenticated(principal)) return unauthorized();
         try {
-            List<Map<String, Object>> posts = service.getFeed(principal.getFirebaseUid(), limit, offset);
             Map<String, Object> body = ok();
-            body.put("posts", posts);
+            if (offset != null && cursor == null) {
+                body.put("posts", service.getFeed(principal.getFirebaseUid(), limit, offset));
+                return ResponseEntity.ok().header("Deprecation", "true").body(body);
+            }
+            SocialService.FeedPage page = service.getFeedPage(principal.getFirebaseUid(), cursor, limit);
+            body.put("posts", page.getPosts());
+            body.put("nextCursor", page.getNextCursor());
             return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return badRequest("Invalid cursor");
         } catch (Exception e) {
             return fail("Failed to load feed", e);
         }
@@ -57,7 +73,7 @@ public class SocialController {
             if (content == null || content.trim().isEmpty()) {
                 return badRequest("Content is required");
             }
-            Map<String, Object> post = service.createPost(
+            PostView post = service.createPost(
                     principal.getFirebaseUid(),
                     authorName(principal),
                     null,
@@ -109,16 +125,26 @@ public class SocialController {
         }
     }
 
+    /**
+     * A page of a post's comments, oldest first. Pass the previous response's
+     * {@code nextCursor} as {@code cursor} for the next page; {@code nextCursor}
+     * is null on the last one.
+     */
     @GetMapping("/posts/{id}/comments")
     public ResponseEntity<Map<String, Object>> comments(
             @PathVariable String id,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor,
             @AuthenticationPrincipal FirebaseUserPrincipal principal) {
         if (unauthenticated(principal)) return unauthorized();
         try {
-            List<Map<String, Object>> comments = service.getComments(id);
+            SocialService.CommentPage page = service.getComments(id, cursor, limit);
             Map<String, Object> body = ok();
-            body.put("comments", comments);
+            body.put("comments", page.getComments());
+            body.put("nextCursor", page.getNextCursor());
             return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return badRequest("Invalid cursor");
         } catch (Exception e) {
             return fail("Failed to load comments", e);
         }
@@ -150,7 +176,7 @@ public class SocialController {
             if (content == null || content.trim().isEmpty()) {
                 return badRequest("Content is required");
             }
-            Map<String, Object> post = service.updatePost(principal.getFirebaseUid(), id, content);
+            PostView post = service.updatePost(principal.getFirebaseUid(), id, content);
             Map<String, Object> body = ok();
             body.put("post", post);
             return ResponseEntity.ok(body);
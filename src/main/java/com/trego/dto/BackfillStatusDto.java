@@ -0,0 +1,49 @@
+package com.trego.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/** Progress report for the bulk metrics backfill (GET /admin/metrics/backfill). */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BackfillStatusDto {
+    private String state;          // idle | running | stopping | complete | failed
+    private int schemaVersion;
+    private Instant startedAt;
+    private String lastUid;
+    private long usersDone;
+    private long runsDone;
+    private long runsTotal;
+    private long failures;
+    private double usersPerSec;
+    private double runsPerSec;
+    private Long etaSeconds;       // null until a rate is known
+    private String error;
+
+    public BackfillStatusDto() {}
+
+    public String getState() { return state; }
+    public void setState(String v) { this.state = v; }
+    public int getSchemaVersion() { return schemaVersion; }
+    public void setSchemaVersion(int v) { this.schemaVersion = v; }
+    public Instant getStartedAt() { return startedAt; }
+    public void setStartedAt(Instant v) { this.startedAt = v; }
+    public String getLastUid() { return lastUid; }
+    public void setLastUid(String v) { this.lastUid = v; }
+    public long getUsersDone() { return usersDone; }
+    public void setUsersDone(long v) { this.usersDone = v; }
+    public long getRunsDone() { return runsDone; }
+    public void setRunsDone(long v) { this.runsDone = v; }
+    public long getRunsTotal() { return runsTotal; }
+    public void setRunsTotal(long v) { this.runsTotal = v; }
+    public long getFailures() { return failures; }
+    public void setFailures(long v) { this.failures = v; }
+    public double getUsersPerSec() { return usersPerSec; }
+    public void setUsersPerSec(double v) { this.usersPerSec = v; }
+    public double getRunsPerSec() { return runsPerSec; }
+    public void setRunsPerSec(double v) { this.runsPerSec = v; }
+    public Long getEtaSeconds() { return etaSeconds; }
+    public void setEtaSeconds(Long v) { this.etaSeconds = v; }
+    public String getError() { return error; }
+    public void setError(String v) { this.error = v; }
+}
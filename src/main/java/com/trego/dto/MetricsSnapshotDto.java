@@ -9,6 +9,8 @@ public class MetricsSnapshotDto {
     private PrsDto prs;
     private LifetimeTotalsDto totals;
     private List<WeeklyMetricsDto> history;
+    /** True when served while a refresh is pending; absent (null) on a fresh snapshot. Not persisted. */
+    private Boolean stale;
 
     public MetricsSnapshotDto() {}
 
@@ -22,4 +24,6 @@ public class MetricsSnapshotDto {
     public void setTotals(LifetimeTotalsDto v) { this.totals = v; }
     public List<WeeklyMetricsDto> getHistory() { return history; }
     public void setHistory(List<WeeklyMetricsDto> v) { this.history = v; }
+    public Boolean getStale() { return stale; }
+    public void setStale(Boolean v) { this.stale = v; }
 }
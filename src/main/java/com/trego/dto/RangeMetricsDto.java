@@ -0,0 +1,34 @@
+package com.trego.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Totals over an inclusive range of calendar days in the user's time zone,
+ * served from the daily aggregates (GET /metrics/me/range, /metrics/me/monthly).
+ */
+public class RangeMetricsDto {
+    private LocalDate from;
+    private LocalDate to;
+    private double totalKm;
+    private int totalRuns;
+    private long totalTimeMs;
+    private int activeDays;
+    private long avgPaceSecPerKm;
+
+    public RangeMetricsDto() {}
+
+    public LocalDate getFrom() { return from; }
+    public void setFrom(LocalDate v) { this.from = v; }
+    public LocalDate getTo() { return to; }
+    public void setTo(LocalDate v) { this.to = v; }
+    public double getTotalKm() { return totalKm; }
+    public void setTotalKm(double v) { this.totalKm = v; }
+    public int getTotalRuns() { return totalRuns; }
+    public void setTotalRuns(int v) { this.totalRuns = v; }
+    public long getTotalTimeMs() { return totalTimeMs; }
+    public void setTotalTimeMs(long v) { this.totalTimeMs = v; }
+    public int getActiveDays() { return activeDays; }
+    public void setActiveDays(int v) { this.activeDays = v; }
+    public long getAvgPaceSecPerKm() { return avgPaceSecPerKm; }
+    public void setAvgPaceSecPerKm(long v) { this.avgPaceSecPerKm = v; }
+}
@@ -6,12 +6,17 @@ public class RecomputeResultDto {
     private Instant recomputedAt;
     private int runCount;
     private long durationMs;
+    private int docsWritten;
 
     public RecomputeResultDto() {}
     public RecomputeResultDto(Instant recomputedAt, int runCount, long durationMs) {
+        this(recomputedAt, runCount, durationMs, 0);
+    }
+    public RecomputeResultDto(Instant recomputedAt, int runCount, long durationMs, int docsWritten) {
         this.recomputedAt = recomputedAt;
         this.runCount = runCount;
         this.durationMs = durationMs;
+        this.docsWritten = docsWritten;
     }
 
     public Instant getRecomputedAt() { return recomputedAt; }
@@ -20,4 +25,6 @@ public class RecomputeResultDto {
     public void setRunCount(int v) { this.runCount = v; }
     public long getDurationMs() { return durationMs; }
     public void setDurationMs(long v) { this.durationMs = v; }
+    public int getDocsWritten() { return docsWritten; }
+    public void setDocsWritten(int v) { this.docsWritten = v; }
 }
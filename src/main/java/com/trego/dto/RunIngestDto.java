@@ -0,0 +1,32 @@
+package com.trego.dto;
+
+import java.time.Instant;
+
+/**
+ * One run in a POST /metrics/me/runs batch. The client-generated runId becomes
+ * the doc ID, so re-sending a run after a failed sync overwrites rather than
+ * duplicates it.
+ */
+public class RunIngestDto {
+    private String runId;
+    private Double distanceKm;
+    private Long durationMs;
+    private Instant startTime;
+
+    public RunIngestDto() {}
+    public RunIngestDto(String runId, Double distanceKm, Long durationMs, Instant startTime) {
+        this.runId = runId;
+        this.distanceKm = distanceKm;
+        this.durationMs = durationMs;
+        this.startTime = startTime;
+    }
+
+    public String getRunId() { return runId; }
+    public void setRunId(String v) { this.runId = v; }
+    public Double getDistanceKm() { return distanceKm; }
+    public void setDistanceKm(Double v) { this.distanceKm = v; }
+    public Long getDurationMs() { return durationMs; }
+    public void setDurationMs(Long v) { this.durationMs = v; }
+    public Instant getStartTime() { return startTime; }
+    public void setStartTime(Instant v) { this.startTime = v; }
+}
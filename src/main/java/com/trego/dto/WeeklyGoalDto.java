@@ -7,19 +7,29 @@ import java.time.Instant;
 /**
  * A user's weekly training goal. Both targets are optional (nullable) — a user
  * may set a distance target, a run-count target, both, or neither.
+ *
+ * <p>Also carries the user's IANA time zone (e.g. "America/Los_Angeles"), which
+ * decides the calendar days and weeks metrics are bucketed into. Null means UTC
+ * when stored, and "keep the current zone" when sent to PUT /metrics/me/goal.
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class WeeklyGoalDto {
     private Double targetKm;
     private Integer targetRuns;
     private Instant updatedAt;
+    private String timeZone;
 
     public WeeklyGoalDto() {}
 
     public WeeklyGoalDto(Double targetKm, Integer targetRuns, Instant updatedAt) {
+        this(targetKm, targetRuns, updatedAt, null);
+    }
+
+    public WeeklyGoalDto(Double targetKm, Integer targetRuns, Instant updatedAt, String timeZone) {
         this.targetKm = targetKm;
         this.targetRuns = targetRuns;
         this.updatedAt = updatedAt;
+        this.timeZone = timeZone;
     }
 
     public Double getTargetKm() { return targetKm; }
@@ -28,4 +38,6 @@ public class WeeklyGoalDto {
     public void setTargetRuns(Integer v) { this.targetRuns = v; }
     public Instant getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(Instant v) { this.updatedAt = v; }
+    public String getTimeZone() { return timeZone; }
+    public void setTimeZone(String v) { this.timeZone = v; }
 }
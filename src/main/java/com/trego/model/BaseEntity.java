@@ -71,6 +71,12 @@ public abstract class BaseEntity {
         this.updatedAt = updatedAt;
     }
     
+    /** Inverse of {@link #timestampToLocalDateTime}, for fields Firestore must order by. */
+    public static Timestamp localDateTimeToTimestamp(LocalDateTime t) {
+        if (t == null) return null;
+        return Timestamp.of(java.util.Date.from(t.atZone(ZoneId.systemDefault()).toInstant()));
+    }
+
     protected static LocalDateTime timestampToLocalDateTime(Object timestamp) {
         if (timestamp instanceof Timestamp) {
             return ((Timestamp) timestamp).toDate().toInstant()
@@ -82,7 +88,35 @@ public abstract class BaseEntity {
                     .toLocalDateTime();
         } else if (timestamp instanceof LocalDateTime) {
             return (LocalDateTime) timestamp;
+        } else if (isLegacyDateTime(timestamp)) {
+            return legacyMapToLocalDateTime((Map<?, ?>) timestamp);
         }
         return LocalDateTime.now();
     }
+
+    /**
+     * True for a LocalDateTime written by Firestore's bean mapper, as older
+     * documents stored createdAt and updatedAt: a map of its getters (year,
+     * monthValue, dayOfMonth, hour, ...). Firestore orders maps after every
+     * Timestamp, so such documents drop out of queries ordered by the field.
+     */
+    public static boolean isLegacyDateTime(Object value) {
+        return value instanceof Map<?, ?> m && m.get("year") instanceof Number
+                && m.get("monthValue") instanceof Number && m.get("dayOfMonth") instanceof Number;
+    }
+
+    /** The Timestamp a value accepted by {@link #isLegacyDateTime} is now written as. */
+    public static Timestamp legacyDateTimeToTimestamp(Object value) {
+        return localDateTimeToTimestamp(legacyMapToLocalDateTime((Map<?, ?>) value));
+    }
+
+    /** Reads a map accepted by {@link #isLegacyDateTime}. */
+    private static LocalDateTime legacyMapToLocalDateTime(Map<?, ?> m) {
+        return LocalDateTime.of(intField(m, "year"), intField(m, "monthValue"), intField(m, "dayOfMonth"),
+                intField(m, "hour"), intField(m, "minute"), intField(m, "second"), intField(m, "nano"));
+    }
+
+    private static int intField(Map<?, ?> m, String key) {
+        return m.get(key) instanceof Number n ? n.intValue() : 0;
+    }
 }
\ No newline at end of file
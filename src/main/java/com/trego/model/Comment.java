@@ -2,7 +2,11 @@ package com.trego.model;
 
 import java.util.Map;
 
-/** A comment on a {@link SocialPost}. Stored in the "social_comments" collection. */
+/**
+ * A comment on a {@link SocialPost}. Stored in the "social_comments" collection.
+ * Comments from before createdAt was a Timestamp are left out of comment pages
+ * until {@code POST /admin/social/migrate-timestamps} rewrites them.
+ */
 public class Comment extends BaseEntity {
 
     private String postId;
@@ -18,6 +22,9 @@ public class Comment extends BaseEntity {
     @Override
     public Map<String, Object> toFirestoreMap() {
         Map<String, Object> map = super.toFirestoreMap();
+        // As Timestamps, so a post's comments can be ordered and paged by createdAt.
+        map.put("createdAt", localDateTimeToTimestamp(createdAt));
+        map.put("updatedAt", localDateTimeToTimestamp(updatedAt));
         map.put("postId", postId);
         map.put("authorId", authorId);
         map.put("authorName", authorName);
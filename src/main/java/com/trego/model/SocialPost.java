@@ -7,9 +7,17 @@ import java.util.Map;
 /**
  * A social feed post. Stored in the top-level "social_posts" collection.
  *
- * <p>{@code likedBy} holds the firebase UIDs that liked the post — likesCount is
- * derived from its size and per-viewer {@code userLiked} from membership, so the
- * like state stays consistent without a separate counter to keep in sync.
+ * <p>Likes live in the post's "likes" subcollection, one document per liker
+ * keyed by UID. {@code likesCount} and {@code commentsCount} are only changed
+ * by {@code FieldValue.increment} (see PostCounterBuffer), so they are read
+ * here but never written by {@link #toFirestoreMap}: saving an edited post
+ * cannot undo concurrent likes or comments. Posts from before the subcollection carry a
+ * {@code likedBy} array and no {@code likesCount}; until their first like or
+ * unlike moves those likers into the subcollection, the array is read as the
+ * count and kept in {@link #getLegacyLikedBy}.
+ *
+ * <p>{@code deleted} is likewise only set by the repository's tombstone write,
+ * between a delete request and the background purge of the post.
  */
 public class SocialPost extends BaseEntity {
 
@@ -20,8 +28,10 @@ public class SocialPost extends BaseEntity {
     private String type;        // general | workout | nutrition | achievement
     private String visibility;  // public | friends | private
     private List<String> attachments = new ArrayList<>();
-    private List<String> likedBy = new ArrayList<>();
+    private int likesCount = 0;
+    private List<String> legacyLikedBy = new ArrayList<>();
     private int commentsCount = 0;
+    private boolean deleted = false;
 
     public SocialPost() {
         super();
@@ -31,6 +41,9 @@ public class SocialPost extends BaseEntity {
     @SuppressWarnings("unchecked")
     public Map<String, Object> toFirestoreMap() {
         Map<String, Object> map = super.toFirestoreMap();
+        // As Timestamps, so the feed queries can order and page by createdAt.
+        map.put("createdAt", localDateTimeToTimestamp(createdAt));
+        map.put("updatedAt", localDateTimeToTimestamp(updatedAt));
         map.put("authorId", authorId);
         map.put("authorName", authorName);
         map.put("authorPhotoUrl", authorPhotoUrl);
@@ -38,8 +51,6 @@ public class SocialPost extends BaseEntity {
         map.put("type", type);
         map.put("visibility", visibility);
         map.put("attachments", attachments);
-        map.put("likedBy", likedBy);
-        map.put("commentsCount", commentsCount);
         return map;
     }
 
@@ -57,10 +68,17 @@ public class SocialPost extends BaseEntity {
         p.visibility = (String) map.get("visibility");
         Object att = map.get("attachments");
         if (att instanceof List) p.attachments = new ArrayList<>((List<String>) att);
-        Object liked = map.get("likedBy");
-        if (liked instanceof List) p.likedBy = new ArrayList<>((List<String>) liked);
+        Object lc = map.get("likesCount");
+        Object legacyLikedBy = map.get("likedBy");
+        if (lc instanceof Number) {
+            p.likesCount = ((Number) lc).intValue();
+        } else if (legacyLikedBy instanceof List) {
+            p.legacyLikedBy = new ArrayList<>((List<String>) legacyLikedBy);
+            p.likesCount = p.legacyLikedBy.size();
+        }
         Object cc = map.get("commentsCount");
         if (cc instanceof Number) p.commentsCount = ((Number) cc).intValue();
+        p.deleted = Boolean.TRUE.equals(map.get("deleted"));
         return p;
     }
 
@@ -87,11 +105,18 @@ public class SocialPost extends BaseEntity {
         this.attachments = attachments != null ? attachments : new ArrayList<>();
     }
 
-    public List<String> getLikedBy() { return likedBy; }
-    public void setLikedBy(List<String> likedBy) {
-        this.likedBy = likedBy != null ? likedBy : new ArrayList<>();
+    public int getLikesCount() { return likesCount; }
+    public void setLikesCount(int likesCount) { this.likesCount = likesCount; }
+
+    /** Likers still held in the pre-subcollection {@code likedBy} array; empty once migrated. */
+    public List<String> getLegacyLikedBy() { return legacyLikedBy; }
+    public void setLegacyLikedBy(List<String> legacyLikedBy) {
+        this.legacyLikedBy = legacyLikedBy != null ? legacyLikedBy : new ArrayList<>();
     }
 
     public int getCommentsCount() { return commentsCount; }
     public void setCommentsCount(int commentsCount) { this.commentsCount = commentsCount; }
+
+    public boolean isDeleted() { return deleted; }
+    public void setDeleted(boolean deleted) { this.deleted = deleted; }
 }
@@ -0,0 +1,33 @@
+package com.trego.repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Read-only projection of users as they appear on posts, comments and friend
+ * cards: display name, photo and a version that changes whenever the profile
+ * does. Served through the shared {@code AuthorCache}.
+ *
+ * Production impl: {@link FirestoreAuthorRepository}.
+ * Test impl: InMemoryAuthorRepository (test sources).
+ */
+public interface AuthorRepository {
+
+    /** Views of those [uids] that have a user document, keyed by UID. One batched read. */
+    Map<String, AuthorView> findAuthors(Collection<String> uids);
+
+    /** UID + display name + optional photo URL, plus the profile's version (its last update, epoch millis). */
+    final class AuthorView {
+        public final String uid;
+        public final String name;
+        public final String photoUrl;
+        public final long version;
+
+        public AuthorView(String uid, String name, String photoUrl, long version) {
+            this.uid = uid;
+            this.name = name;
+            this.photoUrl = photoUrl;
+            this.version = version;
+        }
+    }
+}
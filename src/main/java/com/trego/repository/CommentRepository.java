@@ -1,11 +1,40 @@
 package com.trego.repository;
 
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.WriteBatch;
 import com.trego.model.Comment;
 import org.springframework.stereotype.Repository;
 
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
 @Repository
 public class CommentRepository extends FirestoreRepository<Comment> {
     public CommentRepository() {
         super("social_comments", Comment::fromFirestoreMap);
     }
+
+    /**
+     * Creates [comment] and adds one to [post]'s commentsCount in the same
+     * WriteBatch, so the count never disagrees with the comments. Fails, writing
+     * neither, if the post does not exist.
+     */
+    public Comment insertCounting(Comment comment, DocumentReference post) throws ExecutionException, InterruptedException {
+        if (comment.getId() == null) {
+            comment.setId(UUID.randomUUID().toString());
+        }
+        comment.updateTimestamp();
+        WriteBatch batch = firestore.batch();
+        batch.create(reference(comment.getId()), comment.toFirestoreMap());
+        batch.update(post, "commentsCount", FieldValue.increment(1));
+        batch.commit().get();
+        return comment;
+    }
+
+    /** Number of comments on [postId]. One count() aggregation. */
+    public int countByPost(String postId) throws ExecutionException, InterruptedException {
+        return (int) firestore.collection(collectionName).whereEqualTo("postId", postId)
+                .count().get().get().getCount();
+    }
 }
@@ -0,0 +1,60 @@
+package com.trego.repository;
+
+import com.trego.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Firestore-backed {@link AuthorRepository} over the "users" collection. Users
+ * have no photo field yet, so views carry a null photo and callers keep the one
+ * captured when the post or comment was written.
+ */
+@Repository
+public class FirestoreAuthorRepository implements AuthorRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreAuthorRepository.class);
+
+    private final UserRepository users;
+
+    @Autowired
+    public FirestoreAuthorRepository(UserRepository users) {
+        this.users = users;
+    }
+
+    @Override
+    public Map<String, AuthorView> findAuthors(Collection<String> uids) {
+        Map<String, AuthorView> out = new HashMap<>();
+        if (uids.isEmpty()) return out;
+        try {
+            for (User u : users.findAllById(new ArrayList<>(uids))) {
+                out.put(u.getId(), toView(u));
+            }
+            return out;
+        } catch (ExecutionException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Author repository findAuthors failed: {}", e.getMessage());
+            throw new RuntimeException("Author lookup failed", e);
+        }
+    }
+
+    /** Full name when set, else the email, as the social views have always shown. */
+    private static AuthorView toView(User u) {
+        String name = u.getFullName();
+        if (name == null || name.trim().isEmpty() || name.trim().equals(",")) {
+            name = u.getEmail();
+        }
+        long version = u.getUpdatedAt() != null ? u.getUpdatedAt().toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+        return new AuthorView(u.getId(), name != null ? name.trim() : null, null, version);
+    }
+}
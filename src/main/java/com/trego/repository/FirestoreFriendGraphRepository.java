@@ -119,6 +119,15 @@ public class FirestoreFriendGraphRepository implements FriendGraphRepository {
         }
     }
 
+    @Override
+    public List<Friendship> findFriendshipsAfter(String afterPairKey, int limit) {
+        try {
+            return friendships.findPage(afterPairKey, limit);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("findFriendshipsAfter", e);
+        }
+    }
+
     @Override
     public void deleteFriendship(String id) {
         try {
@@ -142,21 +151,6 @@ public class FirestoreFriendGraphRepository implements FriendGraphRepository {
         }
     }
 
-    @Override
-    public Optional<UserView> getUserView(String uid) {
-        try {
-            return users.findById(uid).map(u -> {
-                String name = u.getFullName();
-                if (name == null || name.trim().isEmpty() || name.trim().equals(",")) {
-                    name = u.getEmail();
-                }
-                return new UserView(uid, name != null ? name.trim() : null, null);
-            });
-        } catch (ExecutionException | InterruptedException e) {
-            throw rethrow("getUserView", e);
-        }
-    }
-
     private RuntimeException rethrow(String op, Exception e) {
         if (e instanceof InterruptedException) {
             Thread.currentThread().interrupt();
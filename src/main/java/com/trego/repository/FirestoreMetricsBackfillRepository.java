@@ -0,0 +1,128 @@
+package com.trego.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Firestore-backed {@link MetricsBackfillRepository}. Users are enumerated from
+ * the {@code runs} collection group, ordered by document path, so a user's runs
+ * are contiguous. Each query fetches a page of run refs (IDs only) and keeps one
+ * entry per parent user; the next query starts past the last parent's runs, at
+ * .../runs/{@value #PAST_LAST_RUN}, so users with many runs are not paged
+ * through. {@code runs} collections that are not users/{uid}/runs are skipped.
+ * Checkpoints live in metrics_backfill/schema-{version}.
+ */
+@Repository
+public class FirestoreMetricsBackfillRepository implements MetricsBackfillRepository {
+
+    /** Sorts after every real run ID, so a cursor here skips the rest of a user's runs. */
+    private static final String PAST_LAST_RUN = "\uf8ff";
+
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreMetricsBackfillRepository.class);
+
+    @Autowired
+    private Firestore firestore;
+
+    @Override
+    public List<String> listUserIds(String afterUid, int limit) {
+        try {
+            List<String> out = new ArrayList<>(limit);
+            DocumentReference cursor = afterUid == null ? null
+                    : firestore.collection("users").document(afterUid).collection("runs").document(PAST_LAST_RUN);
+            while (out.size() < limit) {
+                // Every run ref can be a new user, so never fetch more than the users still wanted.
+                int wanted = limit - out.size();
+                Query q = firestore.collectionGroup("runs")
+                        .orderBy(FieldPath.documentId())
+                        .select(FieldPath.documentId())
+                        .limit(wanted);
+                if (cursor != null) q = q.startAfter(cursor);
+                List<QueryDocumentSnapshot> docs = q.get().get().getDocuments();
+                for (QueryDocumentSnapshot d : docs) {
+                    String uid = ownerOf(d.getReference());
+                    if (uid == null) {
+                        logger.warn("Skipping runs collection outside users/: {}", d.getReference().getParent().getPath());
+                    } else if (out.isEmpty() || !out.get(out.size() - 1).equals(uid)) {
+                        out.add(uid);
+                    }
+                }
+                if (docs.size() < wanted) break;
+                cursor = docs.get(docs.size() - 1).getReference().getParent().document(PAST_LAST_RUN);
+            }
+            return out;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("listUserIds failed after " + afterUid, e);
+        }
+    }
+
+    /** The uid of a run at users/{uid}/runs/{runId}; null for a run anywhere else. */
+    private static String ownerOf(DocumentReference run) {
+        DocumentReference owner = run.getParent().getParent();
+        if (owner == null) return null;
+        CollectionReference users = owner.getParent();
+        if (users.getParent() != null || !"users".equals(users.getId())) return null;
+        return owner.getId();
+    }
+
+    @Override
+    public long countRuns() {
+        try {
+            return firestore.collectionGroup("runs").count().get().get().getCount();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("countRuns failed", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<Checkpoint> readCheckpoint(int schemaVersion) {
+        try {
+            DocumentSnapshot d = checkpointDoc(schemaVersion).get().get();
+            if (!d.exists()) return Optional.empty();
+            Timestamp updatedAt = (Timestamp) d.get("updatedAt");
+            return Optional.of(new Checkpoint(
+                    schemaVersion,
+                    (String) d.get("lastUid"),
+                    ((Number) d.get("usersDone")).longValue(),
+                    ((Number) d.get("runsDone")).longValue(),
+                    ((Number) d.get("failures")).longValue(),
+                    Boolean.TRUE.equals(d.get("complete")),
+                    updatedAt != null ? updatedAt.toSqlTimestamp().toInstant() : null,
+                    d.get("failedUids") != null ? (List<String>) d.get("failedUids") : List.of()));
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("readCheckpoint failed for schema " + schemaVersion, e);
+        }
+    }
+
+    @Override
+    public void writeCheckpoint(Checkpoint c) {
+        try {
+            Map<String, Object> m = new HashMap<>();
+            m.put("schemaVersion", c.schemaVersion);
+            m.put("lastUid", c.lastUid);
+            m.put("usersDone", c.usersDone);
+            m.put("runsDone", c.runsDone);
+            m.put("failures", c.failures);
+            m.put("complete", c.complete);
+            m.put("failedUids", c.failedUids);
+            m.put("updatedAt", c.updatedAt == null ? null
+                    : Timestamp.ofTimeSecondsAndNanos(c.updatedAt.getEpochSecond(), c.updatedAt.getNano()));
+            checkpointDoc(c.schemaVersion).set(m).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("writeCheckpoint failed for schema " + c.schemaVersion, e);
+        }
+    }
+
+    private DocumentReference checkpointDoc(int schemaVersion) {
+        return firestore.collection("metrics_backfill").document("schema-" + schemaVersion);
+    }
+}
@@ -1,14 +1,18 @@
 // trego_backend/src/main/java/com/trego/repository/FirestoreMetricsRepository.java
 package com.trego.repository;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.trego.dto.*;
 import com.trego.model.RunRecord;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -21,39 +25,110 @@ public class FirestoreMetricsRepository implements MetricsRepository {
     @Autowired
     private Firestore firestore;
 
+    @Value("${metrics.runs-page-size:500}")
+    private int runsPageSize;
+
+    @Override
+    public Iterator<RunRecord> streamRuns(String uid, Instant afterStartTime, String afterRunId) {
+        // Firestore breaks startTime ties by document ID, so (startTime, runId)
+        // is a total order and a valid cursor.
+        Query base = timedRuns(uid)
+                .orderBy("startTime", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)
+                .limit(runsPageSize);
+        if (afterStartTime != null) {
+            base = base.startAfter(instantToTs(afterStartTime), afterRunId);
+        }
+        return new RunPageIterator(uid, base);
+    }
+
+    @Override
+    public int countRuns(String uid) {
+        try {
+            AggregateQuerySnapshot agg = timedRuns(uid).count().get().get();
+            return (int) agg.getCount();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("countRuns failed for " + uid, e);
+        }
+    }
+
+    /**
+     * The user's runs whose startTime is a timestamp. A range filter only matches
+     * values of its own type, so runs with the field missing, null or of another
+     * type are left out of both the stream and the count alike.
+     */
+    private Query timedRuns(String uid) {
+        return firestore
+                .collection("users").document(uid)
+                .collection("runs")
+                .whereGreaterThanOrEqualTo("startTime", Timestamp.MIN_VALUE);
+    }
+
     @Override
-    public List<RunRecord> readRuns(String uid) {
+    public long readRunVersion(String uid) {
         try {
-            QuerySnapshot snap = firestore
+            DocumentSnapshot d = firestore
                     .collection("users").document(uid)
-                    .collection("runs")
-                    .orderBy("startTime", Query.Direction.ASCENDING)
+                    .collection("metrics").document("runVersion")
                     .get().get();
-            List<RunRecord> out = new ArrayList<>(snap.size());
-            for (DocumentSnapshot d : snap.getDocuments()) {
-                out.add(new RunRecord(
-                        d.getId(),
-                        ((Number) d.get("distance")).doubleValue(),
-                        ((Number) d.get("duration")).longValue(),
-                        ((Timestamp) d.get("startTime")).toSqlTimestamp().toInstant()
-                ));
-            }
-            return out;
+            if (!d.exists() || d.get("version") == null) return -1L;
+            return ((Number) d.get("version")).longValue();
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("readRuns failed for " + uid, e);
+            throw new RuntimeException("readRunVersion failed for " + uid, e);
         }
     }
 
     @Override
-    public int countRuns(String uid) {
+    public RunWriteResult writeRuns(String uid, List<RunRecord> runs) {
+        DocumentReference user = firestore.collection("users").document(uid);
+        DocumentReference versionRef = user.collection("metrics").document("runVersion");
+        DocumentReference[] runRefs = new DocumentReference[runs.size()];
+        for (int i = 0; i < runs.size(); i++) {
+            runRefs[i] = user.collection("runs").document(runs.get(i).getRunId());
+        }
         try {
-            AggregateQuerySnapshot agg = firestore
-                    .collection("users").document(uid)
-                    .collection("runs")
-                    .count().get().get();
-            return (int) agg.getCount();
+            return firestore.runTransaction(tx -> {
+                Set<String> existing = new HashSet<>();
+                for (DocumentSnapshot d : tx.getAll(runRefs).get()) {
+                    if (d.exists()) existing.add(d.getId());
+                }
+                DocumentSnapshot v = tx.get(versionRef).get();
+                long version = (v.exists() && v.get("version") != null
+                        ? ((Number) v.get("version")).longValue() : 0L) + 1;
+                for (int i = 0; i < runs.size(); i++) {
+                    tx.set(runRefs[i], serializeRun(runs.get(i)), SetOptions.merge());
+                }
+                tx.set(versionRef, Map.of("version", version), SetOptions.merge());
+                return new RunWriteResult(version, existing);
+            }).get();
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("countRuns failed for " + uid, e);
+            throw new RuntimeException("writeRuns failed for " + uid, e);
+        }
+    }
+
+    @Override
+    public RunWriteResult deleteRuns(String uid, List<String> runIds) {
+        DocumentReference user = firestore.collection("users").document(uid);
+        DocumentReference versionRef = user.collection("metrics").document("runVersion");
+        DocumentReference[] runRefs = new DocumentReference[runIds.size()];
+        for (int i = 0; i < runIds.size(); i++) {
+            runRefs[i] = user.collection("runs").document(runIds.get(i));
+        }
+        try {
+            return firestore.runTransaction(tx -> {
+                Set<String> existing = new HashSet<>();
+                for (DocumentSnapshot d : tx.getAll(runRefs).get()) {
+                    if (d.exists()) existing.add(d.getId());
+                }
+                DocumentSnapshot v = tx.get(versionRef).get();
+                long version = (v.exists() && v.get("version") != null
+                        ? ((Number) v.get("version")).longValue() : 0L) + 1;
+                for (DocumentReference ref : runRefs) tx.delete(ref);
+                tx.set(versionRef, Map.of("version", version), SetOptions.merge());
+                return new RunWriteResult(version, existing);
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("deleteRuns failed for " + uid, e);
         }
     }
 
@@ -67,8 +142,10 @@ public class FirestoreMetricsRepository implements MetricsRepository {
             if (!d.exists()) return Optional.empty();
             int schemaVersion = ((Number) d.get("schemaVersion")).intValue();
             int runCountAtCompute = ((Number) d.get("runCountAtCompute")).intValue();
-            MetricsSnapshotDto dto = parseSnapshotDto(d);
-            return Optional.of(new StoredSnapshot(schemaVersion, runCountAtCompute, dto));
+            long runVersionAtCompute = d.get("runVersionAtCompute") != null
+                    ? ((Number) d.get("runVersionAtCompute")).longValue() : -1L;
+            MetricsSnapshotDto dto = parseSnapshotDto(d.getData());
+            return Optional.of(new StoredSnapshot(schemaVersion, runCountAtCompute, runVersionAtCompute, dto));
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("readSnapshot failed for " + uid, e);
         }
@@ -86,7 +163,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
             Integer targetRuns = d.get("targetRuns") != null ? ((Number) d.get("targetRuns")).intValue() : null;
             Instant updatedAt = d.get("updatedAt") != null
                     ? ((Timestamp) d.get("updatedAt")).toSqlTimestamp().toInstant() : null;
-            return Optional.of(new WeeklyGoalDto(targetKm, targetRuns, updatedAt));
+            return Optional.of(new WeeklyGoalDto(targetKm, targetRuns, updatedAt, d.getString("timeZone")));
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("readGoal failed for " + uid, e);
         }
@@ -99,6 +176,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
             m.put("targetKm", goal.getTargetKm());
             m.put("targetRuns", goal.getTargetRuns());
             m.put("updatedAt", instantToTs(goal.getUpdatedAt()));
+            m.put("timeZone", goal.getTimeZone());
             firestore.collection("users").document(uid)
                     .collection("metrics").document("goal")
                     .set(m).get();
@@ -108,13 +186,15 @@ public class FirestoreMetricsRepository implements MetricsRepository {
     }
 
     @Override
-    public void writeSnapshot(String uid, StoredSnapshot snapshot, Map<LocalDate, DailyAggregate> daily) {
+    public void writeSnapshot(String uid, StoredSnapshot snapshot, Map<LocalDate, DailyAggregate> daily,
+                              Set<LocalDate> dailyToDelete) {
         try {
             CollectionReference metrics = firestore.collection("users").document(uid).collection("metrics");
 
-            // Snapshot doc
-            Map<String, Object> snapMap = serializeSnapshot(snapshot);
-            metrics.document("snapshot").set(snapMap).get();
+            // Issue the snapshot write and every daily batch up front, then wait
+            // for all of them; batches touch disjoint docs so order is irrelevant.
+            List<ApiFuture<?>> pending = new ArrayList<>();
+            pending.add(metrics.document("snapshot").set(serializeSnapshot(snapshot)));
 
             // Daily docs — batch in groups of 500 (Firestore limit).
             // NOTE: spec describes daily storage as users/{uid}/metrics/daily/{yyyy-mm-dd},
@@ -126,30 +206,112 @@ public class FirestoreMetricsRepository implements MetricsRepository {
             int counter = 0;
             for (Map.Entry<LocalDate, DailyAggregate> e : daily.entrySet()) {
                 String docId = "daily-" + e.getKey().format(fmt);
-                Map<String, Object> dayMap = new HashMap<>();
+                Map<String, Object> dayMap = serializeDaily(e.getValue());
                 dayMap.put("date", e.getKey().format(fmt));
-                dayMap.put("totalKm", e.getValue().totalKm);
-                dayMap.put("totalRuns", e.getValue().totalRuns);
-                dayMap.put("totalTimeMs", e.getValue().totalTimeMs);
                 batch.set(metrics.document(docId), dayMap);
                 counter++;
                 if (counter % 500 == 0) {
-                    batch.commit().get();
+                    pending.add(batch.commit());
                     batch = firestore.batch();
                 }
             }
-            if (counter % 500 != 0) batch.commit().get();
+            for (LocalDate day : dailyToDelete) {
+                batch.delete(metrics.document("daily-" + day.format(fmt)));
+                counter++;
+                if (counter % 500 == 0) {
+                    pending.add(batch.commit());
+                    batch = firestore.batch();
+                }
+            }
+            if (counter % 500 != 0) pending.add(batch.commit());
+            ApiFutures.allAsList(pending).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("writeSnapshot failed for " + uid, e);
         }
     }
 
+    @Override
+    public Optional<FoldState> readFoldState(String uid) {
+        try {
+            DocumentSnapshot d = firestore
+                    .collection("users").document(uid)
+                    .collection("metrics").document("fold")
+                    .get().get();
+            if (!d.exists()) return Optional.empty();
+            return Optional.of(parseFoldState(d.getData()));
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("readFoldState failed for " + uid, e);
+        }
+    }
+
+    @Override
+    public void writeFoldState(String uid, FoldState state) {
+        try {
+            // Daily and weekly buckets live inline in one doc. At ~100 bytes per
+            // bucket a decade of daily history stays well under the 1 MiB limit.
+            firestore.collection("users").document(uid)
+                    .collection("metrics").document("fold")
+                    .set(serializeFoldState(state)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("writeFoldState failed for " + uid, e);
+        }
+    }
+
+    @Override
+    public boolean tryAcquireRecomputeLease(String uid, String owner, Instant now, Duration ttl) {
+        DocumentReference ref = firestore.collection("users").document(uid)
+                .collection("metrics").document("lease");
+        try {
+            return firestore.runTransaction(tx -> {
+                DocumentSnapshot d = tx.get(ref).get();
+                if (d.exists() && !owner.equals(d.getString("owner"))) {
+                    Timestamp expiresAt = d.getTimestamp("expiresAt");
+                    if (expiresAt != null && expiresAt.toSqlTimestamp().toInstant().isAfter(now)) return false;
+                }
+                Map<String, Object> m = new HashMap<>();
+                m.put("owner", owner);
+                m.put("expiresAt", instantToTs(now.plus(ttl)));
+                tx.set(ref, m);
+                return true;
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("tryAcquireRecomputeLease failed for " + uid, e);
+        }
+    }
+
+    @Override
+    public void releaseRecomputeLease(String uid, String owner) {
+        DocumentReference ref = firestore.collection("users").document(uid)
+                .collection("metrics").document("lease");
+        try {
+            firestore.runTransaction(tx -> {
+                DocumentSnapshot d = tx.get(ref).get();
+                if (d.exists() && owner.equals(d.getString("owner"))) tx.delete(ref);
+                return null;
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("releaseRecomputeLease failed for " + uid, e);
+        }
+    }
+
     // --- (de)serialization helpers ---
+    // Static and free of Firestore I/O; the snapshot and fold-state codecs are
+    // package-private so the JMH benchmarks can drive them directly.
+
+    /** The fields of a run doc that metrics read; others written by clients are left alone. */
+    static Map<String, Object> serializeRun(RunRecord r) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("distance", r.getDistanceKm());
+        m.put("duration", r.getDurationMs());
+        m.put("startTime", instantToTs(r.getStartTime()));
+        return m;
+    }
 
-    private Map<String, Object> serializeSnapshot(StoredSnapshot s) {
+    static Map<String, Object> serializeSnapshot(StoredSnapshot s) {
         Map<String, Object> m = new HashMap<>();
         m.put("schemaVersion", s.schemaVersion);
         m.put("runCountAtCompute", s.runCountAtCompute);
+        m.put("runVersionAtCompute", s.runVersionAtCompute);
         m.put("computedAt", Timestamp.ofTimeSecondsAndNanos(
                 s.dto.getComputedAt().getEpochSecond(), s.dto.getComputedAt().getNano()));
         m.put("thisWeek", serializeWeek(s.dto.getThisWeek()));
@@ -161,7 +323,39 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return m;
     }
 
-    private Map<String, Object> serializeWeek(WeeklyMetricsDto w) {
+    static Map<String, Object> serializeFoldState(FoldState f) {
+        DateTimeFormatter fmt = DateTimeFormatter.ISO_LOCAL_DATE;
+        Map<String, Object> m = new HashMap<>();
+        m.put("schemaVersion", f.schemaVersion);
+        m.put("zoneId", f.zoneId);
+        m.put("runCount", f.runCount);
+        m.put("watermarkStartTime", instantToTs(f.watermarkStartTime));
+        m.put("watermarkRunId", f.watermarkRunId);
+        m.put("prs", serializePrs(f.prs));
+        m.put("totals", serializeTotals(f.totals));
+        Map<String, Object> daily = new HashMap<>();
+        for (Map.Entry<LocalDate, DailyAggregate> e : f.dailyByDate.entrySet()) {
+            daily.put(e.getKey().format(fmt), serializeDaily(e.getValue()));
+        }
+        m.put("daily", daily);
+        Map<String, Object> weekly = new HashMap<>();
+        for (Map.Entry<String, WeeklyMetricsDto> e : f.weeklyByIsoWeek.entrySet()) {
+            weekly.put(e.getKey(), serializeWeek(e.getValue()));
+        }
+        m.put("weekly", weekly);
+        m.put("fullFoldAt", instantToTs(f.fullFoldAt));
+        return m;
+    }
+
+    private static Map<String, Object> serializeDaily(DailyAggregate a) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("totalKm", a.totalKm);
+        m.put("totalRuns", a.totalRuns);
+        m.put("totalTimeMs", a.totalTimeMs);
+        return m;
+    }
+
+    private static Map<String, Object> serializeWeek(WeeklyMetricsDto w) {
         Map<String, Object> m = new HashMap<>();
         m.put("isoYearWeek", w.getIsoYearWeek());
         m.put("weekStart", instantToTs(w.getWeekStart()));
@@ -175,7 +369,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return m;
     }
 
-    private Map<String, Object> serializePrs(PrsDto p) {
+    private static Map<String, Object> serializePrs(PrsDto p) {
         Map<String, Object> m = new HashMap<>();
         m.put("fastest1k", p.getFastest1k() == null ? null : serializePr(p.getFastest1k()));
         m.put("fastest5k", p.getFastest5k() == null ? null : serializePr(p.getFastest5k()));
@@ -185,7 +379,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return m;
     }
 
-    private Map<String, Object> serializePr(PrEntryDto p) {
+    private static Map<String, Object> serializePr(PrEntryDto p) {
         Map<String, Object> m = new HashMap<>();
         m.put("runId", p.getRunId());
         m.put("distanceKm", p.getDistanceKm());
@@ -195,7 +389,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return m;
     }
 
-    private Map<String, Object> serializeTotals(LifetimeTotalsDto t) {
+    private static Map<String, Object> serializeTotals(LifetimeTotalsDto t) {
         Map<String, Object> m = new HashMap<>();
         m.put("totalKm", t.getTotalKm());
         m.put("totalRuns", t.getTotalRuns());
@@ -203,12 +397,12 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return m;
     }
 
-    private Timestamp instantToTs(Instant i) {
+    private static Timestamp instantToTs(Instant i) {
         return i == null ? null : Timestamp.ofTimeSecondsAndNanos(i.getEpochSecond(), i.getNano());
     }
 
     @SuppressWarnings("unchecked")
-    private MetricsSnapshotDto parseSnapshotDto(DocumentSnapshot d) {
+    static MetricsSnapshotDto parseSnapshotDto(Map<String, Object> d) {
         MetricsSnapshotDto dto = new MetricsSnapshotDto();
         dto.setComputedAt(((Timestamp) d.get("computedAt")).toSqlTimestamp().toInstant());
         dto.setThisWeek(parseWeek((Map<String, Object>) d.get("thisWeek")));
@@ -223,7 +417,42 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return dto;
     }
 
-    private WeeklyMetricsDto parseWeek(Map<String, Object> m) {
+    @SuppressWarnings("unchecked")
+    static FoldState parseFoldState(Map<String, Object> d) {
+        int schemaVersion = ((Number) d.get("schemaVersion")).intValue();
+        int runCount = ((Number) d.get("runCount")).intValue();
+        Timestamp wm = (Timestamp) d.get("watermarkStartTime");
+        Instant watermarkStartTime = wm != null ? wm.toSqlTimestamp().toInstant() : null;
+        String watermarkRunId = (String) d.get("watermarkRunId");
+        PrsDto prs = parsePrs((Map<String, Object>) d.get("prs"));
+        LifetimeTotalsDto totals = parseTotals((Map<String, Object>) d.get("totals"));
+        Map<LocalDate, DailyAggregate> daily = new HashMap<>();
+        Map<String, Object> dailyMap = (Map<String, Object>) d.get("daily");
+        if (dailyMap != null) {
+            for (Map.Entry<String, Object> e : dailyMap.entrySet()) {
+                daily.put(LocalDate.parse(e.getKey()), parseDaily((Map<String, Object>) e.getValue()));
+            }
+        }
+        Map<String, WeeklyMetricsDto> weekly = new HashMap<>();
+        Map<String, Object> weeklyMap = (Map<String, Object>) d.get("weekly");
+        if (weeklyMap != null) {
+            for (Map.Entry<String, Object> e : weeklyMap.entrySet()) {
+                weekly.put(e.getKey(), parseWeek((Map<String, Object>) e.getValue()));
+            }
+        }
+        Timestamp full = (Timestamp) d.get("fullFoldAt");
+        return new FoldState(schemaVersion, (String) d.get("zoneId"), runCount, watermarkStartTime, watermarkRunId,
+                prs, totals, daily, weekly, full != null ? full.toSqlTimestamp().toInstant() : null);
+    }
+
+    private static DailyAggregate parseDaily(Map<String, Object> m) {
+        return new DailyAggregate(
+                ((Number) m.get("totalKm")).doubleValue(),
+                ((Number) m.get("totalRuns")).intValue(),
+                ((Number) m.get("totalTimeMs")).longValue());
+    }
+
+    private static WeeklyMetricsDto parseWeek(Map<String, Object> m) {
         WeeklyMetricsDto w = new WeeklyMetricsDto();
         if (m == null) return w;
         w.setIsoYearWeek((String) m.get("isoYearWeek"));
@@ -247,7 +476,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
     }
 
     @SuppressWarnings("unchecked")
-    private PrsDto parsePrs(Map<String, Object> m) {
+    private static PrsDto parsePrs(Map<String, Object> m) {
         PrsDto p = new PrsDto();
         p.setFastest1k(parsePr((Map<String, Object>) m.get("fastest1k")));
         p.setFastest5k(parsePr((Map<String, Object>) m.get("fastest5k")));
@@ -257,7 +486,7 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return p;
     }
 
-    private PrEntryDto parsePr(Map<String, Object> m) {
+    private static PrEntryDto parsePr(Map<String, Object> m) {
         if (m == null) return null;
         PrEntryDto p = new PrEntryDto();
         p.setRunId((String) m.get("runId"));
@@ -268,11 +497,64 @@ public class FirestoreMetricsRepository implements MetricsRepository {
         return p;
     }
 
-    private LifetimeTotalsDto parseTotals(Map<String, Object> m) {
+    private static LifetimeTotalsDto parseTotals(Map<String, Object> m) {
         LifetimeTotalsDto t = new LifetimeTotalsDto();
         t.setTotalKm(((Number) m.get("totalKm")).doubleValue());
         t.setTotalRuns(((Number) m.get("totalRuns")).intValue());
         t.setTotalTimeMs(((Number) m.get("totalTimeMs")).longValue());
         return t;
     }
+
+    private RunRecord toRunRecord(DocumentSnapshot d) {
+        return new RunRecord(
+                d.getId(),
+                ((Number) d.get("distance")).doubleValue(),
+                ((Number) d.get("duration")).longValue(),
+                ((Timestamp) d.get("startTime")).toSqlTimestamp().toInstant()
+        );
+    }
+
+    /**
+     * Lazily walks a run query one page at a time, continuing each page with
+     * startAfter(last document of the previous page).
+     */
+    private final class RunPageIterator implements Iterator<RunRecord> {
+        private final String uid;
+        private final Query base;
+        private List<QueryDocumentSnapshot> page = List.of();
+        private int pos = 0;
+        private DocumentSnapshot last;
+        private boolean exhausted = false;
+
+        RunPageIterator(String uid, Query base) {
+            this.uid = uid;
+            this.base = base;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pos < page.size()) return true;
+            if (exhausted) return false;
+            fetchNextPage();
+            return pos < page.size();
+        }
+
+        @Override
+        public RunRecord next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return toRunRecord(page.get(pos++));
+        }
+
+        private void fetchNextPage() {
+            try {
+                Query q = last == null ? base : base.startAfter(last);
+                page = q.get().get().getDocuments();
+                pos = 0;
+                if (page.size() < runsPageSize) exhausted = true;
+                if (!page.isEmpty()) last = page.get(page.size() - 1);
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("streamRuns failed for " + uid, e);
+            }
+        }
+    }
 }
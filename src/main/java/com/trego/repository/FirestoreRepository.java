@@ -1,6 +1,7 @@
 package com.trego.repository;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.*;
 import com.trego.model.BaseEntity;
 import org.slf4j.Logger;
@@ -15,6 +16,13 @@ import java.util.stream.Collectors;
 public abstract class FirestoreRepository<T extends BaseEntity> {
     
     private static final Logger logger = LoggerFactory.getLogger(FirestoreRepository.class);
+
+    /** Firestore's cap on writes in one WriteBatch. */
+    protected static final int MAX_BATCH_WRITES = 500;
+    /** Documents looked up per round of {@link #deleteByField}. */
+    private static final int DELETE_PAGE = 4 * MAX_BATCH_WRITES;
+    /** Documents read per page of {@link #migrateLegacyTimestamps}; each page is one batch. */
+    private static final int MIGRATE_PAGE = MAX_BATCH_WRITES;
     
     @Autowired
     protected Firestore firestore;
@@ -67,6 +75,18 @@ public abstract class FirestoreRepository<T extends BaseEntity> {
         return Optional.empty();
     }
     
+    /** Batched point reads in one round trip; IDs without a document are skipped. */
+    public List<T> findAllById(List<String> ids) throws ExecutionException, InterruptedException {
+        if (ids.isEmpty()) return new ArrayList<>();
+        DocumentReference[] refs = new DocumentReference[ids.size()];
+        for (int i = 0; i < refs.length; i++) refs[i] = reference(ids.get(i));
+        List<T> out = new ArrayList<>(refs.length);
+        for (DocumentSnapshot d : firestore.getAll(refs).get()) {
+            if (d.exists() && d.getData() != null) out.add(mapper.apply(d.getData()));
+        }
+        return out;
+    }
+
     public List<T> findAll() throws ExecutionException, InterruptedException {
         logger.debug("Finding all entities in collection: {}", collectionName);
         
@@ -177,6 +197,87 @@ public abstract class FirestoreRepository<T extends BaseEntity> {
         logger.debug("Entity deleted successfully at: {}", result.getUpdateTime());
     }
     
+    /**
+     * Deletes every document whose [field] equals [value]. Matching references
+     * are fetched a page at a time (IDs only) and each page is deleted by
+     * {@link #deleteInBatches}. Returns how many were deleted.
+     */
+    public int deleteByField(String field, Object value) throws ExecutionException, InterruptedException {
+        logger.debug("Deleting entities by field: {} = {} from collection: {}", field, value, collectionName);
+
+        Query query = firestore.collection(collectionName)
+                .whereEqualTo(field, value)
+                .select(FieldPath.documentId())
+                .limit(DELETE_PAGE);
+        int total = 0;
+        while (true) {
+            List<DocumentReference> refs = new ArrayList<>();
+            for (QueryDocumentSnapshot doc : query.get().get().getDocuments()) refs.add(doc.getReference());
+            deleteInBatches(refs);
+            total += refs.size();
+            if (refs.size() < DELETE_PAGE) break;
+        }
+
+        logger.debug("Deleted {} entities by field: {} = {}", total, field, value);
+        return total;
+    }
+
+    /** Deletes [refs] in WriteBatches of up to 500, all committed concurrently. */
+    protected void deleteInBatches(List<DocumentReference> refs) throws ExecutionException, InterruptedException {
+        List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+        for (int i = 0; i < refs.size(); i += MAX_BATCH_WRITES) {
+            WriteBatch batch = firestore.batch();
+            for (DocumentReference ref : refs.subList(i, Math.min(refs.size(), i + MAX_BATCH_WRITES))) {
+                batch.delete(ref);
+            }
+            commits.add(batch.commit());
+        }
+        ApiFutures.allAsList(commits).get();
+    }
+
+    /**
+     * One-off rewrite of createdAt and updatedAt from the legacy LocalDateTime
+     * map ({@link BaseEntity#isLegacyDateTime}) to a Timestamp, for collections
+     * whose queries order by createdAt. Walks the collection in document-ID
+     * order reading only those two fields, and updates a page's legacy
+     * documents in one batch. Migrated documents are skipped, so it can be
+     * re-run, and run while new documents are written. Returns how many were
+     * rewritten.
+     */
+    public int migrateLegacyTimestamps() throws ExecutionException, InterruptedException {
+        Query page = firestore.collection(collectionName)
+                .select("createdAt", "updatedAt")
+                .orderBy(FieldPath.documentId())
+                .limit(MIGRATE_PAGE);
+        int total = 0;
+        DocumentSnapshot last = null;
+        while (true) {
+            Query q = last == null ? page : page.startAfter(last);
+            List<QueryDocumentSnapshot> docs = q.get().get().getDocuments();
+            WriteBatch batch = firestore.batch();
+            int rewritten = 0;
+            for (QueryDocumentSnapshot doc : docs) {
+                Map<String, Object> changes = new HashMap<>();
+                for (String field : List.of("createdAt", "updatedAt")) {
+                    Object value = doc.get(field);
+                    if (BaseEntity.isLegacyDateTime(value)) {
+                        changes.put(field, BaseEntity.legacyDateTimeToTimestamp(value));
+                    }
+                }
+                if (changes.isEmpty()) continue;
+                batch.update(doc.getReference(), changes);
+                rewritten++;
+            }
+            if (rewritten > 0) batch.commit().get();
+            total += rewritten;
+            if (docs.size() < MIGRATE_PAGE) break;
+            last = docs.get(docs.size() - 1);
+        }
+
+        logger.info("Rewrote legacy timestamps on {} documents in collection: {}", total, collectionName);
+        return total;
+    }
+
     public boolean existsById(String id) throws ExecutionException, InterruptedException {
         logger.debug("Checking if entity exists: {} in collection: {}", id, collectionName);
         
@@ -202,6 +303,16 @@ public abstract class FirestoreRepository<T extends BaseEntity> {
         return count;
     }
     
+    /** The whole collection, for callers building their own filtered query. */
+    public Query query() {
+        return firestore.collection(collectionName);
+    }
+
+    /** The document for [id], for writes that span collections in one batch. */
+    public DocumentReference reference(String id) {
+        return firestore.collection(collectionName).document(id);
+    }
+
     public List<T> findByQuery(Query query) throws ExecutionException, InterruptedException {
         logger.debug("Executing custom query on collection: {}", collectionName);
         
@@ -1,5 +1,8 @@
 package com.trego.repository;
 
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Query;
+import com.trego.model.BaseEntity;
 import com.trego.model.Comment;
 import com.trego.model.PostReport;
 import com.trego.model.SocialPost;
@@ -9,9 +12,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Repository;
 
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -20,6 +23,12 @@ import java.util.concurrent.ExecutionException;
  * Firestore exceptions into runtime exceptions so the service layer stays clean —
  * mirroring how the metrics repository shields the service from
  * {@code ExecutionException}.
+ *
+ * <p>The composite indexes the feed and comment queries need are in
+ * firestore.indexes.json at the repository root. Posts and comments written
+ * before createdAt became a Timestamp appear in feeds and comment pages only
+ * once {@link #migrateLegacyPostTimestamps} and
+ * {@link #migrateLegacyCommentTimestamps} have run.
  */
 @Repository
 @Primary
@@ -59,21 +68,52 @@ public class FirestoreSocialRepository implements SocialRepository {
     }
 
     @Override
-    public List<SocialPost> findAllPostsNewestFirst() {
+    public List<SocialPost> findPostsByIds(List<String> ids) {
         try {
-            List<SocialPost> all = posts.findAll();
-            all.sort(Comparator.comparing(
-                    SocialPost::getCreatedAt,
-                    Comparator.nullsLast(Comparator.reverseOrder())));
-            return all;
+            return posts.findAllById(ids);
         } catch (ExecutionException | InterruptedException e) {
-            throw rethrow("findAllPostsNewestFirst", e);
+            throw rethrow("findPostsByIds", e);
+        }
+    }
+
+    @Override
+    public List<SocialPost> findPublicPostsNewestFirst(FeedCursor after, int limit) {
+        return findNewestFirst("findPublicPostsNewestFirst",
+                posts.query().whereEqualTo("visibility", "public"), after, limit);
+    }
+
+    @Override
+    public List<SocialPost> findPostsByAuthorNewestFirst(String authorId, FeedCursor after, int limit) {
+        return findNewestFirst("findPostsByAuthorNewestFirst",
+                posts.query().whereEqualTo("authorId", authorId), after, limit);
+    }
+
+    @Override
+    public List<SocialPost> findFriendsPostsNewestFirst(List<String> authorIds, FeedCursor after, int limit) {
+        if (authorIds.isEmpty()) return List.of();
+        return findNewestFirst("findFriendsPostsNewestFirst",
+                posts.query().whereEqualTo("visibility", "friends").whereIn("authorId", authorIds),
+                after, limit);
+    }
+
+    private List<SocialPost> findNewestFirst(String op, Query filtered, FeedCursor after, int limit) {
+        Query q = filtered
+                .orderBy("createdAt", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+        if (after != null) {
+            q = q.startAfter(BaseEntity.localDateTimeToTimestamp(after.createdAt), after.postId);
+        }
+        try {
+            return posts.findByQuery(q.limit(limit));
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow(op, e);
         }
     }
 
     @Override
     public void deletePost(String id) {
         try {
+            posts.deleteLikes(id);
             posts.deleteById(id);
         } catch (ExecutionException | InterruptedException e) {
             throw rethrow("deletePost", e);
@@ -81,22 +121,96 @@ public class FirestoreSocialRepository implements SocialRepository {
     }
 
     @Override
-    public Comment saveComment(Comment comment) {
+    public void tombstonePost(String id) {
+        try {
+            posts.tombstone(id);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("tombstonePost", e);
+        }
+    }
+
+    @Override
+    public List<String> findTombstonedPostIds(int limit) {
+        try {
+            return posts.findTombstonedIds(limit);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("findTombstonedPostIds", e);
+        }
+    }
+
+    @Override
+    public boolean toggleLike(String postId, String uid) {
+        try {
+            return posts.toggleLike(postId, uid);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("toggleLike", e);
+        }
+    }
+
+    @Override
+    public void incrementCounters(String postId, int likesDelta, int commentsDelta) {
+        try {
+            posts.incrementCounters(postId, likesDelta, commentsDelta);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("incrementCounters", e);
+        }
+    }
+
+    @Override
+    public boolean recountCounters(String postId) {
         try {
-            return comment.getId() == null ? comments.save(comment) : comments.update(comment);
+            Optional<SocialPost> stored = posts.findById(postId);
+            if (stored.isEmpty() || stored.get().isDeleted() || !stored.get().getLegacyLikedBy().isEmpty()) {
+                return false;
+            }
+            int likes = posts.countLikes(postId);
+            int commentCount = comments.countByPost(postId);
+            if (likes == stored.get().getLikesCount() && commentCount == stored.get().getCommentsCount()) return false;
+            posts.setCounters(postId, likes, commentCount);
+            return true;
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("recountCounters", e);
+        }
+    }
+
+    @Override
+    public List<String> findPostIdsAfter(String afterId, int limit) {
+        try {
+            return posts.findIdsAfter(afterId, limit);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("findPostIdsAfter", e);
+        }
+    }
+
+    @Override
+    public Set<String> findLikedPostIds(String uid, List<String> postIds) {
+        try {
+            return posts.findLikedPostIds(uid, postIds);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("findLikedPostIds", e);
+        }
+    }
+
+    @Override
+    public Comment addComment(Comment comment) {
+        try {
+            return comments.insertCounting(comment, posts.reference(comment.getPostId()));
         } catch (ExecutionException | InterruptedException e) {
-            throw rethrow("saveComment", e);
+            throw rethrow("addComment", e);
         }
     }
 
     @Override
-    public List<Comment> findCommentsByPost(String postId) {
+    public List<Comment> findCommentsByPost(String postId, CommentCursor after, int limit) {
+        Query q = comments.query()
+                .whereEqualTo("postId", postId)
+                .orderBy("createdAt")
+                .orderBy(FieldPath.documentId());
+        if (after != null) {
+            q = q.startAfter(BaseEntity.localDateTimeToTimestamp(after.createdAt), after.commentId);
+        }
         try {
-            List<Comment> list = comments.findByField("postId", postId);
-            list.sort(Comparator.comparing(
-                    Comment::getCreatedAt,
-                    Comparator.nullsFirst(Comparator.naturalOrder())));
-            return list;
+            return comments.findByQuery(q.limit(limit));
         } catch (ExecutionException | InterruptedException e) {
             throw rethrow("findCommentsByPost", e);
         }
@@ -105,14 +219,21 @@ public class FirestoreSocialRepository implements SocialRepository {
     @Override
     public void deleteCommentsByPost(String postId) {
         try {
-            for (Comment c : comments.findByField("postId", postId)) {
-                comments.deleteById(c.getId());
-            }
+            comments.deleteByField("postId", postId);
         } catch (ExecutionException | InterruptedException e) {
             throw rethrow("deleteCommentsByPost", e);
         }
     }
 
+    @Override
+    public void deleteReportsByPost(String postId) {
+        try {
+            reports.deleteByField("postId", postId);
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("deleteReportsByPost", e);
+        }
+    }
+
     @Override
     public PostReport saveReport(PostReport report) {
         try {
@@ -122,6 +243,24 @@ public class FirestoreSocialRepository implements SocialRepository {
         }
     }
 
+    @Override
+    public int migrateLegacyPostTimestamps() {
+        try {
+            return posts.migrateLegacyTimestamps();
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("migrateLegacyPostTimestamps", e);
+        }
+    }
+
+    @Override
+    public int migrateLegacyCommentTimestamps() {
+        try {
+            return comments.migrateLegacyTimestamps();
+        } catch (ExecutionException | InterruptedException e) {
+            throw rethrow("migrateLegacyCommentTimestamps", e);
+        }
+    }
+
     private RuntimeException rethrow(String op, Exception e) {
         if (e instanceof InterruptedException) {
             Thread.currentThread().interrupt();
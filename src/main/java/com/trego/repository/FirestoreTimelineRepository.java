@@ -0,0 +1,125 @@
+package com.trego.repository;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.trego.model.BaseEntity;
+import com.trego.repository.SocialRepository.FeedCursor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Firestore-backed {@link TimelineRepository}. Timelines live at
+ * users/{uid}/timeline/{postId} as {authorId, createdAt}; the pull-author list
+ * is an array field on social_meta/timeline.
+ */
+@Repository
+public class FirestoreTimelineRepository implements TimelineRepository {
+
+    private static final int BATCH_LIMIT = 500;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Override
+    public void fanOut(Collection<String> ownerUids, TimelineEntry entry) {
+        try {
+            // Every batch is issued before waiting on any; they touch disjoint docs.
+            List<ApiFuture<?>> pending = new ArrayList<>();
+            WriteBatch batch = firestore.batch();
+            int counter = 0;
+            for (String owner : ownerUids) {
+                batch.set(entryRef(owner, entry.postId), serializeEntry(entry));
+                if (++counter % BATCH_LIMIT == 0) {
+                    pending.add(batch.commit());
+                    batch = firestore.batch();
+                }
+            }
+            if (counter % BATCH_LIMIT != 0) pending.add(batch.commit());
+            ApiFutures.allAsList(pending).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("fanOut failed for post " + entry.postId, e);
+        }
+    }
+
+    @Override
+    public void addAll(String ownerUid, List<TimelineEntry> entries) {
+        try {
+            List<ApiFuture<?>> pending = new ArrayList<>();
+            WriteBatch batch = firestore.batch();
+            int counter = 0;
+            for (TimelineEntry entry : entries) {
+                batch.set(entryRef(ownerUid, entry.postId), serializeEntry(entry));
+                if (++counter % BATCH_LIMIT == 0) {
+                    pending.add(batch.commit());
+                    batch = firestore.batch();
+                }
+            }
+            if (counter % BATCH_LIMIT != 0) pending.add(batch.commit());
+            ApiFutures.allAsList(pending).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("addAll failed for " + ownerUid, e);
+        }
+    }
+
+    @Override
+    public List<TimelineEntry> findNewestFirst(String ownerUid, FeedCursor after, int limit) {
+        Query q = firestore.collection("users").document(ownerUid).collection("timeline")
+                .orderBy("createdAt", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+        if (after != null) q = q.startAfter(BaseEntity.localDateTimeToTimestamp(after.createdAt), after.postId);
+        try {
+            List<TimelineEntry> out = new ArrayList<>();
+            for (QueryDocumentSnapshot d : q.limit(limit).get().get().getDocuments()) {
+                Timestamp ts = d.getTimestamp("createdAt");
+                out.add(new TimelineEntry(d.getId(), d.getString("authorId"),
+                        ts == null ? null : ts.toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime()));
+            }
+            return out;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("findNewestFirst failed for " + ownerUid, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> findPullAuthors() {
+        try {
+            DocumentSnapshot d = meta().get().get();
+            Object authors = d.exists() ? d.get("pullAuthors") : null;
+            return authors instanceof List ? new HashSet<>((List<String>) authors) : Set.of();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("findPullAuthors failed", e);
+        }
+    }
+
+    @Override
+    public void addPullAuthor(String uid) {
+        try {
+            meta().set(Map.of("pullAuthors", FieldValue.arrayUnion(uid)), SetOptions.merge()).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("addPullAuthor failed for " + uid, e);
+        }
+    }
+
+    private DocumentReference entryRef(String ownerUid, String postId) {
+        return firestore.collection("users").document(ownerUid).collection("timeline").document(postId);
+    }
+
+    private DocumentReference meta() {
+        return firestore.collection("social_meta").document("timeline");
+    }
+
+    private static Map<String, Object> serializeEntry(TimelineEntry e) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("authorId", e.authorId);
+        m.put("createdAt", BaseEntity.localDateTimeToTimestamp(e.createdAt));
+        return m;
+    }
+}
@@ -7,10 +7,11 @@ import java.util.List;
 import java.util.Optional;
 
 /**
- * Storage abstraction for the friend graph plus the minimal user-directory
- * lookups the friend feature needs (resolve-by-email, name/photo for view
- * models). Folding the user lookups in here keeps {@code FriendService} free of
- * checked Firestore exceptions and direct {@code UserRepository} coupling.
+ * Storage abstraction for the friend graph plus the one user-directory lookup
+ * the friend feature needs (resolve-by-email). Folding it in here keeps
+ * {@code FriendService} free of checked Firestore exceptions and direct
+ * {@code UserRepository} coupling. Names and photos for view models come from
+ * {@link AuthorRepository}.
  *
  * Production impl: {@link FirestoreFriendGraphRepository}.
  * Test impl: InMemoryFriendGraphRepository (test sources).
@@ -33,24 +34,11 @@ public interface FriendGraphRepository {
 
     List<Friendship> findFriendshipsFor(String uid);
 
+    /** Up to [limit] friendships in pairKey order, strictly after [afterPairKey]; null starts at the beginning. */
+    List<Friendship> findFriendshipsAfter(String afterPairKey, int limit);
+
     void deleteFriendship(String id);
 
     /** Resolve a user UID by exact email (case-insensitive). */
     Optional<String> resolveUidByEmail(String email);
-
-    /** Lightweight profile view for rendering friend/request cards. */
-    Optional<UserView> getUserView(String uid);
-
-    /** Minimal user projection: UID + display name + optional photo URL. */
-    final class UserView {
-        public final String uid;
-        public final String name;
-        public final String photoUrl;
-
-        public UserView(String uid, String name, String photoUrl) {
-            this.uid = uid;
-            this.name = name;
-            this.photoUrl = photoUrl;
-        }
-    }
 }
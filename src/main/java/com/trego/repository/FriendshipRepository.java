@@ -18,4 +18,11 @@ public class FriendshipRepository extends FirestoreRepository<Friendship> {
         Query query = firestore.collection(collectionName).whereArrayContains("users", uid);
         return findByQuery(query);
     }
+
+    /** Up to [limit] friendships ordered by pairKey, strictly after [afterPairKey] (null: from the start). */
+    public List<Friendship> findPage(String afterPairKey, int limit) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection(collectionName).orderBy("pairKey");
+        if (afterPairKey != null) query = query.startAfter(afterPairKey);
+        return findByQuery(query.limit(limit));
+    }
 }
@@ -0,0 +1,59 @@
+package com.trego.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage abstraction for the bulk metrics backfill: user enumeration plus a
+ * resumable checkpoint per target schema version.
+ * Production impl: {@link FirestoreMetricsBackfillRepository}.
+ * Test impl: InMemoryMetricsBackfillRepository (test sources).
+ */
+public interface MetricsBackfillRepository {
+
+    /**
+     * Up to [limit] IDs of users who have runs, strictly after [afterUid] in ID
+     * order; null starts at the beginning. Users are found through their runs
+     * rather than their users/{uid} doc, which not every user with runs has.
+     */
+    List<String> listUserIds(String afterUid, int limit);
+
+    /**
+     * Total number of runs in the collection listUserIds enumerates users from,
+     * for progress and ETA. An estimate: it includes runs the fold skips.
+     */
+    long countRuns();
+
+    Optional<Checkpoint> readCheckpoint(int schemaVersion);
+
+    void writeCheckpoint(Checkpoint checkpoint);
+
+    /**
+     * Progress of the backfill towards [schemaVersion]. Every user with an ID
+     * up to and including {@code lastUid} has been attempted, and all but
+     * {@code failedUids} recomputed; {@code failures} is their count.
+     */
+    final class Checkpoint {
+        public final int schemaVersion;
+        public final String lastUid;
+        public final long usersDone;
+        public final long runsDone;
+        public final long failures;
+        public final boolean complete;
+        public final Instant updatedAt;
+        public final List<String> failedUids;
+
+        public Checkpoint(int schemaVersion, String lastUid, long usersDone, long runsDone,
+                          long failures, boolean complete, Instant updatedAt, List<String> failedUids) {
+            this.schemaVersion = schemaVersion;
+            this.lastUid = lastUid;
+            this.usersDone = usersDone;
+            this.runsDone = runsDone;
+            this.failures = failures;
+            this.complete = complete;
+            this.updatedAt = updatedAt;
+            this.failedUids = failedUids;
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package com.trego.repository;
 
+import com.trego.dto.LifetimeTotalsDto;
 import com.trego.dto.MetricsSnapshotDto;
+import com.trego.dto.PrsDto;
 import com.trego.dto.WeeklyGoalDto;
+import com.trego.dto.WeeklyMetricsDto;
 import com.trego.model.RunRecord;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Storage abstraction for metrics.
@@ -15,17 +23,71 @@ import java.util.Optional;
  * Test impl: InMemoryMetricsRepository (this task).
  */
 public interface MetricsRepository {
-    /** Return all runs for a user, ordered by startTime ASC. */
-    List<RunRecord> readRuns(String uid);
+    /**
+     * Stream runs strictly after the (startTime, runId) high-water mark, ordered
+     * by startTime then runId. A null startTime streams every run; runs without
+     * a startTime are never streamed. Runs are fetched lazily one page at a time,
+     * so callers folding as they iterate hold at most one page in memory
+     * regardless of how many runs the user has.
+     */
+    Iterator<RunRecord> streamRuns(String uid, Instant afterStartTime, String afterRunId);
 
-    /** Count of runs in users/{uid}/runs/. Used for runCountAtCompute sanity check. */
+    /**
+     * Count of runs in users/{uid}/runs/ that have a startTime, i.e. of the runs
+     * {@link #streamRuns} yields. Only recompute uses it, to notice runs the
+     * incremental fold cannot see; reads go by {@link #readRunVersion}.
+     */
     int countRuns(String uid);
 
+    /**
+     * Current run version from users/{uid}/metrics/runVersion, or -1 if the doc
+     * does not exist yet. Runs are only written through {@link #writeRuns} and
+     * {@link #deleteRuns}, which bump it in the same transaction (clients cannot
+     * write users/{uid}/runs; see firestore.rules), so an unchanged version
+     * means unchanged runs.
+     */
+    long readRunVersion(String uid);
+
+    /**
+     * Write run docs users/{uid}/runs/{runId} (merged into any existing doc) and
+     * bump the run version, atomically. Returns the new version and which of the
+     * run IDs already existed before the write.
+     */
+    RunWriteResult writeRuns(String uid, List<RunRecord> runs);
+
+    /**
+     * Delete run docs users/{uid}/runs/{runId} and bump the run version,
+     * atomically. Returns the new version and which of the run IDs existed.
+     */
+    RunWriteResult deleteRuns(String uid, List<String> runIds);
+
     /** Read materialized snapshot, or empty if absent. */
     Optional<StoredSnapshot> readSnapshot(String uid);
 
-    /** Write snapshot doc + per-day aggregate docs. */
-    void writeSnapshot(String uid, StoredSnapshot snapshot, Map<LocalDate, DailyAggregate> dailyByDate);
+    /**
+     * Write snapshot doc + per-day aggregate docs. Only the days passed in are
+     * written; callers pass just the days whose aggregate changed, plus the days
+     * that no longer have any runs (deleted runs, or a change of time zone) in
+     * [dailyToDelete].
+     */
+    void writeSnapshot(String uid, StoredSnapshot snapshot, Map<LocalDate, DailyAggregate> dailyByDate,
+                       Set<LocalDate> dailyToDelete);
+
+    /** Read the persisted incremental fold state, or empty if absent. */
+    Optional<FoldState> readFoldState(String uid);
+
+    /** Persist the incremental fold state. */
+    void writeFoldState(String uid, FoldState state);
+
+    /**
+     * Take or renew the per-user recompute lease (doc users/{uid}/metrics/lease)
+     * for [owner] until now + [ttl]. Fails only while another owner holds an
+     * unexpired lease. Atomic across instances.
+     */
+    boolean tryAcquireRecomputeLease(String uid, String owner, Instant now, Duration ttl);
+
+    /** Give up the lease if [owner] still holds it. */
+    void releaseRecomputeLease(String uid, String owner);
 
     /** Read the user's weekly goal, or empty if none set. */
     Optional<WeeklyGoalDto> readGoal(String uid);
@@ -33,19 +95,36 @@ public interface MetricsRepository {
     /** Persist the user's weekly goal. */
     void writeGoal(String uid, WeeklyGoalDto goal);
 
-    /** Container for the persisted snapshot — schema version + run count + the public DTO. */
+    /**
+     * Container for the persisted snapshot — schema version + run count + run
+     * version (-1 if unknown at compute time) + the public DTO.
+     */
     final class StoredSnapshot {
         public final int schemaVersion;
         public final int runCountAtCompute;
+        public final long runVersionAtCompute;
         public final MetricsSnapshotDto dto;
 
-        public StoredSnapshot(int schemaVersion, int runCountAtCompute, MetricsSnapshotDto dto) {
+        public StoredSnapshot(int schemaVersion, int runCountAtCompute, long runVersionAtCompute,
+                              MetricsSnapshotDto dto) {
             this.schemaVersion = schemaVersion;
             this.runCountAtCompute = runCountAtCompute;
+            this.runVersionAtCompute = runVersionAtCompute;
             this.dto = dto;
         }
     }
 
+    /** Outcome of {@link #writeRuns}. */
+    final class RunWriteResult {
+        public final long runVersion;
+        public final Set<String> existingRunIds;
+
+        public RunWriteResult(long runVersion, Set<String> existingRunIds) {
+            this.runVersion = runVersion;
+            this.existingRunIds = existingRunIds;
+        }
+    }
+
     /** One day's totals. */
     final class DailyAggregate {
         public final double totalKm;
@@ -57,5 +136,59 @@ public interface MetricsRepository {
             this.totalRuns = totalRuns;
             this.totalTimeMs = totalTimeMs;
         }
+
+        /** Value equality, so recompute can skip rewriting days whose totals did not move. */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DailyAggregate)) return false;
+            DailyAggregate d = (DailyAggregate) o;
+            return Double.compare(totalKm, d.totalKm) == 0
+                    && totalRuns == d.totalRuns
+                    && totalTimeMs == d.totalTimeMs;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(totalKm, totalRuns, totalTimeMs);
+        }
+    }
+
+    /**
+     * Resumable accumulator state behind the snapshot: everything the fold needs
+     * to apply further runs without re-reading the ones already counted.
+     * {@code watermarkStartTime}/{@code watermarkRunId} identify the last run
+     * folded in (both null when {@code runCount} is 0). {@code fullFoldAt} is
+     * when the state was last rebuilt from every run (null if unknown).
+     */
+    final class FoldState {
+        public final int schemaVersion;
+        /** Zone whose calendar days and weeks the buckets use; a zone change needs a full recompute. */
+        public final String zoneId;
+        public final int runCount;
+        public final Instant watermarkStartTime;
+        public final String watermarkRunId;
+        public final PrsDto prs;
+        public final LifetimeTotalsDto totals;
+        public final Map<LocalDate, DailyAggregate> dailyByDate;
+        public final Map<String, WeeklyMetricsDto> weeklyByIsoWeek;
+        public final Instant fullFoldAt;
+
+        public FoldState(int schemaVersion, String zoneId, int runCount,
+                         Instant watermarkStartTime, String watermarkRunId,
+                         PrsDto prs, LifetimeTotalsDto totals,
+                         Map<LocalDate, DailyAggregate> dailyByDate,
+                         Map<String, WeeklyMetricsDto> weeklyByIsoWeek,
+                         Instant fullFoldAt) {
+            this.schemaVersion = schemaVersion;
+            this.zoneId = zoneId;
+            this.runCount = runCount;
+            this.watermarkStartTime = watermarkStartTime;
+            this.watermarkRunId = watermarkRunId;
+            this.prs = prs;
+            this.totals = totals;
+            this.dailyByDate = dailyByDate;
+            this.weeklyByIsoWeek = weeklyByIsoWeek;
+            this.fullFoldAt = fullFoldAt;
+        }
     }
 }
@@ -1,11 +1,144 @@
 package com.trego.repository;
 
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.SetOptions;
 import com.trego.model.SocialPost;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
 @Repository
 public class PostRepository extends FirestoreRepository<SocialPost> {
+    private static final String LIKES = "likes";
+
     public PostRepository() {
         super("social_posts", SocialPost::fromFirestoreMap);
     }
+
+    /** Merges rather than overwrites, so counters kept by FieldValue.increment survive edits. */
+    @Override
+    public SocialPost update(SocialPost entity) throws ExecutionException, InterruptedException {
+        if (entity.getId() == null) {
+            throw new IllegalArgumentException("Entity ID cannot be null for update operation");
+        }
+        entity.updateTimestamp();
+        firestore.collection(collectionName).document(entity.getId())
+                .set(entity.toFirestoreMap(), SetOptions.merge()).get();
+        return entity;
+    }
+
+    /**
+     * Flips [uid]'s like of [postId] in one transaction: creates or deletes
+     * social_posts/{postId}/likes/{uid}. Returns the new like state.
+     *
+     * <p>A legacy post, with a {@code likedBy} array and no {@code likesCount},
+     * is migrated in the same transaction: each legacy liker gets a like
+     * document, {@code likesCount} is seeded with their number and the array is
+     * removed. The counter increment that follows the toggle then lands on the
+     * seeded count, and legacy likers unlike rather than like twice. Once a post
+     * has been migrated only its like document changes here.
+     */
+    public boolean toggleLike(String postId, String uid) throws ExecutionException, InterruptedException {
+        DocumentReference post = firestore.collection(collectionName).document(postId);
+        DocumentReference like = post.collection(LIKES).document(uid);
+        return firestore.runTransaction(tx -> {
+            DocumentSnapshot stored = tx.get(post).get();
+            boolean liked = tx.get(like).get().exists();
+            if (stored.exists() && stored.get("likesCount") == null && stored.get("likedBy") instanceof List<?> legacy) {
+                Set<String> likers = new HashSet<>();
+                for (Object liker : legacy) if (liker instanceof String) likers.add((String) liker);
+                Timestamp now = Timestamp.now();
+                for (String liker : likers) {
+                    if (liker.equals(uid)) continue;
+                    tx.set(post.collection(LIKES).document(liker), Map.of("uid", liker, "createdAt", now));
+                }
+                tx.update(post, "likesCount", likers.size(), "likedBy", FieldValue.delete());
+                liked |= likers.contains(uid);
+            }
+            if (liked) {
+                tx.delete(like);
+                return false;
+            }
+            tx.create(like, Map.of("uid", uid, "createdAt", Timestamp.now()));
+            return true;
+        }).get();
+    }
+
+    /** One update applying both counter deltas; fails with NOT_FOUND if the post is gone. */
+    public void incrementCounters(String postId, int likesDelta, int commentsDelta)
+            throws ExecutionException, InterruptedException {
+        Map<String, Object> changes = new HashMap<>();
+        if (likesDelta != 0) changes.put("likesCount", FieldValue.increment(likesDelta));
+        if (commentsDelta != 0) changes.put("commentsCount", FieldValue.increment(commentsDelta));
+        if (changes.isEmpty()) return;
+        firestore.collection(collectionName).document(postId).update(changes).get();
+    }
+
+    /** Number of like documents under [postId]. One count() aggregation. */
+    public int countLikes(String postId) throws ExecutionException, InterruptedException {
+        return (int) firestore.collection(collectionName).document(postId).collection(LIKES)
+                .count().get().get().getCount();
+    }
+
+    /** Overwrites both counters of [postId]; fails with NOT_FOUND if the post is gone. */
+    public void setCounters(String postId, int likesCount, int commentsCount)
+            throws ExecutionException, InterruptedException {
+        firestore.collection(collectionName).document(postId)
+                .update("likesCount", likesCount, "commentsCount", commentsCount).get();
+    }
+
+    /** Up to [limit] post IDs in ID order, strictly after [afterId]; null starts at the beginning. */
+    public List<String> findIdsAfter(String afterId, int limit) throws ExecutionException, InterruptedException {
+        Query q = query().orderBy(FieldPath.documentId()).select(FieldPath.documentId()).limit(limit);
+        if (afterId != null) q = q.startAfter(afterId);
+        List<String> ids = new ArrayList<>();
+        for (DocumentSnapshot d : q.get().get().getDocuments()) ids.add(d.getId());
+        return ids;
+    }
+
+    /** The subset of [postIds] that [uid] has liked. One batched read of the like documents. */
+    public Set<String> findLikedPostIds(String uid, List<String> postIds) throws ExecutionException, InterruptedException {
+        Set<String> out = new HashSet<>();
+        if (postIds.isEmpty()) return out;
+        DocumentReference[] refs = new DocumentReference[postIds.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = firestore.collection(collectionName).document(postIds.get(i)).collection(LIKES).document(uid);
+        }
+        for (DocumentSnapshot d : firestore.getAll(refs).get()) {
+            if (d.exists()) out.add(d.getReference().getParent().getParent().getId());
+        }
+        return out;
+    }
+
+    /** Deletes [postId]'s like documents, which do not go away with the post itself. */
+    public void deleteLikes(String postId) throws ExecutionException, InterruptedException {
+        List<DocumentReference> likes = new ArrayList<>();
+        firestore.collection(collectionName).document(postId).collection(LIKES).listDocuments().forEach(likes::add);
+        deleteInBatches(likes);
+    }
+
+    /** Marks [postId] deleted; the post and everything hanging off it are removed later. */
+    public void tombstone(String postId) throws ExecutionException, InterruptedException {
+        firestore.collection(collectionName).document(postId)
+                .update("deleted", true, "deletedAt", Timestamp.now()).get();
+    }
+
+    /** Up to [limit] IDs of tombstoned posts still waiting to be purged. */
+    public List<String> findTombstonedIds(int limit) throws ExecutionException, InterruptedException {
+        List<String> ids = new ArrayList<>();
+        Query q = query().whereEqualTo("deleted", true).select(FieldPath.documentId()).limit(limit);
+        for (DocumentSnapshot d : q.get().get().getDocuments()) ids.add(d.getId());
+        return ids;
+    }
 }
@@ -4,8 +4,10 @@ import com.trego.model.Comment;
 import com.trego.model.PostReport;
 import com.trego.model.SocialPost;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Storage abstraction for the social feed.
@@ -16,19 +18,120 @@ public interface SocialRepository {
 
     SocialPost savePost(SocialPost post);
 
+    /** The post, including a tombstoned one (see {@link SocialPost#isDeleted}). */
     Optional<SocialPost> findPost(String id);
 
-    /** All posts, most-recent first. Visibility filtering happens in the service. */
-    List<SocialPost> findAllPostsNewestFirst();
+    /** The posts with the given IDs that still exist, in no particular order. One round trip. */
+    List<SocialPost> findPostsByIds(List<String> ids);
 
+    /** Most authors one {@link #findFriendsPostsNewestFirst} call accepts (Firestore's "in" limit). */
+    int MAX_AUTHORS_PER_QUERY = 30;
+
+    /*
+     * Feed queries. Each returns at most [limit] posts ordered newest first by
+     * (createdAt, id), starting strictly after [after] (null: from the newest).
+     * Posts without a createdAt are not returned.
+     */
+
+    /** Public posts by anyone. */
+    List<SocialPost> findPublicPostsNewestFirst(FeedCursor after, int limit);
+
+    /** Posts of any visibility by [authorId]. */
+    List<SocialPost> findPostsByAuthorNewestFirst(String authorId, FeedCursor after, int limit);
+
+    /** Friends-visibility posts by any of [authorIds] (at most MAX_AUTHORS_PER_QUERY). */
+    List<SocialPost> findFriendsPostsNewestFirst(List<String> authorIds, FeedCursor after, int limit);
+
+    /** Deletes the post and its likes. */
     void deletePost(String id);
 
-    Comment saveComment(Comment comment);
+    /** Marks the post deleted so readers skip it, ahead of purging it. */
+    void tombstonePost(String id);
+
+    /** Up to [limit] IDs of tombstoned posts that have not been purged yet. */
+    List<String> findTombstonedPostIds(int limit);
+
+    /**
+     * Flips [uid]'s like document for [postId] atomically and returns whether
+     * [uid] now likes it. Does not add to likesCount; see {@link #incrementCounters}.
+     * A post still carrying legacy likers (see {@link SocialPost#getLegacyLikedBy})
+     * first has them turned into like documents and its likesCount seeded.
+     */
+    boolean toggleLike(String postId, String uid);
+
+    /** Adds the deltas to [postId]'s likesCount and commentsCount in one write. Fails if the post is gone. */
+    void incrementCounters(String postId, int likesDelta, int commentsDelta);
+
+    /**
+     * Sets [postId]'s likesCount and commentsCount to the number of its like
+     * documents and comments, writing only if either differs. Returns whether it
+     * wrote. Missing, tombstoned and legacy (not yet migrated) posts are left alone.
+     */
+    boolean recountCounters(String postId);
+
+    /** Up to [limit] post IDs in ID order, strictly after [afterId] (null: from the start). */
+    List<String> findPostIdsAfter(String afterId, int limit);
+
+    /** The subset of [postIds] that [uid] has liked. One round trip. */
+    Set<String> findLikedPostIds(String uid, List<String> postIds);
 
-    /** Comments for a post, oldest first. */
-    List<Comment> findCommentsByPost(String postId);
+    /**
+     * Inserts a new comment and adds one to its post's commentsCount in the
+     * same atomic write. Fails, writing neither, if the post does not exist.
+     */
+    Comment addComment(Comment comment);
 
+    /**
+     * At most [limit] of the post's comments, oldest first by (createdAt, id),
+     * starting strictly after [after] (null: from the first).
+     */
+    List<Comment> findCommentsByPost(String postId, CommentCursor after, int limit);
+
+    /** Deletes every comment on the post; batched, so fine for long threads. */
     void deleteCommentsByPost(String postId);
 
+    /** Deletes every report of the post. */
+    void deleteReportsByPost(String postId);
+
     PostReport saveReport(PostReport report);
+
+    /**
+     * Rewrites posts whose createdAt/updatedAt are still in the legacy
+     * LocalDateTime format as Timestamps, so the feed queries see them.
+     * Idempotent. Returns how many posts were rewritten.
+     */
+    int migrateLegacyPostTimestamps();
+
+    /** As {@link #migrateLegacyPostTimestamps}, for comments, which comment pages order by createdAt. */
+    int migrateLegacyCommentTimestamps();
+
+    /** Position in a post's comment thread: the (createdAt, id) of the last comment seen. */
+    final class CommentCursor {
+        public final LocalDateTime createdAt;
+        public final String commentId;
+
+        public CommentCursor(LocalDateTime createdAt, String commentId) {
+            this.createdAt = createdAt;
+            this.commentId = commentId;
+        }
+
+        public static CommentCursor after(Comment c) {
+            return new CommentCursor(c.getCreatedAt(), c.getId());
+        }
+    }
+
+    /** Position in a newest-first feed: the (createdAt, id) of the last post seen. */
+    final class FeedCursor {
+        public final LocalDateTime createdAt;
+        public final String postId;
+
+        public FeedCursor(LocalDateTime createdAt, String postId) {
+            this.createdAt = createdAt;
+            this.postId = postId;
+        }
+
+        public static FeedCursor after(SocialPost p) {
+            return new FeedCursor(p.getCreatedAt(), p.getId());
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.trego.repository;
+
+import com.trego.repository.SocialRepository.FeedCursor;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage for per-user feed timelines: references to friends-visibility posts,
+ * pushed to each of the author's friends when the post is created, so the
+ * reader does not have to query every friend.
+ * Production impl: {@link FirestoreTimelineRepository}.
+ * Test impl: InMemoryTimelineRepository (test sources).
+ */
+public interface TimelineRepository {
+
+    /** Add [entry] to the timeline of every user in [ownerUids]. */
+    void fanOut(Collection<String> ownerUids, TimelineEntry entry);
+
+    /** Add [entries] to [ownerUid]'s timeline. */
+    void addAll(String ownerUid, List<TimelineEntry> entries);
+
+    /** Up to [limit] entries of [ownerUid]'s timeline, newest first, strictly after [after] (null: newest). */
+    List<TimelineEntry> findNewestFirst(String ownerUid, FeedCursor after, int limit);
+
+    /** Authors whose posts are not fanned out and must be read from the posts themselves. */
+    Set<String> findPullAuthors();
+
+    void addPullAuthor(String uid);
+
+    /** One timeline slot: the post plus the fields the timeline is ordered and filtered by. */
+    final class TimelineEntry {
+        public final String postId;
+        public final String authorId;
+        public final LocalDateTime createdAt;
+
+        public TimelineEntry(String postId, String authorId, LocalDateTime createdAt) {
+            this.postId = postId;
+            this.authorId = authorId;
+            this.createdAt = createdAt;
+        }
+    }
+}
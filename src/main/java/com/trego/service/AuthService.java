@@ -41,6 +41,9 @@ public class AuthService {
     
     @Autowired
     private EmailService emailService;
+
+    @Autowired
+    private AuthorCache authorCache;
     
     public AuthResponse registerUser(RegisterRequest request) throws FirebaseAuthException, ExecutionException, InterruptedException {
         logger.info("Registering new user with email: {}", request.getEmail());
@@ -262,6 +265,9 @@ public class AuthService {
             userRepository.update(user);
         }
         
+        // Name changes should show on this user's posts, comments and friend cards.
+        authorCache.invalidate(userId);
+        
         AuthResponse response = AuthResponse.fromUser(user);
         response.setProfile(profile);
         
@@ -0,0 +1,77 @@
+package com.trego.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.trego.repository.AuthorRepository;
+import com.trego.repository.AuthorRepository.AuthorView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of {@link AuthorView}s shared by the social feed, comments and
+ * friend lists, so views show each author's current name instead of the one
+ * captured at write time without a user read per post. A page's misses are
+ * loaded together in one batched read.
+ *
+ * <p>{@link AuthService#updateUserProfile} invalidates the user. That only
+ * reaches this instance; other instances pick the change up once their entry
+ * expires, so the TTL bounds cross-instance staleness. Hit/miss/eviction
+ * counters are published as {@code cache.*} tagged {@code cache=authors}.
+ */
+@Component
+public class AuthorCache implements MeterBinder {
+
+    private final AuthorRepository repo;
+    private final Cache<String, AuthorView> cache;
+
+    @Autowired
+    public AuthorCache(AuthorRepository repo,
+                       @Value("${social.authors.cache.max-size:50000}") long maxSize,
+                       @Value("${social.authors.cache.ttl-seconds:300}") long ttlSeconds) {
+        this(repo, maxSize, Duration.ofSeconds(ttlSeconds), Ticker.systemTicker());
+    }
+
+    /** Test constructor with injectable ticker. */
+    AuthorCache(AuthorRepository repo, long maxSize, Duration ttl, Ticker ticker) {
+        this.repo = repo;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /** No author directory: every view keeps its write-time name and photo. */
+    static AuthorCache none() {
+        return new AuthorCache(uids -> Map.of(), 1, Duration.ofSeconds(1), Ticker.systemTicker());
+    }
+
+    /** Views for those of [uids] that exist; the misses among them are read in one batch. */
+    Map<String, AuthorView> getAll(Collection<String> uids) {
+        return cache.getAll(uids, missing -> repo.findAuthors(List.copyOf(missing)));
+    }
+
+    void invalidate(String uid) {
+        cache.invalidate(uid);
+    }
+
+    long hitCount() { return cache.stats().hitCount(); }
+    long missCount() { return cache.stats().missCount(); }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "authors");
+    }
+}
@@ -0,0 +1,127 @@
+package com.trego.service;
+
+/**
+ * Open-addressing table of per-bucket run totals keyed by a primitive long
+ * (epoch-day for days, {@code year * 100 + isoWeek} for weeks). Totals live in
+ * parallel primitive arrays, so adding a run to an existing bucket allocates
+ * nothing; {@link MetricsFold} converts to the DTO / Firestore shapes only when
+ * a caller asks for them.
+ *
+ * <p>Linear probing over a power-of-two capacity, kept at most half full.
+ * Buckets are never removed.
+ */
+final class BucketTable {
+
+    private long[] keys;
+    private boolean[] used;
+    private double[] km;
+    private int[] runs;
+    private long[] timeMs;
+    private double[] longestKm;
+    private boolean[] dirty;
+    private int size;
+
+    BucketTable(int expected) {
+        int cap = 16;
+        while (cap < expected * 2) cap <<= 1;
+        allocate(cap);
+    }
+
+    /** Fold one run into [key]'s bucket and mark it dirty. */
+    void addRun(long key, double runKm, long runTimeMs) {
+        int i = slotFor(key);
+        km[i] += runKm;
+        runs[i]++;
+        timeMs[i] += runTimeMs;
+        if (runKm > longestKm[i]) longestKm[i] = runKm;
+        dirty[i] = true;
+    }
+
+    /** Load a persisted bucket. Not marked dirty. */
+    void load(long key, double totalKm, int totalRuns, long totalTimeMs, double longest) {
+        int i = slotFor(key);
+        km[i] = totalKm;
+        runs[i] = totalRuns;
+        timeMs[i] = totalTimeMs;
+        longestKm[i] = longest;
+    }
+
+    boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    int size() { return size; }
+
+    // --- slot iteration: for (int i = 0; i < capacity(); i++) if (isUsed(i)) ... ---
+
+    int capacity() { return keys.length; }
+    boolean isUsed(int slot) { return used[slot]; }
+    boolean isDirty(int slot) { return dirty[slot]; }
+    long key(int slot) { return keys[slot]; }
+    double km(int slot) { return km[slot]; }
+    int runs(int slot) { return runs[slot]; }
+    long timeMs(int slot) { return timeMs[slot]; }
+    double longestKm(int slot) { return longestKm[slot]; }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    private int slotFor(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotFor(key);
+        }
+        used[i] = true;
+        keys[i] = key;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        double[] oldKm = km;
+        int[] oldRuns = runs;
+        long[] oldTime = timeMs;
+        double[] oldLongest = longestKm;
+        boolean[] oldDirty = dirty;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = slotFor(oldKeys[j]);
+            km[i] = oldKm[j];
+            runs[i] = oldRuns[j];
+            timeMs[i] = oldTime[j];
+            longestKm[i] = oldLongest[j];
+            dirty[i] = oldDirty[j];
+        }
+    }
+
+    private void allocate(int cap) {
+        keys = new long[cap];
+        used = new boolean[cap];
+        km = new double[cap];
+        runs = new int[cap];
+        timeMs = new long[cap];
+        longestKm = new double[cap];
+        dirty = new boolean[cap];
+    }
+
+    /** Spread consecutive day / week keys across the table. */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
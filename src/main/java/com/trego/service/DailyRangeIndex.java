@@ -0,0 +1,124 @@
+package com.trego.service;
+
+import com.trego.dto.RangeMetricsDto;
+import com.trego.repository.MetricsRepository.DailyAggregate;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable prefix sums over one user's daily aggregates. Any [from, to] window
+ * is answered with two lookups per total, whatever its length. Built once per
+ * run count from the fold state and cached alongside the snapshot in
+ * {@link MetricsSnapshotCache}.
+ *
+ * <p>Slots are dense from the first to the last active day when at least one
+ * day in {@value #MAX_DENSE_SPAN_PER_ACTIVE_DAY} has a run: ten years of regular
+ * running is ~3,650 slots per array, which costs little and avoids a search on
+ * every query. Otherwise, e.g. a run mis-dated to 1970 next to this year's, there
+ * is one slot per active day and queries binary-search the day keys, so memory
+ * stays proportional to the days with runs whatever the span.
+ */
+final class DailyRangeIndex {
+
+    /** Beyond this many calendar days per active day, slots are kept sparse. */
+    static final int MAX_DENSE_SPAN_PER_ACTIVE_DAY = 8;
+
+    private final ZoneId zone;
+    private final long firstDay;
+    // Epoch day of each slot when sparse, null when dense (slot i is firstDay + i).
+    private final long[] slotDays;
+    // prefix[i] = sum over slots [0, i)
+    private final double[] prefixKm;
+    private final int[] prefixRuns;
+    private final long[] prefixTimeMs;
+    private final int[] prefixActiveDays;
+
+    private DailyRangeIndex(ZoneId zone, long firstDay, long[] slotDays, double[] prefixKm, int[] prefixRuns,
+                            long[] prefixTimeMs, int[] prefixActiveDays) {
+        this.zone = zone;
+        this.firstDay = firstDay;
+        this.slotDays = slotDays;
+        this.prefixKm = prefixKm;
+        this.prefixRuns = prefixRuns;
+        this.prefixTimeMs = prefixTimeMs;
+        this.prefixActiveDays = prefixActiveDays;
+    }
+
+    static DailyRangeIndex build(Map<LocalDate, DailyAggregate> daily, ZoneId zone) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (LocalDate d : daily.keySet()) {
+            first = Math.min(first, d.toEpochDay());
+            last = Math.max(last, d.toEpochDay());
+        }
+        if (daily.isEmpty()) {
+            return new DailyRangeIndex(zone, 0, null, new double[1], new int[1], new long[1], new int[1]);
+        }
+        long span = last - first + 1;
+        long[] slotDays = null;
+        int n = (int) span;
+        if (span > (long) MAX_DENSE_SPAN_PER_ACTIVE_DAY * daily.size()) {
+            n = daily.size();
+            slotDays = new long[n];
+            int j = 0;
+            for (LocalDate d : daily.keySet()) slotDays[j++] = d.toEpochDay();
+            Arrays.sort(slotDays);
+        }
+        double[] km = new double[n + 1];
+        int[] runs = new int[n + 1];
+        long[] timeMs = new long[n + 1];
+        int[] active = new int[n + 1];
+        for (Map.Entry<LocalDate, DailyAggregate> e : daily.entrySet()) {
+            long day = e.getKey().toEpochDay();
+            int i = (slotDays == null ? (int) (day - first) : Arrays.binarySearch(slotDays, day)) + 1;
+            km[i] = e.getValue().totalKm;
+            runs[i] = e.getValue().totalRuns;
+            timeMs[i] = e.getValue().totalTimeMs;
+            active[i] = e.getValue().totalRuns > 0 ? 1 : 0;
+        }
+        for (int i = 1; i <= n; i++) {
+            km[i] += km[i - 1];
+            runs[i] += runs[i - 1];
+            timeMs[i] += timeMs[i - 1];
+            active[i] += active[i - 1];
+        }
+        return new DailyRangeIndex(zone, first, slotDays, km, runs, timeMs, active);
+    }
+
+    /** Zone the day keys are in, i.e. the user's zone when the fold was computed. */
+    ZoneId zone() { return zone; }
+
+    /** Totals over the inclusive day range [from, to]. Days outside the history count as zero. */
+    RangeMetricsDto query(LocalDate from, LocalDate to) {
+        int lo = slotsBefore(from.toEpochDay());
+        int hi = slotsBefore(to.toEpochDay() + 1);
+        RangeMetricsDto dto = new RangeMetricsDto();
+        dto.setFrom(from);
+        dto.setTo(to);
+        if (hi > lo) {
+            double km = prefixKm[hi] - prefixKm[lo];
+            long timeMs = prefixTimeMs[hi] - prefixTimeMs[lo];
+            dto.setTotalKm(km);
+            dto.setTotalRuns(prefixRuns[hi] - prefixRuns[lo]);
+            dto.setTotalTimeMs(timeMs);
+            dto.setActiveDays(prefixActiveDays[hi] - prefixActiveDays[lo]);
+            dto.setAvgPaceSecPerKm(km > 0 ? Math.round((timeMs / 1000.0) / km) : 0L);
+        }
+        return dto;
+    }
+
+    /** Number of slots for days strictly before [epochDay]: a prefix index in [0, slots]. */
+    private int slotsBefore(long epochDay) {
+        if (slotDays != null) {
+            int i = Arrays.binarySearch(slotDays, epochDay);
+            return i >= 0 ? i : -i - 1;
+        }
+        return (int) Math.max(0, Math.min(epochDay - firstDay, prefixKm.length - 1));
+    }
+
+    /** Slots held per prefix array, for tests. */
+    int slots() { return prefixKm.length - 1; }
+}
@@ -0,0 +1,61 @@
+package com.trego.service;
+
+import com.trego.model.Comment;
+import com.trego.model.SocialPost;
+
+/**
+ * A feed change pushed to clients: just enough to patch what is on screen or
+ * to know the top of the feed is stale. The post itself is not included, since
+ * its view depends on the viewer; clients re-read the first feed page for it.
+ *
+ * <pre>
+ * {type: "post.created",  postId, authorId, createdAt}
+ * {type: "post.likes",    postId, likesCount}
+ * {type: "comment.added", postId, commentId, commentsCount}
+ * </pre>
+ */
+public final class FeedEvent {
+    public static final String POST_CREATED = "post.created";
+    public static final String POST_LIKES = "post.likes";
+    public static final String COMMENT_ADDED = "comment.added";
+
+    private final String type;
+    private final String postId;
+    private final String authorId;
+    private final String commentId;
+    private final Integer likesCount;
+    private final Integer commentsCount;
+    private final String createdAt;
+
+    private FeedEvent(String type, String postId, String authorId, String commentId,
+                      Integer likesCount, Integer commentsCount, String createdAt) {
+        this.type = type;
+        this.postId = postId;
+        this.authorId = authorId;
+        this.commentId = commentId;
+        this.likesCount = likesCount;
+        this.commentsCount = commentsCount;
+        this.createdAt = createdAt;
+    }
+
+    static FeedEvent postCreated(SocialPost p) {
+        return new FeedEvent(POST_CREATED, p.getId(), p.getAuthorId(), null, null, null,
+                p.getCreatedAt() != null ? p.getCreatedAt().toString() : null);
+    }
+
+    static FeedEvent likesChanged(SocialPost p, int likesCount) {
+        return new FeedEvent(POST_LIKES, p.getId(), null, null, likesCount, null, null);
+    }
+
+    static FeedEvent commentAdded(SocialPost p, Comment c, int commentsCount) {
+        return new FeedEvent(COMMENT_ADDED, p.getId(), null, c.getId(), null, commentsCount, null);
+    }
+
+    public String getType() { return type; }
+    public String getPostId() { return postId; }
+    public String getAuthorId() { return authorId; }
+    public String getCommentId() { return commentId; }
+    public Integer getLikesCount() { return likesCount; }
+    public Integer getCommentsCount() { return commentsCount; }
+    public String getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,21 @@
+package com.trego.service;
+
+import com.trego.model.Comment;
+import com.trego.model.SocialPost;
+
+/**
+ * Told by {@link SocialService} once a post, like or comment has been saved, so
+ * connected clients can be pushed the change instead of polling the feed.
+ * Called on the request thread: implementations must not throw or block.
+ */
+public interface FeedEvents {
+
+    FeedEvents NONE = new FeedEvents() { };
+
+    default void postCreated(SocialPost post) { }
+
+    /** [post]'s like count moved to [likesCount] (a like or an unlike). */
+    default void likesChanged(SocialPost post, int likesCount) { }
+
+    default void commentAdded(SocialPost post, Comment comment, int commentsCount) { }
+}
@@ -0,0 +1,100 @@
+package com.trego.service;
+
+import com.trego.model.SocialPost;
+import com.trego.repository.SocialRepository.FeedCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of newest-first post queries into one newest-first feed. Each
+ * source is read a page at a time and only when the merge reaches the end of
+ * the page it already has, so taking n posts costs at most about n reads per
+ * source however many posts exist. A post returned by more than one source
+ * (e.g. the viewer's own public post) is emitted once.
+ *
+ * <p>All sources share one order, so a merged feed resumes from a single
+ * cursor: every source simply continues strictly after it.
+ */
+final class FeedMerge {
+
+    /** Newest first by (createdAt, id); the order every source query returns. */
+    static final Comparator<SocialPost> NEWEST_FIRST = Comparator
+            .comparing(SocialPost::getCreatedAt)
+            .thenComparing(SocialPost::getId)
+            .reversed();
+
+    /** One feed query, continued from [after] (null: from the newest). */
+    interface Source {
+        List<SocialPost> page(FeedCursor after, int limit);
+    }
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(
+            Comparator.comparing(Head::current, NEWEST_FIRST));
+    /** Sources whose current post was emitted (or not read yet); advanced only when more are needed. */
+    private final List<Head> pending = new ArrayList<>();
+    private SocialPost last;
+
+    FeedMerge(List<Source> sources) {
+        this(sources, null);
+    }
+
+    /** Merge of the posts strictly after [after] (null: from the newest). */
+    FeedMerge(List<Source> sources, FeedCursor after) {
+        for (Source s : sources) pending.add(new Head(s, after));
+    }
+
+    /** The next up-to-[n] posts of the merged feed. Pages are fetched [n] posts at a time. */
+    List<SocialPost> take(int n) {
+        List<SocialPost> out = new ArrayList<>(Math.max(0, n));
+        while (out.size() < n) {
+            for (Head h : pending) {
+                if (h.advance(n)) heads.add(h);
+            }
+            pending.clear();
+            if (heads.isEmpty()) break;
+            Head h = heads.poll();
+            SocialPost p = h.current();
+            if (last == null || !p.getId().equals(last.getId())) {
+                out.add(p);
+                last = p;
+            }
+            pending.add(h);
+        }
+        return out;
+    }
+
+    /** A source plus the page it is being read from. */
+    private static final class Head {
+        private final Source source;
+        private final FeedCursor start;
+        private List<SocialPost> page = List.of();
+        private int pos = -1;
+        private boolean exhausted = false;
+
+        Head(Source source, FeedCursor start) {
+            this.source = source;
+            this.start = start;
+        }
+
+        SocialPost current() {
+            return page.get(pos);
+        }
+
+        /** Move to the next post, fetching a page of [pageSize] if needed. False when done. */
+        boolean advance(int pageSize) {
+            if (pos + 1 < page.size()) {
+                pos++;
+                return true;
+            }
+            if (exhausted) return false;
+            FeedCursor after = page.isEmpty() ? start : FeedCursor.after(page.get(page.size() - 1));
+            page = source.page(after, pageSize);
+            pos = 0;
+            if (page.size() < pageSize) exhausted = true;
+            return !page.isEmpty();
+        }
+    }
+}
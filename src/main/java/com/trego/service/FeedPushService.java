@@ -0,0 +1,113 @@
+package com.trego.service;
+
+import com.trego.model.Comment;
+import com.trego.model.SocialPost;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes {@link FeedEvent}s over STOMP (see {@code WebSocketConfig}) to the
+ * viewers who could see the post in their feed:
+ * <ul>
+ *   <li>{@code public} posts go to {@value #PUBLIC_TOPIC}, which every client
+ *       subscribes to;</li>
+ *   <li>{@code friends} posts go to the author's and each friend's
+ *       {@code /user}{@value #USER_QUEUE};</li>
+ *   <li>anything else ({@code private}) only to the author's.</li>
+ * </ul>
+ * Likes and comments reach the same audience as their post.
+ *
+ * <p>Sending only hands the event to the broker; delivery to each connection
+ * is asynchronous and bounded per connection, so a slow client never holds the
+ * request. A failed publish is logged and counted, never thrown: the write has
+ * already happened, and clients still see it on their next feed read.
+ *
+ * <p>Published as {@code social.push.*}.
+ */
+@Component
+public class FeedPushService implements FeedEvents, MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(FeedPushService.class);
+
+    /** Public posts, for every connected client. */
+    public static final String PUBLIC_TOPIC = "/topic/feed";
+    /** Per-user events, subscribed to as {@code /user/queue/feed}. */
+    public static final String USER_QUEUE = "/queue/feed";
+
+    private final SimpMessageSendingOperations messaging;
+    private final FriendshipLookup friends;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Autowired
+    public FeedPushService(SimpMessageSendingOperations messaging, FriendshipLookup friends) {
+        this.messaging = messaging;
+        this.friends = friends;
+    }
+
+    @Override
+    public void postCreated(SocialPost post) {
+        publish(post, FeedEvent.postCreated(post));
+    }
+
+    @Override
+    public void likesChanged(SocialPost post, int likesCount) {
+        publish(post, FeedEvent.likesChanged(post, likesCount));
+    }
+
+    @Override
+    public void commentAdded(SocialPost post, Comment comment, int commentsCount) {
+        publish(post, FeedEvent.commentAdded(post, comment, commentsCount));
+    }
+
+    long eventCount() { return events.get(); }
+    long failedCount() { return failed.get(); }
+
+    private void publish(SocialPost post, FeedEvent event) {
+        try {
+            if ("public".equals(post.getVisibility())) {
+                send(PUBLIC_TOPIC, event);
+            } else {
+                if (post.getAuthorId() != null) sendToUser(post.getAuthorId(), event);
+                if ("friends".equals(post.getVisibility()) && post.getAuthorId() != null) {
+                    for (String friend : friends.friendIdsOf(post.getAuthorId())) sendToUser(friend, event);
+                }
+            }
+            events.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warn("Feed push of {} for post {} failed: {}", event.getType(), post.getId(), e.getMessage());
+        }
+    }
+
+    private void send(String destination, FeedEvent event) {
+        messaging.convertAndSend(destination, event);
+        messages.incrementAndGet();
+    }
+
+    private void sendToUser(String uid, FeedEvent event) {
+        messaging.convertAndSendToUser(uid, USER_QUEUE, event);
+        messages.incrementAndGet();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("social.push.events", events, AtomicLong::get)
+                .description("Feed events published to the message broker")
+                .register(registry);
+        FunctionCounter.builder("social.push.messages", messages, AtomicLong::get)
+                .description("Broker messages sent for feed events (one per topic or user queue)")
+                .register(registry);
+        FunctionCounter.builder("social.push.failed", failed, AtomicLong::get)
+                .description("Feed events that could not be published")
+                .register(registry);
+    }
+}
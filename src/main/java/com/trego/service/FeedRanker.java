@@ -0,0 +1,236 @@
+package com.trego.service;
+
+import com.trego.model.SocialPost;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ranking stage of the feed, used when {@code social.ranking.mode} is
+ * {@code ranked} (the default, {@code chronological}, leaves the feed
+ * newest-first and this index empty).
+ *
+ * <p>A post's score is its engagement decayed by age:
+ * <pre>
+ * (1 + likes + commentWeight * comments) * 2^(-age / halfLife)
+ * </pre>
+ * kept as its logarithm anchored at the creation time rather than at "now":
+ * <pre>
+ * ln(1 + likes + commentWeight * comments) + ln 2 * createdAt / halfLife
+ * </pre>
+ * Every post ages at the same rate, so the order this gives is the same
+ * whenever it is computed. A score therefore only changes when the post's
+ * likes or comments do, and is updated incrementally on each like and comment
+ * instead of on every read.
+ *
+ * <p>Scores live in a skip list ordered best-first, bounded to
+ * {@code maxIndexedPosts}; past that the lowest score, usually the oldest
+ * post, is dropped. The index fills from posts as they are created and from
+ * those read for feeds, so it also warms up after a restart. It is per
+ * instance: counts read from Firestore replace the indexed ones whenever a
+ * post is read, which folds in likes taken on other instances.
+ *
+ * <p>Friend affinity depends on the viewer, so it is not part of the stored
+ * score: posts by the viewer's friends (or the viewer) gain
+ * {@code ln(friendBoost)} when a page is ranked.
+ */
+@Component
+public class FeedRanker implements MeterBinder {
+
+    /** Best first; ties broken by post ID. */
+    static final Comparator<Scored> BEST_FIRST = Comparator
+            .comparingDouble((Scored s) -> s.score).reversed()
+            .thenComparing(s -> s.postId);
+
+    /** Creation times are scored relative to this (2024-01-01T00:00Z); any fixed instant gives the same order. */
+    private static final long SCORE_EPOCH = 1_704_067_200L;
+
+    private final boolean ranked;
+    private final int maxIndexedPosts;
+    private final int candidates;
+    private final int recentCandidates;
+    private final double decayPerSecond;
+    private final double commentWeight;
+    private final double friendBonus;
+
+    private final ConcurrentSkipListSet<Entry> byScore = new ConcurrentSkipListSet<>(
+            Comparator.comparingDouble((Entry e) -> e.score).reversed().thenComparing(e -> e.postId));
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    @Autowired
+    public FeedRanker(@Value("${social.ranking.mode:chronological}") String mode,
+                      @Value("${social.ranking.max-indexed-posts:10000}") int maxIndexedPosts,
+                      @Value("${social.ranking.candidates:200}") int candidates,
+                      @Value("${social.ranking.recent-candidates:50}") int recentCandidates,
+                      @Value("${social.ranking.half-life-hours:12}") double halfLifeHours,
+                      @Value("${social.ranking.comment-weight:2}") double commentWeight,
+                      @Value("${social.ranking.friend-boost:2}") double friendBoost) {
+        if (!"ranked".equals(mode) && !"chronological".equals(mode)) {
+            throw new IllegalArgumentException("social.ranking.mode must be ranked or chronological: " + mode);
+        }
+        this.ranked = "ranked".equals(mode);
+        this.maxIndexedPosts = maxIndexedPosts;
+        this.candidates = candidates;
+        this.recentCandidates = recentCandidates;
+        this.decayPerSecond = Math.log(2) / (halfLifeHours * 3600);
+        this.commentWeight = commentWeight;
+        this.friendBonus = Math.log(friendBoost);
+    }
+
+    /** The feed stays newest-first; nothing is indexed. */
+    static FeedRanker chronological() {
+        return new FeedRanker("chronological", 0, 0, 0, 12, 2, 2);
+    }
+
+    /** True when feed pages should be ranked. */
+    boolean ranked() { return ranked; }
+
+    /** How many of the viewer's newest posts are ranked alongside the index's best. */
+    int recentCandidates() { return recentCandidates; }
+
+    int indexedPosts() { return byId.size(); }
+
+    /** Index [p] with the counts it was read with, replacing the indexed ones. */
+    void offer(SocialPost p) {
+        if (!ranked || p.getCreatedAt() == null || p.isDeleted()) return;
+        put(new Entry(p, Math.max(0, p.getLikesCount()), Math.max(0, p.getCommentsCount())));
+    }
+
+    /** Apply a like (+1/-1) or comment delta to [p]'s score. */
+    void engagementChanged(SocialPost p, int likesDelta, int commentsDelta) {
+        if (!ranked || p.getCreatedAt() == null) return;
+        synchronized (this) {
+            Entry old = byId.get(p.getId());
+            int likes = old != null ? old.likes : p.getLikesCount();
+            int comments = old != null ? old.comments : p.getCommentsCount();
+            put(new Entry(p, Math.max(0, likes + likesDelta), Math.max(0, comments + commentsDelta)));
+        }
+    }
+
+    void remove(String postId) {
+        if (!ranked) return;
+        synchronized (this) {
+            Entry old = byId.remove(postId);
+            if (old != null) byScore.remove(old);
+        }
+    }
+
+    /**
+     * The posts [viewerUid] may see from the index's best (up to
+     * {@code candidates}) plus [recent] (already visible to them), scored for
+     * this viewer and sorted best first.
+     */
+    List<Scored> rank(String viewerUid, Set<String> friendIds, List<SocialPost> recent) {
+        Map<String, Scored> out = new LinkedHashMap<>();
+        for (SocialPost p : recent) {
+            offer(p);
+            Entry e = byId.get(p.getId());
+            double base = e != null ? e.score : score(p, p.getLikesCount(), p.getCommentsCount());
+            out.put(p.getId(), new Scored(p.getId(), base + affinity(p.getAuthorId(), viewerUid, friendIds)));
+        }
+        int found = 0;
+        for (Entry e : byScore) {
+            if (found >= candidates) break;
+            if (!e.visibleTo(viewerUid, friendIds)) continue;
+            found++;
+            out.putIfAbsent(e.postId, new Scored(e.postId, e.score + affinity(e.authorId, viewerUid, friendIds)));
+        }
+        List<Scored> sorted = new ArrayList<>(out.values());
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    private double affinity(String authorId, String viewerUid, Set<String> friendIds) {
+        if (viewerUid == null || authorId == null) return 0;
+        return viewerUid.equals(authorId) || friendIds.contains(authorId) ? friendBonus : 0;
+    }
+
+    private double score(SocialPost p, int likes, int comments) {
+        double engagement = 1 + likes + commentWeight * comments;
+        LocalDateTime t = p.getCreatedAt();
+        // Seconds since a recent anchor rather than 1970 keeps sub-second resolution in the double.
+        double age = (t.toEpochSecond(ZoneOffset.UTC) - SCORE_EPOCH) + t.getNano() / 1e9;
+        return Math.log(engagement) + decayPerSecond * age;
+    }
+
+    private synchronized void put(Entry e) {
+        Entry old = byId.put(e.postId, e);
+        if (old != null) byScore.remove(old);
+        byScore.add(e);
+        updates.incrementAndGet();
+        while (byId.size() > maxIndexedPosts) {
+            Entry last = byScore.pollLast();
+            if (last == null) break;
+            byId.remove(last.postId);
+            evicted.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("social.ranking.indexed", byId, Map::size)
+                .description("Posts held in the feed ranking index")
+                .register(registry);
+        FunctionCounter.builder("social.ranking.updates", updates, AtomicLong::get)
+                .description("Score updates applied to the ranking index")
+                .register(registry);
+        FunctionCounter.builder("social.ranking.evicted", evicted, AtomicLong::get)
+                .description("Lowest-scored posts dropped to keep the index bounded")
+                .register(registry);
+    }
+
+    /** A post and its score for one viewer. */
+    static final class Scored {
+        final String postId;
+        final double score;
+
+        Scored(String postId, double score) {
+            this.postId = postId;
+            this.score = score;
+        }
+    }
+
+    /** An indexed post: what its score was computed from, plus what visibility needs. */
+    private final class Entry {
+        final String postId;
+        final String authorId;
+        final String visibility;
+        final int likes;
+        final int comments;
+        final double score;
+
+        Entry(SocialPost p, int likes, int comments) {
+            this.postId = p.getId();
+            this.authorId = p.getAuthorId();
+            this.visibility = p.getVisibility();
+            this.likes = likes;
+            this.comments = comments;
+            this.score = score(p, likes, comments);
+        }
+
+        /** The feed's rules: public posts, the viewer's own, and friends' friends-posts. */
+        boolean visibleTo(String viewerUid, Set<String> friendIds) {
+            if ("public".equals(visibility)) return true;
+            if (viewerUid == null || authorId == null) return false;
+            return viewerUid.equals(authorId) || ("friends".equals(visibility) && friendIds.contains(authorId));
+        }
+    }
+}
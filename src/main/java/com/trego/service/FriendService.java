@@ -3,20 +3,26 @@ package com.trego.service;
 import com.trego.model.FriendRequest;
 import com.trego.model.Friendship;
 import com.trego.repository.FriendGraphRepository;
-import com.trego.repository.FriendGraphRepository.UserView;
+import com.trego.repository.AuthorRepository;
+import com.trego.repository.AuthorRepository.AuthorView;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Friend-graph business logic. Requests are directional; an accepted request
  * materializes a bidirectional {@link Friendship}. Implements {@link
  * FriendshipLookup} so {@link SocialService} can gate friends-visibility posts.
+ * Friend sets are read through {@link FriendSetCache}; every friendship write
+ * here invalidates both users. Names and photos on friend and request cards
+ * come from the shared {@link AuthorCache}, one batched lookup per list.
  *
  * <p>Identifier resolution is email-only for now (case-insensitive, exact).
  * Username resolution is a documented follow-up (no username field on User yet).
@@ -25,9 +31,25 @@ import java.util.NoSuchElementException;
 public class FriendService implements FriendshipLookup {
 
     private final FriendGraphRepository repo;
+    private final FriendshipListener listener;
+    private final FriendSetCache friendSets;
+    private final AuthorCache authors;
 
-    public FriendService(FriendGraphRepository repo) {
+    @org.springframework.beans.factory.annotation.Autowired
+    public FriendService(FriendGraphRepository repo, FriendshipListener listener, FriendSetCache friendSets,
+                         AuthorCache authors) {
         this.repo = repo;
+        this.listener = listener;
+        this.friendSets = friendSets;
+        this.authors = authors;
+    }
+
+    public FriendService(FriendGraphRepository repo, AuthorRepository authors, FriendshipListener listener) {
+        this(repo, listener, new FriendSetCache(10_000, 60), new AuthorCache(authors, 10_000, 60));
+    }
+
+    public FriendService(FriendGraphRepository repo, AuthorRepository authors) {
+        this(repo, authors, FriendshipListener.NONE);
     }
 
     /**
@@ -42,7 +64,8 @@ public class FriendService implements FriendshipLookup {
         if (toUid.equals(fromUid)) {
             throw new IllegalArgumentException("You cannot send a friend request to yourself");
         }
-        if (areFriends(fromUid, toUid)) {
+        // Straight from the store: a write should not trust another instance's stale cache.
+        if (repo.findFriendship(Friendship.pairKeyFor(fromUid, toUid)).isPresent()) {
             throw new IllegalStateException("You are already friends");
         }
         if (repo.findPending(fromUid, toUid).isPresent()) {
@@ -56,6 +79,8 @@ public class FriendService implements FriendshipLookup {
             r.setStatus(FriendRequest.STATUS_ACCEPTED);
             repo.saveRequest(r);
             repo.saveFriendship(Friendship.of(fromUid, toUid));
+            invalidate(fromUid, toUid);
+            listener.friendshipCreated(fromUid, toUid);
             Map<String, Object> result = new LinkedHashMap<>();
             result.put("status", "friends");
             return result;
@@ -70,7 +95,7 @@ public class FriendService implements FriendshipLookup {
 
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("status", "pending");
-        result.put("request", toRequestView(saved, fromUid));
+        result.put("request", toRequestView(saved, fromUid, authors.getAll(List.of(toUid)).get(toUid)));
         return result;
     }
 
@@ -89,6 +114,8 @@ public class FriendService implements FriendshipLookup {
             repo.saveRequest(r);
             if (repo.findFriendship(Friendship.pairKeyFor(r.getFromUid(), r.getToUid())).isEmpty()) {
                 repo.saveFriendship(Friendship.of(r.getFromUid(), r.getToUid()));
+                invalidate(r.getFromUid(), r.getToUid());
+                listener.friendshipCreated(r.getFromUid(), r.getToUid());
             }
         } else {
             r.setStatus(FriendRequest.STATUS_DECLINED);
@@ -108,25 +135,36 @@ public class FriendService implements FriendshipLookup {
     }
 
     public List<Map<String, Object>> getFriends(String uid) {
+        List<Friendship> friendships = repo.findFriendshipsFor(uid);
+        Set<String> others = new HashSet<>();
+        for (Friendship f : friendships) {
+            String other = f.otherUser(uid);
+            if (other != null) others.add(other);
+        }
+        Map<String, AuthorView> views = others.isEmpty() ? Map.of() : authors.getAll(others);
         List<Map<String, Object>> out = new ArrayList<>();
-        for (Friendship f : repo.findFriendshipsFor(uid)) {
+        for (Friendship f : friendships) {
             String other = f.otherUser(uid);
             if (other == null) continue;
-            UserView u = repo.getUserView(other).orElse(new UserView(other, null, null));
+            AuthorView u = views.get(other);
             Map<String, Object> m = new LinkedHashMap<>();
             m.put("id", f.getId());
             m.put("uid", other);
-            m.put("name", u.name);
-            m.put("photoURL", u.photoUrl);
+            m.put("name", u != null ? u.name : null);
+            m.put("photoURL", u != null ? u.photoUrl : null);
             out.add(m);
         }
         return out;
     }
 
     public List<Map<String, Object>> getRequests(String uid) {
+        List<FriendRequest> pending = repo.findPendingInvolving(uid);
+        Set<String> others = new HashSet<>();
+        for (FriendRequest r : pending) others.add(otherParty(r, uid));
+        Map<String, AuthorView> views = others.isEmpty() ? Map.of() : authors.getAll(others);
         List<Map<String, Object>> out = new ArrayList<>();
-        for (FriendRequest r : repo.findPendingInvolving(uid)) {
-            out.add(toRequestView(r, uid));
+        for (FriendRequest r : pending) {
+            out.add(toRequestView(r, uid, views.get(otherParty(r, uid))));
         }
         return out;
     }
@@ -134,26 +172,46 @@ public class FriendService implements FriendshipLookup {
     /** Remove an existing friendship. No-op if not friends. */
     public void unfriend(String viewerUid, String friendUid) {
         repo.findFriendship(Friendship.pairKeyFor(viewerUid, friendUid))
-                .ifPresent(f -> repo.deleteFriendship(f.getId()));
+                .ifPresent(f -> {
+                    repo.deleteFriendship(f.getId());
+                    invalidate(viewerUid, friendUid);
+                });
     }
 
+    /** [uid]'s friends, from the cache when present. Immutable. */
     @Override
-    public boolean areFriends(String a, String b) {
-        if (a == null || b == null) return false;
-        return repo.findFriendship(Friendship.pairKeyFor(a, b)).isPresent();
+    public Set<String> friendIdsOf(String uid) {
+        return friendSets.get(uid, this::loadFriendIds);
     }
 
     // --- helpers ---
 
-    private Map<String, Object> toRequestView(FriendRequest r, String viewerUid) {
+    private Set<String> loadFriendIds(String uid) {
+        Set<String> out = new java.util.HashSet<>();
+        for (Friendship f : repo.findFriendshipsFor(uid)) {
+            String other = f.otherUser(uid);
+            if (other != null) out.add(other);
+        }
+        return out;
+    }
+
+    private void invalidate(String a, String b) {
+        friendSets.invalidate(a);
+        friendSets.invalidate(b);
+    }
+
+    private static String otherParty(FriendRequest r, String viewerUid) {
+        return viewerUid.equals(r.getToUid()) ? r.getFromUid() : r.getToUid();
+    }
+
+    private Map<String, Object> toRequestView(FriendRequest r, String viewerUid, AuthorView u) {
         boolean incoming = viewerUid.equals(r.getToUid());
-        String otherUid = incoming ? r.getFromUid() : r.getToUid();
-        UserView u = repo.getUserView(otherUid).orElse(new UserView(otherUid, null, null));
+        String otherUid = otherParty(r, viewerUid);
 
         Map<String, Object> user = new LinkedHashMap<>();
         user.put("uid", otherUid);
-        user.put("name", u.name);
-        user.put("photoURL", u.photoUrl);
+        user.put("name", u != null ? u.name : null);
+        user.put("photoURL", u != null ? u.photoUrl : null);
 
         Map<String, Object> m = new LinkedHashMap<>();
         m.put("id", r.getId());
@@ -0,0 +1,66 @@
+package com.trego.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Bounded per-user cache of friend UID sets, so friendship checks on the feed
+ * and friend-request paths cost one friendships query per user per TTL rather
+ * than one per check.
+ *
+ * <p>{@link FriendService} invalidates both users whenever it creates or removes
+ * a friendship. That only reaches this instance; other instances see the change
+ * once their entry expires, so the TTL bounds cross-instance staleness.
+ * Hit/miss/eviction counters are published as {@code cache.*} tagged
+ * {@code cache=friendSets}.
+ */
+@Component
+public class FriendSetCache implements MeterBinder {
+
+    private final Cache<String, Set<String>> cache;
+
+    @Autowired
+    public FriendSetCache(@Value("${friends.cache.max-size:50000}") long maxSize,
+                          @Value("${friends.cache.ttl-seconds:60}") long ttlSeconds) {
+        this(maxSize, Duration.ofSeconds(ttlSeconds), Ticker.systemTicker());
+    }
+
+    /** Test constructor with injectable ticker. */
+    FriendSetCache(long maxSize, Duration ttl, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /** [uid]'s friends, loading them with [loader] on a miss. The returned set is immutable. */
+    Set<String> get(String uid, Function<String, Set<String>> loader) {
+        return cache.get(uid, k -> Set.copyOf(loader.apply(k)));
+    }
+
+    void invalidate(String uid) {
+        cache.invalidate(uid);
+    }
+
+    long hitCount() { return cache.stats().hitCount(); }
+    long missCount() { return cache.stats().missCount(); }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "friendSets");
+    }
+}
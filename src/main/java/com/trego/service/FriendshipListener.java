@@ -0,0 +1,12 @@
+package com.trego.service;
+
+/**
+ * Told by {@link FriendService} when two users become friends, so features that
+ * precompute per-friend data (the feed timelines) can catch up.
+ */
+public interface FriendshipListener {
+
+    FriendshipListener NONE = (a, b) -> { };
+
+    void friendshipCreated(String a, String b);
+}
@@ -1,10 +1,32 @@
 package com.trego.service;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
- * Narrow seam letting {@link SocialService} ask "are these two users friends?"
+ * Narrow seam letting {@link SocialService} ask who a user's friends are
  * without depending on the whole {@link FriendService}. Implemented by
  * FriendService; tests can supply a trivial lambda.
  */
 public interface FriendshipLookup {
-    boolean areFriends(String a, String b);
+
+    /** UIDs of everyone [uid] is friends with; empty for none. */
+    Set<String> friendIdsOf(String uid);
+
+    default boolean areFriends(String a, String b) {
+        if (a == null || b == null) return false;
+        return friendIdsOf(a).contains(b);
+    }
+
+    /** The members of [candidates] that [viewer] is friends with, from one friend-set read. */
+    default Set<String> friendsAmong(String viewer, Collection<String> candidates) {
+        Set<String> out = new HashSet<>();
+        if (viewer == null) return out;
+        Set<String> friends = friendIdsOf(viewer);
+        for (String c : candidates) {
+            if (friends.contains(c)) out.add(c);
+        }
+        return out;
+    }
 }
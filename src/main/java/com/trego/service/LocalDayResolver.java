@@ -0,0 +1,54 @@
+package com.trego.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Maps epoch seconds to the local epoch-day in one zone without building a
+ * ZonedDateTime per call. The UTC offset in force is cached together with the
+ * instant of the zone's next transition; runs arrive in time order, so the
+ * rules are only consulted again when a run crosses a DST change (about twice
+ * a year of history) or goes backwards.
+ */
+final class LocalDayResolver {
+
+    private static final long SECONDS_PER_DAY = 86_400L;
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private final boolean fixed;
+
+    private long validFrom = Long.MAX_VALUE;
+    private long validUntil = Long.MIN_VALUE;
+    private int offsetSeconds;
+
+    LocalDayResolver(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        this.fixed = rules.isFixedOffset();
+        if (fixed) offsetSeconds = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+    }
+
+    ZoneId zone() { return zone; }
+
+    /** Local calendar day, as epoch-day, of the instant [epochSecond]. */
+    long epochDay(long epochSecond) {
+        if (!fixed && (epochSecond < validFrom || epochSecond >= validUntil)) {
+            Instant at = Instant.ofEpochSecond(epochSecond);
+            offsetSeconds = rules.getOffset(at).getTotalSeconds();
+            ZoneOffsetTransition next = rules.nextTransition(at);
+            validFrom = epochSecond;
+            validUntil = next != null ? next.toEpochSecond() : Long.MAX_VALUE;
+        }
+        return Math.floorDiv(epochSecond + offsetSeconds, SECONDS_PER_DAY);
+    }
+
+    /** First instant of the local day [epochDay]; DST gaps at midnight resolve forwards. */
+    Instant startOfDay(long epochDay) {
+        if (fixed) return Instant.ofEpochSecond(epochDay * SECONDS_PER_DAY - offsetSeconds);
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(zone).toInstant();
+    }
+}
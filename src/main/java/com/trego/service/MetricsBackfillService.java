@@ -0,0 +1,247 @@
+package com.trego.service;
+
+import com.trego.dto.BackfillStatusDto;
+import com.trego.dto.RecomputeResultDto;
+import com.trego.repository.MetricsBackfillRepository;
+import com.trego.repository.MetricsBackfillRepository.Checkpoint;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk metrics recompute across all users, so a SCHEMA_VERSION bump is paid by a
+ * background job rather than by each user's first GET /metrics/me after deploy.
+ *
+ * <p>Users are paged in ID order; each page is recomputed on a fixed worker pool
+ * and a checkpoint is written once the whole page is done, so a restarted job
+ * resumes after the last fully processed page. Users whose recompute failed are
+ * kept in the checkpoint and retried first by the next run, including after the
+ * job has otherwise completed. Firestore writes are throttled by
+ * a shared token bucket: each worker pays for the docs its recompute wrote
+ * before taking the next user, which holds the average write rate at the budget.
+ */
+@Service
+public class MetricsBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsBackfillService.class);
+
+    private final MetricsService metrics;
+    private final MetricsBackfillRepository repo;
+    private final Clock clock;
+    private final int pageSize;
+
+    private volatile Job current;
+
+    @Autowired
+    public MetricsBackfillService(MetricsService metrics, MetricsBackfillRepository repo,
+                                  @Value("${metrics.backfill.page-size:100}") int pageSize) {
+        this(metrics, repo, pageSize, Clock.systemUTC());
+    }
+
+    public MetricsBackfillService(MetricsService metrics, MetricsBackfillRepository repo,
+                                  int pageSize, Clock clock) {
+        this.metrics = metrics;
+        this.repo = repo;
+        this.pageSize = pageSize;
+        this.clock = clock;
+    }
+
+    /**
+     * Start the backfill on a background thread. Resumes from the checkpoint for
+     * the current SCHEMA_VERSION unless [restart] is set.
+     *
+     * @throws IllegalStateException if a backfill is already running
+     */
+    public synchronized BackfillStatusDto start(int workers, int writesPerSecond, boolean restart) {
+        if (current != null && current.isActive()) {
+            throw new IllegalStateException("A metrics backfill is already running");
+        }
+        Job job = new Job(workers, writesPerSecond, restart);
+        current = job;
+        Thread t = new Thread(() -> run(job), "metrics-backfill");
+        t.setDaemon(true);
+        t.start();
+        return status();
+    }
+
+    /** Ask the running backfill to stop after its current page. */
+    public void stop() {
+        Job job = current;
+        if (job != null && job.isActive()) job.state = "stopping";
+    }
+
+    public BackfillStatusDto status() {
+        Job job = current;
+        BackfillStatusDto dto = new BackfillStatusDto();
+        dto.setSchemaVersion(MetricsService.SCHEMA_VERSION);
+        if (job == null) {
+            dto.setState("idle");
+            return dto;
+        }
+        dto.setState(job.state);
+        dto.setStartedAt(job.startedAt);
+        dto.setLastUid(job.lastUid);
+        dto.setUsersDone(job.baseUsers + job.users.get());
+        dto.setRunsDone(job.baseRuns + job.runs.get());
+        dto.setRunsTotal(job.runsTotal);
+        dto.setFailures(job.failed.size());
+        dto.setError(job.error);
+
+        double elapsedSec = Math.max(1e-3, Duration.between(job.startedAt, Instant.now(clock)).toMillis() / 1000.0);
+        double runsPerSec = job.runs.get() / elapsedSec;
+        dto.setUsersPerSec(job.users.get() / elapsedSec);
+        dto.setRunsPerSec(runsPerSec);
+        // Users are only known by walking their runs, so progress is measured in runs.
+        if (runsPerSec > 0) {
+            long remaining = Math.max(0, dto.getRunsTotal() - dto.getRunsDone());
+            dto.setEtaSeconds(Math.round(remaining / runsPerSec));
+        }
+        return dto;
+    }
+
+    /** Run a backfill to completion on the calling thread (tests, one-off tooling). */
+    synchronized BackfillStatusDto runNow(int workers, int writesPerSecond, boolean restart) {
+        if (current != null && current.isActive()) {
+            throw new IllegalStateException("A metrics backfill is already running");
+        }
+        Job job = new Job(workers, writesPerSecond, restart);
+        current = job;
+        run(job);
+        return status();
+    }
+
+    private void run(Job job) {
+        ExecutorService pool = Executors.newFixedThreadPool(job.workers);
+        Bucket budget = Bucket.builder()
+                .addLimit(Bandwidth.simple(job.writesPerSecond, Duration.ofSeconds(1)))
+                .build();
+        try {
+            Checkpoint cp = job.restart ? null
+                    : repo.readCheckpoint(MetricsService.SCHEMA_VERSION).orElse(null);
+            if (cp != null) {
+                job.lastUid = cp.lastUid;
+                job.baseUsers = cp.usersDone;
+                job.baseRuns = cp.runsDone;
+                job.failed.addAll(cp.failedUids);
+                if (cp.complete && cp.failedUids.isEmpty()) {
+                    job.state = "complete";
+                    return;
+                }
+            }
+            job.runsTotal = repo.countRuns();
+
+            if (!job.failed.isEmpty()) {
+                recomputeAll(job, List.copyOf(job.failed), pool, budget);
+                if (cp.complete) job.state = "complete";
+                else writeCheckpoint(job, false);
+            }
+
+            while ("running".equals(job.state)) {
+                List<String> page = repo.listUserIds(job.lastUid, pageSize);
+                if (page.isEmpty()) {
+                    job.state = "complete";
+                    break;
+                }
+                recomputeAll(job, page, pool, budget);
+                job.lastUid = page.get(page.size() - 1);
+                writeCheckpoint(job, false);
+            }
+            if ("complete".equals(job.state)) writeCheckpoint(job, true);
+            if ("stopping".equals(job.state)) job.state = "idle";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.state = "failed";
+            job.error = "interrupted";
+        } catch (ExecutionException | RuntimeException e) {
+            logger.error("Metrics backfill failed after {}: {}", job.lastUid, e.getMessage());
+            job.state = "failed";
+            job.error = e.getMessage();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Recompute [uids] on the pool and wait for all of them. */
+    private void recomputeAll(Job job, List<String> uids, ExecutorService pool, Bucket budget)
+            throws InterruptedException, ExecutionException {
+        List<Future<?>> pending = new ArrayList<>(uids.size());
+        for (String uid : uids) {
+            pending.add(pool.submit(() -> recomputeOne(job, uid, budget)));
+        }
+        for (Future<?> f : pending) f.get();
+    }
+
+    private void recomputeOne(Job job, String uid, Bucket budget) {
+        try {
+            RecomputeResultDto r = metrics.recompute(uid);
+            job.failed.remove(uid);
+            job.users.incrementAndGet();
+            job.runs.addAndGet(r.getRunCount());
+            long docs = r.getDocsWritten();
+            while (docs > 0) {
+                long chunk = Math.min(docs, job.writesPerSecond);
+                budget.asBlocking().consume(chunk);
+                docs -= chunk;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            job.failed.add(uid);
+            logger.warn("Metrics backfill recompute failed for {}: {}", uid, e.getMessage());
+        }
+    }
+
+    private void writeCheckpoint(Job job, boolean complete) {
+        repo.writeCheckpoint(new Checkpoint(MetricsService.SCHEMA_VERSION, job.lastUid,
+                job.baseUsers + job.users.get(), job.baseRuns + job.runs.get(),
+                job.failed.size(), complete, Instant.now(clock), List.copyOf(job.failed)));
+    }
+
+    /** Mutable progress of one backfill invocation. */
+    private final class Job {
+        final int workers;
+        final int writesPerSecond;
+        final boolean restart;
+        final Instant startedAt = Instant.now(clock);
+        final AtomicLong users = new AtomicLong();
+        final AtomicLong runs = new AtomicLong();
+        /** Users whose last recompute failed, to retry on the next run. */
+        final Set<String> failed = new ConcurrentSkipListSet<>();
+        volatile String state = "running";
+        volatile String lastUid;
+        volatile long runsTotal;
+        volatile long baseUsers;
+        volatile long baseRuns;
+        volatile String error;
+
+        Job(int workers, int writesPerSecond, boolean restart) {
+            if (workers < 1 || writesPerSecond < 1) {
+                throw new IllegalArgumentException("workers and writesPerSecond must be positive");
+            }
+            this.workers = workers;
+            this.writesPerSecond = writesPerSecond;
+            this.restart = restart;
+        }
+
+        boolean isActive() {
+            return "running".equals(state) || "stopping".equals(state);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.trego.service;
+
+import com.trego.dto.LifetimeTotalsDto;
+import com.trego.dto.PrEntryDto;
+import com.trego.dto.PrsDto;
+import com.trego.dto.WeeklyMetricsDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsRepository.DailyAggregate;
+import com.trego.repository.MetricsRepository.FoldState;
+
+import java.time.*;
+import java.time.temporal.WeekFields;
+import java.util.*;
+
+/**
+ * Running accumulator behind {@link MetricsService#recompute}. Runs are applied
+ * one at a time in (startTime, runId) order; the accumulated PRs, totals, daily
+ * and weekly buckets plus the high-water mark can be persisted as a
+ * {@link FoldState} and later resumed, so a recompute only has to read the runs
+ * written since the last one.
+ *
+ * <p>Days and ISO weeks are calendar days and weeks in the user's zone. Daily and
+ * weekly buckets are held in primitive {@link BucketTable}s keyed by local
+ * epoch-day and {@code year * 100 + isoWeek}, and {@link LocalDayResolver} maps
+ * run instants to local days from a cached offset, so applying a run allocates
+ * nothing unless it sets a PR. The {@link LocalDate} / ISO-week-string maps the rest of
+ * the service works with are built on demand and reused until the next apply.
+ *
+ * <p>Days touched since the fold was created or resumed are tracked in
+ * {@link #dirtyDays()} so callers only rewrite the daily docs that changed.
+ */
+final class MetricsFold {
+
+    private final PrsDto prs;
+    private final LifetimeTotalsDto totals;
+    private final LocalDayResolver local;
+    private final BucketTable days;
+    private final BucketTable weeks;
+    private int runCount;
+    private Instant watermarkStartTime;
+    private String watermarkRunId;
+
+    // Runs arrive in time order, so consecutive runs mostly share a week.
+    private long lastMonday = Long.MIN_VALUE;
+    private int lastWeekKey;
+
+    // Boundary views, dropped on every apply.
+    private Map<LocalDate, DailyAggregate> dailyView;
+    private Map<String, WeeklyMetricsDto> weeklyView;
+
+    private MetricsFold(PrsDto prs, LifetimeTotalsDto totals, ZoneId zone, BucketTable days, BucketTable weeks,
+                        int runCount, Instant watermarkStartTime, String watermarkRunId) {
+        this.prs = prs;
+        this.totals = totals;
+        this.local = new LocalDayResolver(zone);
+        this.days = days;
+        this.weeks = weeks;
+        this.runCount = runCount;
+        this.watermarkStartTime = watermarkStartTime;
+        this.watermarkRunId = watermarkRunId;
+    }
+
+    /** A fold over zero runs, bucketing by calendar days in [zone]. */
+    static MetricsFold empty(ZoneId zone) {
+        return new MetricsFold(new PrsDto(), new LifetimeTotalsDto(), zone,
+                new BucketTable(0), new BucketTable(0), 0, null, null);
+    }
+
+    /** Resume from persisted state. The state is copied, never mutated. */
+    static MetricsFold resume(FoldState state) {
+        PrsDto prs = new PrsDto();
+        prs.setFastest1k(state.prs.getFastest1k());
+        prs.setFastest5k(state.prs.getFastest5k());
+        prs.setFastest10k(state.prs.getFastest10k());
+        prs.setLongestDistance(state.prs.getLongestDistance());
+        prs.setLongestDuration(state.prs.getLongestDuration());
+        LifetimeTotalsDto totals = new LifetimeTotalsDto();
+        totals.setTotalKm(state.totals.getTotalKm());
+        totals.setTotalRuns(state.totals.getTotalRuns());
+        totals.setTotalTimeMs(state.totals.getTotalTimeMs());
+        BucketTable days = new BucketTable(state.dailyByDate.size());
+        for (Map.Entry<LocalDate, DailyAggregate> e : state.dailyByDate.entrySet()) {
+            DailyAggregate d = e.getValue();
+            days.load(e.getKey().toEpochDay(), d.totalKm, d.totalRuns, d.totalTimeMs, 0.0);
+        }
+        BucketTable weeks = new BucketTable(state.weeklyByIsoWeek.size());
+        for (Map.Entry<String, WeeklyMetricsDto> e : state.weeklyByIsoWeek.entrySet()) {
+            WeeklyMetricsDto w = e.getValue();
+            weeks.load(parseWeekKey(e.getKey()), w.getTotalKm(), w.getTotalRuns(),
+                    w.getTotalTimeMs(), w.getLongestKm());
+        }
+        ZoneId zone = state.zoneId != null ? ZoneId.of(state.zoneId) : ZoneOffset.UTC;
+        return new MetricsFold(prs, totals, zone, days, weeks,
+                state.runCount, state.watermarkStartTime, state.watermarkRunId);
+    }
+
+    /** Apply one run. Runs must arrive after the current watermark. */
+    void apply(RunRecord run) {
+        long paceSecPerKm = run.getDistanceKm() > 0
+                ? Math.round((run.getDurationMs() / 1000.0) / run.getDistanceKm())
+                : Long.MAX_VALUE;
+
+        // PRs
+        if (run.getDistanceKm() >= 1.0) {
+            if (prs.getFastest1k() == null || paceSecPerKm < prs.getFastest1k().getPaceSecPerKm()) {
+                prs.setFastest1k(makePacePr(run, paceSecPerKm));
+            }
+        }
+        if (run.getDistanceKm() >= 5.0) {
+            if (prs.getFastest5k() == null || paceSecPerKm < prs.getFastest5k().getPaceSecPerKm()) {
+                prs.setFastest5k(makePacePr(run, paceSecPerKm));
+            }
+        }
+        if (run.getDistanceKm() >= 10.0) {
+            if (prs.getFastest10k() == null || paceSecPerKm < prs.getFastest10k().getPaceSecPerKm()) {
+                prs.setFastest10k(makePacePr(run, paceSecPerKm));
+            }
+        }
+        if (prs.getLongestDistance() == null || run.getDistanceKm() > prs.getLongestDistance().getDistanceKm()) {
+            prs.setLongestDistance(makeDistancePr(run));
+        }
+        if (prs.getLongestDuration() == null || run.getDurationMs() > prs.getLongestDuration().getDurationMs()) {
+            prs.setLongestDuration(makeDurationPr(run));
+        }
+
+        // Totals
+        totals.setTotalKm(totals.getTotalKm() + run.getDistanceKm());
+        totals.setTotalRuns(totals.getTotalRuns() + 1);
+        totals.setTotalTimeMs(totals.getTotalTimeMs() + run.getDurationMs());
+
+        // Daily and weekly buckets
+        long epochDay = local.epochDay(run.getStartTime().getEpochSecond());
+        days.addRun(epochDay, run.getDistanceKm(), run.getDurationMs());
+        weeks.addRun(weekKeyOf(epochDay), run.getDistanceKm(), run.getDurationMs());
+        dailyView = null;
+        weeklyView = null;
+
+        // High-water mark
+        runCount++;
+        watermarkStartTime = run.getStartTime();
+        watermarkRunId = run.getRunId();
+    }
+
+    /** Snapshot the accumulators for persistence; [fullFoldAt] is when they last covered every run. */
+    FoldState toState(int schemaVersion, Instant fullFoldAt) {
+        return new FoldState(schemaVersion, local.zone().getId(), runCount, watermarkStartTime, watermarkRunId,
+                prs, totals, dailyByDate(), weeklyByIsoWeek(), fullFoldAt);
+    }
+
+    ZoneId zone() { return local.zone(); }
+    PrsDto prs() { return prs; }
+    LifetimeTotalsDto totals() { return totals; }
+    int runCount() { return runCount; }
+    Instant watermarkStartTime() { return watermarkStartTime; }
+    String watermarkRunId() { return watermarkRunId; }
+
+    /** Daily buckets keyed by local date. Built on first call after an apply; do not mutate. */
+    Map<LocalDate, DailyAggregate> dailyByDate() {
+        if (dailyView == null) dailyView = dailyMap(false);
+        return dailyView;
+    }
+
+    /** Weekly buckets keyed by ISO week ("2026-W16"). Built on first call after an apply; do not mutate. */
+    Map<String, WeeklyMetricsDto> weeklyByIsoWeek() {
+        if (weeklyView == null) {
+            Map<String, WeeklyMetricsDto> out = new HashMap<>(weeks.size() * 2);
+            for (int i = 0; i < weeks.capacity(); i++) {
+                if (!weeks.isUsed(i)) continue;
+                WeeklyMetricsDto w = weekDto((int) weeks.key(i));
+                w.setTotalKm(weeks.km(i));
+                w.setTotalRuns(weeks.runs(i));
+                w.setTotalTimeMs(weeks.timeMs(i));
+                w.setLongestKm(weeks.longestKm(i));
+                w.setAvgPaceSecPerKm(weeks.km(i) > 0
+                        ? Math.round((weeks.timeMs(i) / 1000.0) / weeks.km(i))
+                        : 0L);
+                out.put(w.getIsoYearWeek(), w);
+            }
+            weeklyView = out;
+        }
+        return weeklyView;
+    }
+
+    /** Daily aggregates for the days touched by {@link #apply} on this instance. */
+    Map<LocalDate, DailyAggregate> dirtyDays() {
+        return dailyMap(true);
+    }
+
+    private Map<LocalDate, DailyAggregate> dailyMap(boolean dirtyOnly) {
+        Map<LocalDate, DailyAggregate> out = new HashMap<>();
+        for (int i = 0; i < days.capacity(); i++) {
+            if (!days.isUsed(i) || (dirtyOnly && !days.isDirty(i))) continue;
+            out.put(LocalDate.ofEpochDay(days.key(i)),
+                    new DailyAggregate(days.km(i), days.runs(i), days.timeMs(i)));
+        }
+        return out;
+    }
+
+    /** {@code weekBasedYear * 100 + isoWeek} for the week containing [epochDay]. */
+    private int weekKeyOf(long epochDay) {
+        long monday = epochDay - Math.floorMod(epochDay + 3, 7); // 1970-01-01 was a Thursday
+        if (monday != lastMonday) {
+            // The ISO week belongs to the year of its Thursday.
+            LocalDate thursday = LocalDate.ofEpochDay(monday + 3);
+            lastWeekKey = thursday.getYear() * 100 + (thursday.getDayOfYear() - 1) / 7 + 1;
+            lastMonday = monday;
+        }
+        return lastWeekKey;
+    }
+
+    private static int parseWeekKey(String isoWeek) {
+        int w = isoWeek.indexOf("-W");
+        return Integer.parseInt(isoWeek.substring(0, w)) * 100 + Integer.parseInt(isoWeek.substring(w + 2));
+    }
+
+    /** An empty weekly bucket for an encoded week key, with label and local bounds filled in. */
+    private WeeklyMetricsDto weekDto(int weekKey) {
+        int year = weekKey / 100;
+        int week = weekKey % 100;
+        LocalDate jan4 = LocalDate.of(year, 1, 4);
+        LocalDate monday = jan4.minusDays(jan4.getDayOfWeek().getValue() - 1L).plusWeeks(week - 1L);
+        WeeklyMetricsDto w = new WeeklyMetricsDto();
+        w.setIsoYearWeek(String.format("%d-W%02d", year, week));
+        w.setWeekStart(local.startOfDay(monday.toEpochDay()));
+        w.setWeekEnd(local.startOfDay(monday.toEpochDay() + 7).minusNanos(1));
+        return w;
+    }
+
+    // --- calendar helpers (shared with MetricsService) ---
+
+    static String isoYearWeekOf(Instant t, ZoneId zone) {
+        ZonedDateTime z = t.atZone(zone);
+        int weekBasedYear = z.get(WeekFields.ISO.weekBasedYear());
+        int weekOfYear = z.get(WeekFields.ISO.weekOfWeekBasedYear());
+        return String.format("%d-W%02d", weekBasedYear, weekOfYear);
+    }
+
+    static Instant[] isoWeekBounds(Instant inWeek, ZoneId zone) {
+        LocalDate monday = inWeek.atZone(zone).toLocalDate().with(java.time.DayOfWeek.MONDAY);
+        Instant start = monday.atStartOfDay(zone).toInstant();
+        Instant end = monday.plusDays(7).atStartOfDay(zone).toInstant().minusNanos(1);
+        return new Instant[]{ start, end };
+    }
+
+    static WeeklyMetricsDto cloneWeek(WeeklyMetricsDto src) {
+        WeeklyMetricsDto c = new WeeklyMetricsDto();
+        c.setIsoYearWeek(src.getIsoYearWeek());
+        c.setWeekStart(src.getWeekStart());
+        c.setWeekEnd(src.getWeekEnd());
+        c.setTotalKm(src.getTotalKm());
+        c.setTotalRuns(src.getTotalRuns());
+        c.setTotalTimeMs(src.getTotalTimeMs());
+        c.setAvgPaceSecPerKm(src.getAvgPaceSecPerKm());
+        c.setLongestKm(src.getLongestKm());
+        c.setStreakDays(src.getStreakDays());
+        return c;
+    }
+
+    // --- PR entry builders ---
+
+    private static PrEntryDto makePacePr(RunRecord run, long paceSecPerKm) {
+        PrEntryDto p = new PrEntryDto();
+        p.setRunId(run.getRunId());
+        p.setDistanceKm(run.getDistanceKm());
+        p.setRunStartTime(run.getStartTime());
+        p.setPaceSecPerKm(paceSecPerKm);
+        return p;
+    }
+
+    private static PrEntryDto makeDistancePr(RunRecord run) {
+        PrEntryDto p = new PrEntryDto();
+        p.setRunId(run.getRunId());
+        p.setDistanceKm(run.getDistanceKm());
+        p.setRunStartTime(run.getStartTime());
+        p.setDurationMs(run.getDurationMs());
+        return p;
+    }
+
+    private static PrEntryDto makeDurationPr(RunRecord run) {
+        PrEntryDto p = new PrEntryDto();
+        p.setRunId(run.getRunId());
+        p.setDistanceKm(run.getDistanceKm());
+        p.setRunStartTime(run.getStartTime());
+        p.setDurationMs(run.getDurationMs());
+        return p;
+    }
+}
@@ -0,0 +1,117 @@
+package com.trego.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stale-while-revalidate support for GET /metrics/me: runs snapshot refreshes
+ * on a small bounded pool so the request can return the stored snapshot
+ * straight away. At most one refresh per user is queued or running; when the
+ * queue is full the refresh is dropped and the next stale read tries again.
+ *
+ * <p>Disabled, every stale read recomputes synchronously as before.
+ * {@code hardStaleAfter} caps how old a snapshot may be and still be served.
+ */
+@Component
+public class MetricsRevalidator implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRevalidator.class);
+
+    private final boolean enabled;
+    private final Duration hardStaleAfter;
+    private final Executor executor;
+    private final ThreadPoolExecutor pool; // null when an executor was injected
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public MetricsRevalidator(@Value("${metrics.serving.stale-while-revalidate:false}") boolean enabled,
+                              @Value("${metrics.serving.hard-stale-after-hours:168}") long hardStaleAfterHours,
+                              @Value("${metrics.serving.revalidate-threads:2}") int threads,
+                              @Value("${metrics.serving.revalidate-queue:1000}") int queueCapacity) {
+        this.enabled = enabled;
+        this.hardStaleAfter = Duration.ofHours(hardStaleAfterHours);
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "metrics-revalidate-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    /** Test constructor: refreshes go to [executor]. */
+    MetricsRevalidator(boolean enabled, Duration hardStaleAfter, Executor executor) {
+        this.enabled = enabled;
+        this.hardStaleAfter = hardStaleAfter;
+        this.executor = executor;
+        this.pool = null;
+    }
+
+    /** Always refresh synchronously. */
+    static MetricsRevalidator disabled() {
+        return new MetricsRevalidator(false, Duration.ZERO, Runnable::run);
+    }
+
+    boolean enabled() { return enabled; }
+    Duration hardStaleAfter() { return hardStaleAfter; }
+
+    /**
+     * Queue [refresh] for [uid] unless one is already queued or running.
+     * Never blocks; failures are logged.
+     */
+    void submit(String uid, Runnable refresh) {
+        if (!pending.add(uid)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Background metrics refresh failed for {}", uid, e);
+                } finally {
+                    pending.remove(uid);
+                }
+            });
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            pending.remove(uid);
+            rejected.incrementAndGet();
+        }
+    }
+
+    long rejectedCount() { return rejected.get(); }
+
+    @PreDestroy
+    void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("metrics.revalidate.submitted", submitted, AtomicLong::get)
+                .description("Background snapshot refreshes queued")
+                .register(registry);
+        FunctionCounter.builder("metrics.revalidate.rejected", rejected, AtomicLong::get)
+                .description("Background snapshot refreshes dropped because the queue was full")
+                .register(registry);
+        Gauge.builder("metrics.revalidate.pending", pending, Set::size)
+                .description("Users with a background refresh queued or running")
+                .register(registry);
+    }
+}
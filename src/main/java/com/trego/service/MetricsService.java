@@ -4,31 +4,76 @@ import com.trego.dto.*;
 import com.trego.model.RunRecord;
 import com.trego.repository.MetricsRepository;
 import com.trego.repository.MetricsRepository.DailyAggregate;
+import com.trego.repository.MetricsRepository.FoldState;
+import com.trego.repository.MetricsRepository.RunWriteResult;
 import com.trego.repository.MetricsRepository.StoredSnapshot;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.*;
-import java.time.temporal.WeekFields;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Service
-public class MetricsService {
-    public static final int SCHEMA_VERSION = 1;
+public class MetricsService implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsService.class);
+
+    /**
+     * 3: snapshots are checked against the run version alone, which every run
+     * write now bumps. 2: days and weeks in the user's time zone (1 bucketed by UTC).
+     */
+    public static final int SCHEMA_VERSION = 3;
     public static final int HISTORY_WEEKS = 12;
     public static final Duration STALE_AFTER = Duration.ofHours(24);
+    /** How long a node may hold the recompute lease before others may take over. */
+    public static final Duration RECOMPUTE_LEASE = Duration.ofSeconds(60);
+    public static final int MAX_TRAILING_DAYS = 3660;
+    public static final int MAX_MONTHS = 120;
+    /** Runs per ingestion batch; one Firestore transaction takes at most 500 writes. */
+    public static final int MAX_INGEST_RUNS = 400;
+    /** Earliest startTime accepted on ingest; the latest is a day past now (clock skew). */
+    public static final Instant MIN_RUN_START = Instant.parse("1990-01-01T00:00:00Z");
 
     private final MetricsRepository repo;
+    private final MetricsSnapshotCache cache;
+    private final MetricsRevalidator revalidator;
     private final Clock clock;
+    /** Identifies this instance as a recompute lease holder. */
+    private final String instanceId = UUID.randomUUID().toString();
+    /** In-flight recomputes by uid (full ones under uid + "#full"); concurrent callers join them. */
+    private final ConcurrentHashMap<String, CompletableFuture<RecomputeResultDto>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong dailyWrites = new AtomicLong();
+    private final AtomicLong dailyWritesSaved = new AtomicLong();
 
     /** Spring constructor — uses system clock. */
-    public MetricsService(MetricsRepository repo) {
-        this(repo, Clock.systemUTC());
+    @org.springframework.beans.factory.annotation.Autowired
+    public MetricsService(MetricsRepository repo, MetricsSnapshotCache cache, MetricsRevalidator revalidator) {
+        this(repo, cache, revalidator, Clock.systemUTC());
     }
 
-    /** Test constructor with injectable clock. */
+    /** Test constructor with injectable clock, a default-sized cache and synchronous refreshes. */
     public MetricsService(MetricsRepository repo, Clock clock) {
+        this(repo, new MetricsSnapshotCache(10_000, 300, 0), clock);
+    }
+
+    public MetricsService(MetricsRepository repo, MetricsSnapshotCache cache, Clock clock) {
+        this(repo, cache, MetricsRevalidator.disabled(), clock);
+    }
+
+    public MetricsService(MetricsRepository repo, MetricsSnapshotCache cache,
+                          MetricsRevalidator revalidator, Clock clock) {
         this.repo = repo;
+        this.cache = cache;
+        this.revalidator = revalidator;
         this.clock = clock;
     }
 
@@ -41,153 +86,555 @@ public class MetricsService {
 
     /**
      * Persist the user's weekly goal, stamping updatedAt. Returns the stored goal.
+     * A null time zone keeps the stored one; a new zone re-buckets the metrics
+     * right away.
+     *
+     * @throws IllegalArgumentException if the time zone is not a valid zone ID
      */
     public WeeklyGoalDto setGoal(String uid, WeeklyGoalDto goal) {
+        String previousZone = repo.readGoal(uid).map(WeeklyGoalDto::getTimeZone).orElse(null);
+        String zone = previousZone;
+        if (goal.getTimeZone() != null) {
+            try {
+                zone = ZoneId.of(goal.getTimeZone()).getId();
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Unknown time zone: " + goal.getTimeZone(), e);
+            }
+        }
         WeeklyGoalDto toStore = new WeeklyGoalDto(
-                goal.getTargetKm(), goal.getTargetRuns(), Instant.now(clock));
+                goal.getTargetKm(), goal.getTargetRuns(), Instant.now(clock), zone);
         repo.writeGoal(uid, toStore);
+        if (!parseZone(zone).equals(parseZone(previousZone))) {
+            // The fold state no longer matches the zone, so this is a full recompute.
+            recompute(uid);
+        }
+        // After the recompute, so no range index in the old zone survives.
+        cache.invalidate(uid);
         return toStore;
     }
 
     /**
-     * Read the current snapshot, recomputing if missing or stale.
+     * Read the current snapshot, recomputing if missing or stale. Staleness is
+     * one read of the run version; the snapshot itself is served from the
+     * in-process cache when it holds one for that version. While the cache still
+     * knows the user's run version (see {@link MetricsSnapshotCache}) a hit makes
+     * no Firestore call at all.
+     *
+     * <p>With stale-while-revalidate on, a stale snapshot is returned at once,
+     * flagged {@code stale}, and refreshed in the background, unless it is past
+     * the hard ceiling (older SCHEMA_VERSION or computed too long ago), which
+     * still recomputes synchronously.
+     *
+     * <p>A stale snapshot is only recomputed by the instance holding the user's
+     * recompute lease; while another instance holds it, the previous snapshot is
+     * served as is. Concurrent callers on this instance share one recompute.
      */
     public MetricsSnapshotDto getSnapshot(String uid) {
+        return snapshot(uid, revalidator.enabled());
+    }
+
+    private MetricsSnapshotDto snapshot(String uid, boolean allowStale) {
+        Long known = cache.knownRunVersion(uid);
+        if (known != null) {
+            MetricsSnapshotDto cached = cache.get(uid, known);
+            if (cached != null && !expired(cached)) return cached;
+        }
+        return snapshot(uid, allowStale, readRunVersion(uid));
+    }
+
+    /** [runVersion] is the user's current run version. */
+    private MetricsSnapshotDto snapshot(String uid, boolean allowStale, long runVersion) {
+        MetricsSnapshotDto cached = cache.get(uid, runVersion);
+        if (cached != null && !expired(cached)) return cached;
         Optional<StoredSnapshot> stored = repo.readSnapshot(uid);
-        if (stored.isEmpty() || isStale(stored.get(), uid)) {
+        if (stored.isEmpty()) {
+            // Nothing to fall back on: compute regardless of the lease.
             recompute(uid);
-            stored = repo.readSnapshot(uid);
+            return repo.readSnapshot(uid).get().dto;
+        }
+        if (!isStale(stored.get(), runVersion)) {
+            cache.put(uid, runVersion, stored.get().dto);
+            return stored.get().dto;
+        }
+        if (allowStale && !hardStale(stored.get())) {
+            revalidator.submit(uid, () -> refreshUnderLease(uid));
+            return flaggedStale(stored.get().dto);
+        }
+        if (!refreshUnderLease(uid)) {
+            logger.debug("Recompute lease for {} held elsewhere; serving previous snapshot", uid);
+            return flaggedStale(stored.get().dto);
+        }
+        return repo.readSnapshot(uid).get().dto;
+    }
+
+    /** Recompute if this instance can take the user's lease. False if another instance holds it. */
+    private boolean refreshUnderLease(String uid) {
+        if (!repo.tryAcquireRecomputeLease(uid, instanceId, Instant.now(clock), RECOMPUTE_LEASE)) return false;
+        try {
+            recompute(uid);
+        } finally {
+            repo.releaseRecomputeLease(uid, instanceId);
+        }
+        return true;
+    }
+
+    /**
+     * Totals over the inclusive range of calendar days [from, to] in the user's zone.
+     *
+     * @throws IllegalArgumentException if from is after to
+     */
+    public RangeMetricsDto getRange(String uid, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+        return rangeIndex(uid).query(from, to);
+    }
+
+    /**
+     * Totals over the last [days] calendar days, today included, in the user's zone.
+     *
+     * @throws IllegalArgumentException if days is outside 1..MAX_TRAILING_DAYS
+     */
+    public RangeMetricsDto getTrailing(String uid, int days) {
+        if (days < 1 || days > MAX_TRAILING_DAYS) {
+            throw new IllegalArgumentException("days must be between 1 and " + MAX_TRAILING_DAYS);
         }
-        return stored.get().dto;
+        DailyRangeIndex index = rangeIndex(uid);
+        LocalDate today = LocalDate.now(clock.withZone(index.zone()));
+        return index.query(today.minusDays(days - 1L), today);
     }
 
     /**
-     * Recompute all metrics for a user. Idempotent.
+     * One entry per calendar month for the last [months] months, oldest first,
+     * ending with the current (partial) month in the user's zone.
+     *
+     * @throws IllegalArgumentException if months is outside 1..MAX_MONTHS
+     */
+    public List<RangeMetricsDto> getMonthly(String uid, int months) {
+        if (months < 1 || months > MAX_MONTHS) {
+            throw new IllegalArgumentException("months must be between 1 and " + MAX_MONTHS);
+        }
+        DailyRangeIndex index = rangeIndex(uid);
+        YearMonth current = YearMonth.now(clock.withZone(index.zone()));
+        List<RangeMetricsDto> out = new ArrayList<>(months);
+        for (int i = months - 1; i >= 0; i--) {
+            YearMonth m = current.minusMonths(i);
+            out.add(index.query(m.atDay(1), m.atEndOfMonth()));
+        }
+        return out;
+    }
+
+    /**
+     * Bring the user's metrics up to date. Idempotent. A call that arrives while
+     * another recompute for the same user is running on this instance waits for
+     * and returns that one's result instead of starting its own.
+     *
+     * <p>Resumes from the persisted {@link FoldState} and folds in only the runs
+     * written after its high-water mark. Falls back to {@link #recomputeFull}
+     * when there is no usable fold state (absent, older SCHEMA_VERSION, or
+     * bucketed in a different time zone than the user's current one) or when
+     * the run count no longer adds up — i.e. a run was deleted, or inserted with
+     * a startTime before the watermark. Edits, and a delete offset by a backdated
+     * insert, keep the count unchanged and are invisible to that check, so the
+     * fold is also rebuilt from every run once its last full pass is older than
+     * STALE_AFTER. Callers that edit a run should still use {@link #recomputeFull}.
      */
     public RecomputeResultDto recompute(String uid) {
+        return singleFlight(uid, () -> recomputeIncremental(uid));
+    }
+
+    private RecomputeResultDto recomputeIncremental(String uid) {
         long started = System.currentTimeMillis();
-        List<RunRecord> runs = repo.readRuns(uid);
-
-        // Accumulators
-        PrsDto prs = new PrsDto();
-        LifetimeTotalsDto totals = new LifetimeTotalsDto();
-        Map<LocalDate, DailyAggregate> dailyByDate = new HashMap<>();
-        Map<String, WeeklyMetricsDto> weeklyByIsoWeek = new HashMap<>();
-
-        for (RunRecord run : runs) {
-            long paceSecPerKm = run.getDistanceKm() > 0
-                    ? Math.round((run.getDurationMs() / 1000.0) / run.getDistanceKm())
-                    : Long.MAX_VALUE;
-
-            // PRs
-            if (run.getDistanceKm() >= 1.0) {
-                if (prs.getFastest1k() == null || paceSecPerKm < prs.getFastest1k().getPaceSecPerKm()) {
-                    prs.setFastest1k(makePacePr(run, paceSecPerKm));
-                }
+        // Read the version before any runs, so a run written mid-recompute
+        // leaves the snapshot stale rather than silently missing.
+        long runVersion = readRunVersion(uid);
+        ZoneId zone = zoneOf(uid);
+        Optional<FoldState> state = repo.readFoldState(uid);
+        if (state.isPresent() && isCurrent(state.get(), zone) && !fullFoldDue(state.get())) {
+            MetricsFold fold = MetricsFold.resume(state.get());
+            int before = fold.runCount();
+            Iterator<RunRecord> newer = repo.streamRuns(uid, fold.watermarkStartTime(), fold.watermarkRunId());
+            while (newer.hasNext()) fold.apply(newer.next());
+            if (fold.runCount() == repo.countRuns(uid)) {
+                return persist(uid, fold, fold.dirtyDays(), Set.of(), runVersion, state.get().fullFoldAt, started);
             }
-            if (run.getDistanceKm() >= 5.0) {
-                if (prs.getFastest5k() == null || paceSecPerKm < prs.getFastest5k().getPaceSecPerKm()) {
-                    prs.setFastest5k(makePacePr(run, paceSecPerKm));
-                }
+            // Runs missing or hidden before the watermark: discard and start over.
+            logger.debug("Fold for {} drifted ({} + {} new != count); full recompute",
+                    uid, before, fold.runCount() - before);
+        }
+        return foldAll(uid, zone, state, runVersion, started);
+    }
+
+    /**
+     * Recompute all metrics for a user from every run, discarding any fold state.
+     * Coalesced like {@link #recompute}, but only with other full recomputes.
+     */
+    public RecomputeResultDto recomputeFull(String uid) {
+        return singleFlight(uid + "#full", () -> recomputeAll(uid));
+    }
+
+    private RecomputeResultDto recomputeAll(String uid) {
+        long started = System.currentTimeMillis();
+        long runVersion = readRunVersion(uid);
+        return foldAll(uid, zoneOf(uid), repo.readFoldState(uid), runVersion, started);
+    }
+
+    /**
+     * Write a batch of runs and fold them into the metrics in the same call, so
+     * a client syncing many runs at once causes one aggregate update.
+     *
+     * <p>The run docs and the run-version bump are committed together. When the
+     * batch is all new runs later than the fold's high-water mark, it is applied
+     * straight onto the persisted {@link FoldState} without re-reading any run.
+     * Otherwise (a run ID that already existed, a back-dated run, no usable fold
+     * state, or runs written concurrently by someone else) it falls back to
+     * {@link #recompute}, or {@link #recomputeFull} when existing runs changed.
+     * This and {@link #deleteRuns} are the only ways runs are written.
+     *
+     * <p>The fold runs under the user's recompute lease and as this instance's
+     * in-flight recompute for the user, after any that was already running, so
+     * it never races another fold. When another instance holds the lease the
+     * runs are still written but not folded: the result has no recomputedAt,
+     * and the bumped run version makes the next read recompute.
+     *
+     * @throws IllegalArgumentException if the batch is empty, larger than
+     *         MAX_INGEST_RUNS, repeats a run ID, or holds an invalid run
+     *         (including a startTime before MIN_RUN_START or over a day ahead)
+     */
+    public RecomputeResultDto ingestRuns(String uid, List<RunIngestDto> batch) {
+        long started = System.currentTimeMillis();
+        List<RunRecord> runs = validateIngest(batch, Instant.now(clock));
+        runs.sort(Comparator.comparing(RunRecord::getStartTime).thenComparing(RunRecord::getRunId));
+        RunWriteResult written = repo.writeRuns(uid, runs);
+        cache.seenRunVersion(uid, written.runVersion);
+        return foldUnderLease(uid, started, () -> foldIngested(uid, runs, written, started));
+    }
+
+    private RecomputeResultDto foldIngested(String uid, List<RunRecord> runs, RunWriteResult written, long started) {
+        if (!written.existingRunIds.isEmpty()) return recomputeAll(uid);
+        ZoneId zone = zoneOf(uid);
+        Optional<FoldState> state = repo.readFoldState(uid);
+        if (state.isEmpty() || !isCurrent(state.get(), zone) || fullFoldDue(state.get())) {
+            return recomputeIncremental(uid);
+        }
+        MetricsFold fold = MetricsFold.resume(state.get());
+        if (!after(runs.get(0), fold.watermarkStartTime(), fold.watermarkRunId())) return recomputeIncremental(uid);
+        for (RunRecord r : runs) fold.apply(r);
+        if (fold.runCount() != repo.countRuns(uid)) return recomputeIncremental(uid);
+        return persist(uid, fold, fold.dirtyDays(), Set.of(), written.runVersion, state.get().fullFoldAt, started);
+    }
+
+    /**
+     * Delete runs by ID and bring the metrics up to date. The deletes and the
+     * run-version bump are committed together. IDs that do not exist are
+     * ignored; when none existed nothing is recomputed. The recompute is leased
+     * and serialized like the fold in {@link #ingestRuns}.
+     *
+     * @throws IllegalArgumentException if runIds is empty, larger than
+     *         MAX_INGEST_RUNS, or holds an invalid run ID
+     */
+    public RecomputeResultDto deleteRuns(String uid, List<String> runIds) {
+        long started = System.currentTimeMillis();
+        if (runIds == null || runIds.isEmpty() || runIds.size() > MAX_INGEST_RUNS) {
+            throw new IllegalArgumentException("between 1 and " + MAX_INGEST_RUNS + " runs per request");
+        }
+        for (String id : runIds) {
+            if (!validRunId(id)) throw new IllegalArgumentException("invalid runId");
+        }
+        RunWriteResult deleted = repo.deleteRuns(uid, runIds);
+        cache.seenRunVersion(uid, deleted.runVersion);
+        if (deleted.existingRunIds.isEmpty()) return recompute(uid);
+        return foldUnderLease(uid, started, () -> recomputeAll(uid));
+    }
+
+    private static boolean validRunId(String id) {
+        return id != null && !id.isBlank() && id.length() <= 128 && !id.contains("/");
+    }
+
+    private static List<RunRecord> validateIngest(List<RunIngestDto> batch, Instant now) {
+        if (batch == null || batch.isEmpty() || batch.size() > MAX_INGEST_RUNS) {
+            throw new IllegalArgumentException("between 1 and " + MAX_INGEST_RUNS + " runs per request");
+        }
+        Set<String> ids = new HashSet<>();
+        List<RunRecord> runs = new ArrayList<>(batch.size());
+        for (RunIngestDto r : batch) {
+            if (r == null || !validRunId(r.getRunId())) {
+                throw new IllegalArgumentException("invalid runId");
             }
-            if (run.getDistanceKm() >= 10.0) {
-                if (prs.getFastest10k() == null || paceSecPerKm < prs.getFastest10k().getPaceSecPerKm()) {
-                    prs.setFastest10k(makePacePr(run, paceSecPerKm));
-                }
+            if (!ids.add(r.getRunId())) throw new IllegalArgumentException("duplicate runId " + r.getRunId());
+            if (r.getStartTime() == null || r.getDistanceKm() == null || r.getDurationMs() == null
+                    || !(r.getDistanceKm() >= 0) || Double.isInfinite(r.getDistanceKm()) || r.getDurationMs() < 0
+                    || r.getStartTime().isBefore(MIN_RUN_START) || r.getStartTime().isAfter(now.plus(Duration.ofDays(1)))) {
+                throw new IllegalArgumentException("invalid run " + r.getRunId());
             }
-            if (prs.getLongestDistance() == null || run.getDistanceKm() > prs.getLongestDistance().getDistanceKm()) {
-                prs.setLongestDistance(makeDistancePr(run));
+            runs.add(new RunRecord(r.getRunId(), r.getDistanceKm(), r.getDurationMs(), r.getStartTime()));
+        }
+        return runs;
+    }
+
+    /** Whether [run] sorts strictly after the (startTime, runId) mark; true when there is no mark. */
+    private static boolean after(RunRecord run, Instant markStartTime, String markRunId) {
+        if (markStartTime == null) return true;
+        int cmp = run.getStartTime().compareTo(markStartTime);
+        return cmp > 0 || (cmp == 0 && run.getRunId().compareTo(markRunId) > 0);
+    }
+
+    /**
+     * Fold a write the caller just committed, under the user's recompute lease
+     * and as the user's in-flight recompute. If another instance holds the lease
+     * and the user has a snapshot, nothing is folded and the result only carries
+     * the run count.
+     */
+    private RecomputeResultDto foldUnderLease(String uid, long started, Supplier<RecomputeResultDto> fold) {
+        return exclusive(uid, () -> {
+            if (!repo.tryAcquireRecomputeLease(uid, instanceId, Instant.now(clock), RECOMPUTE_LEASE)) {
+                // Nothing to fall back on (and callers joining this one expect a snapshot): fold anyway.
+                if (repo.readSnapshot(uid).isEmpty()) return fold.get();
+                logger.debug("Recompute lease for {} held elsewhere; leaving the write for the next read", uid);
+                return new RecomputeResultDto(null, repo.countRuns(uid), System.currentTimeMillis() - started, 0);
             }
-            if (prs.getLongestDuration() == null || run.getDurationMs() > prs.getLongestDuration().getDurationMs()) {
-                prs.setLongestDuration(makeDurationPr(run));
+            try {
+                return fold.get();
+            } finally {
+                repo.releaseRecomputeLease(uid, instanceId);
             }
+        });
+    }
 
-            // Totals
-            totals.setTotalKm(totals.getTotalKm() + run.getDistanceKm());
-            totals.setTotalRuns(totals.getTotalRuns() + 1);
-            totals.setTotalTimeMs(totals.getTotalTimeMs() + run.getDurationMs());
-
-            // Daily aggregates
-            LocalDate date = run.getStartTime().atZone(ZoneOffset.UTC).toLocalDate();
-            DailyAggregate prev = dailyByDate.get(date);
-            if (prev == null) {
-                dailyByDate.put(date, new DailyAggregate(run.getDistanceKm(), 1, run.getDurationMs()));
-            } else {
-                dailyByDate.put(date, new DailyAggregate(
-                        prev.totalKm + run.getDistanceKm(),
-                        prev.totalRuns + 1,
-                        prev.totalTimeMs + run.getDurationMs()
-                ));
+    /**
+     * Run [work] unless a call under [key] is already in flight, in which case
+     * wait for that one. Failures propagate to every waiter.
+     */
+    private RecomputeResultDto singleFlight(String key, Supplier<RecomputeResultDto> work) {
+        CompletableFuture<RecomputeResultDto> mine = new CompletableFuture<>();
+        CompletableFuture<RecomputeResultDto> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw e;
             }
+        }
+        return runInFlight(key, mine, work);
+    }
 
-            // Weekly aggregates
-            String isoWeek = isoYearWeekOf(run.getStartTime());
-            WeeklyMetricsDto wk = weeklyByIsoWeek.computeIfAbsent(isoWeek, k -> {
-                WeeklyMetricsDto w = new WeeklyMetricsDto();
-                w.setIsoYearWeek(k);
-                Instant[] bounds = isoWeekBoundsUtc(run.getStartTime());
-                w.setWeekStart(bounds[0]);
-                w.setWeekEnd(bounds[1]);
-                return w;
-            });
-            wk.setTotalKm(wk.getTotalKm() + run.getDistanceKm());
-            wk.setTotalRuns(wk.getTotalRuns() + 1);
-            wk.setTotalTimeMs(wk.getTotalTimeMs() + run.getDurationMs());
-            if (run.getDistanceKm() > wk.getLongestKm()) wk.setLongestKm(run.getDistanceKm());
+    /**
+     * Run [work] as the in-flight call under [key] once any call already there
+     * has finished; calls arriving meanwhile join this one. Unlike
+     * {@link #singleFlight} it never joins a running call, which may have read
+     * the runs before the caller's write.
+     */
+    private RecomputeResultDto exclusive(String key, Supplier<RecomputeResultDto> work) {
+        CompletableFuture<RecomputeResultDto> mine = new CompletableFuture<>();
+        CompletableFuture<RecomputeResultDto> running;
+        while ((running = inFlight.putIfAbsent(key, mine)) != null) {
+            running.handle((result, failure) -> null).join();
         }
+        return runInFlight(key, mine, work);
+    }
 
-        // avgPaceSecPerKm fill-in for each weekly bucket
-        for (WeeklyMetricsDto w : weeklyByIsoWeek.values()) {
-            w.setAvgPaceSecPerKm(w.getTotalKm() > 0
-                    ? Math.round((w.getTotalTimeMs() / 1000.0) / w.getTotalKm())
-                    : 0L);
+    private RecomputeResultDto runInFlight(String key, CompletableFuture<RecomputeResultDto> mine,
+                                           Supplier<RecomputeResultDto> work) {
+        try {
+            RecomputeResultDto result = work.get();
+            mine.complete(result);
+            return result;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
         }
+    }
 
-        // Build snapshot
+    /** Fold every run from scratch; [previous] only decides which daily docs to touch. */
+    private RecomputeResultDto foldAll(String uid, ZoneId zone, Optional<FoldState> previous,
+                                       long runVersion, long started) {
+        Instant fullFoldAt = Instant.now(clock);
+        MetricsFold fold = MetricsFold.empty(zone);
+        Iterator<RunRecord> runs = repo.streamRuns(uid, null, null);
+        while (runs.hasNext()) fold.apply(runs.next());
+        Map<LocalDate, DailyAggregate> daily = fold.dailyByDate();
+        return persist(uid, fold, changedDays(daily, previous, zone), removedDays(daily, previous),
+                runVersion, fullFoldAt, started);
+    }
+
+    /** Build the snapshot from [fold], then write daily docs, snapshot and fold state. */
+    private RecomputeResultDto persist(String uid, MetricsFold fold,
+                                       Map<LocalDate, DailyAggregate> dailyToWrite,
+                                       Set<LocalDate> dailyToDelete,
+                                       long runVersion, Instant fullFoldAt, long started) {
+        ZoneId zone = fold.zone();
         Instant now = Instant.now(clock);
-        String currentIsoWeek = isoYearWeekOf(now);
-        WeeklyMetricsDto thisWeek = weeklyByIsoWeek.getOrDefault(currentIsoWeek,
-                emptyWeek(currentIsoWeek, isoWeekBoundsUtc(now)));
-        thisWeek.setStreakDays(computeStreak(dailyByDate, now));
+        String currentIsoWeek = isoYearWeekOf(now, zone);
+        WeeklyMetricsDto bucket = fold.weeklyByIsoWeek().get(currentIsoWeek);
+        WeeklyMetricsDto thisWeek = bucket != null
+                ? cloneWeek(bucket)
+                : emptyWeek(currentIsoWeek, isoWeekBounds(now, zone));
+        thisWeek.setStreakDays(computeStreak(fold.dailyByDate(), now, zone));
 
-        List<WeeklyMetricsDto> history = buildHistory(weeklyByIsoWeek, now);
+        List<WeeklyMetricsDto> history = buildHistory(fold.weeklyByIsoWeek(), now, zone);
 
         MetricsSnapshotDto dto = new MetricsSnapshotDto();
         dto.setComputedAt(now);
         dto.setThisWeek(thisWeek);
-        dto.setPrs(prs);
-        dto.setTotals(totals);
+        dto.setPrs(fold.prs());
+        dto.setTotals(fold.totals());
         dto.setHistory(history);
 
-        // Persist
-        StoredSnapshot stored = new StoredSnapshot(SCHEMA_VERSION, runs.size(), dto);
-        repo.writeSnapshot(uid, stored, dailyByDate);
+        // Persist. The fold state goes last: if it is lost the next recompute
+        // simply re-applies the runs after the previous watermark.
+        StoredSnapshot stored = new StoredSnapshot(SCHEMA_VERSION, fold.runCount(), runVersion, dto);
+        repo.writeSnapshot(uid, stored, dailyToWrite, dailyToDelete);
+        repo.writeFoldState(uid, fold.toState(SCHEMA_VERSION, fullFoldAt));
+        cache.put(uid, runVersion, dto);
+
+        dailyWrites.addAndGet(dailyToWrite.size());
+        dailyWritesSaved.addAndGet(fold.dailyByDate().size() - dailyToWrite.size());
 
         long duration = System.currentTimeMillis() - started;
-        return new RecomputeResultDto(now, runs.size(), duration);
+        // daily docs + snapshot + fold state
+        int docsWritten = dailyToWrite.size() + dailyToDelete.size() + 2;
+        return new RecomputeResultDto(now, fold.runCount(), duration, docsWritten);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("metrics.recompute.daily.writes", dailyWrites, AtomicLong::get)
+                .description("Daily aggregate docs written by recompute")
+                .register(registry);
+        FunctionCounter.builder("metrics.recompute.daily.writes.saved", dailyWritesSaved, AtomicLong::get)
+                .description("Daily aggregate docs left untouched because their totals did not change")
+                .register(registry);
     }
 
+    long dailyWrites() { return dailyWrites.get(); }
+    long dailyWritesSaved() { return dailyWritesSaved.get(); }
+
     // --- helpers ---
 
-    private boolean isStale(StoredSnapshot stored, String uid) {
+    /**
+     * Prefix sums over the user's daily aggregates, from the cache when it holds
+     * an index for the current run version. On a miss the metrics are brought up
+     * to date first, then the index is built from the fold state's daily map (one
+     * doc read rather than one per daily doc).
+     */
+    private DailyRangeIndex rangeIndex(String uid) {
+        Long known = cache.knownRunVersion(uid);
+        if (known != null) {
+            DailyRangeIndex cached = cache.getRangeIndex(uid, known);
+            if (cached != null) return cached;
+        }
+        long runVersion = readRunVersion(uid);
+        DailyRangeIndex cached = cache.getRangeIndex(uid, runVersion);
+        if (cached != null) return cached;
+        boolean fresh = snapshot(uid, false, runVersion).getStale() == null;
+        Optional<FoldState> state = repo.readFoldState(uid);
+        if (state.isEmpty()) {
+            // Snapshot written before fold state existed.
+            recompute(uid);
+            state = repo.readFoldState(uid);
+        }
+        DailyRangeIndex index = DailyRangeIndex.build(state.get().dailyByDate, parseZone(state.get().zoneId));
+        if (fresh) cache.putRangeIndex(uid, runVersion, index);
+        return index;
+    }
+
+    /** The user's run version from Firestore, remembered by the cache. */
+    private long readRunVersion(String uid) {
+        long runVersion = repo.readRunVersion(uid);
+        cache.seenRunVersion(uid, runVersion);
+        return runVersion;
+    }
+
+    /** The user's zone from their goal doc; UTC when unset or no longer a known zone. */
+    private ZoneId zoneOf(String uid) {
+        return parseZone(repo.readGoal(uid).map(WeeklyGoalDto::getTimeZone).orElse(null));
+    }
+
+    private static ZoneId parseZone(String id) {
+        if (id == null) return ZoneOffset.UTC;
+        try {
+            return ZoneId.of(id);
+        } catch (DateTimeException e) {
+            logger.warn("Unknown stored time zone {}; using UTC", id);
+            return ZoneOffset.UTC;
+        }
+    }
+
+    private static boolean isCurrent(FoldState state, ZoneId zone) {
+        return state.schemaVersion == SCHEMA_VERSION && zone.getId().equals(state.zoneId);
+    }
+
+    /** The fold has not been rebuilt from every run within STALE_AFTER (or never recorded when). */
+    private boolean fullFoldDue(FoldState state) {
+        return state.fullFoldAt == null || Instant.now(clock).isAfter(state.fullFoldAt.plus(STALE_AFTER));
+    }
+
+    /**
+     * The days in [daily] whose aggregate differs from the persisted fold state.
+     * Everything counts as changed when there is no comparable state, since the
+     * daily docs may then predate the fold or use another bucketing.
+     */
+    private static Map<LocalDate, DailyAggregate> changedDays(Map<LocalDate, DailyAggregate> daily,
+                                                              Optional<FoldState> previous, ZoneId zone) {
+        if (previous.isEmpty() || !isCurrent(previous.get(), zone)) return daily;
+        Map<LocalDate, DailyAggregate> before = previous.get().dailyByDate;
+        Map<LocalDate, DailyAggregate> changed = new HashMap<>();
+        for (Map.Entry<LocalDate, DailyAggregate> e : daily.entrySet()) {
+            if (!e.getValue().equals(before.get(e.getKey()))) changed.put(e.getKey(), e.getValue());
+        }
+        return changed;
+    }
+
+    /** Days the persisted fold state had a daily doc for that [daily] no longer has. */
+    private static Set<LocalDate> removedDays(Map<LocalDate, DailyAggregate> daily,
+                                              Optional<FoldState> previous) {
+        if (previous.isEmpty()) return Set.of();
+        Set<LocalDate> removed = new HashSet<>(previous.get().dailyByDate.keySet());
+        removed.removeAll(daily.keySet());
+        return removed;
+    }
+
+    /**
+     * Local checks first, then the run version: every run write bumps it, so a
+     * snapshot computed at the current version saw every run.
+     */
+    private boolean isStale(StoredSnapshot stored, long runVersion) {
         if (stored.schemaVersion != SCHEMA_VERSION) return true;
-        if (stored.runCountAtCompute != repo.countRuns(uid)) return true;
-        if (stored.dto.getComputedAt() == null) return true;
-        return Instant.now(clock).isAfter(stored.dto.getComputedAt().plus(STALE_AFTER));
+        if (expired(stored.dto)) return true;
+        return stored.runVersionAtCompute != runVersion;
+    }
+
+    /** Too stale to serve even with stale-while-revalidate on. */
+    private boolean hardStale(StoredSnapshot stored) {
+        if (stored.schemaVersion != SCHEMA_VERSION || stored.dto.getComputedAt() == null) return true;
+        return Instant.now(clock).isAfter(stored.dto.getComputedAt().plus(revalidator.hardStaleAfter()));
+    }
+
+    /** A copy of [dto] marked stale; the stored (possibly shared) instance is left alone. */
+    private static MetricsSnapshotDto flaggedStale(MetricsSnapshotDto dto) {
+        MetricsSnapshotDto copy = new MetricsSnapshotDto();
+        copy.setComputedAt(dto.getComputedAt());
+        copy.setThisWeek(dto.getThisWeek());
+        copy.setPrs(dto.getPrs());
+        copy.setTotals(dto.getTotals());
+        copy.setHistory(dto.getHistory());
+        copy.setStale(true);
+        return copy;
+    }
+
+    private boolean expired(MetricsSnapshotDto dto) {
+        if (dto.getComputedAt() == null) return true;
+        return Instant.now(clock).isAfter(dto.getComputedAt().plus(STALE_AFTER));
     }
 
-    private static String isoYearWeekOf(Instant t) {
-        ZonedDateTime z = t.atZone(ZoneOffset.UTC);
-        int weekBasedYear = z.get(WeekFields.ISO.weekBasedYear());
-        int weekOfYear = z.get(WeekFields.ISO.weekOfWeekBasedYear());
-        return String.format("%d-W%02d", weekBasedYear, weekOfYear);
+    private static String isoYearWeekOf(Instant t, ZoneId zone) {
+        return MetricsFold.isoYearWeekOf(t, zone);
     }
 
-    private static Instant[] isoWeekBoundsUtc(Instant inWeek) {
-        ZonedDateTime z = inWeek.atZone(ZoneOffset.UTC);
-        ZonedDateTime monday = z.with(java.time.DayOfWeek.MONDAY).truncatedTo(java.time.temporal.ChronoUnit.DAYS);
-        ZonedDateTime sundayEnd = monday.plusDays(7).minusNanos(1);
-        return new Instant[]{ monday.toInstant(), sundayEnd.toInstant() };
+    private static Instant[] isoWeekBounds(Instant inWeek, ZoneId zone) {
+        return MetricsFold.isoWeekBounds(inWeek, zone);
     }
 
     private static WeeklyMetricsDto emptyWeek(String isoWeek, Instant[] bounds) {
@@ -198,8 +645,8 @@ public class MetricsService {
         return w;
     }
 
-    private static int computeStreak(Map<LocalDate, DailyAggregate> daily, Instant now) {
-        LocalDate today = now.atZone(ZoneOffset.UTC).toLocalDate();
+    private static int computeStreak(Map<LocalDate, DailyAggregate> daily, Instant now, ZoneId zone) {
+        LocalDate today = now.atZone(zone).toLocalDate();
         if (!daily.containsKey(today)) return 0;
         int streak = 1;
         LocalDate cursor = today.minusDays(1);
@@ -210,64 +657,28 @@ public class MetricsService {
         return streak;
     }
 
-    private static List<WeeklyMetricsDto> buildHistory(Map<String, WeeklyMetricsDto> weeklyByIsoWeek, Instant now) {
+    private static List<WeeklyMetricsDto> buildHistory(Map<String, WeeklyMetricsDto> weeklyByIsoWeek,
+                                                       Instant now, ZoneId zone) {
         List<WeeklyMetricsDto> history = new ArrayList<>(HISTORY_WEEKS);
-        ZonedDateTime cursor = now.atZone(ZoneOffset.UTC);
+        ZonedDateTime cursor = now.atZone(zone);
         // Walk back HISTORY_WEEKS - 1 weeks, oldest first
         for (int i = HISTORY_WEEKS - 1; i >= 0; i--) {
             ZonedDateTime weekTime = cursor.minusWeeks(i);
             Instant inThatWeek = weekTime.toInstant();
-            String isoWeek = isoYearWeekOf(inThatWeek);
+            String isoWeek = isoYearWeekOf(inThatWeek, zone);
             WeeklyMetricsDto bucket = weeklyByIsoWeek.get(isoWeek);
             if (bucket != null) {
                 WeeklyMetricsDto copy = cloneWeek(bucket);
                 copy.setStreakDays(0);
                 history.add(copy);
             } else {
-                history.add(emptyWeek(isoWeek, isoWeekBoundsUtc(inThatWeek)));
+                history.add(emptyWeek(isoWeek, isoWeekBounds(inThatWeek, zone)));
             }
         }
         return history;
     }
 
     private static WeeklyMetricsDto cloneWeek(WeeklyMetricsDto src) {
-        WeeklyMetricsDto c = new WeeklyMetricsDto();
-        c.setIsoYearWeek(src.getIsoYearWeek());
-        c.setWeekStart(src.getWeekStart());
-        c.setWeekEnd(src.getWeekEnd());
-        c.setTotalKm(src.getTotalKm());
-        c.setTotalRuns(src.getTotalRuns());
-        c.setTotalTimeMs(src.getTotalTimeMs());
-        c.setAvgPaceSecPerKm(src.getAvgPaceSecPerKm());
-        c.setLongestKm(src.getLongestKm());
-        c.setStreakDays(src.getStreakDays());
-        return c;
-    }
-
-    private static PrEntryDto makePacePr(RunRecord run, long paceSecPerKm) {
-        PrEntryDto p = new PrEntryDto();
-        p.setRunId(run.getRunId());
-        p.setDistanceKm(run.getDistanceKm());
-        p.setRunStartTime(run.getStartTime());
-        p.setPaceSecPerKm(paceSecPerKm);
-        return p;
-    }
-
-    private static PrEntryDto makeDistancePr(RunRecord run) {
-        PrEntryDto p = new PrEntryDto();
-        p.setRunId(run.getRunId());
-        p.setDistanceKm(run.getDistanceKm());
-        p.setRunStartTime(run.getStartTime());
-        p.setDurationMs(run.getDurationMs());
-        return p;
-    }
-
-    private static PrEntryDto makeDurationPr(RunRecord run) {
-        PrEntryDto p = new PrEntryDto();
-        p.setRunId(run.getRunId());
-        p.setDistanceKm(run.getDistanceKm());
-        p.setRunStartTime(run.getStartTime());
-        p.setDurationMs(run.getDurationMs());
-        return p;
+        return MetricsFold.cloneWeek(src);
     }
 }
@@ -0,0 +1,145 @@
+package com.trego.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.trego.dto.MetricsSnapshotDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded per-user cache of parsed {@link MetricsSnapshotDto}s so GET /metrics/me
+ * can skip the snapshot read and its Map-walking deserialization when nothing
+ * changed. Keyed by (uid, run version): every run write bumps the version, so
+ * once a run is added, edited or removed lookups miss and the old entry simply
+ * ages out.
+ *
+ * <p>A second cache under the same keys holds each user's {@link DailyRangeIndex}
+ * for the range endpoints, so {@link #invalidate} drops both together.
+ *
+ * <p>The run version last seen for each user is kept for a short TTL, so a hit
+ * needs no Firestore read at all. Runs written through this instance update it
+ * at once; runs written through another instance show up here within that TTL
+ * ({@code metrics.snapshot-cache.version-ttl-seconds}), which is the bound on
+ * how long a stale snapshot can be served. A zero TTL reads the version on
+ * every request.
+ *
+ * <p>Size- and TTL-bounded. Hit/miss/eviction counters are published to
+ * actuator as the {@code cache.*} meters tagged {@code cache=metricsSnapshot}
+ * and {@code cache=metricsRange}.
+ */
+@Component
+public class MetricsSnapshotCache implements MeterBinder {
+
+    private final Cache<Key, MetricsSnapshotDto> cache;
+    private final Cache<Key, DailyRangeIndex> rangeIndexes;
+    private final Cache<String, Long> runVersions;
+
+    @Autowired
+    public MetricsSnapshotCache(@Value("${metrics.snapshot-cache.max-size:10000}") long maxSize,
+                                @Value("${metrics.snapshot-cache.ttl-seconds:300}") long ttlSeconds,
+                                @Value("${metrics.snapshot-cache.version-ttl-seconds:5}") long versionTtlSeconds) {
+        this(maxSize, Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(versionTtlSeconds), Ticker.systemTicker());
+    }
+
+    /** Test constructor with injectable ticker; run versions are not kept, so every read checks one. */
+    MetricsSnapshotCache(long maxSize, Duration ttl, Ticker ticker) {
+        this(maxSize, ttl, Duration.ZERO, ticker);
+    }
+
+    /** Test constructor with injectable ticker. */
+    MetricsSnapshotCache(long maxSize, Duration ttl, Duration versionTtl, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .executor(Runnable::run) // evict on the caller thread; entries are tiny
+                .recordStats()
+                .build();
+        this.rangeIndexes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        this.runVersions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(versionTtl)
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /** The cached snapshot for [uid] computed at [runVersion], or null. */
+    public MetricsSnapshotDto get(String uid, long runVersion) {
+        return cache.getIfPresent(new Key(uid, runVersion));
+    }
+
+    public void put(String uid, long runVersion, MetricsSnapshotDto dto) {
+        cache.put(new Key(uid, runVersion), dto);
+    }
+
+    DailyRangeIndex getRangeIndex(String uid, long runVersion) {
+        return rangeIndexes.getIfPresent(new Key(uid, runVersion));
+    }
+
+    void putRangeIndex(String uid, long runVersion, DailyRangeIndex index) {
+        rangeIndexes.put(new Key(uid, runVersion), index);
+    }
+
+    /** The run version last seen for [uid] within the version TTL, or null. */
+    public Long knownRunVersion(String uid) {
+        return runVersions.getIfPresent(uid);
+    }
+
+    /** Record [runVersion] as current for [uid]. Never moves the known version backwards. */
+    public void seenRunVersion(String uid, long runVersion) {
+        runVersions.asMap().merge(uid, runVersion, Math::max);
+    }
+
+    /** Drop every cached entry for [uid]. Linear in cache size; only used on rare writes. */
+    public void invalidate(String uid) {
+        runVersions.invalidate(uid);
+        cache.asMap().keySet().removeIf(k -> k.uid.equals(uid));
+        rangeIndexes.asMap().keySet().removeIf(k -> k.uid.equals(uid));
+    }
+
+    long hitCount() { return cache.stats().hitCount(); }
+    long missCount() { return cache.stats().missCount(); }
+    long evictionCount() { return cache.stats().evictionCount(); }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "metricsSnapshot");
+        CaffeineCacheMetrics.monitor(registry, rangeIndexes, "metricsRange");
+    }
+
+    private static final class Key {
+        final String uid;
+        final long runVersion;
+
+        Key(String uid, long runVersion) {
+            this.uid = uid;
+            this.runVersion = runVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return runVersion == k.runVersion && uid.equals(k.uid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * uid.hashCode() + Long.hashCode(runVersion);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.trego.service;
+
+import com.trego.repository.SocialRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind for post counters. Likes add their +1/-1 here instead of
+ * writing the post; every {@code window} the deltas gathered per post are
+ * flushed as one {@link SocialRepository#incrementCounters} call, so a viral
+ * post takes one counter write per window however many people react.
+ * (Comments are counted in the same batch that inserts them, not here.)
+ *
+ * <p>The like documents themselves are written synchronously and stay the
+ * source of truth; only the denormalized count lags, by up to one window.
+ * A failed flush puts the delta back for the next window, and shutdown
+ * flushes whatever is pending. The buffer is not durable: a delta dropped
+ * after {@link #MAX_FLUSH_ATTEMPTS} (e.g. when the post was deleted) or lost
+ * to a hard kill, which loses at most one window, leaves the count off.
+ *
+ * <p>Counts are reconciled rather than made durable. {@link #repair} runs every
+ * {@code repairInterval}: it recounts the posts whose delta was dropped, then
+ * the next {@code repairBatch} posts in ID order, recounting likesCount and
+ * commentsCount from the like documents and comments
+ * ({@link SocialRepository#recountCounters}). Every post is recounted once a
+ * sweep, so a count lost to a crash is off for at most one sweep. Posts with
+ * a delta pending here are skipped until the next sweep. A like buffered on
+ * another instance while its post is recounted is counted twice; the next
+ * sweep corrects that too.
+ *
+ * <p>Bounded at {@code maxPendingPosts} posts with a pending delta. Past that,
+ * a delta for a new post is written on the caller's thread, which slows
+ * callers down rather than growing the buffer. A zero window writes every
+ * delta through.
+ *
+ * <p>Published as {@code social.counters.*}; deltas / writes is the coalescing
+ * ratio.
+ */
+@Component
+public class PostCounterBuffer implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(PostCounterBuffer.class);
+
+    static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final SocialRepository repo;
+    private final long windowMillis;
+    private final int maxPendingPosts;
+    private final ScheduledExecutorService flusher; // null: flushed by the caller (tests)
+    private final Map<String, Delta> pending = new ConcurrentHashMap<>();
+    private final AtomicLong deltas = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong backpressured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong repaired = new AtomicLong();
+    private final int repairBatch;
+    /** Posts whose delta was dropped, recounted first by the next repair. */
+    private final Set<String> needsRecount = ConcurrentHashMap.newKeySet();
+    /** Last post ID the repair sweep recounted; null at the start of a sweep. */
+    private volatile String repairCursor;
+
+    @Autowired
+    public PostCounterBuffer(SocialRepository repo,
+                             @Value("${social.counters.flush-interval-ms:250}") long windowMillis,
+                             @Value("${social.counters.max-pending-posts:10000}") int maxPendingPosts,
+                             @Value("${social.counters.repair-interval-ms:60000}") long repairIntervalMillis,
+                             @Value("${social.counters.repair-batch:100}") int repairBatch) {
+        this.repo = repo;
+        this.windowMillis = windowMillis;
+        this.maxPendingPosts = maxPendingPosts;
+        this.repairBatch = repairBatch;
+        if (windowMillis > 0 || repairIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "post-counter-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            if (windowMillis > 0) {
+                flusher.scheduleWithFixedDelay(this::flushQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (repairIntervalMillis > 0) {
+                flusher.scheduleWithFixedDelay(this::repairQuietly,
+                        repairIntervalMillis, repairIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /** Test constructor: nothing is flushed or repaired until {@link #flush} or {@link #repair} is called. */
+    PostCounterBuffer(SocialRepository repo, Duration window, int maxPendingPosts) {
+        this(repo, window, maxPendingPosts, 100);
+    }
+
+    PostCounterBuffer(SocialRepository repo, Duration window, int maxPendingPosts, int repairBatch) {
+        this.repo = repo;
+        this.windowMillis = window.toMillis();
+        this.maxPendingPosts = maxPendingPosts;
+        this.repairBatch = repairBatch;
+        this.flusher = null;
+    }
+
+    /** Every delta is written straight away. */
+    static PostCounterBuffer writeThrough(SocialRepository repo) {
+        return new PostCounterBuffer(repo, Duration.ZERO, 0);
+    }
+
+    /** Queue a change of [likes] and [comments] to [postId]'s counters. */
+    void add(String postId, int likes, int comments) {
+        deltas.incrementAndGet();
+        if (windowMillis <= 0) {
+            write(postId, new Delta(likes, comments, 0));
+            return;
+        }
+        if (pending.size() >= maxPendingPosts && !pending.containsKey(postId)) {
+            backpressured.incrementAndGet();
+            write(postId, new Delta(likes, comments, 0));
+            return;
+        }
+        pending.merge(postId, new Delta(likes, comments, 0), Delta::plus);
+    }
+
+    /** Write every pending delta now. Failed writes are kept for the next flush. */
+    void flush() {
+        for (String postId : pending.keySet()) {
+            Delta d = pending.remove(postId);
+            if (d == null || d.isZero()) continue;
+            try {
+                write(postId, d);
+            } catch (RuntimeException e) {
+                if (d.attempts + 1 >= MAX_FLUSH_ATTEMPTS) {
+                    dropped.incrementAndGet();
+                    needsRecount.add(postId);
+                    logger.error("Dropping counter delta for post {} after {} attempts, recounting on the next repair: {}",
+                            postId, MAX_FLUSH_ATTEMPTS, e.getMessage());
+                } else {
+                    pending.merge(postId, new Delta(d.likes, d.comments, d.attempts + 1), Delta::plus);
+                    logger.warn("Counter flush failed for post {}, retrying: {}", postId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Recount the posts whose delta was dropped, then the next repairBatch posts
+     * of the sweep, starting over once it reaches the last post. Returns how
+     * many posts had a count corrected.
+     */
+    int repair() {
+        int fixed = 0;
+        for (String postId : List.copyOf(needsRecount)) {
+            needsRecount.remove(postId);
+            if (recount(postId)) fixed++;
+        }
+        List<String> page = repo.findPostIdsAfter(repairCursor, repairBatch);
+        for (String postId : page) {
+            if (!pending.containsKey(postId) && recount(postId)) fixed++;
+        }
+        repairCursor = page.size() < repairBatch ? null : page.get(page.size() - 1);
+        return fixed;
+    }
+
+    private boolean recount(String postId) {
+        if (!repo.recountCounters(postId)) return false;
+        repaired.incrementAndGet();
+        logger.info("Corrected counters of post {}", postId);
+        return true;
+    }
+
+    int pendingPosts() { return pending.size(); }
+    long deltaCount() { return deltas.get(); }
+    long writeCount() { return writes.get(); }
+
+    private void write(String postId, Delta d) {
+        repo.incrementCounters(postId, d.likes, d.comments);
+        writes.incrementAndGet();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Counter flush failed", e);
+        }
+    }
+
+    private void repairQuietly() {
+        try {
+            repair();
+        } catch (RuntimeException e) {
+            logger.error("Counter repair failed", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher != null) flusher.shutdown();
+        flushQuietly();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("social.counters.deltas", deltas, AtomicLong::get)
+                .description("Like and comment counter changes accepted")
+                .register(registry);
+        FunctionCounter.builder("social.counters.writes", writes, AtomicLong::get)
+                .description("Counter increments written to Firestore")
+                .register(registry);
+        FunctionCounter.builder("social.counters.backpressure", backpressured, AtomicLong::get)
+                .description("Deltas written on the caller thread because the buffer was full")
+                .register(registry);
+        FunctionCounter.builder("social.counters.dropped", dropped, AtomicLong::get)
+                .description("Deltas given up on after repeated flush failures")
+                .register(registry);
+        FunctionCounter.builder("social.counters.repaired", repaired, AtomicLong::get)
+                .description("Posts whose counters the repair sweep found off and corrected")
+                .register(registry);
+        Gauge.builder("social.counters.pending", pending, Map::size)
+                .description("Posts with a counter delta waiting to be flushed")
+                .register(registry);
+    }
+
+    /** Summed counter changes for one post; [attempts] counts failed flushes. */
+    private static final class Delta {
+        final int likes;
+        final int comments;
+        final int attempts;
+
+        Delta(int likes, int comments, int attempts) {
+            this.likes = likes;
+            this.comments = comments;
+            this.attempts = attempts;
+        }
+
+        Delta plus(Delta o) {
+            return new Delta(likes + o.likes, comments + o.comments, Math.max(attempts, o.attempts));
+        }
+
+        boolean isZero() {
+            return likes == 0 && comments == 0;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.trego.service;
+
+import com.trego.repository.SocialRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background half of post deletion. SocialService tombstones the post and
+ * returns; this removes its comments, reports and likes and finally the post
+ * itself, on a small bounded pool so a long thread never holds a request.
+ *
+ * <p>Tombstones are the durable record of outstanding work: a purge that is
+ * rejected (queue full), fails, or is cut short by a restart is picked up by
+ * the periodic {@link #sweep} of tombstoned posts. Each step is idempotent, so
+ * purging a post twice is harmless.
+ */
+@Component
+public class PostPurger implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(PostPurger.class);
+
+    static final int SWEEP_BATCH = 100;
+
+    private final SocialRepository repo;
+    private final Executor executor;
+    private final ThreadPoolExecutor pool; // null when an executor was injected
+    private final ScheduledExecutorService sweeper; // null when an executor was injected
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong purged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Autowired
+    public PostPurger(SocialRepository repo,
+                      @Value("${social.delete.purge-threads:2}") int threads,
+                      @Value("${social.delete.purge-queue:1000}") int queueCapacity,
+                      @Value("${social.delete.sweep-interval-minutes:10}") long sweepIntervalMinutes) {
+        this.repo = repo;
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "post-purge-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "post-purge-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalMinutes, sweepIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /** Test constructor: purges go to [executor]; nothing is swept unless {@link #sweep} is called. */
+    PostPurger(SocialRepository repo, Executor executor) {
+        this.repo = repo;
+        this.executor = executor;
+        this.pool = null;
+        this.sweeper = null;
+    }
+
+    /** Purge on the caller's thread. */
+    static PostPurger inline(SocialRepository repo) {
+        return new PostPurger(repo, Runnable::run);
+    }
+
+    /** Queue the purge of tombstoned [postId] unless one is already queued or running. Never blocks. */
+    void purgeLater(String postId) {
+        if (!pending.add(postId)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    purge(postId);
+                } finally {
+                    pending.remove(postId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(postId);
+            logger.warn("Purge queue full; post {} stays tombstoned until the next sweep", postId);
+        }
+    }
+
+    /** Queue a purge for every tombstoned post (up to a batch per call). */
+    void sweep() {
+        for (String postId : repo.findTombstonedPostIds(SWEEP_BATCH)) purgeLater(postId);
+    }
+
+    private void purge(String postId) {
+        try {
+            repo.deleteCommentsByPost(postId);
+            repo.deleteReportsByPost(postId);
+            repo.deletePost(postId);
+            purged.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warn("Purge of post {} failed; retried on the next sweep", postId, e);
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            logger.warn("Tombstoned post sweep failed", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweeper != null) sweeper.shutdownNow();
+        if (pool != null) pool.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("social.delete.purged", purged, AtomicLong::get)
+                .description("Deleted posts whose comments, reports and likes were purged")
+                .register(registry);
+        FunctionCounter.builder("social.delete.failed", failed, AtomicLong::get)
+                .description("Post purges that failed and were left for the sweep")
+                .register(registry);
+        Gauge.builder("social.delete.pending", pending, Set::size)
+                .description("Post purges queued or running")
+                .register(registry);
+    }
+}
@@ -0,0 +1,140 @@
+package com.trego.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.trego.model.SocialPost;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One post as a viewer sees it. Serializes itself field by field through
+ * Jackson's {@link JsonGenerator}, so a feed page is written straight to the
+ * response without an intermediate map per post and per author.
+ *
+ * <p>The JSON is the shape the Flutter {@code SocialService} reads:
+ * <pre>
+ * {id, content, type, visibility, author: {id, name, photoURL}, attachments,
+ *  likesCount, commentsCount, userLiked, isOwn, createdAt}
+ * </pre>
+ * in that order. Null fields are left out, as the application's
+ * {@code non_null} inclusion did for the maps this replaces; {@code createdAt}
+ * is the ISO-8601 local date-time.
+ */
+public final class PostView implements JsonSerializable {
+    private final String id;
+    private final String content;
+    private final String type;
+    private final String visibility;
+    private final Author author;
+    private final List<String> attachments;
+    private final int likesCount;
+    private final int commentsCount;
+    private final boolean userLiked;
+    private final boolean own;
+    private final LocalDateTime createdAt;
+
+    public PostView(String id, String content, String type, String visibility, Author author,
+                    List<String> attachments, int likesCount, int commentsCount, boolean userLiked,
+                    boolean own, LocalDateTime createdAt) {
+        this.id = id;
+        this.content = content;
+        this.type = type;
+        this.visibility = visibility;
+        this.author = author;
+        this.attachments = attachments;
+        this.likesCount = likesCount;
+        this.commentsCount = commentsCount;
+        this.userLiked = userLiked;
+        this.own = own;
+        this.createdAt = createdAt;
+    }
+
+    /** [p] as seen by [viewerUid] (null: signed out). */
+    static PostView of(SocialPost p, String viewerUid, boolean userLiked, Author author) {
+        return new PostView(p.getId(), p.getContent(), p.getType(), p.getVisibility(), author,
+                p.getAttachments(), p.getLikesCount(), p.getCommentsCount(), userLiked,
+                viewerUid != null && viewerUid.equals(p.getAuthorId()), p.getCreatedAt());
+    }
+
+    public String getId() { return id; }
+    public String getContent() { return content; }
+    public String getType() { return type; }
+    public String getVisibility() { return visibility; }
+    public Author getAuthor() { return author; }
+    public List<String> getAttachments() { return attachments; }
+    public int getLikesCount() { return likesCount; }
+    public int getCommentsCount() { return commentsCount; }
+    public boolean isUserLiked() { return userLiked; }
+    public boolean isOwn() { return own; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeStartObject(this);
+        writeString(gen, "id", id);
+        writeString(gen, "content", content);
+        writeString(gen, "type", type);
+        writeString(gen, "visibility", visibility);
+        if (author != null) {
+            gen.writeFieldName("author");
+            author.serialize(gen, serializers);
+        }
+        if (attachments != null) {
+            gen.writeArrayFieldStart("attachments");
+            for (String a : attachments) gen.writeString(a);
+            gen.writeEndArray();
+        }
+        gen.writeNumberField("likesCount", likesCount);
+        gen.writeNumberField("commentsCount", commentsCount);
+        gen.writeBooleanField("userLiked", userLiked);
+        gen.writeBooleanField("isOwn", own);
+        if (createdAt != null) writeString(gen, "createdAt", createdAt.toString());
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        serialize(gen, serializers);
+    }
+
+    private static void writeString(JsonGenerator gen, String field, String value) throws IOException {
+        if (value != null) gen.writeStringField(field, value);
+    }
+
+    /** The {@code author} object of post and comment views: {id, name, photoURL}. */
+    public static final class Author implements JsonSerializable {
+        private final String id;
+        private final String name;
+        private final String photoUrl;
+
+        public Author(String id, String name, String photoUrl) {
+            this.id = id;
+            this.name = name;
+            this.photoUrl = photoUrl;
+        }
+
+        public String getId() { return id; }
+        public String getName() { return name; }
+        public String getPhotoUrl() { return photoUrl; }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartObject(this);
+            writeString(gen, "id", id);
+            writeString(gen, "name", name);
+            writeString(gen, "photoURL", photoUrl);
+            gen.writeEndObject();
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            serialize(gen, serializers);
+        }
+    }
+}
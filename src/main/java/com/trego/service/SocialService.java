@@ -3,42 +3,104 @@ package com.trego.service;
 import com.trego.model.Comment;
 import com.trego.model.PostReport;
 import com.trego.model.SocialPost;
+import com.trego.repository.AuthorRepository.AuthorView;
 import com.trego.repository.SocialRepository;
+import com.trego.repository.SocialRepository.CommentCursor;
+import com.trego.repository.SocialRepository.FeedCursor;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 /**
- * Social feed business logic. Builds per-viewer view-models (flat maps with a
- * nested {@code author} object plus {@code userLiked}/{@code isOwn} flags) that
- * match exactly what the Flutter {@code SocialService} + feed screen read off the
- * response — so the existing create/feed/like/comment calls and the new
- * comments/report/edit/delete calls share one response shape.
+ * Social feed business logic. Builds per-viewer view-models ({@link PostView}s
+ * with a nested {@code author} object plus {@code userLiked}/{@code isOwn}
+ * flags) that match exactly what the Flutter {@code SocialService} + feed screen
+ * read off the response — so the existing create/feed/like/comment calls and
+ * the new comments/report/edit/delete calls share one response shape.
  *
- * <p><b>Feed visibility (MVP):</b> a viewer sees every {@code public} post plus
- * all of their own posts (any visibility). {@code friends}-scoped posts are not
- * yet fanned out to friends because there is no friend graph in the backend; that
- * filtering is the documented follow-up once friends are persisted.
+ * <p><b>Feed visibility:</b> a viewer sees every {@code public} post, all of
+ * their own posts (any visibility) and their friends' {@code friends}-scoped
+ * posts. Each of those is its own indexed newest-first query (friends' posts in
+ * chunks of {@link SocialRepository#MAX_AUTHORS_PER_QUERY} authors), merged by
+ * {@link FeedMerge}, so a feed page reads a bounded number of posts rather than
+ * the whole collection.
+ *
+ * <p>With {@link TimelineService} enabled, friends' posts come from the viewer's
+ * precomputed timeline instead, plus direct queries for the few friends who
+ * are too widely connected to fan out.
+ *
+ * <p>Like counts go through {@link PostCounterBuffer}, so they may trail the
+ * likes themselves by one flush window. Comment counts move in the same write
+ * as the comment.
+ *
+ * <p>Author names and photos come from {@link AuthorCache}, one batched lookup
+ * per page, falling back to those captured when the post or comment was
+ * written for users it does not know.
+ *
+ * <p>New posts, like counts and comments are also published to
+ * {@link FeedEvents} ({@link FeedPushService}), for clients that keep a live
+ * connection instead of polling the feed.
+ *
+ * <p>With {@code social.ranking.mode=ranked}, cursor-less feed pages are ranked
+ * by {@link FeedRanker} instead (engagement decayed by age, plus friend
+ * affinity) and continue with ranked cursors; the offset mode and
+ * chronological cursors stay newest-first.
  */
 @Service
 public class SocialService {
 
     private final SocialRepository repo;
     private final FriendshipLookup friends;
+    private final TimelineService timelines;
+    private final PostCounterBuffer counters;
+    private final PostPurger purger;
+    private final AuthorCache authors;
+    private final FeedEvents events;
+    private final FeedRanker ranker;
 
     /**
      * Spring constructor — friends-visibility enabled via the injected
-     * {@link FriendshipLookup} (FriendService).
+     * {@link FriendshipLookup} (FriendService), served from timelines.
      */
     @org.springframework.beans.factory.annotation.Autowired
-    public SocialService(SocialRepository repo, FriendshipLookup friends) {
+    public SocialService(SocialRepository repo, FriendshipLookup friends, TimelineService timelines,
+                         PostCounterBuffer counters, PostPurger purger, AuthorCache authors,
+                         FeedEvents events, FeedRanker ranker) {
         this.repo = repo;
         this.friends = friends;
+        this.timelines = timelines;
+        this.counters = counters;
+        this.purger = purger;
+        this.authors = authors;
+        this.events = events;
+        this.ranker = ranker;
+    }
+
+    /**
+     * Counters are written through on every like; deleted posts are purged
+     * inline; authors are shown as captured at write time; nothing is pushed;
+     * the feed is chronological.
+     */
+    public SocialService(SocialRepository repo, FriendshipLookup friends, TimelineService timelines) {
+        this(repo, friends, timelines, PostCounterBuffer.writeThrough(repo), PostPurger.inline(repo),
+                AuthorCache.none(), FeedEvents.NONE, FeedRanker.chronological());
+    }
+
+    /** Friends' posts are queried directly on every feed read; no timelines. */
+    public SocialService(SocialRepository repo, FriendshipLookup friends) {
+        this(repo, friends, null);
     }
 
     /**
@@ -46,29 +108,57 @@ public class SocialService {
      * posts are author-only). Used by tests that don't exercise the friend graph.
      */
     public SocialService(SocialRepository repo) {
-        this(repo, (a, b) -> false);
+        this(repo, uid -> Set.of());
     }
 
-    public List<Map<String, Object>> getFeed(String viewerUid, int limit, int offset) {
-        List<SocialPost> visible = new ArrayList<>();
-        for (SocialPost p : repo.findAllPostsNewestFirst()) {
-            if (isVisibleTo(p, viewerUid)) {
-                visible.add(p);
-            }
+    /** Most posts one feed page returns. */
+    public static final int MAX_FEED_PAGE = 100;
+
+    /**
+     * One page of [viewerUid]'s feed, newest first, continuing after [cursor]
+     * (a {@link FeedPage#getNextCursor} token; null for the first page). Each
+     * page costs the same however deep it is, and posts created after the first
+     * page do not shift later ones.
+     *
+     * <p>In ranked mode the first page is ranked, and so is every page after a
+     * ranked cursor; see {@link #getRankedPage}.
+     *
+     * @throws IllegalArgumentException if the cursor is not a token this service issued
+     */
+    public FeedPage getFeedPage(String viewerUid, String cursor, int limit) {
+        int count = Math.min(Math.max(1, limit), MAX_FEED_PAGE);
+        if (ranker.ranked()) {
+            FeedRanker.Scored after = decodeRankCursor(cursor);
+            if (after != null || cursor == null || cursor.isEmpty()) return getRankedPage(viewerUid, after, count);
         }
+        // One extra post tells whether another page exists.
+        List<SocialPost> visible = feedFor(viewerUid, decodeCursor(cursor, FeedCursor::new)).take(count + 1);
+        boolean more = visible.size() > count;
+        if (more) visible = visible.subList(0, count);
+        List<PostView> out = toPostViews(withoutDeleted(visible), viewerUid);
+        SocialPost last = more ? visible.get(visible.size() - 1) : null;
+        String next = more ? encodeCursor(last.getCreatedAt(), last.getId()) : null;
+        return new FeedPage(out, next);
+    }
+
+    /**
+     * Offset pagination, kept for clients that predate cursors. Reads every post
+     * before [offset], so deep pages get slower; and new posts shift the pages.
+     *
+     * @deprecated use {@link #getFeedPage}
+     */
+    @Deprecated
+    public List<PostView> getFeed(String viewerUid, int limit, int offset) {
         int from = Math.max(0, offset);
-        if (from >= visible.size()) return new ArrayList<>();
-        int to = Math.min(visible.size(), from + Math.max(0, limit));
-        List<Map<String, Object>> out = new ArrayList<>();
-        for (SocialPost p : visible.subList(from, to)) {
-            out.add(toPostView(p, viewerUid));
-        }
-        return out;
+        int count = Math.max(0, limit);
+        if (count == 0) return new ArrayList<>();
+        List<SocialPost> visible = feedFor(viewerUid, null).take(from + count);
+        return toPostViews(withoutDeleted(visible.subList(Math.min(from, visible.size()), visible.size())), viewerUid);
     }
 
-    public Map<String, Object> createPost(String authorUid, String authorName, String authorPhotoUrl,
-                                          String content, String type, List<String> attachments,
-                                          String visibility) {
+    public PostView createPost(String authorUid, String authorName, String authorPhotoUrl,
+                               String content, String type, List<String> attachments,
+                               String visibility) {
         SocialPost p = new SocialPost();
         p.setAuthorId(authorUid);
         p.setAuthorName(authorName);
@@ -78,52 +168,71 @@ public class SocialService {
         p.setVisibility(visibility != null ? visibility : "friends");
         p.setAttachments(attachments);
         SocialPost saved = repo.savePost(p);
-        return toPostView(saved, authorUid);
+        if (timelinesEnabled() && "friends".equals(saved.getVisibility())) {
+            timelines.postCreated(saved, friends.friendIdsOf(authorUid));
+        }
+        events.postCreated(saved);
+        ranker.offer(saved);
+        return toPostViews(List.of(saved), authorUid).get(0);
     }
 
-    /** Toggle the viewer's like. Returns {userLiked, likesCount}. */
+    /**
+     * Toggle the viewer's like. Returns {userLiked, likesCount}. The like
+     * document flips atomically; the counter change is buffered. The returned
+     * count is the one read just before plus this change, so concurrent likes
+     * show up on a later read.
+     */
     public Map<String, Object> toggleLike(String viewerUid, String postId) {
-        SocialPost p = requirePost(postId);
-        boolean nowLiked;
-        if (p.getLikedBy().contains(viewerUid)) {
-            p.getLikedBy().remove(viewerUid);
-            nowLiked = false;
-        } else {
-            p.getLikedBy().add(viewerUid);
-            nowLiked = true;
-        }
-        repo.savePost(p);
+        SocialPost post = requirePost(postId);
+        int before = post.getLikesCount();
+        boolean nowLiked = repo.toggleLike(postId, viewerUid);
+        counters.add(postId, nowLiked ? 1 : -1, 0);
+        ranker.engagementChanged(post, nowLiked ? 1 : -1, 0);
+        int likesCount = Math.max(0, before + (nowLiked ? 1 : -1));
+        events.likesChanged(post, likesCount);
         Map<String, Object> r = new LinkedHashMap<>();
         r.put("userLiked", nowLiked);
-        r.put("likesCount", p.getLikedBy().size());
+        r.put("likesCount", likesCount);
         return r;
     }
 
-    /** Add a comment, bump the post's comment counter. Returns {comment, commentsCount}. */
+    /** Add a comment; the post's counter moves in the same write. Returns {comment, commentsCount}. */
     public Map<String, Object> addComment(String authorUid, String authorName, String authorPhotoUrl,
                                           String postId, String content) {
-        SocialPost p = requirePost(postId);
+        SocialPost post = requirePost(postId);
+        int before = post.getCommentsCount();
         Comment c = new Comment();
         c.setPostId(postId);
         c.setAuthorId(authorUid);
         c.setAuthorName(authorName);
         c.setAuthorPhotoUrl(authorPhotoUrl);
         c.setContent(content);
-        Comment saved = repo.saveComment(c);
-        p.setCommentsCount(p.getCommentsCount() + 1);
-        repo.savePost(p);
+        Comment saved = repo.addComment(c);
+        events.commentAdded(post, saved, before + 1);
+        ranker.engagementChanged(post, 0, 1);
         Map<String, Object> r = new LinkedHashMap<>();
-        r.put("comment", toCommentView(saved));
-        r.put("commentsCount", p.getCommentsCount());
+        r.put("comment", toCommentViews(List.of(saved)).get(0));
+        r.put("commentsCount", before + 1);
         return r;
     }
 
-    public List<Map<String, Object>> getComments(String postId) {
-        List<Map<String, Object>> out = new ArrayList<>();
-        for (Comment c : repo.findCommentsByPost(postId)) {
-            out.add(toCommentView(c));
-        }
-        return out;
+    /** Most comments one page returns. */
+    public static final int MAX_COMMENT_PAGE = 100;
+
+    /**
+     * One page of [postId]'s comments, oldest first, continuing after [cursor]
+     * (a {@link CommentPage#getNextCursor} token; null for the first page).
+     *
+     * @throws IllegalArgumentException if the cursor is not a token this service issued
+     */
+    public CommentPage getComments(String postId, String cursor, int limit) {
+        int count = Math.min(Math.max(1, limit), MAX_COMMENT_PAGE);
+        List<Comment> page = repo.findCommentsByPost(postId, decodeCursor(cursor, CommentCursor::new), count + 1);
+        boolean more = page.size() > count;
+        if (more) page = page.subList(0, count);
+        List<Map<String, Object>> out = toCommentViews(page);
+        Comment last = more ? page.get(page.size() - 1) : null;
+        return new CommentPage(out, more ? encodeCursor(last.getCreatedAt(), last.getId()) : null);
     }
 
     public void report(String reporterUid, String postId, String reason) {
@@ -135,35 +244,119 @@ public class SocialService {
     }
 
     /** Edit a post's content. Only the author may edit. */
-    public Map<String, Object> updatePost(String viewerUid, String postId, String content) {
+    public PostView updatePost(String viewerUid, String postId, String content) {
         SocialPost p = requirePost(postId);
         requireOwner(p, viewerUid);
         p.setContent(content);
         SocialPost saved = repo.savePost(p);
-        return toPostView(saved, viewerUid);
+        return toPostViews(List.of(saved), viewerUid).get(0);
     }
 
-    /** Delete a post and its comments. Only the author may delete. */
+    /**
+     * Delete a post. Only the author may delete. The post is tombstoned, which
+     * hides it straight away, and its comments, reports and likes are purged
+     * in the background by {@link PostPurger}.
+     */
     public void deletePost(String viewerUid, String postId) {
         SocialPost p = requirePost(postId);
         requireOwner(p, viewerUid);
-        repo.deleteCommentsByPost(postId);
-        repo.deletePost(postId);
+        repo.tombstonePost(postId);
+        ranker.remove(postId);
+        purger.purgeLater(postId);
+    }
+
+    /**
+     * One-off migration for posts and comments written before createdAt became
+     * a Timestamp: until it has run they are missing from the feed and from
+     * comment pages. Safe to re-run. Returns {posts, comments} rewritten.
+     */
+    public Map<String, Object> migrateLegacyTimestamps() {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("posts", repo.migrateLegacyPostTimestamps());
+        r.put("comments", repo.migrateLegacyCommentTimestamps());
+        return r;
     }
 
     // --- helpers ---
 
-    private boolean isVisibleTo(SocialPost p, String viewerUid) {
-        if (viewerUid != null && viewerUid.equals(p.getAuthorId())) return true;
-        if ("public".equals(p.getVisibility())) return true;
-        if ("friends".equals(p.getVisibility())) {
-            return friends.areFriends(viewerUid, p.getAuthorId());
+    /** Every post [viewerUid] may see after [start], newest first. "private" posts only reach their author. */
+    private FeedMerge feedFor(String viewerUid, FeedCursor start) {
+        List<FeedMerge.Source> sources = new ArrayList<>();
+        sources.add(repo::findPublicPostsNewestFirst);
+        if (viewerUid != null) {
+            sources.add((after, n) -> repo.findPostsByAuthorNewestFirst(viewerUid, after, n));
+            Set<String> friendSet = friends.friendIdsOf(viewerUid);
+            List<String> friendIds;
+            if (timelinesEnabled()) {
+                sources.add(timelines.source(viewerUid, friendSet));
+                friendIds = timelines.pullAuthorsAmong(friendSet);
+            } else {
+                friendIds = new ArrayList<>(friendSet);
+            }
+            for (int i = 0; i < friendIds.size(); i += SocialRepository.MAX_AUTHORS_PER_QUERY) {
+                List<String> chunk = friendIds.subList(i,
+                        Math.min(friendIds.size(), i + SocialRepository.MAX_AUTHORS_PER_QUERY));
+                sources.add((after, n) -> repo.findFriendsPostsNewestFirst(chunk, after, n));
+            }
         }
-        return false; // "private" — author-only (handled above)
+        return new FeedMerge(sources, start);
+    }
+
+    /** Opaque token for a feed or comment-thread position: base64url of "createdAt|id". */
+    static String encodeCursor(LocalDateTime createdAt, String id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The position [token] encodes, built by [make]; null for no token. */
+    static <C> C decodeCursor(String token, BiFunction<LocalDateTime, String, C> make) {
+        if (token == null || token.isEmpty()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int bar = raw.indexOf('|');
+            if (bar <= 0 || bar == raw.length() - 1) throw new IllegalArgumentException("Malformed cursor");
+            return make.apply(LocalDateTime.parse(raw.substring(0, bar)), raw.substring(bar + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /** Marks a ranked-feed token; chronological tokens start with a date. */
+    private static final String RANK_CURSOR_PREFIX = "~";
+
+    /** Opaque token for a ranked feed position: base64url of "~score|id". */
+    static String encodeRankCursor(double score, String id) {
+        String raw = RANK_CURSOR_PREFIX + score + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The ranked position [token] encodes; null for no token or a chronological one. */
+    static FeedRanker.Scored decodeRankCursor(String token) {
+        if (token == null || token.isEmpty()) return null;
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null; // not base64 at all; rejected as a chronological cursor
+        }
+        if (!raw.startsWith(RANK_CURSOR_PREFIX)) return null;
+        int bar = raw.indexOf('|');
+        try {
+            if (bar <= 1 || bar == raw.length() - 1) throw new IllegalArgumentException("Malformed cursor");
+            return new FeedRanker.Scored(raw.substring(bar + 1),
+                    Double.parseDouble(raw.substring(RANK_CURSOR_PREFIX.length(), bar)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private boolean timelinesEnabled() {
+        return timelines != null && timelines.enabled();
     }
 
     private SocialPost requirePost(String postId) {
         return repo.findPost(postId)
+                .filter(p -> !p.isDeleted())
                 .orElseThrow(() -> new NoSuchElementException("Post not found: " + postId));
     }
 
@@ -173,43 +366,140 @@ public class SocialService {
         }
     }
 
-    private Map<String, Object> toPostView(SocialPost p, String viewerUid) {
-        Map<String, Object> author = new LinkedHashMap<>();
-        author.put("id", p.getAuthorId());
-        author.put("name", p.getAuthorName());
-        author.put("photoURL", p.getAuthorPhotoUrl());
+    /**
+     * The best [count] of [viewerUid]'s ranking candidates after [after] (null:
+     * from the best): the ranking index's best posts they may see plus their
+     * newest posts. Candidates are re-ranked on every page, so engagement
+     * between pages can move a post across the cursor; the feed ends when the
+     * candidates do.
+     */
+    private FeedPage getRankedPage(String viewerUid, FeedRanker.Scored after, int count) {
+        Set<String> friendSet = viewerUid != null ? friends.friendIdsOf(viewerUid) : Set.of();
+        List<SocialPost> recent = withoutDeleted(feedFor(viewerUid, null).take(ranker.recentCandidates()));
+        List<FeedRanker.Scored> ranked = ranker.rank(viewerUid, friendSet, recent);
+        int from = 0;
+        if (after != null) {
+            while (from < ranked.size() && FeedRanker.BEST_FIRST.compare(ranked.get(from), after) <= 0) from++;
+        }
+        List<FeedRanker.Scored> page = ranked.subList(from, Math.min(ranked.size(), from + count));
+        boolean more = from + count < ranked.size();
+
+        Map<String, SocialPost> byId = new HashMap<>();
+        for (SocialPost p : recent) byId.put(p.getId(), p);
+        List<String> missing = new ArrayList<>();
+        for (FeedRanker.Scored s : page) {
+            if (!byId.containsKey(s.postId)) missing.add(s.postId);
+        }
+        if (!missing.isEmpty()) {
+            for (SocialPost p : repo.findPostsByIds(missing)) {
+                byId.put(p.getId(), p);
+                ranker.offer(p);
+            }
+        }
+        List<SocialPost> posts = new ArrayList<>(page.size());
+        for (FeedRanker.Scored s : page) {
+            SocialPost p = byId.get(s.postId);
+            if (p != null && !p.isDeleted()) {
+                posts.add(p);
+            } else {
+                ranker.remove(s.postId);
+            }
+        }
+        FeedRanker.Scored last = more ? page.get(page.size() - 1) : null;
+        return new FeedPage(toPostViews(posts, viewerUid), more ? encodeRankCursor(last.score, last.postId) : null);
+    }
+
+    /** Tombstoned posts are hidden; the merge still pages past them. */
+    private static List<SocialPost> withoutDeleted(List<SocialPost> posts) {
+        List<SocialPost> out = new ArrayList<>(posts.size());
+        for (SocialPost p : posts) {
+            if (!p.isDeleted()) out.add(p);
+        }
+        return out;
+    }
 
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("id", p.getId());
-        m.put("content", p.getContent());
-        m.put("type", p.getType());
-        m.put("visibility", p.getVisibility());
-        m.put("author", author);
-        m.put("attachments", p.getAttachments());
-        m.put("likesCount", p.getLikedBy().size());
-        m.put("commentsCount", p.getCommentsCount());
-        m.put("userLiked", viewerUid != null && p.getLikedBy().contains(viewerUid));
-        m.put("isOwn", viewerUid != null && viewerUid.equals(p.getAuthorId()));
-        m.put("createdAt", isoOrNull(p.getCreatedAt()));
-        return m;
+    /** View-models for [posts], with userLiked and authors each from one batched lookup. */
+    private List<PostView> toPostViews(List<SocialPost> posts, String viewerUid) {
+        Set<String> liked = Set.of();
+        Map<String, AuthorView> current = Map.of();
+        if (!posts.isEmpty()) {
+            List<String> ids = new ArrayList<>(posts.size());
+            Set<String> authorIds = new HashSet<>();
+            for (SocialPost p : posts) {
+                ids.add(p.getId());
+                if (p.getAuthorId() != null) authorIds.add(p.getAuthorId());
+            }
+            if (viewerUid != null) liked = repo.findLikedPostIds(viewerUid, ids);
+            current = authors.getAll(authorIds);
+        }
+        List<PostView> out = new ArrayList<>(posts.size());
+        for (SocialPost p : posts) {
+            PostView.Author author = toAuthorView(p.getAuthorId(), p.getAuthorName(), p.getAuthorPhotoUrl(),
+                    current.get(p.getAuthorId()));
+            boolean userLiked = liked.contains(p.getId()) || p.getLegacyLikedBy().contains(viewerUid);
+            out.add(PostView.of(p, viewerUid, userLiked, author));
+        }
+        return out;
     }
 
-    private Map<String, Object> toCommentView(Comment c) {
-        Map<String, Object> author = new LinkedHashMap<>();
-        author.put("id", c.getAuthorId());
-        author.put("name", c.getAuthorName());
-        author.put("photoURL", c.getAuthorPhotoUrl());
+    /** View-models for [comments], with authors from one batched lookup. */
+    private List<Map<String, Object>> toCommentViews(List<Comment> comments) {
+        Set<String> authorIds = new HashSet<>();
+        for (Comment c : comments) {
+            if (c.getAuthorId() != null) authorIds.add(c.getAuthorId());
+        }
+        Map<String, AuthorView> current = authorIds.isEmpty() ? Map.of() : authors.getAll(authorIds);
+        List<Map<String, Object>> out = new ArrayList<>(comments.size());
+        for (Comment c : comments) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", c.getId());
+            m.put("postId", c.getPostId());
+            m.put("content", c.getContent());
+            m.put("author", toAuthorView(c.getAuthorId(), c.getAuthorName(), c.getAuthorPhotoUrl(),
+                    current.get(c.getAuthorId())));
+            m.put("createdAt", isoOrNull(c.getCreatedAt()));
+            out.add(m);
+        }
+        return out;
+    }
 
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("id", c.getId());
-        m.put("postId", c.getPostId());
-        m.put("content", c.getContent());
-        m.put("author", author);
-        m.put("createdAt", isoOrNull(c.getCreatedAt()));
-        return m;
+    /** The author as [current] shows them now, else as captured at write time. */
+    private static PostView.Author toAuthorView(String id, String writtenName, String writtenPhoto,
+                                                AuthorView current) {
+        return new PostView.Author(id,
+                current != null && current.name != null ? current.name : writtenName,
+                current != null && current.photoUrl != null ? current.photoUrl : writtenPhoto);
     }
 
     private static String isoOrNull(LocalDateTime t) {
         return t != null ? t.toString() : null;
     }
+
+    /** A feed page plus the token for the next one (null on the last page). */
+    public static final class FeedPage {
+        private final List<PostView> posts;
+        private final String nextCursor;
+
+        public FeedPage(List<PostView> posts, String nextCursor) {
+            this.posts = posts;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<PostView> getPosts() { return posts; }
+        public String getNextCursor() { return nextCursor; }
+    }
+
+    /** A page of comments plus the token for the next one (null on the last page). */
+    public static final class CommentPage {
+        private final List<Map<String, Object>> comments;
+        private final String nextCursor;
+
+        public CommentPage(List<Map<String, Object>> comments, String nextCursor) {
+            this.comments = comments;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Map<String, Object>> getComments() { return comments; }
+        public String getNextCursor() { return nextCursor; }
+    }
 }
@@ -0,0 +1,230 @@
+package com.trego.service;
+
+import com.trego.model.Friendship;
+import com.trego.model.SocialPost;
+import com.trego.repository.FriendGraphRepository;
+import com.trego.repository.SocialRepository;
+import com.trego.repository.SocialRepository.FeedCursor;
+import com.trego.repository.TimelineRepository;
+import com.trego.repository.TimelineRepository.TimelineEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Fan-out-on-write timelines for friends-visibility posts. Creating such a post
+ * pushes a reference into each friend's timeline; the feed then reads the
+ * viewer's timeline as one newest-first query instead of querying every friend.
+ *
+ * <p>Hybrid: an author with more than {@code fanoutMaxFriends} friends is not
+ * fanned out (one post would cost that many writes). They are recorded as a
+ * pull author instead, and their posts are read at feed time from the posts
+ * collection, as for the plain indexed feed.
+ *
+ * <p>Timelines are not cleaned up eagerly. Entries for deleted posts or former
+ * friends are dropped when read. A new friendship copies each side's recent
+ * friends posts into the other's timeline.
+ *
+ * <p>Off by default ({@code social.timeline.enabled}). Friends posts written
+ * before it is turned on are in nobody's timeline and would drop out of feeds,
+ * so an existing deployment must run {@link #backfillAll} first
+ * (POST /admin/social/backfill-timelines).
+ */
+@Service
+public class TimelineService implements FriendshipListener {
+    private static final Logger logger = LoggerFactory.getLogger(TimelineService.class);
+    /** Friendships read per page by {@link #backfillAll}. */
+    static final int BACKFILL_PAGE = 200;
+
+    private final TimelineRepository timelines;
+    private final SocialRepository posts;
+    private final FriendGraphRepository friendGraph;
+    private final boolean enabled;
+    private final int fanoutMaxFriends;
+    private final int backfillPosts;
+    private final long pullAuthorsTtlNanos;
+
+    private volatile Set<String> pullAuthors;
+    private volatile long pullAuthorsLoadedAt;
+
+    @Autowired
+    public TimelineService(TimelineRepository timelines, SocialRepository posts, FriendGraphRepository friendGraph,
+                           @Value("${social.timeline.enabled:false}") boolean enabled,
+                           @Value("${social.timeline.fanout-max-friends:1000}") int fanoutMaxFriends,
+                           @Value("${social.timeline.backfill-posts:50}") int backfillPosts) {
+        this(timelines, posts, friendGraph, enabled, fanoutMaxFriends, backfillPosts, Duration.ofSeconds(60));
+    }
+
+    /** Test constructor; a zero [pullAuthorsTtl] re-reads the pull-author list on every feed. */
+    TimelineService(TimelineRepository timelines, SocialRepository posts, FriendGraphRepository friendGraph,
+                    boolean enabled, int fanoutMaxFriends, int backfillPosts, Duration pullAuthorsTtl) {
+        this.timelines = timelines;
+        this.posts = posts;
+        this.friendGraph = friendGraph;
+        this.enabled = enabled;
+        this.fanoutMaxFriends = fanoutMaxFriends;
+        this.backfillPosts = backfillPosts;
+        this.pullAuthorsTtlNanos = pullAuthorsTtl.toNanos();
+    }
+
+    /** False when the feed should query friends' posts directly (no timelines written or read). */
+    boolean enabled() { return enabled; }
+
+    /** Push a just-created post to its author's friends, or mark the author for pull. */
+    void postCreated(SocialPost post, Set<String> authorFriends) {
+        if (!enabled || !"friends".equals(post.getVisibility()) || authorFriends.isEmpty()) return;
+        if (authorFriends.size() > fanoutMaxFriends) {
+            if (!pullAuthors().contains(post.getAuthorId())) {
+                timelines.addPullAuthor(post.getAuthorId());
+                pullAuthors = null;
+            }
+            return;
+        }
+        timelines.fanOut(authorFriends, entryFor(post));
+    }
+
+    @Override
+    public void friendshipCreated(String a, String b) {
+        if (!enabled) return;
+        try {
+            backfill(a, b);
+            backfill(b, a);
+        } catch (RuntimeException e) {
+            // The friendship itself is saved; older posts just stay out of the timeline.
+            logger.warn("Timeline backfill failed for {} / {}: {}", a, b, e.getMessage());
+        }
+    }
+
+    /**
+     * Fill timelines for a deployment turning them on: walk every friendship and,
+     * as {@link #friendshipCreated} does for a new one, copy each side's last
+     * backfillPosts friends posts into the other's timeline. An author with more
+     * than fanoutMaxFriends friends is recorded as a pull author instead.
+     *
+     * <p>Runs whether or not timelines are enabled, so it can run before they are
+     * turned on, and is idempotent, so running it again right after catches posts
+     * written in between. Each author's posts are read once per page of
+     * friendships. Returns the friendships walked, timeline entries written and
+     * pull authors recorded.
+     */
+    public Map<String, Object> backfillAll() {
+        long friendships = 0;
+        long entriesWritten = 0;
+        long pullAuthorsAdded = 0;
+        String after = null;
+        while (true) {
+            List<Friendship> page = friendGraph.findFriendshipsAfter(after, BACKFILL_PAGE);
+            if (page.isEmpty()) break;
+            Map<String, List<TimelineEntry>> recentByAuthor = new HashMap<>();
+            for (Friendship f : page) {
+                List<String> pair = f.getUsers();
+                if (pair.size() != 2) continue;
+                friendships++;
+                for (int i = 0; i < 2; i++) {
+                    String author = pair.get(i);
+                    List<TimelineEntry> entries = recentByAuthor.get(author);
+                    if (entries == null) {
+                        if (!pullAuthors().contains(author)
+                                && friendGraph.findFriendshipsFor(author).size() > fanoutMaxFriends) {
+                            timelines.addPullAuthor(author);
+                            pullAuthors = null;
+                            pullAuthorsAdded++;
+                        }
+                        entries = recentEntries(author);
+                        recentByAuthor.put(author, entries);
+                    }
+                    if (!entries.isEmpty()) {
+                        timelines.addAll(pair.get(1 - i), entries);
+                        entriesWritten += entries.size();
+                    }
+                }
+            }
+            after = page.get(page.size() - 1).getPairKey();
+            if (page.size() < BACKFILL_PAGE) break;
+        }
+        logger.info("Timeline backfill: {} friendships, {} entries, {} new pull authors",
+                friendships, entriesWritten, pullAuthorsAdded);
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("friendships", friendships);
+        r.put("entries", entriesWritten);
+        r.put("pullAuthors", pullAuthorsAdded);
+        return r;
+    }
+
+    /** The subset of [friendIds] whose posts must be read directly rather than from timelines. */
+    List<String> pullAuthorsAmong(Set<String> friendIds) {
+        Set<String> pull = pullAuthors();
+        List<String> out = new ArrayList<>();
+        for (String f : friendIds) {
+            if (pull.contains(f)) out.add(f);
+        }
+        return out;
+    }
+
+    /**
+     * [viewerUid]'s timeline as a feed source. Entries whose post is gone, is no
+     * longer friends-visible, or whose author is no longer in [friendIds] are
+     * skipped, reading on until a full page is found or the timeline ends.
+     */
+    FeedMerge.Source source(String viewerUid, Set<String> friendIds) {
+        return (after, limit) -> {
+            List<SocialPost> out = new ArrayList<>(limit);
+            FeedCursor cursor = after;
+            while (out.size() < limit) {
+                List<TimelineEntry> entries = timelines.findNewestFirst(viewerUid, cursor, limit);
+                if (entries.isEmpty()) break;
+                List<String> ids = new ArrayList<>(entries.size());
+                for (TimelineEntry e : entries) {
+                    if (friendIds.contains(e.authorId)) ids.add(e.postId);
+                }
+                Map<String, SocialPost> byId = new HashMap<>();
+                for (SocialPost p : posts.findPostsByIds(ids)) byId.put(p.getId(), p);
+                for (TimelineEntry e : entries) {
+                    SocialPost p = byId.get(e.postId);
+                    if (p != null && p.getCreatedAt() != null && "friends".equals(p.getVisibility())
+                            && friendIds.contains(p.getAuthorId()) && out.size() < limit) {
+                        out.add(p);
+                    }
+                }
+                if (entries.size() < limit) break;
+                TimelineEntry last = entries.get(entries.size() - 1);
+                cursor = new FeedCursor(last.createdAt, last.postId);
+            }
+            return out;
+        };
+    }
+
+    private void backfill(String author, String owner) {
+        List<TimelineEntry> entries = recentEntries(author);
+        if (!entries.isEmpty()) timelines.addAll(owner, entries);
+    }
+
+    /** [author]'s friends posts among their last backfillPosts; none for a pull author. */
+    private List<TimelineEntry> recentEntries(String author) {
+        if (pullAuthors().contains(author)) return List.of();
+        List<TimelineEntry> entries = new ArrayList<>();
+        for (SocialPost p : posts.findPostsByAuthorNewestFirst(author, null, backfillPosts)) {
+            if ("friends".equals(p.getVisibility())) entries.add(entryFor(p));
+        }
+        return entries;
+    }
+
+    private Set<String> pullAuthors() {
+        Set<String> cached = pullAuthors;
+        if (cached == null || System.nanoTime() - pullAuthorsLoadedAt >= pullAuthorsTtlNanos) {
+            cached = timelines.findPullAuthors();
+            pullAuthorsLoadedAt = System.nanoTime();
+            pullAuthors = cached;
+        }
+        return cached;
+    }
+
+    private static TimelineEntry entryFor(SocialPost p) {
+        return new TimelineEntry(p.getId(), p.getAuthorId(), p.getCreatedAt());
+    }
+}
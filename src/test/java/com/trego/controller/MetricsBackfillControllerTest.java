@@ -0,0 +1,127 @@
+package com.trego.controller;
+
+import com.trego.config.SecurityConfig;
+import com.trego.dto.BackfillStatusDto;
+import com.trego.model.User;
+import com.trego.security.FirebaseAuthenticationFilter;
+import com.trego.security.FirebaseUserPrincipal;
+import com.trego.security.JwtAuthenticationEntryPoint;
+import com.trego.service.MetricsBackfillService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(MetricsBackfillController.class)
+@Import(SecurityConfig.class)
+@TestPropertySource(properties = "cors.allowed-origins=http://localhost:3000")
+class MetricsBackfillControllerTest {
+
+    @Autowired MockMvc mvc;
+
+    @MockBean MetricsBackfillService service;
+
+    @MockBean FirebaseAuthenticationFilter firebaseAuthenticationFilter;
+    @MockBean JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
+
+    private static RequestPostProcessor authenticatedAs(String firebaseUid, String role) {
+        User user = new User();
+        user.setId(firebaseUid);
+        user.setEmail(firebaseUid + "@test.example");
+        user.setActive(true);
+        user.setEmailVerified(true);
+        user.setRoles(Collections.singletonList(role));
+        FirebaseUserPrincipal principal = new FirebaseUserPrincipal(user, firebaseUid);
+        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
+            principal, null, principal.getAuthorities());
+        return SecurityMockMvcRequestPostProcessors.authentication(auth);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(invocation -> {
+            ServletRequest req = invocation.getArgument(0);
+            ServletResponse res = invocation.getArgument(1);
+            FilterChain chain = invocation.getArgument(2);
+            chain.doFilter(req, res);
+            return null;
+        }).when(firebaseAuthenticationFilter).doFilter(
+            any(ServletRequest.class), any(ServletResponse.class), any(FilterChain.class));
+
+        doAnswer(invocation -> {
+            HttpServletResponse res = invocation.getArgument(1);
+            res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return null;
+        }).when(jwtAuthenticationEntryPoint).commence(
+            any(HttpServletRequest.class),
+            any(HttpServletResponse.class),
+            any(AuthenticationException.class));
+    }
+
+    @Test
+    void nonAdminIsForbidden() throws Exception {
+        mvc.perform(get("/admin/metrics/backfill").with(authenticatedAs("u", "USER")))
+           .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void adminCanReadStatus() throws Exception {
+        BackfillStatusDto dto = new BackfillStatusDto();
+        dto.setState("running");
+        dto.setUsersDone(40);
+        dto.setUsersPerSec(12.5);
+        when(service.status()).thenReturn(dto);
+
+        mvc.perform(get("/admin/metrics/backfill").with(authenticatedAs("admin", "ADMIN")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.state").value("running"))
+           .andExpect(jsonPath("$.usersPerSec").value(12.5));
+    }
+
+    @Test
+    void startUsesConfiguredDefaults() throws Exception {
+        BackfillStatusDto dto = new BackfillStatusDto();
+        dto.setState("running");
+        when(service.start(eq(4), eq(500), anyBoolean())).thenReturn(dto);
+
+        mvc.perform(post("/admin/metrics/backfill").with(csrf()).with(authenticatedAs("admin", "ADMIN")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.state").value("running"));
+    }
+
+    @Test
+    void startWhileRunningConflicts() throws Exception {
+        when(service.start(eq(2), eq(100), anyBoolean())).thenThrow(new IllegalStateException("running"));
+        when(service.status()).thenReturn(new BackfillStatusDto());
+
+        mvc.perform(post("/admin/metrics/backfill").param("workers", "2").param("writesPerSecond", "100")
+                        .with(csrf()).with(authenticatedAs("admin", "ADMIN")))
+           .andExpect(status().isConflict());
+    }
+}
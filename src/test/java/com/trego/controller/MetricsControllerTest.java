@@ -27,12 +27,14 @@ import org.springframework.test.web.servlet.request.RequestPostProcessor;
 
 import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -136,6 +138,58 @@ class MetricsControllerTest {
            .andExpect(jsonPath("$.durationMs").value(87));
     }
 
+    @Test
+    void postRecomputeWithFullFlagUsesFullRecompute() throws Exception {
+        when(service.recomputeFull(eq("test-user"))).thenReturn(
+            new RecomputeResultDto(Instant.parse("2026-04-27T18:34:12Z"), 7, 120L));
+
+        mvc.perform(post("/metrics/me/recompute").param("full", "true")
+                        .with(csrf()).with(authenticatedAs("test-user")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.runCount").value(7));
+    }
+
+    @Test
+    void postRunsIngestsBatch() throws Exception {
+        when(service.ingestRuns(eq("test-user"), any())).thenReturn(
+            new RecomputeResultDto(Instant.parse("2026-04-27T18:34:12Z"), 12, 40L, 4));
+
+        mvc.perform(post("/metrics/me/runs").with(csrf()).with(authenticatedAs("test-user"))
+                        .contentType(org.springframework.http.MediaType.APPLICATION_JSON)
+                        .content("[{\"runId\":\"r1\",\"distanceKm\":5.0,\"durationMs\":1800000,"
+                                + "\"startTime\":\"2026-04-20T08:00:00Z\"}]"))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.runCount").value(12));
+    }
+
+    @Test
+    void postRunsWithInvalidBatchReturns400() throws Exception {
+        when(service.ingestRuns(eq("test-user"), any())).thenThrow(new IllegalArgumentException("empty"));
+
+        mvc.perform(post("/metrics/me/runs").with(csrf()).with(authenticatedAs("test-user"))
+                        .contentType(org.springframework.http.MediaType.APPLICATION_JSON)
+                        .content("[]"))
+           .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void deleteRunRemovesItAndReturnsResult() throws Exception {
+        when(service.deleteRuns(eq("test-user"), eq(List.of("r1")))).thenReturn(
+            new RecomputeResultDto(Instant.parse("2026-04-27T18:34:12Z"), 11, 40L, 4));
+
+        mvc.perform(delete("/metrics/me/runs/r1").with(csrf()).with(authenticatedAs("test-user")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.runCount").value(11));
+    }
+
+    @Test
+    void deleteRunWithInvalidIdReturns400() throws Exception {
+        when(service.deleteRuns(eq("test-user"), any())).thenThrow(new IllegalArgumentException("runId"));
+
+        mvc.perform(delete("/metrics/me/runs/bad").with(csrf()).with(authenticatedAs("test-user")))
+           .andExpect(status().isBadRequest());
+    }
+
     @Test
     void getGoalRequiresAuth() throws Exception {
         mvc.perform(get("/metrics/me/goal"))
@@ -166,4 +220,63 @@ class MetricsControllerTest {
            .andExpect(jsonPath("$.targetKm").value(30.0))
            .andExpect(jsonPath("$.targetRuns").value(5));
     }
+
+    @Test
+    void putGoalWithUnknownTimeZoneReturns400() throws Exception {
+        when(service.setGoal(eq("test-user"), org.mockito.ArgumentMatchers.any()))
+            .thenThrow(new IllegalArgumentException("Unknown time zone: Nowhere/Land"));
+
+        mvc.perform(org.springframework.test.web.servlet.request.MockMvcRequestBuilders
+                        .put("/metrics/me/goal").with(csrf()).with(authenticatedAs("test-user"))
+                        .contentType(org.springframework.http.MediaType.APPLICATION_JSON)
+                        .content("{\"targetKm\":30.0,\"timeZone\":\"Nowhere/Land\"}"))
+           .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void rangeWithDatesReturnsTotals() throws Exception {
+        RangeMetricsDto dto = new RangeMetricsDto();
+        dto.setFrom(java.time.LocalDate.parse("2026-04-01"));
+        dto.setTo(java.time.LocalDate.parse("2026-04-30"));
+        dto.setTotalKm(42.0);
+        dto.setTotalRuns(6);
+        when(service.getRange(eq("test-user"), eq(java.time.LocalDate.parse("2026-04-01")),
+                eq(java.time.LocalDate.parse("2026-04-30")))).thenReturn(dto);
+
+        mvc.perform(get("/metrics/me/range?from=2026-04-01&to=2026-04-30").with(authenticatedAs("test-user")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.from").value("2026-04-01"))
+           .andExpect(jsonPath("$.totalKm").value(42.0))
+           .andExpect(jsonPath("$.totalRuns").value(6));
+    }
+
+    @Test
+    void rangeWithDaysUsesTrailingWindow() throws Exception {
+        RangeMetricsDto dto = new RangeMetricsDto();
+        dto.setTotalRuns(3);
+        when(service.getTrailing(eq("test-user"), eq(30))).thenReturn(dto);
+
+        mvc.perform(get("/metrics/me/range?days=30").with(authenticatedAs("test-user")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.totalRuns").value(3));
+    }
+
+    @Test
+    void rangeWithoutBoundsOrInvalidWindowReturns400() throws Exception {
+        mvc.perform(get("/metrics/me/range?from=2026-04-01").with(authenticatedAs("test-user")))
+           .andExpect(status().isBadRequest());
+        when(service.getTrailing(eq("test-user"), eq(0))).thenThrow(new IllegalArgumentException("days"));
+        mvc.perform(get("/metrics/me/range?days=0").with(authenticatedAs("test-user")))
+           .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void monthlyReturnsOneEntryPerMonth() throws Exception {
+        when(service.getMonthly(eq("test-user"), eq(12)))
+            .thenReturn(java.util.Collections.nCopies(12, new RangeMetricsDto()));
+
+        mvc.perform(get("/metrics/me/monthly").with(authenticatedAs("test-user")))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.length()").value(12));
+    }
 }
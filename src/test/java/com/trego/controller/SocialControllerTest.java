@@ -5,6 +5,7 @@ import com.trego.model.User;
 import com.trego.security.FirebaseAuthenticationFilter;
 import com.trego.security.FirebaseUserPrincipal;
 import com.trego.security.JwtAuthenticationEntryPoint;
+import com.trego.service.PostView;
 import com.trego.service.SocialService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletRequest;
@@ -34,6 +35,7 @@ import java.util.NoSuchElementException;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
@@ -42,6 +44,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -91,19 +94,9 @@ class SocialControllerTest {
                 any(AuthenticationException.class));
     }
 
-    private static Map<String, Object> samplePost(String id, String content, boolean isOwn) {
-        Map<String, Object> author = new LinkedHashMap<>();
-        author.put("id", "alice");
-        author.put("name", "Alice");
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("id", id);
-        m.put("content", content);
-        m.put("author", author);
-        m.put("likesCount", 0);
-        m.put("commentsCount", 0);
-        m.put("userLiked", false);
-        m.put("isOwn", isOwn);
-        return m;
+    private static PostView samplePost(String id, String content, boolean isOwn) {
+        return new PostView(id, content, "general", "public", new PostView.Author("alice", "Alice", null),
+                List.of(), 0, 0, false, isOwn, null);
     }
 
     @Test
@@ -114,14 +107,39 @@ class SocialControllerTest {
 
     @Test
     void feedReturnsPosts() throws Exception {
-        when(service.getFeed(eq("alice"), anyInt(), anyInt()))
-                .thenReturn(List.of(samplePost("p1", "hi", true)));
+        when(service.getFeedPage(eq("alice"), isNull(), anyInt()))
+                .thenReturn(new SocialService.FeedPage(List.of(samplePost("p1", "hi", true)), "next-token"));
 
         mvc.perform(get("/social/posts/feed").with(authenticatedAs("alice")))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.posts[0].content").value("hi"))
-                .andExpect(jsonPath("$.posts[0].isOwn").value(true));
+                .andExpect(jsonPath("$.posts[0].isOwn").value(true))
+                .andExpect(jsonPath("$.posts[0].author.name").value("Alice"))
+                .andExpect(jsonPath("$.posts[0].author.photoURL").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").value("next-token"));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void feedWithOffsetUsesDeprecatedMode() throws Exception {
+        when(service.getFeed(eq("alice"), eq(20), eq(40)))
+                .thenReturn(List.of(samplePost("p1", "hi", true)));
+
+        mvc.perform(get("/social/posts/feed?offset=40").with(authenticatedAs("alice")))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Deprecation", "true"))
+                .andExpect(jsonPath("$.posts[0].content").value("hi"));
+    }
+
+    @Test
+    void feedWithBadCursorReturns400() throws Exception {
+        when(service.getFeedPage(eq("alice"), eq("garbage"), anyInt()))
+                .thenThrow(new IllegalArgumentException("Invalid feed cursor"));
+
+        mvc.perform(get("/social/posts/feed?cursor=garbage").with(authenticatedAs("alice")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.success").value(false));
     }
 
     @Test
@@ -151,11 +169,13 @@ class SocialControllerTest {
         Map<String, Object> c = new LinkedHashMap<>();
         c.put("id", "c1");
         c.put("content", "nice");
-        when(service.getComments(eq("p1"))).thenReturn(List.of(c));
+        when(service.getComments(eq("p1"), isNull(), eq(50)))
+                .thenReturn(new SocialService.CommentPage(List.of(c), "more"));
 
         mvc.perform(get("/social/posts/p1/comments").with(authenticatedAs("alice")))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.comments[0].content").value("nice"));
+                .andExpect(jsonPath("$.comments[0].content").value("nice"))
+                .andExpect(jsonPath("$.nextCursor").value("more"));
     }
 
     @Test
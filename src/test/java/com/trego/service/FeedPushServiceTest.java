@@ -0,0 +1,100 @@
+package com.trego.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeedPushServiceTest {
+
+    static final String ALICE = "alice-uid";
+    static final String BOB = "bob-uid";
+    static final String CAROL = "carol-uid";
+
+    InMemorySocialRepository repo;
+    List<Message<?>> sent;
+    FeedPushService push;
+    SocialService service;
+    boolean brokerDown;
+
+    @BeforeEach
+    void setUp() {
+        repo = new InMemorySocialRepository();
+        sent = new ArrayList<>();
+        SimpMessagingTemplate messaging = new SimpMessagingTemplate((message, timeout) -> {
+            if (brokerDown) throw new IllegalStateException("broker unavailable");
+            return sent.add(message);
+        });
+        Map<String, Set<String>> graph = new HashMap<>();
+        graph.put(ALICE, Set.of(BOB));
+        graph.put(BOB, Set.of(ALICE));
+        FriendshipLookup friends = uid -> graph.getOrDefault(uid, Set.of());
+        push = new FeedPushService(messaging, friends);
+        service = new SocialService(repo, friends, null, PostCounterBuffer.writeThrough(repo),
+                PostPurger.inline(repo), AuthorCache.none(), push, FeedRanker.chronological());
+    }
+
+    private Set<String> destinations() {
+        Set<String> out = new HashSet<>();
+        for (Message<?> m : sent) out.add(SimpMessageHeaderAccessor.getDestination(m.getHeaders()));
+        return out;
+    }
+
+    private FeedEvent lastEvent() {
+        return (FeedEvent) sent.get(sent.size() - 1).getPayload();
+    }
+
+    @Test
+    void publicPostIsBroadcastOnTheTopic() {
+        String id = service.createPost(CAROL, "Carol", null, "hi all", "general", List.of(), "public").getId();
+
+        assertEquals(Set.of(FeedPushService.PUBLIC_TOPIC), destinations());
+        assertEquals(FeedEvent.POST_CREATED, lastEvent().getType());
+        assertEquals(id, lastEvent().getPostId());
+        assertEquals(CAROL, lastEvent().getAuthorId());
+    }
+
+    @Test
+    void friendsPostReachesOnlyTheAuthorAndTheirFriends() {
+        service.createPost(ALICE, "Alice", null, "friends only", "general", List.of(), "friends");
+
+        assertEquals(Set.of("/user/" + ALICE + "/queue/feed", "/user/" + BOB + "/queue/feed"), destinations());
+    }
+
+    @Test
+    void likesAndCommentsFollowThePostsAudience() {
+        String id = service.createPost(ALICE, "Alice", null, "just me", "general", List.of(), "private").getId();
+        sent.clear();
+
+        service.toggleLike(ALICE, id);
+        assertEquals(FeedEvent.POST_LIKES, lastEvent().getType());
+        assertEquals(1, lastEvent().getLikesCount());
+        service.addComment(ALICE, "Alice", null, id, "note to self");
+        assertEquals(FeedEvent.COMMENT_ADDED, lastEvent().getType());
+        assertEquals(1, lastEvent().getCommentsCount());
+        assertNotNull(lastEvent().getCommentId());
+
+        assertEquals(Set.of("/user/" + ALICE + "/queue/feed"), destinations());
+    }
+
+    @Test
+    void brokerFailureDoesNotFailTheWrite() {
+        brokerDown = true;
+
+        String id = service.createPost(BOB, "Bob", null, "still saved", "general", List.of(), "public").getId();
+
+        assertTrue(repo.findPost(id).isPresent());
+        assertEquals(1, push.failedCount());
+        assertEquals(0, push.eventCount());
+    }
+}
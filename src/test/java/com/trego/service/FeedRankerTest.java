@@ -0,0 +1,161 @@
+package com.trego.service;
+
+import com.trego.model.SocialPost;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeedRankerTest {
+
+    static final String ALICE = "alice-uid";
+    static final String BOB = "bob-uid";
+    static final String CAROL = "carol-uid";
+
+    InMemorySocialRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        repo = new InMemorySocialRepository();
+    }
+
+    private static FeedRanker ranked(int maxIndexedPosts, double friendBoost) {
+        return new FeedRanker("ranked", maxIndexedPosts, 200, 50, 12, 2, friendBoost);
+    }
+
+    private SocialService service(FeedRanker ranker, FriendshipLookup friends) {
+        return new SocialService(repo, friends, null, PostCounterBuffer.writeThrough(repo),
+                PostPurger.inline(repo), AuthorCache.none(), FeedEvents.NONE, ranker);
+    }
+
+    private static SocialPost post(String id, String author, String visibility, LocalDateTime createdAt, int likes) {
+        SocialPost p = new SocialPost();
+        p.setId(id);
+        p.setAuthorId(author);
+        p.setVisibility(visibility);
+        p.setCreatedAt(createdAt);
+        p.setLikesCount(likes);
+        return p;
+    }
+
+    private static List<String> ids(List<FeedRanker.Scored> ranked) {
+        return ranked.stream().map(s -> s.postId).toList();
+    }
+
+    private static List<String> contents(SocialService.FeedPage page) {
+        return page.getPosts().stream().map(PostView::getContent).toList();
+    }
+
+    @Test
+    void engagementLiftsAPostAboveNewerOnes() {
+        SocialService svc = service(ranked(100, 2), uid -> Set.of());
+        svc.createPost(BOB, "B", null, "quiet old", "general", List.of(), "public");
+        String liked = svc.createPost(BOB, "B", null, "liked", "general", List.of(), "public").getId();
+        svc.createPost(BOB, "B", null, "quiet new", "general", List.of(), "public");
+        svc.toggleLike(ALICE, liked);
+        svc.toggleLike(CAROL, liked);
+
+        assertEquals(List.of("liked", "quiet new", "quiet old"), contents(svc.getFeedPage(ALICE, null, 10)));
+        // The chronological mode ignores engagement.
+        assertEquals(List.of("quiet new", "liked", "quiet old"),
+                contents(service(FeedRanker.chronological(), uid -> Set.of()).getFeedPage(ALICE, null, 10)));
+    }
+
+    @Test
+    void olderPostsNeedMoreEngagementToKeepUp() {
+        FeedRanker ranker = ranked(100, 2);
+        LocalDateTime now = LocalDateTime.of(2024, 6, 1, 12, 0);
+        // Two half-lives old: 3 likes are worth (1 + 3) / 4 = 1 fresh post.
+        ranker.offer(post("old-3", BOB, "public", now.minusHours(24), 3));
+        ranker.offer(post("old-4", BOB, "public", now.minusHours(24), 4));
+        ranker.offer(post("fresh", BOB, "public", now, 0));
+        ranker.offer(post("old-2", BOB, "public", now.minusHours(24), 2));
+
+        List<FeedRanker.Scored> ranked = ranker.rank(ALICE, Set.of(), List.of());
+
+        assertEquals("old-4", ranked.get(0).postId);
+        assertEquals(Set.of("old-3", "fresh"), Set.of(ranked.get(1).postId, ranked.get(2).postId));
+        assertEquals(ranked.get(1).score, ranked.get(2).score, 1e-6);
+        assertEquals("old-2", ranked.get(3).postId);
+    }
+
+    @Test
+    void friendsPostsGetTheAffinityBoost() {
+        SocialService svc = service(ranked(100, 4), uid -> ALICE.equals(uid) ? Set.of(BOB) : Set.of());
+        String carols = svc.createPost(CAROL, "C", null, "stranger, one like", "general", List.of(), "public").getId();
+        svc.createPost(BOB, "B", null, "friend, no likes", "general", List.of(), "public");
+        svc.toggleLike(BOB, carols);
+
+        assertEquals(List.of("friend, no likes", "stranger, one like"), contents(svc.getFeedPage(ALICE, null, 10)));
+        assertEquals(List.of("stranger, one like", "friend, no likes"), contents(svc.getFeedPage("dave-uid", null, 10)));
+    }
+
+    @Test
+    void indexOnlyOffersPostsTheViewerMaySee() {
+        FeedRanker ranker = ranked(100, 2);
+        LocalDateTime now = LocalDateTime.of(2024, 6, 1, 12, 0);
+        ranker.offer(post("bob-friends", BOB, "friends", now, 9));
+        ranker.offer(post("bob-private", BOB, "private", now, 9));
+        ranker.offer(post("carol-public", CAROL, "public", now, 0));
+
+        assertEquals(List.of("bob-friends", "carol-public"), ids(ranker.rank(ALICE, Set.of(BOB), List.of())));
+        assertEquals(List.of("carol-public"), ids(ranker.rank(CAROL, Set.of(), List.of())));
+        assertEquals(3, ranker.rank(BOB, Set.of(), List.of()).size());
+    }
+
+    @Test
+    void rankedCursorPagesCoverEachPostOnce() {
+        SocialService svc = service(ranked(100, 2), uid -> Set.of());
+        for (int i = 0; i < 7; i++) {
+            String id = svc.createPost(BOB, "B", null, "post " + i, "general", List.of(), "public").getId();
+            for (int l = 0; l < i % 3; l++) svc.toggleLike("fan-" + l, id);
+        }
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            SocialService.FeedPage page = svc.getFeedPage(ALICE, cursor, 3);
+            seen.addAll(contents(page));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(List.of("post 5", "post 2", "post 4", "post 1", "post 6", "post 3", "post 0"), seen);
+        String garbled = java.util.Base64.getUrlEncoder().encodeToString("~not-a-score|x".getBytes());
+        assertThrows(IllegalArgumentException.class, () -> svc.getFeedPage(ALICE, garbled, 3));
+    }
+
+    @Test
+    void indexKeepsOnlyTheBestScores() {
+        FeedRanker ranker = ranked(2, 2);
+        LocalDateTime now = LocalDateTime.of(2024, 6, 1, 12, 0);
+        ranker.offer(post("old", BOB, "public", now.minusDays(3), 0));
+        ranker.offer(post("new", BOB, "public", now, 0));
+        ranker.offer(post("newer", BOB, "public", now.plusMinutes(1), 0));
+
+        assertEquals(2, ranker.indexedPosts());
+        assertEquals(List.of("newer", "new"), ids(ranker.rank(ALICE, Set.of(), List.of())));
+    }
+
+    @Test
+    void deletedPostsLeaveTheIndex() {
+        FeedRanker ranker = ranked(100, 2);
+        SocialService svc = service(ranker, uid -> Set.of());
+        String id = svc.createPost(BOB, "B", null, "doomed", "general", List.of(), "public").getId();
+        assertEquals(1, ranker.indexedPosts());
+
+        svc.deletePost(BOB, id);
+
+        assertEquals(0, ranker.indexedPosts());
+        assertTrue(svc.getFeedPage(ALICE, null, 10).getPosts().isEmpty());
+    }
+
+    @Test
+    void unknownModeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new FeedRanker("hot", 10, 10, 10, 12, 2, 2));
+    }
+}
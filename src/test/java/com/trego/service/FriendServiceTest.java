@@ -16,15 +16,68 @@ class FriendServiceTest {
     static final String CAROL = "carol-uid";
 
     InMemoryFriendGraphRepository repo;
+    InMemoryAuthorRepository authors;
     FriendService service;
 
     @BeforeEach
     void setUp() {
         repo = new InMemoryFriendGraphRepository();
-        repo.addUser(ALICE, "alice@test.example", "Alice A");
-        repo.addUser(BOB, "bob@test.example", "Bob B");
-        repo.addUser(CAROL, "carol@test.example", "Carol C");
-        service = new FriendService(repo);
+        authors = new InMemoryAuthorRepository();
+        addUser(ALICE, "alice@test.example", "Alice A");
+        addUser(BOB, "bob@test.example", "Bob B");
+        addUser(CAROL, "carol@test.example", "Carol C");
+        service = new FriendService(repo, authors);
+    }
+
+    private void addUser(String uid, String email, String name) {
+        repo.addUser(uid, email);
+        authors.put(uid, name);
+    }
+
+    @Test
+    void acceptingARequestNotifiesFriendshipListener() {
+        List<String> created = new java.util.ArrayList<>();
+        FriendService svc = new FriendService(repo, authors, (a, b) -> created.add(a + "+" + b));
+        svc.sendRequest(ALICE, "bob@test.example", null);
+        String requestId = (String) svc.getRequests(BOB).get(0).get("id");
+
+        svc.respondToRequest(BOB, requestId, true);
+
+        assertEquals(List.of(ALICE + "+" + BOB), created);
+        assertEquals(java.util.Set.of(BOB), svc.friendIdsOf(ALICE));
+    }
+
+    private void makeFriends(String from, String to, String toEmail) {
+        service.sendRequest(from, toEmail, null);
+        String requestId = (String) service.getRequests(to).get(0).get("id");
+        service.respondToRequest(to, requestId, true);
+    }
+
+    @Test
+    void friendSetIsCachedAndInvalidatedOnFriendshipChanges() {
+        makeFriends(ALICE, BOB, "bob@test.example");
+        assertTrue(service.areFriends(ALICE, BOB));
+        assertTrue(service.areFriends(ALICE, BOB));
+        service.friendIdsOf(ALICE);
+        assertEquals(1, repo.findFriendshipsForCalls);
+
+        makeFriends(CAROL, ALICE, "alice@test.example");
+        assertEquals(java.util.Set.of(BOB, CAROL), service.friendIdsOf(ALICE));
+
+        service.unfriend(BOB, ALICE);
+        assertFalse(service.areFriends(ALICE, BOB));
+        assertFalse(service.areFriends(BOB, ALICE));
+        assertEquals(java.util.Set.of(CAROL), service.friendIdsOf(ALICE));
+    }
+
+    @Test
+    void friendsAmongFiltersCandidatesWithOneLookup() {
+        makeFriends(ALICE, BOB, "bob@test.example");
+        int before = repo.findFriendshipsForCalls;
+
+        assertEquals(java.util.Set.of(BOB), service.friendsAmong(ALICE, List.of(BOB, CAROL, "dave-uid")));
+        assertEquals(before + 1, repo.findFriendshipsForCalls);
+        assertTrue(service.friendsAmong(null, List.of(BOB)).isEmpty());
     }
 
     @Test
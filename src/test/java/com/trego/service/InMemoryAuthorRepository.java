@@ -0,0 +1,33 @@
+package com.trego.service;
+
+import com.trego.repository.AuthorRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** In-memory {@link AuthorRepository} for unit tests. */
+public class InMemoryAuthorRepository implements AuthorRepository {
+
+    final Map<String, AuthorView> usersByUid = new LinkedHashMap<>();
+    /** Calls to findAuthors, for asserting a page is looked up in one batch. */
+    int findAuthorsCalls = 0;
+
+    /** Test helper: register or rename a user, bumping its version. */
+    void put(String uid, String name) {
+        AuthorView prev = usersByUid.get(uid);
+        usersByUid.put(uid, new AuthorView(uid, name, null, prev != null ? prev.version + 1 : 1));
+    }
+
+    @Override
+    public Map<String, AuthorView> findAuthors(Collection<String> uids) {
+        findAuthorsCalls++;
+        Map<String, AuthorView> out = new HashMap<>();
+        for (String uid : uids) {
+            AuthorView v = usersByUid.get(uid);
+            if (v != null) out.put(uid, v);
+        }
+        return out;
+    }
+}
@@ -16,13 +16,12 @@ public class InMemoryFriendGraphRepository implements FriendGraphRepository {
 
     final List<FriendRequest> requests = new ArrayList<>();
     final List<Friendship> friendships = new ArrayList<>();
+    int findFriendshipsForCalls = 0;
     final Map<String, String> emailToUid = new LinkedHashMap<>();   // lowercased email → uid
-    final Map<String, UserView> usersByUid = new LinkedHashMap<>();
 
-    /** Test helper: register a user so it can be resolved + rendered. */
-    void addUser(String uid, String email, String name) {
+    /** Test helper: register a user's email so it can be resolved. */
+    void addUser(String uid, String email) {
         if (email != null) emailToUid.put(email.toLowerCase(), uid);
-        usersByUid.put(uid, new UserView(uid, name, null));
     }
 
     @Override
@@ -82,6 +81,7 @@ public class InMemoryFriendGraphRepository implements FriendGraphRepository {
 
     @Override
     public List<Friendship> findFriendshipsFor(String uid) {
+        findFriendshipsForCalls++;
         List<Friendship> out = new ArrayList<>();
         for (Friendship f : friendships) {
             if (f.getUsers().contains(uid)) out.add(f);
@@ -89,6 +89,15 @@ public class InMemoryFriendGraphRepository implements FriendGraphRepository {
         return out;
     }
 
+    @Override
+    public List<Friendship> findFriendshipsAfter(String afterPairKey, int limit) {
+        return friendships.stream()
+                .filter(f -> afterPairKey == null || f.getPairKey().compareTo(afterPairKey) > 0)
+                .sorted(java.util.Comparator.comparing(Friendship::getPairKey))
+                .limit(limit)
+                .toList();
+    }
+
     @Override
     public void deleteFriendship(String id) {
         friendships.removeIf(f -> id.equals(f.getId()));
@@ -99,9 +108,4 @@ public class InMemoryFriendGraphRepository implements FriendGraphRepository {
         if (email == null) return Optional.empty();
         return Optional.ofNullable(emailToUid.get(email.toLowerCase()));
     }
-
-    @Override
-    public Optional<UserView> getUserView(String uid) {
-        return Optional.ofNullable(usersByUid.get(uid));
-    }
 }
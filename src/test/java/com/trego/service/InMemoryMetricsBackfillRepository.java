@@ -0,0 +1,40 @@
+package com.trego.service;
+
+import com.trego.repository.MetricsBackfillRepository;
+
+import java.util.*;
+
+/** In-memory {@link MetricsBackfillRepository} for unit tests. */
+public class InMemoryMetricsBackfillRepository implements MetricsBackfillRepository {
+    public final TreeSet<String> userIds = new TreeSet<>();
+    public long runCount = 0;
+    public final Map<Integer, Checkpoint> checkpoints = new HashMap<>();
+    public int checkpointWrites = 0;
+
+    @Override
+    public List<String> listUserIds(String afterUid, int limit) {
+        SortedSet<String> tail = afterUid == null ? userIds : userIds.tailSet(afterUid, false);
+        List<String> out = new ArrayList<>(limit);
+        for (String uid : tail) {
+            if (out.size() == limit) break;
+            out.add(uid);
+        }
+        return out;
+    }
+
+    @Override
+    public long countRuns() {
+        return runCount;
+    }
+
+    @Override
+    public Optional<Checkpoint> readCheckpoint(int schemaVersion) {
+        return Optional.ofNullable(checkpoints.get(schemaVersion));
+    }
+
+    @Override
+    public void writeCheckpoint(Checkpoint checkpoint) {
+        checkpointWrites++;
+        checkpoints.put(checkpoint.schemaVersion, checkpoint);
+    }
+}
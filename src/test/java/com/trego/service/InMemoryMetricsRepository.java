@@ -4,34 +4,143 @@ import com.trego.repository.MetricsRepository;
 import com.trego.dto.WeeklyGoalDto;
 import com.trego.model.RunRecord;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InMemoryMetricsRepository implements MetricsRepository {
     public final Map<String, List<RunRecord>> runsByUser = new HashMap<>();
-    public final Map<String, StoredSnapshot> snapshotsByUser = new HashMap<>();
-    public final Map<String, Map<LocalDate, DailyAggregate>> dailyByUser = new HashMap<>();
-    public final Map<String, WeeklyGoalDto> goalsByUser = new HashMap<>();
+    public final Map<String, StoredSnapshot> snapshotsByUser = new ConcurrentHashMap<>();
+    public final Map<String, Map<LocalDate, DailyAggregate>> dailyByUser = new ConcurrentHashMap<>();
+    public final Map<String, WeeklyGoalDto> goalsByUser = new ConcurrentHashMap<>();
+    public final Map<String, FoldState> foldByUser = new ConcurrentHashMap<>();
+    public final Map<String, Long> runVersionByUser = new ConcurrentHashMap<>();
+    /** Number of streams that started from the first run, for asserting the incremental path. */
+    public int fullScans = 0;
+    /** Page size used by streamRuns, and how many pages have been handed out. */
+    public int pageSize = 500;
+    public int pagesFetched = 0;
+    /** Simulated round-trip latency per operation name (e.g. "countRuns"), in ms. */
+    public final Map<String, Long> latencyMsByOp = new ConcurrentHashMap<>();
+    public int countRunsCalls = 0;
+    public int readRunVersionCalls = 0;
+    public int readSnapshotCalls = 0;
+    public int writeRunsCalls = 0;
+    /** uid -> (owner, expiresAt) of the recompute lease. */
+    public final Map<String, Map.Entry<String, Instant>> leases = new ConcurrentHashMap<>();
+
+    /** Test helper: what {@link #writeRuns} does to the run version, without writing a run. */
+    public void bumpRunVersion(String uid) {
+        runVersionByUser.merge(uid, 1L, Long::sum);
+    }
 
     @Override
-    public List<RunRecord> readRuns(String uid) {
-        return runsByUser.getOrDefault(uid, List.of());
+    public Iterator<RunRecord> streamRuns(String uid, Instant afterStartTime, String afterRunId) {
+        simulateLatency("streamRuns");
+        if (afterStartTime == null) fullScans++;
+        List<RunRecord> matching = new ArrayList<>();
+        for (RunRecord r : runsByUser.getOrDefault(uid, List.of())) {
+            if (r.getStartTime() == null) continue;
+            if (afterStartTime == null) {
+                matching.add(r);
+                continue;
+            }
+            int cmp = r.getStartTime().compareTo(afterStartTime);
+            if (cmp > 0 || (cmp == 0 && r.getRunId().compareTo(afterRunId) > 0)) matching.add(r);
+        }
+        matching.sort(Comparator.comparing(RunRecord::getStartTime).thenComparing(RunRecord::getRunId));
+        // Hand out one page at a time, like the Firestore cursor.
+        return new Iterator<>() {
+            int pos = 0;
+            int pageEnd = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (pos < pageEnd) return true;
+                if (pos >= matching.size()) return false;
+                pageEnd = Math.min(matching.size(), pos + pageSize);
+                pagesFetched++;
+                return true;
+            }
+
+            @Override
+            public RunRecord next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return matching.get(pos++);
+            }
+        };
     }
 
     @Override
     public int countRuns(String uid) {
-        return readRuns(uid).size();
+        countRunsCalls++;
+        simulateLatency("countRuns");
+        return (int) runsByUser.getOrDefault(uid, List.of()).stream()
+                .filter(r -> r.getStartTime() != null)
+                .count();
+    }
+
+    @Override
+    public long readRunVersion(String uid) {
+        readRunVersionCalls++;
+        simulateLatency("readRunVersion");
+        return runVersionByUser.getOrDefault(uid, -1L);
+    }
+
+    @Override
+    public synchronized RunWriteResult writeRuns(String uid, List<RunRecord> runs) {
+        writeRunsCalls++;
+        List<RunRecord> stored = new ArrayList<>(runsByUser.getOrDefault(uid, List.of()));
+        Set<String> existing = new HashSet<>();
+        for (RunRecord r : runs) {
+            if (stored.removeIf(old -> old.getRunId().equals(r.getRunId()))) existing.add(r.getRunId());
+            stored.add(r);
+        }
+        runsByUser.put(uid, stored);
+        long version = Math.max(runVersionByUser.getOrDefault(uid, 0L), 0L) + 1;
+        runVersionByUser.put(uid, version);
+        return new RunWriteResult(version, existing);
+    }
+
+    @Override
+    public synchronized RunWriteResult deleteRuns(String uid, List<String> runIds) {
+        List<RunRecord> stored = new ArrayList<>(runsByUser.getOrDefault(uid, List.of()));
+        Set<String> existing = new HashSet<>();
+        for (String id : runIds) {
+            if (stored.removeIf(old -> old.getRunId().equals(id))) existing.add(id);
+        }
+        runsByUser.put(uid, stored);
+        long version = Math.max(runVersionByUser.getOrDefault(uid, 0L), 0L) + 1;
+        runVersionByUser.put(uid, version);
+        return new RunWriteResult(version, existing);
     }
 
     @Override
     public Optional<StoredSnapshot> readSnapshot(String uid) {
+        readSnapshotCalls++;
+        simulateLatency("readSnapshot");
         return Optional.ofNullable(snapshotsByUser.get(uid));
     }
 
     @Override
-    public void writeSnapshot(String uid, StoredSnapshot snapshot, Map<LocalDate, DailyAggregate> daily) {
+    public void writeSnapshot(String uid, StoredSnapshot snapshot, Map<LocalDate, DailyAggregate> daily,
+                              Set<LocalDate> dailyToDelete) {
         snapshotsByUser.put(uid, snapshot);
-        dailyByUser.put(uid, new HashMap<>(daily));
+        // Like Firestore, only the days passed in are (over)written or deleted.
+        Map<LocalDate, DailyAggregate> stored = dailyByUser.computeIfAbsent(uid, k -> new HashMap<>());
+        stored.putAll(daily);
+        stored.keySet().removeAll(dailyToDelete);
+    }
+
+    @Override
+    public Optional<FoldState> readFoldState(String uid) {
+        return Optional.ofNullable(foldByUser.get(uid));
+    }
+
+    @Override
+    public void writeFoldState(String uid, FoldState state) {
+        foldByUser.put(uid, state);
     }
 
     @Override
@@ -43,4 +152,28 @@ public class InMemoryMetricsRepository implements MetricsRepository {
     public void writeGoal(String uid, WeeklyGoalDto goal) {
         goalsByUser.put(uid, goal);
     }
+
+    @Override
+    public synchronized boolean tryAcquireRecomputeLease(String uid, String owner, Instant now, java.time.Duration ttl) {
+        Map.Entry<String, Instant> held = leases.get(uid);
+        if (held != null && !held.getKey().equals(owner) && held.getValue().isAfter(now)) return false;
+        leases.put(uid, Map.entry(owner, now.plus(ttl)));
+        return true;
+    }
+
+    @Override
+    public synchronized void releaseRecomputeLease(String uid, String owner) {
+        Map.Entry<String, Instant> held = leases.get(uid);
+        if (held != null && held.getKey().equals(owner)) leases.remove(uid);
+    }
+
+    private void simulateLatency(String op) {
+        long ms = latencyMsByOp.getOrDefault(op, 0L);
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -5,27 +5,59 @@ import com.trego.model.PostReport;
 import com.trego.model.SocialPost;
 import com.trego.repository.SocialRepository;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 /**
- * In-memory {@link SocialRepository} for unit tests. Posts are returned
- * newest-first by insertion order (deterministic, independent of wall-clock).
+ * In-memory {@link SocialRepository} for unit tests. New posts get a createdAt
+ * strictly after the previous post's, so newest-first is insertion order
+ * (deterministic, independent of wall-clock resolution). Comments likewise.
+ *
+ * <p>Like the Firestore impl, saving an existing post keeps its stored
+ * counters and tombstone; only {@link #incrementCounters} and
+ * {@link #tombstonePost} change them. A post's legacy likers move into
+ * {@code likesByPost} on its first toggle, as they move into like documents.
  */
 public class InMemorySocialRepository implements SocialRepository {
 
     final List<SocialPost> posts = new ArrayList<>();   // oldest-first insertion order
     final List<Comment> comments = new ArrayList<>();
     final List<PostReport> reports = new ArrayList<>();
+    /** Posts handed out by the feed queries, for asserting a page reads O(page size). */
+    int feedPostsRead = 0;
+    final Map<String, Set<String>> likesByPost = new HashMap<>();
+    /** Calls to findLikedPostIds, for asserting a feed page looks likes up once. */
+    int likeLookups = 0;
+    int counterWrites = 0;
+    /** Collections whose legacy timestamps were migrated, in call order. */
+    final List<String> timestampMigrations = new ArrayList<>();
 
     @Override
     public SocialPost savePost(SocialPost post) {
         if (post.getId() == null) {
             post.setId(UUID.randomUUID().toString());
+            if (!posts.isEmpty() && post.getCreatedAt() != null) {
+                LocalDateTime prev = posts.get(posts.size() - 1).getCreatedAt();
+                if (prev != null && !post.getCreatedAt().isAfter(prev)) post.setCreatedAt(prev.plusNanos(1000));
+            }
             posts.add(post);
         } else {
+            findPost(post.getId()).ifPresent(stored -> {
+                post.setLikesCount(stored.getLikesCount());
+                post.setCommentsCount(stored.getCommentsCount());
+                post.setLegacyLikedBy(stored.getLegacyLikedBy());
+                post.setDeleted(stored.isDeleted());
+            });
             replace(posts, post, post.getId());
             if (posts.stream().noneMatch(p -> p.getId().equals(post.getId()))) {
                 posts.add(post);
@@ -40,33 +72,159 @@ public class InMemorySocialRepository implements SocialRepository {
     }
 
     @Override
-    public List<SocialPost> findAllPostsNewestFirst() {
-        List<SocialPost> copy = new ArrayList<>(posts);
-        java.util.Collections.reverse(copy);
-        return copy;
+    public List<SocialPost> findPostsByIds(List<String> ids) {
+        List<SocialPost> out = new ArrayList<>();
+        for (SocialPost p : posts) {
+            if (ids.contains(p.getId())) out.add(p);
+        }
+        feedPostsRead += out.size();
+        return out;
+    }
+
+    @Override
+    public List<SocialPost> findPublicPostsNewestFirst(FeedCursor after, int limit) {
+        return newestFirst(p -> "public".equals(p.getVisibility()), after, limit);
+    }
+
+    @Override
+    public List<SocialPost> findPostsByAuthorNewestFirst(String authorId, FeedCursor after, int limit) {
+        return newestFirst(p -> authorId.equals(p.getAuthorId()), after, limit);
+    }
+
+    @Override
+    public List<SocialPost> findFriendsPostsNewestFirst(List<String> authorIds, FeedCursor after, int limit) {
+        if (authorIds.size() > MAX_AUTHORS_PER_QUERY) throw new IllegalArgumentException("too many authors");
+        return newestFirst(p -> "friends".equals(p.getVisibility()) && authorIds.contains(p.getAuthorId()),
+                after, limit);
+    }
+
+    private List<SocialPost> newestFirst(Predicate<SocialPost> filter, FeedCursor after, int limit) {
+        Comparator<SocialPost> order = Comparator.comparing(SocialPost::getCreatedAt)
+                .thenComparing(SocialPost::getId).reversed();
+        SocialPost mark = null;
+        if (after != null) {
+            mark = new SocialPost();
+            mark.setCreatedAt(after.createdAt);
+            mark.setId(after.postId);
+        }
+        List<SocialPost> out = new ArrayList<>();
+        for (SocialPost p : posts) {
+            if (p.getCreatedAt() == null || !filter.test(p)) continue;
+            if (mark != null && order.compare(p, mark) <= 0) continue;
+            out.add(p);
+        }
+        out.sort(order);
+        List<SocialPost> page = new ArrayList<>(out.subList(0, Math.min(limit, out.size())));
+        feedPostsRead += page.size();
+        return page;
     }
 
     @Override
     public void deletePost(String id) {
         posts.removeIf(p -> id.equals(p.getId()));
+        likesByPost.remove(id);
+    }
+
+    @Override
+    public void tombstonePost(String id) {
+        findPost(id).ifPresent(p -> p.setDeleted(true));
+    }
+
+    @Override
+    public List<String> findTombstonedPostIds(int limit) {
+        List<String> out = new ArrayList<>();
+        for (SocialPost p : posts) {
+            if (p.isDeleted() && out.size() < limit) out.add(p.getId());
+        }
+        return out;
+    }
+
+    @Override
+    public boolean toggleLike(String postId, String uid) {
+        findPost(postId).filter(p -> !p.getLegacyLikedBy().isEmpty()).ifPresent(p -> {
+            Set<String> legacy = new HashSet<>(p.getLegacyLikedBy());
+            likesByPost.computeIfAbsent(postId, k -> new HashSet<>()).addAll(legacy);
+            p.setLikesCount(legacy.size());
+            p.setLegacyLikedBy(null);
+        });
+        Set<String> likers = likesByPost.computeIfAbsent(postId, k -> new HashSet<>());
+        boolean nowLiked = likers.add(uid);
+        if (!nowLiked) likers.remove(uid);
+        return nowLiked;
+    }
+
+    @Override
+    public void incrementCounters(String postId, int likesDelta, int commentsDelta) {
+        SocialPost p = findPost(postId).orElseThrow(() -> new NoSuchElementException("Post not found: " + postId));
+        p.setLikesCount(p.getLikesCount() + likesDelta);
+        p.setCommentsCount(p.getCommentsCount() + commentsDelta);
+        counterWrites++;
+    }
+
+    @Override
+    public boolean recountCounters(String postId) {
+        Optional<SocialPost> stored = findPost(postId);
+        if (stored.isEmpty() || stored.get().isDeleted() || !stored.get().getLegacyLikedBy().isEmpty()) return false;
+        SocialPost p = stored.get();
+        int likes = likesByPost.getOrDefault(postId, Set.of()).size();
+        int commentCount = (int) comments.stream().filter(c -> postId.equals(c.getPostId())).count();
+        if (likes == p.getLikesCount() && commentCount == p.getCommentsCount()) return false;
+        p.setLikesCount(likes);
+        p.setCommentsCount(commentCount);
+        return true;
+    }
+
+    @Override
+    public List<String> findPostIdsAfter(String afterId, int limit) {
+        return posts.stream()
+                .map(SocialPost::getId)
+                .filter(id -> afterId == null || id.compareTo(afterId) > 0)
+                .sorted()
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public Set<String> findLikedPostIds(String uid, List<String> postIds) {
+        likeLookups++;
+        Set<String> out = new HashSet<>();
+        for (String id : postIds) {
+            if (likesByPost.getOrDefault(id, Set.of()).contains(uid)) out.add(id);
+        }
+        return out;
     }
 
     @Override
-    public Comment saveComment(Comment comment) {
-        if (comment.getId() == null) {
-            comment.setId(UUID.randomUUID().toString());
+    public Comment addComment(Comment comment) {
+        SocialPost p = findPost(comment.getPostId())
+                .orElseThrow(() -> new NoSuchElementException("Post not found: " + comment.getPostId()));
+        comment.setId(UUID.randomUUID().toString());
+        if (!comments.isEmpty() && comment.getCreatedAt() != null) {
+            LocalDateTime prev = comments.get(comments.size() - 1).getCreatedAt();
+            if (prev != null && !comment.getCreatedAt().isAfter(prev)) comment.setCreatedAt(prev.plusNanos(1000));
         }
         comments.add(comment);
+        p.setCommentsCount(p.getCommentsCount() + 1);
         return comment;
     }
 
     @Override
-    public List<Comment> findCommentsByPost(String postId) {
+    public List<Comment> findCommentsByPost(String postId, CommentCursor after, int limit) {
+        Comparator<Comment> order = Comparator.comparing(Comment::getCreatedAt).thenComparing(Comment::getId);
+        Comment mark = null;
+        if (after != null) {
+            mark = new Comment();
+            mark.setCreatedAt(after.createdAt);
+            mark.setId(after.commentId);
+        }
         List<Comment> out = new ArrayList<>();
         for (Comment c : comments) {
-            if (postId.equals(c.getPostId())) out.add(c);
+            if (!postId.equals(c.getPostId()) || c.getCreatedAt() == null) continue;
+            if (mark != null && order.compare(c, mark) <= 0) continue;
+            out.add(c);
         }
-        return out;
+        out.sort(order);
+        return new ArrayList<>(out.subList(0, Math.min(limit, out.size())));
     }
 
     @Override
@@ -74,6 +232,11 @@ public class InMemorySocialRepository implements SocialRepository {
         comments.removeIf(c -> postId.equals(c.getPostId()));
     }
 
+    @Override
+    public void deleteReportsByPost(String postId) {
+        reports.removeIf(r -> postId.equals(r.getPostId()));
+    }
+
     @Override
     public PostReport saveReport(PostReport report) {
         if (report.getId() == null) {
@@ -83,6 +246,19 @@ public class InMemorySocialRepository implements SocialRepository {
         return report;
     }
 
+    /** Posts and comments here always hold a LocalDateTime, so there is nothing to rewrite. */
+    @Override
+    public int migrateLegacyPostTimestamps() {
+        timestampMigrations.add("posts");
+        return 0;
+    }
+
+    @Override
+    public int migrateLegacyCommentTimestamps() {
+        timestampMigrations.add("comments");
+        return 0;
+    }
+
     private static void replace(List<SocialPost> list, SocialPost post, String id) {
         for (int i = 0; i < list.size(); i++) {
             if (id.equals(list.get(i).getId())) {
@@ -0,0 +1,55 @@
+package com.trego.service;
+
+import com.trego.repository.SocialRepository.FeedCursor;
+import com.trego.repository.TimelineRepository;
+
+import java.util.*;
+
+/** In-memory {@link TimelineRepository} for unit tests. */
+public class InMemoryTimelineRepository implements TimelineRepository {
+
+    /** owner uid -> postId -> entry */
+    final Map<String, Map<String, TimelineEntry>> timelines = new HashMap<>();
+    final Set<String> pullAuthors = new HashSet<>();
+    int fanOutWrites = 0;
+
+    @Override
+    public void fanOut(Collection<String> ownerUids, TimelineEntry entry) {
+        for (String owner : ownerUids) {
+            timelines.computeIfAbsent(owner, k -> new HashMap<>()).put(entry.postId, entry);
+            fanOutWrites++;
+        }
+    }
+
+    @Override
+    public void addAll(String ownerUid, List<TimelineEntry> entries) {
+        Map<String, TimelineEntry> t = timelines.computeIfAbsent(ownerUid, k -> new HashMap<>());
+        for (TimelineEntry e : entries) t.put(e.postId, e);
+    }
+
+    @Override
+    public List<TimelineEntry> findNewestFirst(String ownerUid, FeedCursor after, int limit) {
+        Comparator<TimelineEntry> order = Comparator.<TimelineEntry, java.time.LocalDateTime>comparing(e -> e.createdAt)
+                .thenComparing(e -> e.postId).reversed();
+        List<TimelineEntry> out = new ArrayList<>();
+        for (TimelineEntry e : timelines.getOrDefault(ownerUid, Map.of()).values()) {
+            if (after != null) {
+                int cmp = e.createdAt.compareTo(after.createdAt);
+                if (cmp > 0 || (cmp == 0 && e.postId.compareTo(after.postId) >= 0)) continue;
+            }
+            out.add(e);
+        }
+        out.sort(order);
+        return new ArrayList<>(out.subList(0, Math.min(limit, out.size())));
+    }
+
+    @Override
+    public Set<String> findPullAuthors() {
+        return new HashSet<>(pullAuthors);
+    }
+
+    @Override
+    public void addPullAuthor(String uid) {
+        pullAuthors.add(uid);
+    }
+}
@@ -0,0 +1,140 @@
+package com.trego.service;
+
+import com.trego.dto.BackfillStatusDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsBackfillRepository.Checkpoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsBackfillServiceTest {
+
+    InMemoryMetricsRepository metricsRepo;
+    InMemoryMetricsBackfillRepository backfillRepo;
+    MetricsBackfillService backfill;
+
+    @BeforeEach
+    void setUp() {
+        metricsRepo = new InMemoryMetricsRepository();
+        backfillRepo = new InMemoryMetricsBackfillRepository();
+        Clock clock = Clock.fixed(Instant.parse("2026-04-21T12:00:00Z"), ZoneOffset.UTC);
+        MetricsService metrics = new MetricsService(metricsRepo, clock);
+        backfill = new MetricsBackfillService(metrics, backfillRepo, 2, clock);
+    }
+
+    private void addUser(String uid, int runs) {
+        backfillRepo.userIds.add(uid);
+        backfillRepo.runCount += runs;
+        List<RunRecord> list = new java.util.ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            list.add(new RunRecord(uid + "-r" + i, 5.0, 30 * 60 * 1000,
+                    Instant.parse("2026-04-01T08:00:00Z").plusSeconds(i * 86_400L)));
+        }
+        metricsRepo.runsByUser.put(uid, list);
+    }
+
+    @Test
+    void recomputesEveryUserAndCheckpointsPerPage() {
+        addUser("u1", 2);
+        addUser("u2", 3);
+        addUser("u3", 0);
+        addUser("u4", 1);
+        addUser("u5", 4);
+
+        BackfillStatusDto status = backfill.runNow(2, 10_000, false);
+
+        assertEquals("complete", status.getState());
+        assertEquals(5, status.getUsersDone());
+        assertEquals(10, status.getRunsDone());
+        assertEquals(10, status.getRunsTotal());
+        assertEquals(0, status.getFailures());
+        assertEquals(5, metricsRepo.snapshotsByUser.size());
+        // 3 pages of size 2 + the final "complete" checkpoint
+        assertEquals(4, backfillRepo.checkpointWrites);
+        Checkpoint cp = backfillRepo.checkpoints.get(MetricsService.SCHEMA_VERSION);
+        assertTrue(cp.complete);
+        assertEquals("u5", cp.lastUid);
+    }
+
+    @Test
+    void resumesAfterCheckpointedUser() {
+        addUser("u1", 1);
+        addUser("u2", 1);
+        addUser("u3", 1);
+        backfillRepo.writeCheckpoint(new Checkpoint(MetricsService.SCHEMA_VERSION, "u2",
+                2, 2, 0, false, Instant.parse("2026-04-21T11:00:00Z"), List.of()));
+
+        BackfillStatusDto status = backfill.runNow(1, 10_000, false);
+
+        assertEquals(3, status.getUsersDone());
+        assertEquals(3, status.getRunsDone());
+        assertEquals(1, metricsRepo.snapshotsByUser.size(), "only u3 should be recomputed");
+        assertTrue(metricsRepo.snapshotsByUser.containsKey("u3"));
+    }
+
+    @Test
+    void restartIgnoresCheckpoint() {
+        addUser("u1", 1);
+        backfillRepo.writeCheckpoint(new Checkpoint(MetricsService.SCHEMA_VERSION, "u1",
+                1, 1, 0, true, Instant.parse("2026-04-21T11:00:00Z"), List.of()));
+
+        assertEquals("complete", backfill.runNow(1, 10_000, false).getState());
+        assertTrue(metricsRepo.snapshotsByUser.isEmpty());
+
+        backfill.runNow(1, 10_000, true);
+        assertTrue(metricsRepo.snapshotsByUser.containsKey("u1"));
+    }
+
+    @Test
+    void failedUserIsCheckpointedAndRetriedByTheNextRun() {
+        addUser("u1", 1);
+        backfillRepo.userIds.add("broken");
+        metricsRepo.runsByUser.put("broken", null); // streamRuns will NPE
+
+        BackfillStatusDto status = backfill.runNow(2, 10_000, false);
+
+        assertEquals("complete", status.getState());
+        assertEquals(1, status.getUsersDone());
+        assertEquals(1, status.getFailures());
+        assertEquals(List.of("broken"), backfillRepo.checkpoints.get(MetricsService.SCHEMA_VERSION).failedUids);
+
+        // Fixed in the meantime: the completed job still picks the user up again.
+        metricsRepo.runsByUser.put("broken", List.of());
+        status = backfill.runNow(2, 10_000, false);
+
+        assertEquals("complete", status.getState());
+        assertEquals(2, status.getUsersDone());
+        assertEquals(0, status.getFailures());
+        assertTrue(metricsRepo.snapshotsByUser.containsKey("broken"));
+        Checkpoint cp = backfillRepo.checkpoints.get(MetricsService.SCHEMA_VERSION);
+        assertTrue(cp.complete);
+        assertTrue(cp.failedUids.isEmpty());
+    }
+
+    @Test
+    void failuresFromAnInterruptedRunAreRetriedBeforeResuming() {
+        addUser("u1", 1);
+        addUser("u2", 1);
+        addUser("u3", 1);
+        backfillRepo.writeCheckpoint(new Checkpoint(MetricsService.SCHEMA_VERSION, "u2",
+                1, 1, 1, false, Instant.parse("2026-04-21T11:00:00Z"), List.of("u1")));
+
+        BackfillStatusDto status = backfill.runNow(1, 10_000, false);
+
+        assertEquals(3, status.getUsersDone());
+        assertEquals(0, status.getFailures());
+        assertEquals(Set.of("u1", "u3"), metricsRepo.snapshotsByUser.keySet());
+    }
+
+    @Test
+    void statusIsIdleBeforeFirstRun() {
+        assertEquals("idle", backfill.status().getState());
+    }
+}
@@ -0,0 +1,97 @@
+package com.trego.service;
+
+import com.trego.dto.WeeklyMetricsDto;
+import com.trego.model.RunRecord;
+import com.trego.repository.MetricsRepository.DailyAggregate;
+import com.trego.repository.MetricsRepository.FoldState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsFoldTest {
+
+    private static RunRecord run(String id, String startIso, double km, long durationMs) {
+        return new RunRecord(id, km, durationMs, Instant.parse(startIso));
+    }
+
+    @Test
+    void weekBucketsMatchIsoCalendarAcrossYearBoundaries() {
+        String[] starts = {
+                "2020-12-31T10:00:00Z", // 2020-W53
+                "2021-01-03T10:00:00Z", // still 2020-W53
+                "2024-12-30T10:00:00Z", // 2025-W01
+                "2026-04-21T10:00:00Z",
+                "1969-12-31T23:00:00Z", // before the epoch
+        };
+        MetricsFold fold = MetricsFold.empty(ZoneOffset.UTC);
+        for (int i = 0; i < starts.length; i++) fold.apply(run("r" + i, starts[i], 5.0, 1_500_000));
+
+        Map<String, WeeklyMetricsDto> weekly = fold.weeklyByIsoWeek();
+        for (String s : starts) {
+            Instant t = Instant.parse(s);
+            WeeklyMetricsDto w = weekly.get(MetricsFold.isoYearWeekOf(t, ZoneOffset.UTC));
+            assertNotNull(w, s);
+            Instant[] bounds = MetricsFold.isoWeekBounds(t, ZoneOffset.UTC);
+            assertEquals(bounds[0], w.getWeekStart(), s);
+            assertEquals(bounds[1], w.getWeekEnd(), s);
+        }
+        assertEquals(2, weekly.get("2020-W53").getTotalRuns());
+        assertEquals(4, weekly.size());
+        assertEquals(1, fold.dailyByDate().get(LocalDate.parse("1969-12-31")).totalRuns);
+    }
+
+    @Test
+    void resumedFoldMatchesSinglePassAndOnlyDirtiesNewDays() {
+        MetricsFold single = MetricsFold.empty(ZoneOffset.UTC);
+        MetricsFold first = MetricsFold.empty(ZoneOffset.UTC);
+        RunRecord a = run("a", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000);
+        RunRecord b = run("b", "2026-04-14T08:00:00Z", 12.0, 70 * 60 * 1000);
+        RunRecord c = run("c", "2026-04-14T18:00:00Z", 3.0, 15 * 60 * 1000);
+        for (RunRecord r : new RunRecord[]{a, b, c}) single.apply(r);
+        first.apply(a);
+        first.apply(b);
+
+        FoldState state = first.toState(MetricsService.SCHEMA_VERSION, null);
+        MetricsFold resumed = MetricsFold.resume(state);
+        resumed.apply(c);
+
+        assertEquals(single.dailyByDate(), resumed.dailyByDate());
+        WeeklyMetricsDto w1 = single.weeklyByIsoWeek().get("2026-W16");
+        WeeklyMetricsDto w2 = resumed.weeklyByIsoWeek().get("2026-W16");
+        assertEquals(w1.getTotalKm(), w2.getTotalKm(), 0.0);
+        assertEquals(w1.getLongestKm(), w2.getLongestKm(), 0.0);
+        assertEquals(w1.getAvgPaceSecPerKm(), w2.getAvgPaceSecPerKm());
+        assertEquals(Map.of(LocalDate.parse("2026-04-14"), new DailyAggregate(15.0, 2, 85 * 60 * 1000)),
+                resumed.dirtyDays());
+        // The persisted state was not touched by the resumed fold.
+        assertEquals(1, state.dailyByDate.get(LocalDate.parse("2026-04-14")).totalRuns);
+    }
+
+    @Test
+    void localDaysAndWeeksFollowZoneAcrossDstChange() {
+        ZoneId la = ZoneId.of("America/Los_Angeles");
+        MetricsFold fold = MetricsFold.empty(la);
+        fold.apply(run("a", "2026-03-08T07:30:00Z", 5.0, 1_500_000)); // Sat 03-07 23:30 PST
+        fold.apply(run("b", "2026-03-08T10:30:00Z", 5.0, 1_500_000)); // Sun 03-08 03:30 PDT
+        fold.apply(run("c", "2026-03-10T06:30:00Z", 5.0, 1_500_000)); // Mon 03-09 23:30 PDT
+
+        assertEquals(Set.of(LocalDate.parse("2026-03-07"), LocalDate.parse("2026-03-08"),
+                LocalDate.parse("2026-03-09")), fold.dailyByDate().keySet());
+        WeeklyMetricsDto dstWeek = fold.weeklyByIsoWeek().get("2026-W10");
+        assertEquals(2, dstWeek.getTotalRuns());
+        // Monday 00:00 PST to the next Monday 00:00 PDT: a 167-hour week.
+        assertEquals(Instant.parse("2026-03-02T08:00:00Z"), dstWeek.getWeekStart());
+        assertEquals(Instant.parse("2026-03-09T07:00:00Z").minusNanos(1), dstWeek.getWeekEnd());
+        Instant[] bounds = MetricsFold.isoWeekBounds(Instant.parse("2026-03-08T10:30:00Z"), la);
+        assertEquals(bounds[0], dstWeek.getWeekStart());
+        assertEquals(bounds[1], dstWeek.getWeekEnd());
+        assertEquals(1, fold.weeklyByIsoWeek().get("2026-W11").getTotalRuns());
+    }
+}
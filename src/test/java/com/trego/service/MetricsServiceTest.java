@@ -1,5 +1,6 @@
 package com.trego.service;
 
+import com.github.benmanes.caffeine.cache.Ticker;
 import com.trego.dto.MetricsSnapshotDto;
 import com.trego.dto.PrEntryDto;
 import com.trego.dto.WeeklyMetricsDto;
@@ -10,6 +11,8 @@ import org.junit.jupiter.api.Test;
 
 import java.time.*;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -239,6 +242,657 @@ class MetricsServiceTest {
         assertEquals(first.getHistory().size(), second.getHistory().size());
     }
 
+    @Test
+    void runWithoutStartTimeDoesNotForceAFullRecompute() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-19T08:00:00Z", 5.0, 30 * 60 * 1000),
+                new RunRecord("untimed", 7.0, 40 * 60 * 1000L, null)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+        assertEquals(1, repo.fullScans);
+
+        runs.add(run("b", "2026-04-20T08:00:00Z", 3.0, 18 * 60 * 1000));
+        RecomputeResultDto result = service.recompute(UID);
+
+        assertEquals(1, repo.fullScans, "the untimed run must not count as drift");
+        assertEquals(2, result.getRunCount());
+        assertEquals(8.0, repo.snapshotsByUser.get(UID).dto.getTotals().getTotalKm(), 0.0001);
+    }
+
+    @Test
+    void incrementalRecomputeFoldsOnlyNewRuns() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-19T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("b", "2026-04-20T08:00:00Z", 5.0, 28 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+        assertEquals(1, repo.fullScans);
+
+        runs.add(run("c", "2026-04-21T08:00:00Z", 10.0, 50 * 60 * 1000));
+        RecomputeResultDto result = service.recompute(UID);
+
+        assertEquals(1, repo.fullScans, "second recompute must not re-read every run");
+        assertEquals(3, result.getRunCount());
+        MetricsSnapshotDto dto = repo.snapshotsByUser.get(UID).dto;
+        assertEquals(20.0, dto.getTotals().getTotalKm(), 0.0001);
+        assertEquals(3, dto.getThisWeek().getStreakDays());
+        assertEquals("c", dto.getPrs().getFastest10k().getRunId());
+        assertEquals(3, repo.foldByUser.get(UID).runCount);
+        assertEquals("c", repo.foldByUser.get(UID).watermarkRunId);
+    }
+
+    @Test
+    void incrementalRecomputeMatchesFullRecompute() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-06T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("b", "2026-04-13T08:00:00Z", 12.0, 70 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+        runs.add(run("c", "2026-04-13T18:00:00Z", 3.0, 15 * 60 * 1000));
+        runs.add(run("d", "2026-04-21T08:00:00Z", 6.0, 29 * 60 * 1000));
+
+        service.recompute(UID);
+        MetricsSnapshotDto incremental = repo.snapshotsByUser.get(UID).dto;
+        service.recomputeFull(UID);
+        MetricsSnapshotDto full = repo.snapshotsByUser.get(UID).dto;
+
+        assertEquals(full.getTotals().getTotalKm(), incremental.getTotals().getTotalKm(), 0.0001);
+        assertEquals(full.getTotals().getTotalRuns(), incremental.getTotals().getTotalRuns());
+        assertEquals(full.getPrs().getFastest5k().getRunId(), incremental.getPrs().getFastest5k().getRunId());
+        for (int i = 0; i < full.getHistory().size(); i++) {
+            assertEquals(full.getHistory().get(i).getTotalKm(), incremental.getHistory().get(i).getTotalKm(), 0.0001);
+            assertEquals(full.getHistory().get(i).getAvgPaceSecPerKm(), incremental.getHistory().get(i).getAvgPaceSecPerKm());
+        }
+        assertEquals(2, repo.dailyByUser.get(UID).get(LocalDate.parse("2026-04-13")).totalRuns);
+    }
+
+    @Test
+    void fullRecomputeOnlyRewritesChangedDays() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("b", "2026-04-14T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("c", "2026-04-15T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        assertEquals(3 + 2, service.recomputeFull(UID).getDocsWritten());
+
+        runs.add(run("d", "2026-04-15T18:00:00Z", 2.0, 12 * 60 * 1000));
+        RecomputeResultDto result = service.recomputeFull(UID);
+
+        // Only 04-15 moved; the other two daily docs are skipped.
+        assertEquals(1 + 2, result.getDocsWritten());
+        assertEquals(2, service.dailyWritesSaved());
+        assertEquals(4, service.dailyWrites());
+        assertEquals(2, repo.dailyByUser.get(UID).get(LocalDate.parse("2026-04-15")).totalRuns);
+    }
+
+    @Test
+    void deletedRunForcesFullRecompute() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-19T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("b", "2026-04-20T08:00:00Z", 8.0, 40 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+
+        runs.remove(1);
+        service.recompute(UID);
+
+        assertEquals(2, repo.fullScans, "count mismatch must fall back to a full read");
+        assertEquals(5.0, repo.snapshotsByUser.get(UID).dto.getTotals().getTotalKm(), 0.0001);
+        assertEquals("a", repo.snapshotsByUser.get(UID).dto.getPrs().getLongestDistance().getRunId());
+    }
+
+    @Test
+    void countPreservingChangesAreFoldedOnceTheLastFullPassIsStale() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("b", "2026-04-20T08:00:00Z", 8.0, 40 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+        assertEquals(Instant.now(fixedClock), repo.foldByUser.get(UID).fullFoldAt);
+
+        // A deleted run and a backdated one: the count still adds up.
+        runs.set(0, run("c", "2026-04-14T08:00:00Z", 3.0, 20 * 60 * 1000));
+        service.recompute(UID);
+        assertEquals(1, repo.fullScans, "within STALE_AFTER the fold is resumed");
+
+        Clock later = Clock.offset(fixedClock, MetricsService.STALE_AFTER.plusMinutes(1));
+        new MetricsService(repo, later).recompute(UID);
+
+        assertEquals(2, repo.fullScans);
+        assertEquals(11.0, repo.snapshotsByUser.get(UID).dto.getTotals().getTotalKm(), 0.0001);
+        assertNull(repo.dailyByUser.get(UID).get(LocalDate.parse("2026-04-13")));
+        assertEquals(Instant.now(later), repo.foldByUser.get(UID).fullFoldAt);
+    }
+
+    @Test
+    void foldStateFromOlderSchemaForcesFullRecompute() {
+        repo.runsByUser.put(UID, List.of(
+                run("a", "2026-04-19T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        service.recompute(UID);
+        var old = repo.foldByUser.get(UID);
+        repo.foldByUser.put(UID, new com.trego.repository.MetricsRepository.FoldState(
+                MetricsService.SCHEMA_VERSION - 1, old.zoneId, old.runCount, old.watermarkStartTime,
+                old.watermarkRunId, old.prs, old.totals, old.dailyByDate, old.weeklyByIsoWeek, old.fullFoldAt));
+
+        service.recompute(UID);
+
+        assertEquals(2, repo.fullScans);
+        assertEquals(MetricsService.SCHEMA_VERSION, repo.foldByUser.get(UID).schemaVersion);
+    }
+
+    @Test
+    void recomputeFoldsRunsPageByPage() {
+        repo.pageSize = 2;
+        repo.runsByUser.put(UID, List.of(
+                run("a", "2026-04-15T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("b", "2026-04-16T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("c", "2026-04-17T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("d", "2026-04-18T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("e", "2026-04-19T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+
+        RecomputeResultDto result = service.recomputeFull(UID);
+
+        assertEquals(5, result.getRunCount());
+        assertEquals(3, repo.pagesFetched);
+        assertEquals(25.0, repo.snapshotsByUser.get(UID).dto.getTotals().getTotalKm(), 0.0001);
+    }
+
+    @Test
+    void staleCheckReadsOnlyTheRunVersion() {
+        repo.runsByUser.put(UID, List.of(run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        repo.bumpRunVersion(UID);
+        service = new MetricsService(repo, uncached(), fixedClock);
+        service.recompute(UID);
+        int counts = repo.countRunsCalls;
+        int versionReads = repo.readRunVersionCalls;
+        int scans = repo.fullScans;
+
+        service.getSnapshot(UID);
+        assertEquals(counts, repo.countRunsCalls, "a read never counts runs");
+        assertEquals(versionReads + 1, repo.readRunVersionCalls);
+        assertEquals(scans, repo.fullScans);
+        assertEquals(1L, repo.snapshotsByUser.get(UID).runVersionAtCompute);
+
+        // Same count, newer version: a run was edited, so recompute.
+        repo.bumpRunVersion(UID);
+        service.getSnapshot(UID);
+        assertEquals(2L, repo.snapshotsByUser.get(UID).runVersionAtCompute);
+    }
+
+    /** A cache that never holds anything, so every read reaches the staleness check. */
+    private static MetricsSnapshotCache uncached() {
+        return new MetricsSnapshotCache(0, Duration.ofMinutes(5), Ticker.systemTicker());
+    }
+
+    @Test
+    void deletedRunsLeaveTheMetricsInTheSameCall() {
+        service.ingestRuns(UID, List.of(
+                ingest("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000),
+                ingest("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000)));
+
+        RecomputeResultDto result = service.deleteRuns(UID, List.of("a"));
+
+        assertEquals(1, result.getRunCount());
+        assertEquals(2L, repo.runVersionByUser.get(UID).longValue());
+        assertEquals(2L, repo.snapshotsByUser.get(UID).runVersionAtCompute);
+        assertEquals(3.0, service.getSnapshot(UID).getTotals().getTotalKm(), 0.0001);
+        assertThrows(IllegalArgumentException.class, () -> service.deleteRuns(UID, List.of("x/y")));
+        assertThrows(IllegalArgumentException.class, () -> service.deleteRuns(UID, List.of()));
+    }
+
+    @Test
+    void snapshotServedFromCacheUntilRunVersionChanges() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        repo.bumpRunVersion(UID);
+        service.recompute(UID);  // write-through
+
+        service.getSnapshot(UID);
+        service.getSnapshot(UID);
+        assertEquals(0, repo.readSnapshotCalls, "cache hit must skip the snapshot read");
+
+        runs.add(run("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000));
+        repo.bumpRunVersion(UID);
+        assertEquals(2, service.getSnapshot(UID).getTotals().getTotalRuns());
+
+        // An ingest that keeps the count, e.g. a corrected distance: only the version moves.
+        service.ingestRuns(UID, List.of(ingest("b", "2026-04-21T08:00:00Z", 4.0, 18 * 60 * 1000)));
+        assertEquals(9.0, service.getSnapshot(UID).getTotals().getTotalKm(), 0.0001);
+    }
+
+    @Test
+    void snapshotIsCachedBeforeTheFirstRunWrite() {
+        repo.runsByUser.put(UID, List.of(run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        service.recompute(UID);
+        assertEquals(-1L, repo.snapshotsByUser.get(UID).runVersionAtCompute);
+
+        service.getSnapshot(UID);
+        service.getSnapshot(UID);
+        assertEquals(0, repo.readSnapshotCalls, "cache hit must skip the snapshot read");
+
+        // The first write creates the run version, so the cached entry no longer matches.
+        service.ingestRuns(UID, List.of(ingest("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000)));
+        assertEquals(2, service.getSnapshot(UID).getTotals().getTotalRuns());
+    }
+
+    @Test
+    void cachedSnapshotIsOnlyServedForItsRunVersion() {
+        repo.runsByUser.put(UID, List.of(run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        repo.bumpRunVersion(UID);
+        MetricsSnapshotCache cache = new MetricsSnapshotCache(100, Duration.ofMinutes(5), Ticker.systemTicker());
+        service = new MetricsService(repo, cache, fixedClock);
+        service.recompute(UID);
+
+        assertNotNull(cache.get(UID, 1L));
+        assertNull(cache.get(UID, 2L));
+    }
+
+    @Test
+    void cacheHitWithinVersionTtlMakesNoFirestoreCall() {
+        AtomicLong nanos = new AtomicLong();
+        MetricsSnapshotCache cache = new MetricsSnapshotCache(100, Duration.ofMinutes(5), Duration.ofSeconds(5), nanos::get);
+        service = new MetricsService(repo, cache, fixedClock);
+        service.ingestRuns(UID, List.of(ingest("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        service.getTrailing(UID, 7);  // builds the range index
+        int versionReads = repo.readRunVersionCalls;
+        int snapshotReads = repo.readSnapshotCalls;
+        int counts = repo.countRunsCalls;
+
+        service.getSnapshot(UID);
+        service.getTrailing(UID, 7);
+        service.getSnapshot(UID);
+
+        assertEquals(versionReads, repo.readRunVersionCalls);
+        assertEquals(snapshotReads, repo.readSnapshotCalls);
+        assertEquals(counts, repo.countRunsCalls);
+
+        // A run written through another instance: served from the cache until the version TTL runs out.
+        repo.runsByUser.get(UID).add(run("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000));
+        repo.bumpRunVersion(UID);
+        assertEquals(1, service.getSnapshot(UID).getTotals().getTotalRuns());
+        nanos.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertEquals(2, service.getSnapshot(UID).getTotals().getTotalRuns());
+        assertEquals(versionReads + 2, repo.readRunVersionCalls, "one check, one recompute");
+    }
+
+    @Test
+    void setGoalInvalidatesCachedSnapshot() {
+        MetricsSnapshotCache cache = new MetricsSnapshotCache(100, Duration.ofMinutes(5), Ticker.systemTicker());
+        service = new MetricsService(repo, cache, fixedClock);
+        repo.bumpRunVersion(UID);
+        service.recompute(UID);
+        assertNotNull(cache.get(UID, 1L));
+
+        service.setGoal(UID, new com.trego.dto.WeeklyGoalDto(20.0, 3, null));
+
+        assertNull(cache.get(UID, 1L));
+    }
+
+    @Test
+    void snapshotCacheEvictsBySizeAndTtl() {
+        AtomicLong nanos = new AtomicLong();
+        MetricsSnapshotCache cache = new MetricsSnapshotCache(1, Duration.ofMinutes(5), nanos::get);
+        MetricsSnapshotDto dto = new MetricsSnapshotDto();
+
+        cache.put("u1", 1L, dto);
+        cache.put("u2", 1L, dto);
+        assertEquals(1, cache.evictionCount(), "max size 1 must evict one entry");
+
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+        assertNull(cache.get("u2", 1L), "entry must expire after the TTL");
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void bucketsRunsByCalendarDayInUsersZone() {
+        repo.goalsByUser.put(UID, new com.trego.dto.WeeklyGoalDto(null, null, null, "America/Los_Angeles"));
+        repo.runsByUser.put(UID, List.of(
+                // Sunday 2026-04-19 20:00 PDT: the previous ISO week in Los Angeles
+                run("a", "2026-04-20T03:00:00Z", 5.0, 30 * 60 * 1000),
+                // Tuesday 2026-04-21 01:00 PDT
+                run("b", "2026-04-21T08:00:00Z", 8.0, 45 * 60 * 1000)
+        ));
+
+        service.recompute(UID);
+
+        var daily = repo.dailyByUser.get(UID);
+        assertEquals(Set.of(LocalDate.parse("2026-04-19"), LocalDate.parse("2026-04-21")), daily.keySet());
+        MetricsSnapshotDto snap = repo.snapshotsByUser.get(UID).dto;
+        assertEquals("2026-W17", snap.getThisWeek().getIsoYearWeek());
+        assertEquals(8.0, snap.getThisWeek().getTotalKm(), 0.0001);
+        assertEquals(Instant.parse("2026-04-20T07:00:00Z"), snap.getThisWeek().getWeekStart());
+        assertEquals(1, snap.getThisWeek().getStreakDays());
+        assertEquals(5.0, snap.getHistory().get(MetricsService.HISTORY_WEEKS - 2).getTotalKm(), 0.0001);
+        assertEquals("America/Los_Angeles", repo.foldByUser.get(UID).zoneId);
+    }
+
+    @Test
+    void changingTimeZoneRebucketsAndDeletesOrphanedDays() {
+        repo.runsByUser.put(UID, List.of(
+                run("a", "2026-04-20T03:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        service.recompute(UID);
+        assertEquals(Set.of(LocalDate.parse("2026-04-20")), repo.dailyByUser.get(UID).keySet());
+
+        service.setGoal(UID, new com.trego.dto.WeeklyGoalDto(null, null, null, "America/Los_Angeles"));
+
+        assertEquals(Set.of(LocalDate.parse("2026-04-19")), repo.dailyByUser.get(UID).keySet());
+        assertEquals("America/Los_Angeles", repo.foldByUser.get(UID).zoneId);
+        assertEquals(0.0, service.getSnapshot(UID).getThisWeek().getTotalKm(), 0.0001);
+
+        // Omitting the zone keeps it.
+        var saved = service.setGoal(UID, new com.trego.dto.WeeklyGoalDto(10.0, null, null));
+        assertEquals("America/Los_Angeles", saved.getTimeZone());
+        assertEquals(2, repo.fullScans);
+    }
+
+    @Test
+    void setGoalRejectsUnknownTimeZone() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.setGoal(UID, new com.trego.dto.WeeklyGoalDto(null, null, null, "Mars/Olympus_Mons")));
+        assertTrue(repo.goalsByUser.isEmpty());
+    }
+
+    @Test
+    void rangeQueriesSumInclusiveDayWindows() {
+        repo.runsByUser.put(UID, List.of(
+                run("a", "2026-02-10T08:00:00Z", 4.0, 24 * 60 * 1000),
+                run("b", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("c", "2026-04-14T08:00:00Z", 10.0, 50 * 60 * 1000),
+                run("d", "2026-04-14T18:00:00Z", 2.0, 10 * 60 * 1000),
+                run("e", "2026-04-20T08:00:00Z", 6.0, 36 * 60 * 1000)
+        ));
+
+        var range = service.getRange(UID, LocalDate.parse("2026-04-13"), LocalDate.parse("2026-04-14"));
+        assertEquals(17.0, range.getTotalKm(), 0.0001);
+        assertEquals(3, range.getTotalRuns());
+        assertEquals(2, range.getActiveDays());
+        assertEquals(Math.round(5400 / 17.0), range.getAvgPaceSecPerKm());
+
+        var outside = service.getRange(UID, LocalDate.parse("2025-01-01"), LocalDate.parse("2025-12-31"));
+        assertEquals(0, outside.getTotalRuns());
+        assertEquals(27.0, service.getRange(UID, LocalDate.parse("2000-01-01"),
+                LocalDate.parse("2100-01-01")).getTotalKm(), 0.0001);
+
+        // now = 2026-04-21: the last 7 days are 04-15..04-21
+        var week = service.getTrailing(UID, 7);
+        assertEquals(LocalDate.parse("2026-04-15"), week.getFrom());
+        assertEquals(6.0, week.getTotalKm(), 0.0001);
+
+        var monthly = service.getMonthly(UID, 3);
+        assertEquals(3, monthly.size());
+        assertEquals(LocalDate.parse("2026-02-01"), monthly.get(0).getFrom());
+        assertEquals(LocalDate.parse("2026-02-28"), monthly.get(0).getTo());
+        assertEquals(4.0, monthly.get(0).getTotalKm(), 0.0001);
+        assertEquals(0, monthly.get(1).getTotalRuns());
+        assertEquals(4, monthly.get(2).getTotalRuns());
+
+        assertThrows(IllegalArgumentException.class, () ->
+                service.getRange(UID, LocalDate.parse("2026-04-14"), LocalDate.parse("2026-04-13")));
+        assertThrows(IllegalArgumentException.class, () -> service.getTrailing(UID, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.getMonthly(UID, MetricsService.MAX_MONTHS + 1));
+    }
+
+    @Test
+    void outlierRunDatesKeepTheRangeIndexSparse() {
+        // Written by a client straight to Firestore, so never validated on ingest.
+        repo.runsByUser.put(UID, List.of(
+                run("epoch", "1970-01-01T00:00:00Z", 1.0, 6 * 60 * 1000),
+                run("b", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000),
+                run("c", "2026-04-14T08:00:00Z", 10.0, 50 * 60 * 1000),
+                run("far", "9999-12-31T08:00:00Z", 2.0, 10 * 60 * 1000)
+        ));
+        service.recompute(UID);
+
+        DailyRangeIndex index = DailyRangeIndex.build(repo.foldByUser.get(UID).dailyByDate, UTC);
+        assertEquals(4, index.slots());
+        assertEquals(15.0, service.getRange(UID, LocalDate.parse("2026-04-13"),
+                LocalDate.parse("2026-04-14")).getTotalKm(), 0.0001);
+        assertEquals(1, service.getRange(UID, LocalDate.parse("1960-01-01"),
+                LocalDate.parse("2000-01-01")).getTotalRuns());
+        assertEquals(0, service.getRange(UID, LocalDate.parse("2026-04-15"),
+                LocalDate.parse("2026-04-20")).getTotalRuns());
+        assertEquals(18.0, service.getRange(UID, LocalDate.parse("1970-01-01"),
+                LocalDate.parse("9999-12-31")).getTotalKm(), 0.0001);
+        assertEquals(15.0, service.getTrailing(UID, 30).getTotalKm(), 0.0001);
+    }
+
+    @Test
+    void rangeIndexIsCachedPerRunVersion() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        repo.bumpRunVersion(UID);
+        LocalDate from = LocalDate.parse("2026-04-01");
+        LocalDate to = LocalDate.parse("2026-04-30");
+
+        assertEquals(5.0, service.getRange(UID, from, to).getTotalKm(), 0.0001);
+        int snapshotReads = repo.readSnapshotCalls;
+        assertEquals(1, service.getTrailing(UID, 30).getTotalRuns());
+        assertEquals(snapshotReads, repo.readSnapshotCalls, "second query must be served from the cached index");
+
+        runs.add(run("b", "2026-04-20T08:00:00Z", 3.0, 18 * 60 * 1000));
+        repo.bumpRunVersion(UID);
+        assertEquals(8.0, service.getRange(UID, from, to).getTotalKm(), 0.0001);
+    }
+
+    @Test
+    void concurrentReadersShareOneRecompute() throws Exception {
+        repo.runsByUser.put(UID, List.of(
+                run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        repo.latencyMsByOp.put("streamRuns", 200L);
+        int readers = 8;
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(readers);
+        java.util.concurrent.CountDownLatch go = new java.util.concurrent.CountDownLatch(1);
+        List<java.util.concurrent.Future<MetricsSnapshotDto>> results = new java.util.ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            results.add(pool.submit(() -> {
+                go.await();
+                return service.getSnapshot(UID);
+            }));
+        }
+        go.countDown();
+        for (var f : results) assertEquals(5.0, f.get().getTotals().getTotalKm(), 0.0001);
+        pool.shutdown();
+
+        assertEquals(1, repo.fullScans);
+    }
+
+    @Test
+    void ingestFoldsUnderTheLeaseAndDefersWhileAnotherNodeHoldsIt() {
+        Instant now = fixedClock.instant();
+        service.ingestRuns(UID, List.of(ingest("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        assertFalse(repo.leases.containsKey(UID), "the lease is released after the fold");
+
+        repo.leases.put(UID, java.util.Map.entry("other-node", now.plusSeconds(30)));
+        RecomputeResultDto deferred = service.ingestRuns(UID,
+                List.of(ingest("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000)));
+
+        assertNull(deferred.getRecomputedAt(), "nothing folded while another node holds the lease");
+        assertEquals(2, deferred.getRunCount());
+        assertEquals(2, repo.runsByUser.get(UID).size());
+        assertEquals(1, repo.snapshotsByUser.get(UID).runCountAtCompute);
+        assertEquals("other-node", repo.leases.get(UID).getKey());
+
+        // Once the lease lapses, the next read picks the write up.
+        repo.leases.put(UID, java.util.Map.entry("other-node", now.minusSeconds(1)));
+        assertEquals(2, service.getSnapshot(UID).getTotals().getTotalRuns());
+    }
+
+    @Test
+    void staleSnapshotIsServedWhileAnotherNodeHoldsTheLease() {
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+        runs.add(run("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000));
+        repo.bumpRunVersion(UID);
+        Instant now = Instant.now(fixedClock);
+        repo.leases.put(UID, java.util.Map.entry("other-node", now.plusSeconds(30)));
+
+        assertEquals(5.0, service.getSnapshot(UID).getTotals().getTotalKm(), 0.0001);
+        assertEquals(1, repo.snapshotsByUser.get(UID).runCountAtCompute);
+
+        // Once the other node's lease lapses, this node takes over and releases it after.
+        repo.leases.put(UID, java.util.Map.entry("other-node", now.minusSeconds(1)));
+        assertEquals(8.0, service.getSnapshot(UID).getTotals().getTotalKm(), 0.0001);
+        assertFalse(repo.leases.containsKey(UID));
+    }
+
+    private MetricsService staleWhileRevalidate(List<Runnable> queued, Clock clock) {
+        MetricsRevalidator revalidator = new MetricsRevalidator(true, Duration.ofDays(7), queued::add);
+        return new MetricsService(repo, new MetricsSnapshotCache(10_000, Duration.ofMinutes(5), Ticker.systemTicker()),
+                revalidator, clock);
+    }
+
+    @Test
+    void staleSnapshotIsServedImmediatelyAndRefreshedInTheBackground() {
+        List<Runnable> queued = new java.util.ArrayList<>();
+        service = staleWhileRevalidate(queued, fixedClock);
+        List<RunRecord> runs = new java.util.ArrayList<>(List.of(
+                run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)
+        ));
+        repo.runsByUser.put(UID, runs);
+        service.recompute(UID);
+        assertNull(service.getSnapshot(UID).getStale());
+        runs.add(run("b", "2026-04-21T08:00:00Z", 3.0, 18 * 60 * 1000));
+        repo.bumpRunVersion(UID);
+
+        MetricsSnapshotDto served = service.getSnapshot(UID);
+        assertEquals(5.0, served.getTotals().getTotalKm(), 0.0001);
+        assertEquals(Boolean.TRUE, served.getStale());
+        assertNull(repo.snapshotsByUser.get(UID).dto.getStale());
+
+        // A second stale read does not queue another refresh for the same user.
+        service.getSnapshot(UID);
+        assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+        MetricsSnapshotDto fresh = service.getSnapshot(UID);
+        assertEquals(8.0, fresh.getTotals().getTotalKm(), 0.0001);
+        assertNull(fresh.getStale());
+        assertTrue(queued.isEmpty());
+    }
+
+    @Test
+    void schemaMismatchRecomputesSynchronouslyEvenWithStaleWhileRevalidate() {
+        List<Runnable> queued = new java.util.ArrayList<>();
+        repo.runsByUser.put(UID, List.of(run("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        service.recompute(UID);
+        var stored = repo.snapshotsByUser.get(UID);
+        repo.snapshotsByUser.put(UID, new com.trego.repository.MetricsRepository.StoredSnapshot(
+                MetricsService.SCHEMA_VERSION - 1, stored.runCountAtCompute, stored.runVersionAtCompute, stored.dto));
+
+        // A schema bump ships with a new build, so this instance starts with an empty cache.
+        service = staleWhileRevalidate(queued, fixedClock);
+
+        MetricsSnapshotDto served = service.getSnapshot(UID);
+        assertNull(served.getStale());
+        assertTrue(queued.isEmpty());
+        assertEquals(MetricsService.SCHEMA_VERSION, repo.snapshotsByUser.get(UID).schemaVersion);
+    }
+
+    @Test
+    void snapshotPastTheHardCeilingRecomputesSynchronously() {
+        List<Runnable> queued = new java.util.ArrayList<>();
+        repo.runsByUser.put(UID, List.of(run("a", "2026-04-01T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        new MetricsService(repo, Clock.fixed(Instant.parse("2026-04-10T12:00:00Z"), UTC)).recompute(UID);
+
+        // Computed eleven days before fixedClock: past the 7-day ceiling.
+        service = staleWhileRevalidate(queued, fixedClock);
+        MetricsSnapshotDto served = service.getSnapshot(UID);
+        assertNull(served.getStale());
+        assertTrue(queued.isEmpty());
+        assertEquals(Instant.now(fixedClock), served.getComputedAt());
+    }
+
+    private static com.trego.dto.RunIngestDto ingest(String id, String startIso, double km, long durationMs) {
+        return new com.trego.dto.RunIngestDto(id, km, durationMs, Instant.parse(startIso));
+    }
+
+    @Test
+    void ingestedRunsAreFoldedWithoutRereadingRuns() {
+        repo.runsByUser.put(UID, List.of(run("a", "2026-04-13T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        repo.bumpRunVersion(UID);
+        service.recompute(UID);
+        int scansBefore = repo.fullScans;
+        int pagesBefore = repo.pagesFetched;
+
+        RecomputeResultDto result = service.ingestRuns(UID, List.of(
+                ingest("c", "2026-04-21T07:00:00Z", 10.0, 55 * 60 * 1000),
+                ingest("b", "2026-04-20T08:00:00Z", 3.0, 18 * 60 * 1000)));
+
+        assertEquals(3, result.getRunCount());
+        assertEquals(1, repo.writeRunsCalls);
+        assertEquals(scansBefore, repo.fullScans);
+        assertEquals(pagesBefore, repo.pagesFetched);
+        assertEquals(3, repo.runsByUser.get(UID).size());
+        assertEquals("c", repo.foldByUser.get(UID).watermarkRunId);
+
+        // The snapshot is current for the bumped version, so the next read needs no recompute.
+        assertEquals(repo.runVersionByUser.get(UID).longValue(), repo.snapshotsByUser.get(UID).runVersionAtCompute);
+        MetricsSnapshotDto snap = service.getSnapshot(UID);
+        assertEquals(18.0, snap.getTotals().getTotalKm(), 0.0001);
+        assertEquals(13.0, snap.getThisWeek().getTotalKm(), 0.0001);
+        assertEquals(10.0, snap.getPrs().getFastest10k().getDistanceKm(), 0.0001);
+        assertEquals(scansBefore, repo.fullScans);
+    }
+
+    @Test
+    void ingestingBackdatedRunMatchesFullRecompute() {
+        repo.runsByUser.put(UID, List.of(run("b", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        service.recompute(UID);
+
+        service.ingestRuns(UID, List.of(ingest("a", "2026-04-14T08:00:00Z", 7.0, 40 * 60 * 1000)));
+
+        assertEquals(2, repo.foldByUser.get(UID).runCount);
+        assertEquals(12.0, repo.snapshotsByUser.get(UID).dto.getTotals().getTotalKm(), 0.0001);
+        assertEquals("b", repo.foldByUser.get(UID).watermarkRunId);
+    }
+
+    @Test
+    void reingestingAnExistingRunReplacesIt() {
+        service.ingestRuns(UID, List.of(ingest("a", "2026-04-20T08:00:00Z", 5.0, 30 * 60 * 1000)));
+        // A retried sync with a corrected distance must not count the run twice.
+        service.ingestRuns(UID, List.of(ingest("a", "2026-04-20T08:00:00Z", 6.0, 30 * 60 * 1000)));
+
+        var totals = repo.snapshotsByUser.get(UID).dto.getTotals();
+        assertEquals(1, totals.getTotalRuns());
+        assertEquals(6.0, totals.getTotalKm(), 0.0001);
+    }
+
+    @Test
+    void invalidIngestBatchesAreRejectedBeforeAnyWrite() {
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of(
+                ingest("a", "2026-04-20T08:00:00Z", 5.0, 1000),
+                ingest("a", "2026-04-21T08:00:00Z", 5.0, 1000))));
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of(
+                new com.trego.dto.RunIngestDto("a", 5.0, 1000L, null))));
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of(
+                ingest("x/y", "2026-04-20T08:00:00Z", 5.0, 1000))));
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of(
+                ingest("a", "2026-04-20T08:00:00Z", -1.0, 1000))));
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of(
+                ingest("a", "1970-01-01T00:00:00Z", 5.0, 1000))));
+        assertThrows(IllegalArgumentException.class, () -> service.ingestRuns(UID, List.of(
+                ingest("a", "9999-12-31T08:00:00Z", 5.0, 1000))));
+        assertEquals(0, repo.writeRunsCalls);
+    }
+
     @Test
     void getGoalReturnsEmptyWhenUnset() {
         var goal = service.getGoal(UID);
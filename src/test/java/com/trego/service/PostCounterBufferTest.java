@@ -0,0 +1,139 @@
+package com.trego.service;
+
+import com.trego.model.SocialPost;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostCounterBufferTest {
+
+    InMemorySocialRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        repo = new InMemorySocialRepository();
+    }
+
+    private String post() {
+        SocialPost p = new SocialPost();
+        p.setAuthorId("author");
+        p.setVisibility("public");
+        return repo.savePost(p).getId();
+    }
+
+    private int likes(String id) {
+        return repo.findPost(id).orElseThrow().getLikesCount();
+    }
+
+    @Test
+    void deltasForOnePostCoalesceIntoOneWrite() {
+        String id = post();
+        PostCounterBuffer buffer = new PostCounterBuffer(repo, Duration.ofMillis(250), 100);
+
+        for (int i = 0; i < 50; i++) buffer.add(id, 1, 0);
+        buffer.add(id, -1, 0);
+        buffer.add(id, 0, 3);
+        assertEquals(0, repo.counterWrites);
+
+        buffer.flush();
+
+        assertEquals(1, repo.counterWrites);
+        assertEquals(49, likes(id));
+        assertEquals(3, repo.findPost(id).orElseThrow().getCommentsCount());
+        assertEquals(52, buffer.deltaCount());
+        assertEquals(1, buffer.writeCount());
+    }
+
+    @Test
+    void fullBufferWritesNewPostsOnCallerThread() {
+        String a = post();
+        String b = post();
+        PostCounterBuffer buffer = new PostCounterBuffer(repo, Duration.ofMillis(250), 1);
+
+        buffer.add(a, 1, 0);
+        buffer.add(b, 1, 0);
+        buffer.add(a, 1, 0);
+
+        assertEquals(1, likes(b));
+        assertEquals(0, likes(a));
+        assertEquals(1, buffer.pendingPosts());
+        buffer.flush();
+        assertEquals(2, likes(a));
+    }
+
+    @Test
+    void failedFlushIsRetriedThenDropped() {
+        PostCounterBuffer buffer = new PostCounterBuffer(repo, Duration.ofMillis(250), 100);
+        buffer.add("deleted-post", 1, 0);
+
+        for (int i = 1; i < PostCounterBuffer.MAX_FLUSH_ATTEMPTS; i++) {
+            buffer.flush();
+            assertEquals(1, buffer.pendingPosts());
+        }
+        buffer.flush();
+
+        assertEquals(0, buffer.pendingPosts());
+    }
+
+    @Test
+    void droppedDeltaIsRecountedByTheNextRepair() {
+        String id = post();
+        InMemorySocialRepository failing = new InMemorySocialRepository() {
+            @Override
+            public void incrementCounters(String postId, int likesDelta, int commentsDelta) {
+                throw new IllegalStateException("unavailable");
+            }
+        };
+        failing.posts.addAll(repo.posts);
+        PostCounterBuffer buffer = new PostCounterBuffer(failing, Duration.ofMillis(250), 100);
+        failing.toggleLike(id, "u1");
+        buffer.add(id, 1, 0);
+
+        for (int i = 0; i < PostCounterBuffer.MAX_FLUSH_ATTEMPTS; i++) buffer.flush();
+        assertEquals(0, buffer.pendingPosts());
+        assertEquals(0, likes(id), "the delta was dropped");
+
+        assertEquals(1, buffer.repair());
+        assertEquals(1, likes(id));
+    }
+
+    @Test
+    void repairSweepRecountsEveryPostInBatches() {
+        String a = post();
+        String b = post();
+        String c = post();
+        // Likes whose deltas were lost to a crash, and a comment counted twice.
+        repo.toggleLike(a, "u1");
+        repo.toggleLike(b, "u1");
+        repo.toggleLike(b, "u2");
+        repo.findPost(c).orElseThrow().setCommentsCount(2);
+        PostCounterBuffer buffer = new PostCounterBuffer(repo, Duration.ofMillis(250), 100, 2);
+
+        assertEquals(3, buffer.repair() + buffer.repair());
+        assertEquals(1, likes(a));
+        assertEquals(2, likes(b));
+        assertEquals(0, repo.findPost(c).orElseThrow().getCommentsCount());
+
+        // A post with a delta pending here is left for the next sweep.
+        repo.toggleLike(a, "u2");
+        buffer.add(a, 1, 0);
+        buffer.repair();
+        buffer.repair();
+        buffer.flush();
+        assertEquals(2, likes(a));
+    }
+
+    @Test
+    void zeroWindowWritesThrough() {
+        String id = post();
+        PostCounterBuffer buffer = PostCounterBuffer.writeThrough(repo);
+
+        buffer.add(id, 1, 0);
+
+        assertEquals(1, likes(id));
+        assertEquals(0, buffer.pendingPosts());
+    }
+}
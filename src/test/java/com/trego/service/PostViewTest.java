@@ -0,0 +1,70 @@
+package com.trego.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostViewTest {
+
+    /** As configured in application.yml (spring.jackson.default-property-inclusion). */
+    private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    /** The map SocialService built per post before views were typed. */
+    private static Map<String, Object> legacyMap(PostView v) {
+        Map<String, Object> author = new LinkedHashMap<>();
+        author.put("id", v.getAuthor().getId());
+        author.put("name", v.getAuthor().getName());
+        author.put("photoURL", v.getAuthor().getPhotoUrl());
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", v.getId());
+        m.put("content", v.getContent());
+        m.put("type", v.getType());
+        m.put("visibility", v.getVisibility());
+        m.put("author", author);
+        m.put("attachments", v.getAttachments());
+        m.put("likesCount", v.getLikesCount());
+        m.put("commentsCount", v.getCommentsCount());
+        m.put("userLiked", v.isUserLiked());
+        m.put("isOwn", v.isOwn());
+        m.put("createdAt", v.getCreatedAt() != null ? v.getCreatedAt().toString() : null);
+        return m;
+    }
+
+    private void assertSameJson(PostView v) throws Exception {
+        assertEquals(mapper.writeValueAsString(legacyMap(v)), mapper.writeValueAsString(v));
+    }
+
+    @Test
+    void writesTheSameJsonAsTheLegacyMap() throws Exception {
+        assertSameJson(new PostView("p1", "10k \"PB\" — 🏃", "workout", "friends",
+                new PostView.Author("alice", "Alice A", "https://img/a.png"),
+                List.of("img1", "img2"), 12, 3, true, false, LocalDateTime.of(2024, 5, 1, 7, 30, 15, 123_000_000)));
+    }
+
+    @Test
+    void leavesOutNullFieldsAsTheLegacyMapDid() throws Exception {
+        assertSameJson(new PostView("p2", null, "general", "public",
+                new PostView.Author("bob", null, null), null, 0, 0, false, true, null));
+    }
+
+    @Test
+    void listOfViewsInsideAResponseBody() throws Exception {
+        PostView v = new PostView("p3", "hi", "general", "public", new PostView.Author("carol", "Carol", null),
+                List.of(), 1, 0, false, false, LocalDateTime.of(2024, 1, 1, 0, 0));
+        Map<String, Object> typed = new LinkedHashMap<>();
+        typed.put("success", true);
+        typed.put("posts", List.of(v, v));
+        typed.put("nextCursor", null);
+        Map<String, Object> legacy = new LinkedHashMap<>(typed);
+        legacy.put("posts", List.of(legacyMap(v), legacyMap(v)));
+
+        assertEquals(mapper.writeValueAsString(legacy), mapper.writeValueAsString(typed));
+    }
+}
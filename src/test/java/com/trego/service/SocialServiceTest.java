@@ -1,5 +1,6 @@
 package com.trego.service;
 
+import com.trego.model.SocialPost;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -24,27 +25,25 @@ class SocialServiceTest {
     }
 
     private String createPost(String uid, String content, String visibility) {
-        Map<String, Object> p = service.createPost(uid, uid + "-name", null, content,
+        PostView p = service.createPost(uid, uid + "-name", null, content,
                 "general", List.of(), visibility);
-        return (String) p.get("id");
+        return p.getId();
     }
 
     @Test
     void createPostReturnsViewModelWithAuthorAndOwnFlag() {
-        Map<String, Object> post = service.createPost(ALICE, "Alice A", null, "hello",
+        PostView post = service.createPost(ALICE, "Alice A", null, "hello",
                 "workout", List.of("img1"), "public");
 
-        assertEquals("hello", post.get("content"));
-        assertEquals("workout", post.get("type"));
-        assertEquals(true, post.get("isOwn"));
-        assertEquals(false, post.get("userLiked"));
-        assertEquals(0, post.get("likesCount"));
-        assertEquals(0, post.get("commentsCount"));
-        @SuppressWarnings("unchecked")
-        Map<String, Object> author = (Map<String, Object>) post.get("author");
-        assertEquals(ALICE, author.get("id"));
-        assertEquals("Alice A", author.get("name"));
-        assertNotNull(post.get("createdAt"));
+        assertEquals("hello", post.getContent());
+        assertEquals("workout", post.getType());
+        assertTrue(post.isOwn());
+        assertFalse(post.isUserLiked());
+        assertEquals(0, post.getLikesCount());
+        assertEquals(0, post.getCommentsCount());
+        assertEquals(ALICE, post.getAuthor().getId());
+        assertEquals("Alice A", post.getAuthor().getName());
+        assertNotNull(post.getCreatedAt());
     }
 
     @Test
@@ -52,53 +51,51 @@ class SocialServiceTest {
         createPost(BOB, "bob public", "public");
         createPost(BOB, "bob private", "private");
 
-        List<Map<String, Object>> feed = service.getFeed(ALICE, 20, 0);
+        List<PostView> feed = service.getFeedPage(ALICE, null, 20).getPosts();
 
         assertEquals(1, feed.size());
-        assertEquals("bob public", feed.get(0).get("content"));
-        assertEquals(false, feed.get(0).get("isOwn"));
+        assertEquals("bob public", feed.get(0).getContent());
+        assertFalse(feed.get(0).isOwn());
     }
 
     @Test
     void feedShowsViewerOwnPrivatePosts() {
         createPost(ALICE, "alice private", "private");
 
-        List<Map<String, Object>> feed = service.getFeed(ALICE, 20, 0);
+        List<PostView> feed = service.getFeedPage(ALICE, null, 20).getPosts();
 
         assertEquals(1, feed.size());
-        assertEquals("alice private", feed.get(0).get("content"));
-        assertEquals(true, feed.get(0).get("isOwn"));
+        assertEquals("alice private", feed.get(0).getContent());
+        assertTrue(feed.get(0).isOwn());
     }
 
     @Test
     void friendsPostVisibleToFriendButNotStranger() {
         // Service where ALICE and BOB are friends, CAROL is not.
-        FriendshipLookup lookup = (a, b) -> {
-            var pair = java.util.Set.of(a, b);
-            return pair.equals(java.util.Set.of(ALICE, BOB));
-        };
+        FriendshipLookup lookup = uid -> ALICE.equals(uid) ? java.util.Set.of(BOB)
+                : BOB.equals(uid) ? java.util.Set.of(ALICE) : java.util.Set.of();
         SocialService svc = new SocialService(repo, lookup);
 
         svc.createPost(BOB, "Bob B", null, "bob friends-only", "general", List.of(), "friends");
 
         // Friend sees it.
-        List<Map<String, Object>> aliceFeed = svc.getFeed(ALICE, 20, 0);
+        List<PostView> aliceFeed = svc.getFeedPage(ALICE, null, 20).getPosts();
         assertEquals(1, aliceFeed.size());
-        assertEquals("bob friends-only", aliceFeed.get(0).get("content"));
-        assertEquals(false, aliceFeed.get(0).get("isOwn"));
+        assertEquals("bob friends-only", aliceFeed.get(0).getContent());
+        assertFalse(aliceFeed.get(0).isOwn());
 
         // Stranger does not.
-        assertTrue(svc.getFeed("carol-uid", 20, 0).isEmpty());
+        assertTrue(svc.getFeedPage("carol-uid", null, 20).getPosts().isEmpty());
 
         // Author always sees their own.
-        assertEquals(1, svc.getFeed(BOB, 20, 0).size());
+        assertEquals(1, svc.getFeedPage(BOB, null, 20).getPosts().size());
     }
 
     @Test
     void friendsPostHiddenWhenFriendshipLookupDisabled() {
         // Default one-arg constructor disables friends-visibility.
         createPost(BOB, "bob friends-only", "friends");
-        assertTrue(service.getFeed(ALICE, 20, 0).isEmpty());
+        assertTrue(service.getFeedPage(ALICE, null, 20).getPosts().isEmpty());
     }
 
     @Test
@@ -107,14 +104,278 @@ class SocialServiceTest {
         createPost(ALICE, "second", "public");
         createPost(ALICE, "third", "public");
 
-        List<Map<String, Object>> page1 = service.getFeed(ALICE, 2, 0);
-        assertEquals(2, page1.size());
-        assertEquals("third", page1.get(0).get("content"));
-        assertEquals("second", page1.get(1).get("content"));
+        SocialService.FeedPage page1 = service.getFeedPage(ALICE, null, 2);
+        assertEquals(2, page1.getPosts().size());
+        assertEquals("third", page1.getPosts().get(0).getContent());
+        assertEquals("second", page1.getPosts().get(1).getContent());
 
-        List<Map<String, Object>> page2 = service.getFeed(ALICE, 2, 2);
+        List<PostView> page2 = service.getFeedPage(ALICE, page1.getNextCursor(), 2).getPosts();
         assertEquals(1, page2.size());
-        assertEquals("first", page2.get(0).get("content"));
+        assertEquals("first", page2.get(0).getContent());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void offsetFeedStillPagesForOlderClients() {
+        createPost(ALICE, "first", "public");
+        createPost(ALICE, "second", "public");
+        createPost(ALICE, "third", "public");
+
+        List<PostView> page1 = service.getFeed(ALICE, 2, 0);
+        assertEquals(List.of("third", "second"), page1.stream().map(PostView::getContent).toList());
+
+        List<PostView> page2 = service.getFeed(ALICE, 2, 2);
+        assertEquals(1, page2.size());
+        assertEquals("first", page2.get(0).getContent());
+        assertTrue(service.getFeed(ALICE, 2, 3).isEmpty());
+    }
+
+    @Test
+    void feedMergesSourcesNewestFirstWithoutDuplicates() {
+        FriendshipLookup lookup = uid -> ALICE.equals(uid) ? java.util.Set.of(BOB) : java.util.Set.of();
+        SocialService svc = new SocialService(repo, lookup);
+        svc.createPost(ALICE, "A", null, "alice public", "general", List.of(), "public");
+        svc.createPost(BOB, "B", null, "bob friends", "general", List.of(), "friends");
+        svc.createPost("carol-uid", "C", null, "carol public", "general", List.of(), "public");
+        svc.createPost(BOB, "B", null, "bob private", "general", List.of(), "private");
+        svc.createPost(ALICE, "A", null, "alice private", "general", List.of(), "private");
+        svc.createPost("carol-uid", "C", null, "carol friends", "general", List.of(), "friends");
+
+        List<String> contents = svc.getFeedPage(ALICE, null, 20).getPosts().stream()
+                .map(m -> m.getContent()).toList();
+        assertEquals(List.of("alice private", "carol public", "bob friends", "alice public"), contents);
+
+        String cursor = svc.getFeedPage(ALICE, null, 2).getNextCursor();
+        List<String> secondPage = svc.getFeedPage(ALICE, cursor, 2).getPosts().stream()
+                .map(m -> m.getContent()).toList();
+        assertEquals(List.of("bob friends", "alice public"), secondPage);
+    }
+
+    @Test
+    void feedPageReadsBoundedNumberOfPosts() {
+        for (int i = 0; i < 500; i++) createPost(BOB, "post " + i, "public");
+
+        List<PostView> page = service.getFeedPage(ALICE, null, 10).getPosts();
+
+        assertEquals(10, page.size());
+        assertEquals("post 499", page.get(0).getContent());
+        // One page, plus the post that tells another page exists, from the public
+        // query; the viewer has no posts of their own.
+        assertEquals(11, repo.feedPostsRead);
+    }
+
+    @Test
+    void cursorPagesCoverFeedOnceEachAndEndWithNullCursor() {
+        for (int i = 0; i < 7; i++) createPost(BOB, "post " + i, "public");
+
+        List<String> seen = new java.util.ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            SocialService.FeedPage page = service.getFeedPage(ALICE, cursor, 3);
+            page.getPosts().forEach(m -> seen.add(m.getContent()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(List.of("post 6", "post 5", "post 4", "post 3", "post 2", "post 1", "post 0"), seen);
+    }
+
+    @Test
+    void newPostsDoNotShiftCursorPages() {
+        for (int i = 0; i < 4; i++) createPost(BOB, "post " + i, "public");
+        SocialService.FeedPage first = service.getFeedPage(ALICE, null, 2);
+
+        createPost(BOB, "late post", "public");
+        SocialService.FeedPage second = service.getFeedPage(ALICE, first.getNextCursor(), 2);
+
+        assertEquals(List.of("post 1", "post 0"),
+                second.getPosts().stream().map(m -> m.getContent()).toList());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void deepCursorPageReadsOnlyOnePage() {
+        for (int i = 0; i < 500; i++) createPost(BOB, "post " + i, "public");
+        String cursor = null;
+        for (int i = 0; i < 40; i++) cursor = service.getFeedPage(ALICE, cursor, 10).getNextCursor();
+        repo.feedPostsRead = 0;
+
+        SocialService.FeedPage page = service.getFeedPage(ALICE, cursor, 10);
+
+        assertEquals("post 99", page.getPosts().get(0).getContent());
+        // count + 1 posts from the public query, however deep the page.
+        assertEquals(11, repo.feedPostsRead);
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.getFeedPage(ALICE, "not a cursor!", 10));
+        String noSeparator = java.util.Base64.getUrlEncoder().encodeToString("nothing".getBytes());
+        assertThrows(IllegalArgumentException.class, () -> service.getFeedPage(ALICE, noSeparator, 10));
+    }
+
+    @Test
+    void friendsPostsAreQueriedInAuthorChunks() {
+        java.util.Set<String> many = new java.util.HashSet<>();
+        for (int i = 0; i < 65; i++) many.add("friend-" + i);
+        SocialService svc = new SocialService(repo, uid -> ALICE.equals(uid) ? many : java.util.Set.of());
+        for (int i = 0; i < 65; i++) {
+            svc.createPost("friend-" + i, "F", null, "friend post " + i, "general", List.of(), "friends");
+        }
+
+        List<PostView> feed = svc.getFeedPage(ALICE, null, 100).getPosts();
+
+        assertEquals(65, feed.size());
+        assertEquals("friend post 64", feed.get(0).getContent());
+        assertEquals("friend post 0", feed.get(64).getContent());
+    }
+
+    private final Map<String, java.util.Set<String>> graph = new java.util.HashMap<>();
+
+    private void befriend(String a, String b) {
+        graph.computeIfAbsent(a, k -> new java.util.HashSet<>()).add(b);
+        graph.computeIfAbsent(b, k -> new java.util.HashSet<>()).add(a);
+    }
+
+    private SocialService withTimelines(InMemoryTimelineRepository timelines, int fanoutMaxFriends) {
+        TimelineService ts = new TimelineService(timelines, repo, new InMemoryFriendGraphRepository(),
+                true, fanoutMaxFriends, 50, java.time.Duration.ZERO);
+        return new SocialService(repo, uid -> graph.getOrDefault(uid, java.util.Set.of()), ts);
+    }
+
+    @Test
+    void friendsPostIsFannedOutAndServedFromTimeline() {
+        InMemoryTimelineRepository timelines = new InMemoryTimelineRepository();
+        SocialService svc = withTimelines(timelines, 100);
+        befriend(ALICE, BOB);
+        befriend("carol-uid", BOB);
+
+        String id = svc.createPost(BOB, "B", null, "bob friends", "general", List.of(), "friends").getId();
+        svc.createPost(BOB, "B", null, "bob private", "general", List.of(), "private");
+
+        assertEquals(2, timelines.fanOutWrites);
+        assertTrue(timelines.timelines.get(ALICE).containsKey(id));
+        List<PostView> feed = svc.getFeedPage(ALICE, null, 20).getPosts();
+        assertEquals(1, feed.size());
+        assertEquals("bob friends", feed.get(0).getContent());
+        assertTrue(svc.getFeedPage("dave-uid", null, 20).getPosts().isEmpty());
+
+        // Stale entries are dropped on read: unfriended author, then a deleted post.
+        graph.get("carol-uid").remove(BOB);
+        assertTrue(svc.getFeedPage("carol-uid", null, 20).getPosts().isEmpty());
+        svc.deletePost(BOB, id);
+        assertTrue(svc.getFeedPage(ALICE, null, 20).getPosts().isEmpty());
+    }
+
+    @Test
+    void widelyConnectedAuthorIsPulledInsteadOfFannedOut() {
+        InMemoryTimelineRepository timelines = new InMemoryTimelineRepository();
+        SocialService svc = withTimelines(timelines, 2);
+        befriend(ALICE, BOB);
+        befriend("carol-uid", BOB);
+        befriend("dave-uid", BOB);
+
+        svc.createPost(BOB, "B", null, "bob friends", "general", List.of(), "friends");
+
+        assertEquals(0, timelines.fanOutWrites);
+        assertTrue(timelines.pullAuthors.contains(BOB));
+        assertEquals("bob friends", svc.getFeedPage(ALICE, null, 20).getPosts().get(0).getContent());
+    }
+
+    @Test
+    void newFriendshipBackfillsRecentFriendsPosts() {
+        InMemoryTimelineRepository timelines = new InMemoryTimelineRepository();
+        TimelineService ts = new TimelineService(timelines, repo, new InMemoryFriendGraphRepository(),
+                true, 100, 50, java.time.Duration.ZERO);
+        SocialService svc = new SocialService(repo, uid -> graph.getOrDefault(uid, java.util.Set.of()), ts);
+        svc.createPost(BOB, "B", null, "before we met", "general", List.of(), "friends");
+
+        befriend(ALICE, BOB);
+        ts.friendshipCreated(ALICE, BOB);
+
+        assertEquals("before we met", svc.getFeedPage(ALICE, null, 20).getPosts().get(0).getContent());
+    }
+
+    @Test
+    void backfillFillsTimelinesFromExistingFriendshipsAndPosts() {
+        InMemoryTimelineRepository timelines = new InMemoryTimelineRepository();
+        InMemoryFriendGraphRepository friendGraph = new InMemoryFriendGraphRepository();
+        // Posts written while timelines were off.
+        SocialService off = new SocialService(repo, uid -> graph.getOrDefault(uid, java.util.Set.of()));
+        off.createPost(BOB, "B", null, "bob friends", "general", List.of(), "friends");
+        off.createPost(BOB, "B", null, "bob private", "general", List.of(), "private");
+        off.createPost("carol-uid", "C", null, "carol friends", "general", List.of(), "friends");
+        for (String[] pair : new String[][] {{ALICE, BOB}, {ALICE, "carol-uid"}, {"carol-uid", "dave-uid"},
+                                             {"carol-uid", "erin-uid"}}) {
+            befriend(pair[0], pair[1]);
+            friendGraph.saveFriendship(com.trego.model.Friendship.of(pair[0], pair[1]));
+        }
+        TimelineService ts = new TimelineService(timelines, repo, friendGraph, true, 2, 50, java.time.Duration.ZERO);
+        SocialService svc = new SocialService(repo, uid -> graph.getOrDefault(uid, java.util.Set.of()), ts);
+        assertTrue(svc.getFeedPage(ALICE, null, 20).getPosts().isEmpty());
+
+        Map<String, Object> result = ts.backfillAll();
+
+        assertEquals(4L, result.get("friendships"));
+        assertEquals(1L, result.get("pullAuthors"), "carol has more friends than the fan-out limit");
+        assertTrue(timelines.pullAuthors.contains("carol-uid"));
+        assertFalse(timelines.timelines.containsKey("dave-uid"));
+        List<PostView> feed = svc.getFeedPage(ALICE, null, 20).getPosts();
+        assertEquals(2, feed.size());
+        assertEquals("carol friends", feed.get(0).getContent());
+        assertEquals("bob friends", feed.get(1).getContent());
+
+        // Idempotent.
+        ts.backfillAll();
+        assertEquals(2, svc.getFeedPage(ALICE, null, 20).getPosts().size());
+    }
+
+    private SocialService withAuthors(AuthorCache cache) {
+        return new SocialService(repo, uid -> java.util.Set.of(), null,
+                PostCounterBuffer.writeThrough(repo), PostPurger.inline(repo), cache, FeedEvents.NONE, FeedRanker.chronological());
+    }
+
+    @Test
+    void feedShowsAuthorsCurrentNameAfterProfileChange() {
+        InMemoryAuthorRepository authors = new InMemoryAuthorRepository();
+        authors.put(BOB, "Bob");
+        AuthorCache cache = new AuthorCache(authors, 100, 60);
+        SocialService svc = withAuthors(cache);
+        svc.createPost(BOB, "Bob (at write time)", null, "hello", "general", List.of(), "public");
+        svc.createPost("ghost-uid", "Ghost", "ghost.png", "boo", "general", List.of(), "public");
+
+        List<PostView> feed = svc.getFeedPage(ALICE, null, 20).getPosts();
+        PostView.Author ghost = feed.get(0).getAuthor();
+        assertEquals("Ghost", ghost.getName()); // unknown users keep their write-time view
+        assertEquals("ghost.png", ghost.getPhotoUrl());
+
+        authors.put(BOB, "Robert");
+        cache.invalidate(BOB);
+
+        PostView.Author bob = svc.getFeedPage(ALICE, null, 20).getPosts().get(1).getAuthor();
+        assertEquals("Robert", bob.getName());
+    }
+
+    @Test
+    void authorsOfAPageAreLoadedInOneBatchThenCached() {
+        InMemoryAuthorRepository authors = new InMemoryAuthorRepository();
+        SocialService svc = withAuthors(new AuthorCache(authors, 100, 60));
+        for (int i = 0; i < 10; i++) {
+            authors.put("author-" + i, "Author " + i);
+            svc.createPost("author-" + i, "A", null, "post " + i, "general", List.of(), "public");
+        }
+        authors.findAuthorsCalls = 0;
+
+        svc.getFeedPage(ALICE, null, 20);
+        svc.getFeedPage(ALICE, null, 20);
+
+        // Each createPost already cached its author, so the page is all hits.
+        assertEquals(0, authors.findAuthorsCalls);
+        AuthorCache cold = new AuthorCache(authors, 100, 60);
+        withAuthors(cold).getFeedPage(ALICE, null, 20);
+        assertEquals(1, authors.findAuthorsCalls);
     }
 
     @Test
@@ -135,11 +396,118 @@ class SocialServiceTest {
         String id = createPost(ALICE, "p", "public");
         service.toggleLike(BOB, id);
 
-        Map<String, Object> forBob = service.getFeed(BOB, 20, 0).get(0);
-        Map<String, Object> forAlice = service.getFeed(ALICE, 20, 0).get(0);
-        assertEquals(true, forBob.get("userLiked"));
-        assertEquals(false, forAlice.get("userLiked"));
-        assertEquals(1, forBob.get("likesCount"));
+        PostView forBob = service.getFeedPage(BOB, null, 20).getPosts().get(0);
+        PostView forAlice = service.getFeedPage(ALICE, null, 20).getPosts().get(0);
+        assertTrue(forBob.isUserLiked());
+        assertFalse(forAlice.isUserLiked());
+        assertEquals(1, forBob.getLikesCount());
+    }
+
+    @Test
+    void bufferedLikesReachPostInOneCounterWrite() {
+        PostCounterBuffer buffer = new PostCounterBuffer(repo, java.time.Duration.ofMillis(250), 100);
+        SocialService svc = new SocialService(repo, uid -> java.util.Set.of(), null, buffer, PostPurger.inline(repo),
+                AuthorCache.none(), FeedEvents.NONE, FeedRanker.chronological());
+        String id = createPost(ALICE, "viral", "public");
+        for (int i = 0; i < 20; i++) svc.toggleLike("fan-" + i, id);
+        svc.addComment(BOB, "Bob", null, id, "wow");
+        assertEquals(0, repo.findPost(id).orElseThrow().getLikesCount());
+
+        buffer.flush();
+
+        SocialPost stored = repo.findPost(id).orElseThrow();
+        assertEquals(20, stored.getLikesCount());
+        assertEquals(1, stored.getCommentsCount());
+        assertEquals(1, repo.counterWrites);
+    }
+
+    @Test
+    void feedPageLooksUpLikesOnceForAllPosts() {
+        for (int i = 0; i < 5; i++) service.toggleLike(BOB, createPost(ALICE, "post " + i, "public"));
+        repo.likeLookups = 0;
+
+        List<PostView> page = service.getFeedPage(BOB, null, 10).getPosts();
+
+        assertEquals(5, page.size());
+        assertTrue(page.stream().allMatch(PostView::isUserLiked));
+        assertEquals(1, repo.likeLookups);
+    }
+
+    @Test
+    void editingPostKeepsItsLikes() {
+        String id = createPost(ALICE, "draft", "public");
+        service.toggleLike(BOB, id);
+
+        PostView edited = service.updatePost(ALICE, id, "final");
+
+        assertEquals(1, edited.getLikesCount());
+        assertEquals(1, repo.findPost(id).orElseThrow().getLikesCount());
+    }
+
+    @Test
+    void legacyLikedByArrayIsReadAsCount() {
+        Map<String, Object> stored = new java.util.HashMap<>();
+        stored.put("id", "old-post");
+        stored.put("likedBy", List.of(ALICE, BOB));
+
+        assertEquals(2, com.trego.model.SocialPost.fromFirestoreMap(stored).getLikesCount());
+        stored.put("likesCount", 3L);
+        assertEquals(3, com.trego.model.SocialPost.fromFirestoreMap(stored).getLikesCount());
+    }
+
+    @Test
+    void legacyLocalDateTimeMapIsReadAndMigratedToItsTimestamp() {
+        java.time.LocalDateTime t = java.time.LocalDateTime.of(2023, 5, 17, 6, 30, 15, 250_000_000);
+        Map<String, Object> legacy = new java.util.HashMap<>();
+        legacy.put("year", 2023L);
+        legacy.put("monthValue", 5L);
+        legacy.put("month", "MAY");
+        legacy.put("dayOfMonth", 17L);
+        legacy.put("hour", 6L);
+        legacy.put("minute", 30L);
+        legacy.put("second", 15L);
+        legacy.put("nano", 250_000_000L);
+        Map<String, Object> stored = new java.util.HashMap<>();
+        stored.put("id", "old-post");
+        stored.put("createdAt", legacy);
+
+        assertEquals(t, com.trego.model.SocialPost.fromFirestoreMap(stored).getCreatedAt());
+        assertTrue(com.trego.model.BaseEntity.isLegacyDateTime(legacy));
+        assertFalse(com.trego.model.BaseEntity.isLegacyDateTime(com.trego.model.BaseEntity.localDateTimeToTimestamp(t)));
+        assertEquals(com.trego.model.BaseEntity.localDateTimeToTimestamp(t),
+                com.trego.model.BaseEntity.legacyDateTimeToTimestamp(legacy));
+    }
+
+    @Test
+    void timestampMigrationCoversPostsAndComments() {
+        Map<String, Object> result = service.migrateLegacyTimestamps();
+
+        assertEquals(List.of("posts", "comments"), repo.timestampMigrations);
+        assertEquals(0, result.get("posts"));
+        assertEquals(0, result.get("comments"));
+    }
+
+    @Test
+    void legacyLikersAreMigratedOnTheFirstToggle() {
+        Map<String, Object> stored = new java.util.HashMap<>();
+        stored.put("id", "old-post");
+        stored.put("authorId", ALICE);
+        stored.put("visibility", "public");
+        stored.put("likedBy", List.of(ALICE, BOB));
+        com.trego.model.SocialPost legacy = com.trego.model.SocialPost.fromFirestoreMap(stored);
+        legacy.setCreatedAt(java.time.LocalDateTime.of(2023, 1, 1, 0, 0));
+        repo.posts.add(legacy);
+        assertTrue(service.getFeedPage(BOB, null, 10).getPosts().get(0).isUserLiked());
+
+        // A new liker adds to the legacy count rather than restarting it.
+        assertEquals(3, service.toggleLike("carol-uid", "old-post").get("likesCount"));
+        assertEquals(3, repo.findPost("old-post").orElseThrow().getLikesCount());
+        // A legacy liker unlikes instead of liking twice.
+        Map<String, Object> bob = service.toggleLike(BOB, "old-post");
+        assertEquals(false, bob.get("userLiked"));
+        assertEquals(2, repo.findPost("old-post").orElseThrow().getLikesCount());
+        assertTrue(service.getFeedPage(ALICE, null, 10).getPosts().get(0).isUserLiked());
+        assertFalse(service.getFeedPage(BOB, null, 10).getPosts().get(0).isUserLiked());
     }
 
     @Test
@@ -151,13 +519,36 @@ class SocialServiceTest {
         @SuppressWarnings("unchecked")
         Map<String, Object> comment = (Map<String, Object>) result.get("comment");
         assertEquals("nice run!", comment.get("content"));
-        @SuppressWarnings("unchecked")
-        Map<String, Object> author = (Map<String, Object>) comment.get("author");
-        assertEquals(BOB, author.get("id"));
+        assertEquals(BOB, ((PostView.Author) comment.get("author")).getId());
 
-        List<Map<String, Object>> comments = service.getComments(id);
+        List<Map<String, Object>> comments = service.getComments(id, null, 20).getComments();
         assertEquals(1, comments.size());
         assertEquals("nice run!", comments.get(0).get("content"));
+        assertEquals(1, repo.findPost(id).orElseThrow().getCommentsCount());
+    }
+
+    @Test
+    void commentsArePagedOldestFirstWithCursors() {
+        String id = createPost(ALICE, "p", "public");
+        for (int i = 0; i < 5; i++) service.addComment(BOB, "Bob", null, id, "c" + i);
+        service.addComment(BOB, "Bob", null, createPost(BOB, "other", "public"), "elsewhere");
+
+        SocialService.CommentPage first = service.getComments(id, null, 2);
+        SocialService.CommentPage second = service.getComments(id, first.getNextCursor(), 2);
+        SocialService.CommentPage last = service.getComments(id, second.getNextCursor(), 2);
+
+        assertEquals(List.of("c0", "c1"), first.getComments().stream().map(m -> m.get("content")).toList());
+        assertEquals(List.of("c2", "c3"), second.getComments().stream().map(m -> m.get("content")).toList());
+        assertEquals(List.of("c4"), last.getComments().stream().map(m -> m.get("content")).toList());
+        assertNull(last.getNextCursor());
+        assertThrows(IllegalArgumentException.class, () -> service.getComments(id, "bogus!", 2));
+    }
+
+    @Test
+    void commentOnMissingPostWritesNothing() {
+        assertThrows(NoSuchElementException.class,
+                () -> service.addComment(BOB, "Bob", null, "ghost", "hello?"));
+        assertTrue(repo.comments.isEmpty());
     }
 
     @Test
@@ -172,9 +563,9 @@ class SocialServiceTest {
     @Test
     void updatePostByAuthorChangesContent() {
         String id = createPost(ALICE, "old", "public");
-        Map<String, Object> updated = service.updatePost(ALICE, id, "new");
-        assertEquals("new", updated.get("content"));
-        assertEquals("new", service.getFeed(ALICE, 20, 0).get(0).get("content"));
+        PostView updated = service.updatePost(ALICE, id, "new");
+        assertEquals("new", updated.getContent());
+        assertEquals("new", service.getFeedPage(ALICE, null, 20).getPosts().get(0).getContent());
     }
 
     @Test
@@ -190,8 +581,45 @@ class SocialServiceTest {
 
         service.deletePost(ALICE, id);
 
-        assertTrue(service.getFeed(ALICE, 20, 0).isEmpty());
-        assertTrue(service.getComments(id).isEmpty());
+        assertTrue(service.getFeedPage(ALICE, null, 20).getPosts().isEmpty());
+        assertTrue(service.getComments(id, null, 20).getComments().isEmpty());
+    }
+
+    @Test
+    void deletedPostIsHiddenBeforeItIsPurged() {
+        java.util.List<Runnable> queued = new java.util.ArrayList<>();
+        PostPurger purger = new PostPurger(repo, queued::add);
+        SocialService svc = new SocialService(repo, uid -> java.util.Set.of(), null,
+                PostCounterBuffer.writeThrough(repo), purger, AuthorCache.none(), FeedEvents.NONE, FeedRanker.chronological());
+        String id = createPost(ALICE, "doomed", "public");
+        createPost(ALICE, "kept", "public");
+        svc.addComment(BOB, "Bob", null, id, "c1");
+        svc.report(BOB, id, "spam");
+
+        svc.deletePost(ALICE, id);
+
+        assertEquals(List.of("kept"), svc.getFeedPage(ALICE, null, 20).getPosts().stream()
+                .map(m -> m.getContent()).toList());
+        assertThrows(NoSuchElementException.class, () -> svc.toggleLike(BOB, id));
+        assertEquals(1, repo.comments.size());
+
+        queued.forEach(Runnable::run);
+
+        assertTrue(repo.findPost(id).isEmpty());
+        assertTrue(repo.comments.isEmpty());
+        assertTrue(repo.reports.isEmpty());
+    }
+
+    @Test
+    void sweepPurgesTombstonedPostsLeftBehind() {
+        String id = createPost(ALICE, "orphaned", "public");
+        service.addComment(BOB, "Bob", null, id, "c1");
+        repo.tombstonePost(id); // as if the process died before the purge ran
+
+        PostPurger.inline(repo).sweep();
+
+        assertTrue(repo.findPost(id).isEmpty());
+        assertTrue(repo.comments.isEmpty());
     }
 
     @Test